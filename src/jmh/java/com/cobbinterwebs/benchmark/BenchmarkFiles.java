@@ -0,0 +1,58 @@
+package com.cobbinterwebs.benchmark;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+import com.cobbinterwebs.fidelity.generator.FidelityDatasetGenerator;
+import com.cobbinterwebs.trades.config.Configuration;
+
+/**
+ * Input files for the benchmarks. The small ones are the exports in <code>test-data</code>; the
+ * large trade day comes from {@link FidelityDatasetGenerator} with a fixed seed.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class BenchmarkFiles {
+    /** The home directory holding <code>trade-data.properties</code>, override with -Dcom.cobbinterwebs.trades.home. */
+    public static final String HOME = System.getProperty(Configuration.PropertyConstants.HOME_KEY, "test-data");
+    public static final File SMALL_TRADE_DAY = new File(HOME, "MSFT/input/MSFT-20211025.csv");
+    public static final File CHART = new File(HOME, "DWAC/charInput/20211108-1D-5MIN.csv");
+
+    /** Fixed so every run measures the same input. */
+    static final long SEED = 20211025L;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Points the configuration at the benchmark home directory.
+     */
+    public static void setHome() {
+        System.setProperty(Configuration.PropertyConstants.HOME_KEY, HOME);
+    }
+
+    /**
+     * @param pTrades number of trades.
+     * @return a temporary trade export from the seeded generator, deleted on exit.
+     */
+    public static File largeTradeDay(int pTrades) {
+        try {
+            File rVal = File.createTempFile("BENCH-", ".csv");
+            rVal.deleteOnExit();
+            new FidelityDatasetGenerator(SEED).writeTradeDay(rVal, "BENCH", LocalDate.of(2021, 10, 25), pTrades);
+            return rVal;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.cobbinterwebs.charts.wavlet.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cobbinterwebs.benchmark.BenchmarkFiles;
+
+import jwave.exceptions.JWaveException;
+
+/**
+ * Chart record parsing and the wavelet transform of the open prices. The transform runs on
+ * a seeded random walk so the sizes are not limited to the bundled chart.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FidelityChartBenchmark {
+    static final String CHART_ROW = "11/03/2021,9:35 AM,65.2,67,65.2,66.99,263445";
+
+    /** 310 is the bundled 5 minute chart; powers of two and ragged lengths take different paths. */
+    @Param({ "310", "4096", "10000", "100000" })
+    public int points;
+
+    private double[] prices;
+    private FidelityChartProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFiles.setHome();
+        Random random = new Random(42L);
+        prices = new double[points];
+        double price = 65.0;
+        for (int i = 0; i < points; i++) {
+            price = Math.max(0.01, price + random.nextGaussian() * 0.1);
+            prices[i] = price;
+        }
+        processor = new FidelityChartProcessor(BenchmarkFiles.CHART);
+    }
+
+    @Benchmark
+    public FidelityChartRecord chartRecord() {
+        return new FidelityChartRecord(CHART_ROW);
+    }
+
+    @Benchmark
+    public double[] waveletTransform() throws JWaveException {
+        return processor.doWaveletTransform(prices);
+    }
+}
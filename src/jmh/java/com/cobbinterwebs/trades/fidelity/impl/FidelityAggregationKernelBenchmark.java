@@ -0,0 +1,74 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cobbinterwebs.benchmark.BenchmarkFiles;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+
+/**
+ * A million trades in columns summed by each aggregation kernel. The vector kernel needs the
+ * benchmarks built with <code>-P benchmarks,vector</code> and run with
+ * <code>-jvmArgsAppend --add-modules=jdk.incubator.vector</code>; otherwise its runs measure the
+ * scalar kernel.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FidelityAggregationKernelBenchmark {
+    static final int TRADES = 1_000_000;
+
+    @Param({ "scalar", "vector" })
+    public String kernel;
+
+    private FidelityTradeColumns columns;
+    private FidelityAggregationKernel aggregationKernel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFiles.setHome();
+        FidelityAggregationKernel vector = FidelityAggregationKernel.vector();
+        aggregationKernel = "vector".equals(kernel) && vector != null ? vector : FidelityAggregationKernel.SCALAR;
+        Random random = new Random(20211025L);
+        columns = new FidelityTradeColumns(8);
+        for (int i = 0; i < TRADES; i++) {
+            long price = 30_000_000_000L + random.nextInt(100_000_000);
+            long bid = random.nextInt(10) == 0 ? FixedPoint.NONE : price - 50_000_000 + random.nextInt(100_000_000);
+            long ask = random.nextInt(10) == 0 ? FixedPoint.NONE : price - 50_000_000 + random.nextInt(100_000_000);
+            columns.add(34_200 + i / 50, price, 1 + random.nextInt(5000), bid, ask, random.nextInt(7) == 0);
+        }
+    }
+
+    @Benchmark
+    public FidelityDayAggregate aggregate() {
+        FidelityDayAggregate rVal = new FidelityDayAggregate(8);
+        columns.aggregateInto(rVal, aggregationKernel);
+        return rVal;
+    }
+}
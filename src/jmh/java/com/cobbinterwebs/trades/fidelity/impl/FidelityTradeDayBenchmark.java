@@ -0,0 +1,68 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cobbinterwebs.benchmark.BenchmarkFiles;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+
+/**
+ * A full <code>FidelityTradeDay.process()</code> per operation, for each trade store.
+ * The large day is a generated million trades.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FidelityTradeDayBenchmark {
+    static final int LARGE_TRADES = 1_000_000;
+
+    @Param({ "small", "large" })
+    public String size;
+
+    @Param({ "objects", "columns", "streaming" })
+    public String store;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkFiles.setHome();
+        System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+        FidelityConfiguration.reset();
+        file = "large".equals(size) ? BenchmarkFiles.largeTradeDay(LARGE_TRADES) : BenchmarkFiles.SMALL_TRADE_DAY;
+    }
+
+    @Benchmark
+    public BigDecimal process() {
+        FidelityTradeDay day = new FidelityTradeDay(file);
+        day.process();
+        return day.getDollarVolume();
+    }
+}
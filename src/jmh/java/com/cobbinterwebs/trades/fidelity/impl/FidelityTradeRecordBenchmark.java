@@ -0,0 +1,71 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cobbinterwebs.benchmark.BenchmarkFiles;
+
+/**
+ * Parsing of single trade rows.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FidelityTradeRecordBenchmark {
+    static final String WITH_BID_ASK = "\"19:59:59 ET\",\"309.55\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"A\",\"--\"";
+    static final String WITHOUT_BID_ASK = "\"09:30:02 ET\",\"308.96\",\"100\",\"--\",\"--\",\"--\",\"--\",\"--\",\"--\",\"Q\",\"--\"";
+    static final String TEE_TRADE = "\"16:00:01 ET\",\"310.01\",\"1500\",\"309.98\",\"310.05\",\"2\",\"3\",\"Q\",\"P\",\"D\",\"T\"";
+
+    @Setup
+    public void setup() {
+        BenchmarkFiles.setHome();
+    }
+
+    @Benchmark
+    public FidelityTradeRecord withBidAsk() {
+        return new FidelityTradeRecord(WITH_BID_ASK);
+    }
+
+    @Benchmark
+    public FidelityTradeRecord withoutBidAsk() {
+        return new FidelityTradeRecord(WITHOUT_BID_ASK);
+    }
+
+    @Benchmark
+    public FidelityTradeRecord teeTrade() {
+        return new FidelityTradeRecord(TEE_TRADE);
+    }
+
+    @Benchmark
+    public int[] convertDateString() {
+        return FidelityTradeRecord.convertDateString("19:59:59 ET");
+    }
+
+    @Benchmark
+    public int parseSecondOfDay() {
+        return FidelityTradeRecord.parseSecondOfDay("19:59:59 ET");
+    }
+}
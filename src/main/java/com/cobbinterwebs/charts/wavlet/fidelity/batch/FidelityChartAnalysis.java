@@ -0,0 +1,345 @@
+package com.cobbinterwebs.charts.wavlet.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysisResult.ChartCoefficients;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns.Series;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityArchive;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.fidelity.metrics.FidelityMetrics;
+import com.cobbinterwebs.trades.config.Configuration;
+import com.cobbinterwebs.trades.fidelity.batch.FidelityInputFile;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeBars;
+
+import jwave.exceptions.JWaveException;
+
+/**
+ * Wavelet analysis of every series of every chart in the home tree, laid out as
+ * <code>&lt;home&gt;/&lt;TICKER&gt;/charInput/*.csv</code>. Each chart is read once by a
+ * fork-join task, which then forks one transform per series over the shared columns; the
+ * {@link FidelityWaveletEngine} keeps a transform and scratch buffers per worker thread.
+ * The trade exports can be analyzed the same way, each day resampled into bars by
+ * {@link FidelityTradeBars} instead of going through a chart export.
+ * A chart that fails is recorded in the result and the rest of the analysis carries on.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityChartAnalysis {
+    private static final Logger log = LogManager.getLogger(FidelityChartAnalysis.class);
+
+    /** Name of the directory, under each ticker, holding the chart exports. */
+    public static final String CHART_DIR = "charInput";
+
+    /** Name, without the extension of the output format, of the coefficient file written into each ticker directory. */
+    public static final String COEFFICIENTS_FILE = "wavelets";
+
+    private final File homeDir;
+    private final int parallelism;
+
+    /**
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     * @param pParallelism worker threads of the fork-join pool.
+     */
+    public FidelityChartAnalysis(File pHomeDir, int pParallelism) {
+        homeDir = pHomeDir;
+        parallelism = Math.max(1, pParallelism);
+    }
+
+    /**
+     * Uses the batch thread count from the configuration.
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     */
+    public FidelityChartAnalysis(File pHomeDir) {
+        this(pHomeDir, FidelityConfiguration.getInstance().getBatchThreads());
+    }
+
+    /**
+     * @param pHomeDir the home directory.
+     * @return the chart files of each ticker, gzipped or bundled in zips included, in ticker and file name order.
+     */
+    public static Map<String, List<File>> discover(File pHomeDir) {
+        Map<String, List<File>> rVal = new TreeMap<>();
+        File[] tickerDirs = pHomeDir.listFiles(File::isDirectory);
+        if (tickerDirs == null) {
+            log.warn("{} is not a readable directory.", pHomeDir.getAbsolutePath());
+            return rVal;
+        }
+        for (File tickerDir : tickerDirs) {
+            List<File> charts = discover(pHomeDir, tickerDir.getName());
+            if (!charts.isEmpty()) {
+                rVal.put(tickerDir.getName(), charts);
+            }
+        }
+        return rVal;
+    }
+
+    /**
+     * @param pHomeDir the home directory.
+     * @param pTicker the ticker directory.
+     * @return the ticker's chart files, in file name order.
+     */
+    public static List<File> discover(File pHomeDir, String pTicker) {
+        return FidelityArchive.list(new File(new File(pHomeDir, pTicker), CHART_DIR), FidelityChartAnalysis::isChartName);
+    }
+
+    /**
+     * @param pName a file name.
+     * @return true if the name is that of a chart export, plain or gzipped.
+     */
+    public static boolean isChartName(String pName) {
+        return pName.endsWith(".csv") || pName.endsWith(".csv.gz");
+    }
+
+    /**
+     * @return the coefficients of every chart found under the home directory.
+     */
+    public FidelityChartAnalysisResult analyze() {
+        return analyze(discover(homeDir));
+    }
+
+    /**
+     * @param pCharts the chart files of each ticker.
+     * @return the coefficients, in ticker and file name order.
+     */
+    public FidelityChartAnalysisResult analyze(Map<String, List<File>> pCharts) {
+        return analyze(pCharts, 0);
+    }
+
+    /**
+     * Resamples every trade export found under the home directory into bars and transforms their series.
+     * @param pInterval bar length in seconds.
+     * @return the coefficients, one set per export, in ticker and date order.
+     */
+    public FidelityChartAnalysisResult analyzeTrades(int pInterval) {
+        return analyzeTrades(FidelityInputFile.discover(homeDir), pInterval);
+    }
+
+    /**
+     * @param pInputs the trade exports.
+     * @param pInterval bar length in seconds.
+     * @return the coefficients, one set per export, in ticker and date order.
+     */
+    public FidelityChartAnalysisResult analyzeTrades(List<FidelityInputFile> pInputs, int pInterval) {
+        if (pInterval <= 0) {
+            throw new IllegalArgumentException("bar interval must be positive: " + pInterval);
+        }
+        Map<String, List<File>> exports = new TreeMap<>();
+        List<FidelityInputFile> inputs = new ArrayList<>(pInputs);
+        inputs.sort(null);
+        for (FidelityInputFile input : inputs) {
+            exports.computeIfAbsent(input.getTicker(), t -> new ArrayList<>()).add(input.getFile());
+        }
+        return analyze(exports, pInterval);
+    }
+
+    /**
+     * @param pInterval 0 for chart exports, otherwise the bar length the trade exports are resampled to.
+     */
+    private FidelityChartAnalysisResult analyze(Map<String, List<File>> pCharts, int pInterval) {
+        Map<String, List<File>> charts = new TreeMap<>(pCharts);
+        log.info("analyzing the {} of {} tickers on {} threads.", pInterval > 0 ? pInterval + "s bars" : "charts",
+                charts.size(), parallelism);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Map<File, ForkJoinTask<ChartCoefficients>> tasks = new LinkedHashMap<>();
+            for (Map.Entry<String, List<File>> ticker : charts.entrySet()) {
+                List<File> files = new ArrayList<>(ticker.getValue());
+                files.sort(null);
+                for (File chart : files) {
+                    tasks.put(chart, pool.submit(new ChartTask(ticker.getKey(), chart, pInterval)));
+                }
+            }
+            FidelityChartAnalysisResult result = new FidelityChartAnalysisResult();
+            for (Map.Entry<String, List<File>> ticker : charts.entrySet()) {
+                for (File chart : ticker.getValue()) {
+                    ForkJoinTask<ChartCoefficients> task = tasks.get(chart);
+                    try {
+                        result.add(ticker.getKey(), task.join());
+                    } catch (RuntimeException e) {
+                        log.error("failed to analyze {}", chart.getAbsolutePath(), e);
+                        result.addFailure(ticker.getKey(), chart, e);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads one chart, or resamples one trade export, and transforms its series in parallel.
+     */
+    static final class ChartTask extends RecursiveTask<ChartCoefficients> {
+        private static final long serialVersionUID = 1L;
+
+        private final String ticker;
+        private final File chart;
+        private final int barInterval;
+
+        /**
+         * @param pBarInterval 0 for a chart export, otherwise the bar length a trade export is resampled to.
+         */
+        ChartTask(String pTicker, File pChart, int pBarInterval) {
+            ticker = pTicker;
+            chart = pChart;
+            barInterval = pBarInterval;
+        }
+
+        @Override
+        protected ChartCoefficients compute() {
+            FidelityChartColumns columns;
+            ThreadContext.put("ticker", ticker);
+            try {
+                if (barInterval > 0) {
+                    columns = FidelityTradeBars.read(chart, barInterval, FidelityConfiguration.getInstance().getScale()).toChartColumns();
+                } else {
+                    columns = new FidelityChartProcessor(chart).read();
+                }
+            } finally {
+                ThreadContext.remove("ticker");
+            }
+            Map<Series, SeriesTask> transforms = new EnumMap<>(Series.class);
+            for (Series series : Series.values()) {
+                transforms.put(series, new SeriesTask(columns, series));
+            }
+            ForkJoinTask.invokeAll(transforms.values());
+            Map<Series, double[]> coefficients = new EnumMap<>(Series.class);
+            transforms.forEach((series, task) -> coefficients.put(series, task.join()));
+            return new ChartCoefficients(chart, columns.size(), coefficients);
+        }
+    }
+
+    /**
+     * Transforms one series of a chart.
+     */
+    static final class SeriesTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FidelityChartColumns columns;
+        private final Series series;
+
+        SeriesTask(FidelityChartColumns pColumns, Series pSeries) {
+            columns = pColumns;
+            series = pSeries;
+        }
+
+        @Override
+        protected double[] compute() {
+            try {
+                return FidelityWaveletEngine.getInstance().forward(columns.getSeries(series));
+            } catch (JWaveException e) {
+                throw new IllegalStateException("transform of the " + series + " series failed", e);
+            }
+        }
+    }
+
+    /**
+     * Writes <code>wavelets.csv</code>, or <code>wavelets.bin</code>, into each ticker directory.
+     * @param pResult the analysis result.
+     * @param pFormat the output format.
+     * @throws IOException if a file can not be written.
+     */
+    public void writeCoefficients(FidelityChartAnalysisResult pResult, FidelityOutputSink.Format pFormat) throws IOException {
+        writeCoefficients(pResult, pFormat, COEFFICIENTS_FILE);
+    }
+
+    /**
+     * @param pResult the analysis result.
+     * @param pFormat the output format.
+     * @param pName file name without the extension, e.g. <code>wavelets-60s</code> for bars.
+     * @throws IOException if a file can not be written.
+     */
+    public void writeCoefficients(FidelityChartAnalysisResult pResult, FidelityOutputSink.Format pFormat, String pName) throws IOException {
+        for (FidelityChartAnalysisResult.TickerCoefficients ticker : pResult.getTickers().values()) {
+            File out = new File(new File(homeDir, ticker.getTicker()), pName + "." + pFormat.getExtension());
+            try (FidelityOutputSink sink = FidelityOutputSink.open(out, pFormat)) {
+                ticker.writeCoefficients(sink);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            log.info("wrote {}", out.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Command line entry point.
+     * @param args <code>-home dir</code>, optional <code>-threads n</code> and <code>-bars 1s|5s|1m|5m</code>
+     * to resample the trade exports instead of reading the chart exports.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("home", true, "home directory holding the ticker directories");
+        options.addOption("threads", true, "worker threads");
+        options.addOption("bars", true, "resample the trade exports into bars of this length, e.g. 1m");
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("home")) {
+                System.setProperty(Configuration.PropertyConstants.HOME_KEY, cmd.getOptionValue("home"));
+            }
+            if (cmd.hasOption("threads")) {
+                System.setProperty(FidelityConfiguration.PropertyConstants.BATCH_THREADS_KEY, cmd.getOptionValue("threads"));
+            }
+            FidelityChartAnalysis analysis = new FidelityChartAnalysis(FidelityConfiguration.homeDirectory());
+            FidelityOutputSink.Format format = FidelityOutputSink.Format.of(FidelityConfiguration.getInstance().getOutputFormat());
+            FidelityChartAnalysisResult result;
+            if (cmd.hasOption("bars")) {
+                int interval;
+                try {
+                    interval = FidelityTradeBars.parseInterval(cmd.getOptionValue("bars"));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException(e.getMessage());
+                }
+                result = analysis.analyzeTrades(interval);
+                analysis.writeCoefficients(result, format, COEFFICIENTS_FILE + "-" + interval + "s");
+            } else {
+                result = analysis.analyze();
+                analysis.writeCoefficients(result, format);
+            }
+            log.info("metrics {}", FidelityMetrics.getInstance().snapshot());
+            if (result.getFailureCount() > 0) {
+                log.error("{} charts failed.", result.getFailureCount());
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            new HelpFormatter().printHelp(FidelityChartAnalysis.class.getSimpleName(), options);
+            System.exit(2);
+        } catch (IOException e) {
+            log.error("could not write the coefficients.", e);
+            System.exit(1);
+        }
+    }
+}
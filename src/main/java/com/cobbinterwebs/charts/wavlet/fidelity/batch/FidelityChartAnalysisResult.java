@@ -0,0 +1,176 @@
+package com.cobbinterwebs.charts.wavlet.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns.Series;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+
+/**
+ * Wavelet coefficients of a chart analysis, by ticker, then chart file, then series. The charts
+ * of a ticker are in file name order no matter which order the workers finished in.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityChartAnalysisResult {
+    private final Map<String, TickerCoefficients> tickers = new TreeMap<>();
+
+    /**
+     * The coefficients of every series of one chart file.
+     */
+    public static class ChartCoefficients {
+        private final File chart;
+        private final int points;
+        private final Map<Series, double[]> coefficients;
+
+        public ChartCoefficients(File pChart, int pPoints, Map<Series, double[]> pCoefficients) {
+            chart = pChart;
+            points = pPoints;
+            coefficients = Collections.unmodifiableMap(new EnumMap<>(pCoefficients));
+        }
+
+        public File getChart() {
+            return chart;
+        }
+
+        /**
+         * @return number of chart points the series were built from.
+         */
+        public int getPoints() {
+            return points;
+        }
+
+        /**
+         * @param pSeries a series.
+         * @return the coefficients of the series; do not modify.
+         */
+        public double[] get(Series pSeries) {
+            return coefficients.get(pSeries);
+        }
+
+        /**
+         * @return the coefficients of every series, in series order.
+         */
+        public Map<Series, double[]> getCoefficients() {
+            return coefficients;
+        }
+    }
+
+    /**
+     * The charts of one ticker.
+     */
+    public static class TickerCoefficients {
+        private final String ticker;
+        private final List<ChartCoefficients> charts = new ArrayList<>();
+        private final Map<File, Throwable> failures = new LinkedHashMap<>();
+
+        TickerCoefficients(String pTicker) {
+            ticker = pTicker;
+        }
+
+        public String getTicker() {
+            return ticker;
+        }
+
+        /**
+         * @return the analyzed charts, in file name order.
+         */
+        public List<ChartCoefficients> getCharts() {
+            return Collections.unmodifiableList(charts);
+        }
+
+        /**
+         * @return the charts that could not be analyzed, with the reason.
+         */
+        public Map<File, Throwable> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Writes a header and one row per coefficient index: chart file, index, then the
+         * coefficient of each series, left empty in CSV where a series is shorter.
+         * @param pSink where to write; flushed, not closed.
+         */
+        public void writeCoefficients(FidelityOutputSink pSink) {
+            StringBuilder header = new StringBuilder("Chart,Index");
+            for (Series series : Series.values()) {
+                header.append(',').append(series);
+            }
+            pSink.header(header.toString());
+            for (ChartCoefficients chart : charts) {
+                int length = 0;
+                for (double[] coefficients : chart.getCoefficients().values()) {
+                    length = Math.max(length, coefficients.length);
+                }
+                String name = chart.getChart().getName();
+                for (int i = 0; i < length; i++) {
+                    pSink.text(name).longValue(i);
+                    for (Series series : Series.values()) {
+                        double[] coefficients = chart.get(series);
+                        if (coefficients != null && i < coefficients.length) {
+                            pSink.doubleValue(coefficients[i]);
+                        } else {
+                            pSink.text("");
+                        }
+                    }
+                    pSink.endRow();
+                }
+            }
+            pSink.flush();
+        }
+    }
+
+    /**
+     * @return the tickers, in ticker order.
+     */
+    public Map<String, TickerCoefficients> getTickers() {
+        return Collections.unmodifiableMap(tickers);
+    }
+
+    /**
+     * @param pTicker a ticker.
+     * @param pChart a chart file name.
+     * @param pSeries a series.
+     * @return the coefficients, or null if the chart was not analyzed.
+     */
+    public double[] get(String pTicker, String pChart, Series pSeries) {
+        TickerCoefficients ticker = tickers.get(pTicker);
+        if (ticker != null) {
+            for (ChartCoefficients chart : ticker.charts) {
+                if (chart.getChart().getName().equals(pChart)) {
+                    return chart.get(pSeries);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of charts that could not be analyzed.
+     */
+    public int getFailureCount() {
+        return tickers.values().stream().mapToInt(t -> t.failures.size()).sum();
+    }
+
+    void add(String pTicker, ChartCoefficients pChart) {
+        tickers.computeIfAbsent(pTicker, TickerCoefficients::new).charts.add(pChart);
+    }
+
+    void addFailure(String pTicker, File pChart, Throwable pCause) {
+        tickers.computeIfAbsent(pTicker, TickerCoefficients::new).failures.put(pChart, pCause);
+    }
+}
@@ -0,0 +1,283 @@
+package com.cobbinterwebs.charts.wavlet.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.io.FidelitySidecar;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartRecord.Indexes;
+
+/**
+ * The points of a chart file in parallel primitive columns: date-time (epoch milliseconds, in
+ * the default time zone like {@link FidelityChartRecord}), open, high, low and close as doubles,
+ * and volume.
+ *
+ * <p>The columns grow by doubling while the file is read; {@link #trimToSize()} then cuts them
+ * to the number of points once, after which the array getters hand out the columns themselves,
+ * without copying. Callers must not modify them; the <code>...View()</code> methods give
+ * read-only buffers instead.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityChartColumns {
+    static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The series of a chart that can be analyzed.
+     */
+    public enum Series {
+        OPEN, HIGH, LOW, CLOSE, VOLUME
+    }
+
+    private int size;
+    private long[] dateTime;
+    private double[] open;
+    private double[] high;
+    private double[] low;
+    private double[] close;
+    private long[] volume;
+
+    public FidelityChartColumns() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param pCapacity number of points to make room for.
+     */
+    public FidelityChartColumns(int pCapacity) {
+        int capacity = Math.max(1, pCapacity);
+        dateTime = new long[capacity];
+        open = new double[capacity];
+        high = new double[capacity];
+        low = new double[capacity];
+        close = new double[capacity];
+        volume = new long[capacity];
+    }
+
+    /**
+     * @return number of chart points stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Parses the current row of the scanner straight into the columns.
+     * @param pRow scanner positioned on a row of chart data.
+     * @return the index of the new point.
+     * @throws NumberFormatException if a field can not be read.
+     */
+    public int add(FidelityCSVScanner pRow) {
+        long millis = FidelityChartRecord.toDate(pRow.getEpochDay(Indexes.DATE), pRow.getSecondOfDay(Indexes.TIME)).getTime();
+        return add(millis, pRow.getDouble(Indexes.OPEN), pRow.getDouble(Indexes.HIGH), pRow.getDouble(Indexes.LOW),
+                pRow.getDouble(Indexes.CLOSE), pRow.getLong(Indexes.VOLUME));
+    }
+
+    /**
+     * @param pDateTime epoch milliseconds.
+     * @return the index of the new point.
+     */
+    public int add(long pDateTime, double pOpen, double pHigh, double pLow, double pClose, long pVolume) {
+        if (size == dateTime.length) {
+            resize(size * 2);
+        }
+        dateTime[size] = pDateTime;
+        open[size] = pOpen;
+        high[size] = pHigh;
+        low[size] = pLow;
+        close[size] = pClose;
+        volume[size] = pVolume;
+        return size++;
+    }
+
+    /**
+     * Cuts the columns to the number of points, so the array getters return exactly the points.
+     */
+    public void trimToSize() {
+        if (dateTime.length != size) {
+            resize(size);
+        }
+    }
+
+    public long getDateTime(int pIndex) {
+        return dateTime[pIndex];
+    }
+
+    public double getOpen(int pIndex) {
+        return open[pIndex];
+    }
+
+    public double getHigh(int pIndex) {
+        return high[pIndex];
+    }
+
+    public double getLow(int pIndex) {
+        return low[pIndex];
+    }
+
+    public double getClose(int pIndex) {
+        return close[pIndex];
+    }
+
+    public long getVolume(int pIndex) {
+        return volume[pIndex];
+    }
+
+    /**
+     * @return the open prices, the column itself once trimmed; do not modify.
+     */
+    public double[] getOpenPrices() {
+        trimToSize();
+        return open;
+    }
+
+    /**
+     * @return the high prices, the column itself once trimmed; do not modify.
+     */
+    public double[] getHighPrices() {
+        trimToSize();
+        return high;
+    }
+
+    /**
+     * @return the low prices, the column itself once trimmed; do not modify.
+     */
+    public double[] getLowPrices() {
+        trimToSize();
+        return low;
+    }
+
+    /**
+     * @return the close prices, the column itself once trimmed; do not modify.
+     */
+    public double[] getClosePrices() {
+        trimToSize();
+        return close;
+    }
+
+    /**
+     * @return the volumes, the column itself once trimmed; do not modify.
+     */
+    public long[] getVolumes() {
+        trimToSize();
+        return volume;
+    }
+
+    /**
+     * @param pSeries a series.
+     * @return the series as doubles; the price columns themselves, the volume converted into a new array.
+     */
+    public double[] getSeries(Series pSeries) {
+        switch (pSeries) {
+        case OPEN:
+            return getOpenPrices();
+        case HIGH:
+            return getHighPrices();
+        case LOW:
+            return getLowPrices();
+        case CLOSE:
+            return getClosePrices();
+        default:
+            double[] rVal = new double[size];
+            for (int i = 0; i < size; i++) {
+                rVal[i] = volume[i];
+            }
+            return rVal;
+        }
+    }
+
+    /**
+     * @return the date-times, epoch milliseconds, the column itself once trimmed; do not modify.
+     */
+    public long[] getDateTimes() {
+        trimToSize();
+        return dateTime;
+    }
+
+    public DoubleBuffer openView() {
+        return DoubleBuffer.wrap(open, 0, size).asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer highView() {
+        return DoubleBuffer.wrap(high, 0, size).asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer lowView() {
+        return DoubleBuffer.wrap(low, 0, size).asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer closeView() {
+        return DoubleBuffer.wrap(close, 0, size).asReadOnlyBuffer();
+    }
+
+    public LongBuffer volumeView() {
+        return LongBuffer.wrap(volume, 0, size).asReadOnlyBuffer();
+    }
+
+    public LongBuffer dateTimeView() {
+        return LongBuffer.wrap(dateTime, 0, size).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param pIndex a point.
+     * @return the point as a chart record.
+     */
+    public FidelityChartRecord toChartRecord(int pIndex) {
+        return new FidelityChartRecord(new Date(dateTime[pIndex]), BigDecimal.valueOf(open[pIndex]),
+                BigDecimal.valueOf(high[pIndex]), BigDecimal.valueOf(low[pIndex]), BigDecimal.valueOf(close[pIndex]),
+                volume[pIndex]);
+    }
+
+    /**
+     * Adds the columns to a sidecar writer: date-time, open, high, low, close and volume.
+     * The prices are written as the bits of the doubles.
+     * @param pWriter writer for a {@link FidelitySidecar#KIND_CHART} sidecar of {@link #size()} rows.
+     * @return the writer.
+     */
+    public FidelitySidecar.Writer writeTo(FidelitySidecar.Writer pWriter) {
+        return pWriter.column(FidelitySidecar.TYPE_LONG, this::getDateTime)
+                .column(FidelitySidecar.TYPE_LONG, i -> Double.doubleToRawLongBits(open[i]))
+                .column(FidelitySidecar.TYPE_LONG, i -> Double.doubleToRawLongBits(high[i]))
+                .column(FidelitySidecar.TYPE_LONG, i -> Double.doubleToRawLongBits(low[i]))
+                .column(FidelitySidecar.TYPE_LONG, i -> Double.doubleToRawLongBits(close[i]))
+                .column(FidelitySidecar.TYPE_LONG, this::getVolume);
+    }
+
+    /**
+     * @param pSidecar a chart sidecar written by {@link #writeTo(FidelitySidecar.Writer)}.
+     * @return the chart points, trimmed.
+     */
+    public static FidelityChartColumns readFrom(FidelitySidecar pSidecar) {
+        int rows = pSidecar.getRowCount();
+        FidelityChartColumns rVal = new FidelityChartColumns(rows);
+        pSidecar.longColumn(0).get(rVal.dateTime, 0, rows);
+        pSidecar.doubleColumn(1).get(rVal.open, 0, rows);
+        pSidecar.doubleColumn(2).get(rVal.high, 0, rows);
+        pSidecar.doubleColumn(3).get(rVal.low, 0, rows);
+        pSidecar.doubleColumn(4).get(rVal.close, 0, rows);
+        pSidecar.longColumn(5).get(rVal.volume, 0, rows);
+        rVal.size = rows;
+        rVal.trimToSize();
+        return rVal;
+    }
+
+    private void resize(int pCapacity) {
+        dateTime = Arrays.copyOf(dateTime, pCapacity);
+        open = Arrays.copyOf(open, pCapacity);
+        high = Arrays.copyOf(high, pCapacity);
+        low = Arrays.copyOf(low, pCapacity);
+        close = Arrays.copyOf(close, pCapacity);
+        volume = Arrays.copyOf(volume, pCapacity);
+    }
+}
@@ -1,27 +1,28 @@
 package com.cobbinterwebs.charts.wavlet.fidelity.impl;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.cobbinterwebs.base.ConfigurationAware;
 import com.cobbinterwebs.chart.wavelet.IChartFileReader;
-import com.cobbinterwebs.chart.wavelet.IChartRecord;
-import com.cobbinterwebs.locale.DisplayKeys;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.io.FidelityCSVSink;
+import com.cobbinterwebs.fidelity.io.FidelityFileException;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.fidelity.io.FidelityQuarantine;
+import com.cobbinterwebs.fidelity.io.FidelitySidecar;
+import com.cobbinterwebs.fidelity.metrics.FidelityFileMetrics;
+import com.cobbinterwebs.fidelity.metrics.FidelityFileMetrics.Phase;
+import com.cobbinterwebs.fidelity.metrics.FidelityMetrics;
 import com.cobbinterwebs.trades.config.Configuration;
 
 import jwave.exceptions.JWaveException;
-import jwave.transforms.AncientEgyptianDecomposition;
-import jwave.transforms.BasicTransform;
-import jwave.transforms.FastWaveletTransform;
-import jwave.transforms.wavelets.Wavelet;
-import jwave.transforms.wavelets.haar.Haar1;
 
 
 /**
@@ -32,7 +33,9 @@ import jwave.transforms.wavelets.haar.Haar1;
 public class FidelityChartProcessor implements IChartFileReader, ConfigurationAware {
 	
 	static final Logger log = LogManager.getLogger("om.cobbinterwebs.chart.wavelet.fidelity.impl.FidelityChartProcessor");
-	List<IChartRecord> chartRecordList = new ArrayList<>();
+	FidelityChartColumns columns = new FidelityChartColumns();
+	/** Recorder of the file being processed, while {@link #process()} runs. */
+	private FidelityFileMetrics metrics;
 	
 	
 	protected File aFile;
@@ -47,129 +50,181 @@ public class FidelityChartProcessor implements IChartFileReader, ConfigurationAw
     	aFile = pFile;
 	}
     
+	/**
+	 * Reads the chart points and prints the wavelet coefficients of the open prices. The work is
+	 * recorded in {@link FidelityMetrics}.
+	 * @throws FidelityFileException if the file can not be read or has more bad rows than the error budget
+	 *         allows, or the transform fails.
+	 */
 	@Override
     public void process() {
-        FidelityCSVInputReader csvInputReader = new FidelityCSVInputReader(aFile);
+        try (FidelityFileMetrics fileMetrics = FidelityFileMetrics.start(FidelityFileMetrics.CHART, aFile)) {
+            metrics = fileMetrics;
+            read(fileMetrics);
+            
+            double[] arr = getOpenPriceArray();
+            try {
+				arr = doWaveletTransform(arr);
+				
+				fileMetrics.phase(Phase.OUTPUT);
+				FidelityOutputSink sink = new FidelityCSVSink(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false);
+				writeCoefficients(arr, sink);
+				sink.close();
+				
+			} catch (JWaveException e) {
+				throw new FidelityFileException(aFile, "wavelet transform failed", e);
+			}
+        } finally {
+            metrics = null;
+        }
+    }
+
+    /**
+     * Reads the chart points into {@link #getColumns()}, from the file's sidecar when sidecars are
+     * enabled and it is current. Rows that can not be read are quarantined, see {@link FidelityQuarantine}.
+     * @return the chart points.
+     * @throws FidelityFileException if the file can not be read or has more bad rows than the error budget allows.
+     */
+    public FidelityChartColumns read() {
+        try (FidelityFileMetrics fileMetrics = FidelityFileMetrics.start(FidelityFileMetrics.CHART, aFile)) {
+            return read(fileMetrics);
+        }
+    }
+
+    private FidelityChartColumns read(FidelityFileMetrics pMetrics) {
+        FidelityConfiguration fidelityConfig = FidelityConfiguration.getInstance();
+        if (fidelityConfig.isSidecar()) {
+            readWithSidecar(fidelityConfig.getScale(), pMetrics);
+        } else {
+            parse(pMetrics);
+        }
+        return columns;
+    }
+
+    /**
+     * Parses the file into the columns, quarantining the rows that can not be read.
+     * @return false if a row was rejected, so the columns do not hold every row of the file.
+     */
+    private boolean parse(FidelityFileMetrics pMetrics) {
+        pMetrics.phase(Phase.OPEN);
+        FidelityQuarantine quarantine = FidelityConfiguration.getInstance().newQuarantine(aFile);
+        FidelityCSVScanner csvScanner = new FidelityCSVScanner(aFile, 0, -1);
         try {
-            csvInputReader.initFile();
+            csvScanner.initFile();
         } catch (IOException e) {
-            log.error("reader initiation failed.",e);
-            System.exit(-1);
+            csvScanner.close();
+            quarantine.close();
+            throw new FidelityFileException(aFile, "reader initiation failed", e);
         }
         try {
-            String currentLine = csvInputReader.readLine();
-            log.trace("throwing away header [{}]",currentLine);
+            csvScanner.nextRow();
+            log.trace("throwing away header at line {}", csvScanner.getLineNumber());
+            pMetrics.phase(Phase.PARSE);
             long lineCounter = 1L;
             boolean done = false;
             while(!done) {
-                if ((currentLine = csvInputReader.readLine()) == null
-                		|| currentLine.startsWith("\"The data and information")) {
+                if (!csvScanner.nextRow()
+                		|| csvScanner.fieldStartsWith(0, "The data and information")) {
                     done = true;
                 } else {
 
-                    if (log.isTraceEnabled()) log.trace("LINE: {}", currentLine);
+                    if (log.isTraceEnabled()) log.trace("LINE: {}", csvScanner.getLine());
 
                     try {
-                        IChartRecord tr = IChartRecord.create(currentLine);
-                        if (log.isDebugEnabled()) log.debug("adding a chart point . . . {}", tr);
-                        if(null == tr) {
-                            Exception e = new IllegalStateException();
-                            log.fatal("BOOM!!!", e);
-                            System.exit(-1);
-                        }
-                        chartRecordList.add(tr);
+                        int point = columns.add(csvScanner);
+                        pMetrics.addRecords(1L);
+                        if (log.isDebugEnabled()) log.debug("adding a chart point . . . {}", columns.toChartRecord(point));
                         
-                    } catch (Exception e) {
-                        log.error("error processing line {} in file {}", lineCounter,aFile.getName());
-                        log.error("error processing data, \"{}\"", currentLine, e);
-                        return;
+                    } catch (RuntimeException e) {
+                        pMetrics.addRejected(1L);
+                        if (log.isDebugEnabled()) log.debug("error processing line {} in file {}", lineCounter, aFile.getName(), e);
+                        quarantine.reject(csvScanner, "bad chart point");
                     }
+                    lineCounter++;
                 } // end if check for end of file
-                lineCounter++;
             } // end while not done
-            log.info("loaded {} records for chart processing.",lineCounter);
+            quarantine.finish(lineCounter - 1L);
+            log.info("loaded {} records for chart processing.", columns.size());
+            return quarantine.getRejectedCount() == 0L;
         } catch (IOException e) {
-            log.error("reading file failed: {}", aFile.getAbsolutePath(), e);
+            throw new FidelityFileException(aFile, "reading file failed", e);
         } finally {
-            csvInputReader.close();
+            pMetrics.addLines(csvScanner.getLineNumber()).addBytes(csvScanner.getBytesRead());
+            csvScanner.close();
+            quarantine.close();
+            columns.trimToSize();
+        }
+    }
+
+    /**
+     * Loads the chart points from a current sidecar, or parses the file and writes one.
+     */
+    private void readWithSidecar(int pScale, FidelityFileMetrics pMetrics) {
+        pMetrics.phase(Phase.OPEN);
+        FidelitySidecar sidecar = FidelitySidecar.open(aFile, FidelitySidecar.KIND_CHART, pScale);
+        if (sidecar != null) {
+            pMetrics.phase(Phase.PARSE).addBytes(FidelitySidecar.sidecarFor(aFile).length()).addRecords(sidecar.getRowCount());
+            columns = FidelityChartColumns.readFrom(sidecar);
+            log.info("loaded {} records for chart processing from the sidecar.", columns.size());
+            return;
         }
-        
-        double[] arr = getOpenPriceArray();
+        FidelitySidecar.Stamp stamp = FidelitySidecar.Stamp.of(aFile);
+        if (!parse(pMetrics)) {
+            // rows were quarantined; the sidecar would not match the file
+            return;
+        }
+        pMetrics.phase(Phase.OUTPUT);
         try {
-			arr = doWaveletTransform(arr);
-			
-			for(int i =0; i < arr.length;i++) {
-				System.out.println(arr[i]);
-			}
-			
-		} catch (JWaveException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-        
+            columns.writeTo(FidelitySidecar.writer(aFile, stamp, FidelitySidecar.KIND_CHART, pScale, null, columns.size())).commit();
+        } catch (IOException e) {
+            log.warn("could not write the sidecar of {}", aFile.getAbsolutePath(), e);
+        }
     }
 
 	
+	/**
+	 * Writes one coefficient per row.
+	 * @param pCoefficients the coefficients.
+	 * @param pSink where to write; flushed, not closed.
+	 */
+	public static void writeCoefficients(double[] pCoefficients, FidelityOutputSink pSink) {
+		for (double coefficient : pCoefficients) {
+			pSink.doubleValue(coefficient).endRow();
+		}
+		pSink.flush();
+	}
+
+	/**
+	 * Transforms a series with the configured {@link FidelityWaveletEngine}. Timed as the
+	 * transform phase of the file while {@link #process()} runs, otherwise on its own.
+	 */
 	double[] doWaveletTransform(double[] arrTime) throws JWaveException {
-		
-		Wavelet wavelet = new jwave.transforms.wavelets.haar.Haar1(); // consider externalizing the Wavelet class specification.
-		BasicTransform basicTransform = new FastWaveletTransform(wavelet);
-		AncientEgyptianDecomposition transform = new AncientEgyptianDecomposition(basicTransform);
-		double[] resultArr = transform.forward(arrTime);
-		return resultArr;
+		if (metrics != null) {
+			metrics.phase(Phase.TRANSFORM);
+			return FidelityWaveletEngine.getInstance().forward(arrTime);
+		}
+		long start = System.nanoTime();
+		try {
+			return FidelityWaveletEngine.getInstance().forward(arrTime);
+		} finally {
+			FidelityMetrics.getInstance().timer(FidelityFileMetrics.CHART + "." + Phase.TRANSFORM.getName()).record(System.nanoTime() - start);
+		}
 	}
 
 
+	/**
+	 * @return the open prices; the column itself, so repeated calls do not copy. Do not modify it.
+	 */
 	@Override
 	public double[] getOpenPriceArray() {
-		double [] rVal = new double[chartRecordList.size()];
-		
-		for(int i = 0; i < chartRecordList.size(); i++) {
-			rVal[i] = chartRecordList.get(i).getOpenPrice().doubleValue();
-		}
-		
-		return rVal;
+		return columns.getOpenPrices();
 	}
-	
-    /**
-     * Wrapper around a buffered reader. While there is not much value in wrapping that class
-     * this class will skip the summary header info Fidelity puts in their exports.
-     */
-    public class FidelityCSVInputReader {
-        private final Logger log = LogManager.getLogger(FidelityCSVInputReader.class);
-        private BufferedReader reader;
-        private String dateStr;
-        private final File file;
-
-        /**
-         * CTOR accepting an instance of a File .
-         * @param pFile the file to read from.
-         */
-        public FidelityCSVInputReader(File pFile) {
-            file=pFile;
-        }
 
-        void initFile() throws IOException {
-            log.info("Reading file {}", file.getCanonicalFile());
-            reader = new BufferedReader(new FileReader(file));
-        }
-
-        String getDate() {
-            return this.dateStr;
-        }
-
-        String readLine() throws IOException {
-            return reader.readLine();
-        }
-
-        void close() {
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.error(DisplayKeys.get(DisplayKeys.ERROR_FILE_CLOSE),file.getAbsolutePath(), e);
-            }
-        }
-    }
-	
+	/**
+	 * @return the chart points read by {@link #process()}.
+	 */
+	public FidelityChartColumns getColumns() {
+		return columns;
+	}
 
 }
@@ -5,6 +5,9 @@ package com.cobbinterwebs.charts.wavlet.fidelity.impl;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -12,6 +15,7 @@ import java.util.List;
 import org.apache.commons.text.StringTokenizer;
 
 import com.cobbinterwebs.chart.wavelet.AbstractChartRecord;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
 import com.cobbinterwebs.locale.DisplayKeys;
 
 /**
@@ -43,5 +47,39 @@ public class FidelityChartRecord extends AbstractChartRecord {
     
     }
 
+    /**
+     * Reads the chart point from the current row of the scanner without building the line.
+     * @param pRow scanner positioned on a row of chart data.
+     */
+    public FidelityChartRecord(FidelityCSVScanner pRow) {
+    	super(pRow.getDecimal(Indexes.HIGH, MathContext.UNLIMITED),
+    			pRow.getDecimal(Indexes.LOW, MathContext.UNLIMITED),
+    			pRow.getDecimal(Indexes.CLOSE, MathContext.UNLIMITED),
+    			BigInteger.valueOf(pRow.getLong(Indexes.VOLUME)),
+    			toDate(pRow.getEpochDay(Indexes.DATE), pRow.getSecondOfDay(Indexes.TIME)));
+    	
+    	super.openPrice = pRow.getDecimal(Indexes.OPEN, MathContext.UNLIMITED);
+    }
+
+    /**
+     * Builds the chart point from values already parsed, e.g. from {@link FidelityChartColumns}.
+     */
+    public FidelityChartRecord(Date pDateTime, BigDecimal pOpen, BigDecimal pHigh, BigDecimal pLow,
+    		BigDecimal pClose, long pVolume) {
+    	super(pHigh, pLow, pClose, BigInteger.valueOf(pVolume), pDateTime);
+    	
+    	super.openPrice = pOpen;
+    }
+
+    /**
+     * @param pEpochDay the day.
+     * @param pSecondOfDay seconds since midnight.
+     * @return the time in the default time zone.
+     */
+    public static Date toDate(long pEpochDay, int pSecondOfDay) {
+    	return Date.from(LocalDate.ofEpochDay(pEpochDay).atStartOfDay().plusSeconds(pSecondOfDay)
+    			.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
 
 }
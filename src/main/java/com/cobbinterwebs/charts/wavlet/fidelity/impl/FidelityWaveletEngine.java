@@ -0,0 +1,234 @@
+package com.cobbinterwebs.charts.wavlet.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+
+import jwave.exceptions.JWaveException;
+import jwave.transforms.BasicTransform;
+import jwave.transforms.FastWaveletTransform;
+import jwave.transforms.WaveletPacketTransform;
+import jwave.transforms.wavelets.Wavelet;
+
+/**
+ * Forward wavelet transform of price and volume series, configured from the properties file:
+ * the wavelet class, fast or packet transform, the decomposition level, and what to do with
+ * series whose length is not a power of two.
+ *
+ * <p>The engine is immutable and shared. Each thread gets its own wavelet and transform the
+ * first time it uses the engine, and its own scratch buffers, one per power-of-two length,
+ * which are reused by every later call on that thread.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityWaveletEngine {
+
+    /**
+     * How a series whose length is not a power of two is transformed.
+     */
+    public enum Strategy {
+        /** Split into descending power-of-two pieces, each transformed in place. Output has the input length. */
+        ANCIENT_EGYPTIAN,
+        /** Padded with zeros up to the next power of two. */
+        ZERO_PAD,
+        /** Padded with the last value up to the next power of two; no false step at the end. */
+        PAD_LAST,
+        /** Only the newest power-of-two values, the tail of the series, are used. */
+        TRUNCATE
+    }
+
+    /**
+     * The JWave transform to run.
+     */
+    public enum TransformKind {
+        FAST, PACKET
+    }
+
+    /** Transform down to a single coefficient. */
+    public static final int FULL_DECOMPOSITION = -1;
+
+    private static final Map<String, FidelityWaveletEngine> ENGINES = new ConcurrentHashMap<>();
+
+    private final Class<? extends Wavelet> waveletClass;
+    private final TransformKind transformKind;
+    private final int level;
+    private final Strategy strategy;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    /**
+     * @param pWaveletClass the JWave wavelet, it must have a public no-arg constructor.
+     * @param pTransformKind fast or packet transform.
+     * @param pLevel number of decomposition levels, or {@link #FULL_DECOMPOSITION}.
+     * @param pStrategy how lengths that are not a power of two are handled.
+     */
+    public FidelityWaveletEngine(Class<? extends Wavelet> pWaveletClass, TransformKind pTransformKind, int pLevel, Strategy pStrategy) {
+        waveletClass = pWaveletClass;
+        transformKind = pTransformKind;
+        level = pLevel;
+        strategy = pStrategy;
+        newWavelet(); // fail here rather than on a worker thread
+    }
+
+    /**
+     * @return the engine for the current configuration; engines are shared between callers with the same settings.
+     * @throws IllegalArgumentException if the configured wavelet can not be loaded.
+     */
+    public static FidelityWaveletEngine getInstance() {
+        FidelityConfiguration config = FidelityConfiguration.getInstance();
+        String waveletClass = config.getWaveletClass();
+        TransformKind transformKind = TransformKind.valueOf(config.getWaveletTransform().toUpperCase());
+        int level = config.getWaveletLevel();
+        Strategy strategy = Strategy.valueOf(config.getWaveletStrategy().toUpperCase().replace('-', '_'));
+        String key = waveletClass + '|' + transformKind + '|' + level + '|' + strategy;
+        return ENGINES.computeIfAbsent(key, k -> new FidelityWaveletEngine(loadWavelet(waveletClass), transformKind, level, strategy));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Class<? extends Wavelet> loadWavelet(String pClassName) {
+        try {
+            Class<?> rVal = Class.forName(pClassName);
+            if (!Wavelet.class.isAssignableFrom(rVal)) {
+                throw new IllegalArgumentException(pClassName + " is not a wavelet");
+            }
+            return (Class<? extends Wavelet>) rVal;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("wavelet class not found, " + pClassName, e);
+        }
+    }
+
+    private Wavelet newWavelet() {
+        try {
+            return waveletClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("can not create wavelet " + waveletClass.getName(), e);
+        }
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @param pLength length of a series.
+     * @return length of its coefficients.
+     */
+    public int outputLength(int pLength) {
+        if (pLength <= 1 || strategy == Strategy.ANCIENT_EGYPTIAN) {
+            return pLength;
+        }
+        int floor = Integer.highestOneBit(pLength);
+        if (strategy == Strategy.TRUNCATE || floor == pLength) {
+            return floor;
+        }
+        return floor << 1;
+    }
+
+    /**
+     * @param pSeries the series.
+     * @return its wavelet coefficients.
+     * @throws JWaveException if the transform fails.
+     */
+    public double[] forward(double[] pSeries) throws JWaveException {
+        return forward(pSeries, pSeries.length, null);
+    }
+
+    /**
+     * @param pSeries the series, only the first pLength values are read.
+     * @param pLength length of the series.
+     * @param pOut where to write the coefficients, reused if it has {@link #outputLength(int)} values or more; may be null.
+     * @return the coefficients, pOut when it was big enough.
+     * @throws JWaveException if the transform fails.
+     */
+    public double[] forward(double[] pSeries, int pLength, double[] pOut) throws JWaveException {
+        return workers.get().forward(pSeries, pLength, pOut);
+    }
+
+    /**
+     * Transforms many series in one pass on the calling thread, sharing its transform and scratch buffers.
+     * @param pSeries the series, typically of equal length.
+     * @return the coefficients of each series.
+     * @throws JWaveException if a transform fails.
+     */
+    public double[][] forwardAll(double[][] pSeries) throws JWaveException {
+        Worker worker = workers.get();
+        double[][] rVal = new double[pSeries.length][];
+        for (int i = 0; i < pSeries.length; i++) {
+            rVal[i] = worker.forward(pSeries[i], pSeries[i].length, null);
+        }
+        return rVal;
+    }
+
+    /**
+     * Transform and scratch buffers of one thread.
+     */
+    private final class Worker {
+        private final BasicTransform transform;
+        /** Scratch by log2 of the length. */
+        private final double[][] scratch = new double[31][];
+
+        Worker() {
+            Wavelet wavelet = newWavelet();
+            transform = transformKind == TransformKind.PACKET ? new WaveletPacketTransform(wavelet) : new FastWaveletTransform(wavelet);
+        }
+
+        double[] forward(double[] pSeries, int pLength, double[] pOut) throws JWaveException {
+            int outLength = outputLength(pLength);
+            double[] out = pOut != null && pOut.length >= outLength ? pOut : new double[outLength];
+            if (pLength == 0) {
+                return out;
+            }
+            if (strategy == Strategy.ANCIENT_EGYPTIAN) {
+                int offset = 0;
+                while (offset < pLength) {
+                    int piece = Integer.highestOneBit(pLength - offset);
+                    transform(pSeries, offset, piece, piece, out, offset);
+                    offset += piece;
+                }
+            } else if (strategy == Strategy.TRUNCATE) {
+                transform(pSeries, pLength - outLength, outLength, outLength, out, 0);
+            } else {
+                transform(pSeries, 0, pLength, outLength, out, 0);
+            }
+            return out;
+        }
+
+        /**
+         * Copies pCount values into a power-of-two scratch buffer of pPower values, pads it per the
+         * strategy, transforms it and copies the coefficients out.
+         */
+        private void transform(double[] pSeries, int pFrom, int pCount, int pPower, double[] pOut, int pOutOffset) throws JWaveException {
+            if (pPower == 1) {
+                pOut[pOutOffset] = pSeries[pFrom];
+                return;
+            }
+            int log2 = Integer.numberOfTrailingZeros(pPower);
+            double[] buffer = scratch[log2];
+            if (buffer == null) {
+                buffer = new double[pPower];
+                scratch[log2] = buffer;
+            }
+            System.arraycopy(pSeries, pFrom, buffer, 0, pCount);
+            if (pCount < pPower) {
+                Arrays.fill(buffer, pCount, pPower, strategy == Strategy.PAD_LAST ? pSeries[pFrom + pCount - 1] : 0.0);
+            }
+            double[] coefficients = level == FULL_DECOMPOSITION || level >= log2
+                    ? transform.forward(buffer)
+                    : transform.forward(buffer, level);
+            System.arraycopy(coefficients, 0, pOut, pOutOffset, pPower);
+        }
+    }
+}
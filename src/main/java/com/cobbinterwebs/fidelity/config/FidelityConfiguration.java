@@ -0,0 +1,403 @@
+package com.cobbinterwebs.fidelity.config;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.configuration2.builder.fluent.Configurations;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.fidelity.io.FidelityQuarantine;
+import com.cobbinterwebs.trades.config.Configuration;
+
+/**
+ * Settings specific to the Fidelity implementation. They live in the same properties file
+ * as the core settings (<code>trade-data.properties</code> in the directory named by
+ * {@link Configuration.PropertyConstants#HOME_KEY}). Any key may be overridden with a
+ * system property of the same name, which is handy for one-off runs and for tests.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityConfiguration {
+    private static final Logger log = LogManager.getLogger(FidelityConfiguration.class);
+
+    /**
+     * Name of the properties file, found in the home directory.
+     */
+    public static final String PROPERTIES_FILE_NAME = "trade-data.properties";
+
+    /**
+     * The property keys. Keys shared with the core library keep their core names.
+     */
+    public static final class PropertyConstants {
+        /** Number of digits to allocate for decimal numbers. Also the scale of the fixed-point ticks. */
+        public static final String SCALE_KEY = "com.cobbinterwebs.trades.scale";
+        /** When true, prices are kept as scaled long ticks and sizes as longs. */
+        public static final String FIXED_POINT_KEY = "com.cobbinterwebs.fidelity.trades.fixed.point";
+        /** How a day keeps its trades, see {@link TradeStore}. */
+        public static final String TRADE_STORE_KEY = "com.cobbinterwebs.fidelity.trades.store";
+        /** Class of the trade day the exports are parsed into, core key. */
+        public static final String TRADE_DAY_CLASS_KEY = "com.cobbinterwebs.trade.day.class";
+        /** Class of the trade records of a day, core key. */
+        public static final String TRADE_RECORD_CLASS_KEY = "com.cobbinterwebs.trade.record.class";
+        /** The output file header, core key. */
+        public static final String HEADER1_KEY = "com.cobbinterwebs.trades.output.header1";
+        /** Running VWDA boolean, core key. */
+        public static final String RUNNING_VWDA_KEY = "com.cobbinterwebs.running.vwda";
+        /** Whether the individual trades are part of the output, core key. */
+        public static final String INCLUDE_KEY = "com.cobbinterwebs.trades.include";
+        /** When true, parsed exports are cached in binary sidecars next to them. */
+        public static final String SIDECAR_KEY = "com.cobbinterwebs.fidelity.sidecar";
+        /** JWave wavelet class used for the chart transforms. */
+        public static final String WAVELET_CLASS_KEY = "com.cobbinterwebs.fidelity.wavelet.class";
+        /** fast or packet. */
+        public static final String WAVELET_TRANSFORM_KEY = "com.cobbinterwebs.fidelity.wavelet.transform";
+        /** Decomposition levels, -1 for a full decomposition. */
+        public static final String WAVELET_LEVEL_KEY = "com.cobbinterwebs.fidelity.wavelet.level";
+        /** ancient-egyptian, zero-pad, pad-last or truncate; for series whose length is not a power of two. */
+        public static final String WAVELET_STRATEGY_KEY = "com.cobbinterwebs.fidelity.wavelet.strategy";
+        /** Number of days processed at once by the batch engine. */
+        public static final String BATCH_THREADS_KEY = "com.cobbinterwebs.fidelity.batch.threads";
+        /** platform or virtual; virtual threads need a Java 21 runtime. */
+        public static final String BATCH_EXECUTOR_KEY = "com.cobbinterwebs.fidelity.batch.executor";
+        /** csv or binary; format of the summaries and coefficient files. */
+        public static final String OUTPUT_FORMAT_KEY = "com.cobbinterwebs.fidelity.output.format";
+        /** Most rows of an export that may be rejected before the export fails; -1 for no limit. */
+        public static final String ERRORS_MAX_KEY = "com.cobbinterwebs.fidelity.errors.max";
+        /** Largest share of the rows of an export, 0 to 1, that may be rejected before it fails. */
+        public static final String ERRORS_FRACTION_KEY = "com.cobbinterwebs.fidelity.errors.fraction";
+        /** Write rejected rows to <code>&lt;export&gt;.rejected</code>. */
+        public static final String ERRORS_QUARANTINE_KEY = "com.cobbinterwebs.fidelity.errors.quarantine";
+        /** Keep each ticker's day totals in <code>rolling.frs</code> and only process new or changed exports. */
+        public static final String ROLLING_STORE_KEY = "com.cobbinterwebs.fidelity.rolling.store";
+        /** Days in the rolling VWDA window of the summary. */
+        public static final String ROLLING_DAYS_KEY = "com.cobbinterwebs.fidelity.rolling.days";
+        /** Ranges a large export is cut into and parsed in parallel; 1 to parse on one thread, 0 for one per processor. */
+        public static final String PARSE_CHUNKS_KEY = "com.cobbinterwebs.fidelity.parse.chunks";
+        /** Smallest range, in bytes, an export is cut into for a parallel parse. */
+        public static final String PARSE_CHUNK_MIN_KEY = "com.cobbinterwebs.fidelity.parse.chunk.min";
+        /** Milliseconds an export must stay the same size and age before the watcher processes it. */
+        public static final String WATCH_SETTLE_KEY = "com.cobbinterwebs.fidelity.watch.settle";
+        /** Tickers the watcher may have waiting for a worker before it stops taking in changes. */
+        public static final String WATCH_QUEUE_KEY = "com.cobbinterwebs.fidelity.watch.queue";
+        /** Kernel that sums the trades kept in columns: <code>scalar</code> or <code>vector</code>. */
+        public static final String KERNEL_KEY = "com.cobbinterwebs.fidelity.kernel";
+        /** Append each processed day's trades to the ticker's off-heap <code>tape.ftt</code>. */
+        public static final String TAPE_KEY = "com.cobbinterwebs.fidelity.tape";
+    }
+
+    /**
+     * How a day keeps its trades once they are parsed.
+     */
+    public enum TradeStore {
+        /** One trade record object per trade. The original behavior. */
+        OBJECTS,
+        /** Parallel primitive columns, see <code>FidelityTradeColumns</code>. Totals are kept in fixed point. */
+        COLUMNS,
+        /** No trades are kept; each one is folded into the fixed-point totals and dropped. */
+        STREAMING
+    }
+
+    static final int DEFAULT_SCALE = 8;
+
+    private static FidelityConfiguration instance;
+
+    private final PropertiesConfiguration properties;
+
+    /**
+     * @return the configuration read from the home directory.
+     */
+    public static synchronized FidelityConfiguration getInstance() {
+        if (instance == null) {
+            instance = new FidelityConfiguration(homeDirectory());
+        }
+        return instance;
+    }
+
+    /**
+     * Forget the loaded settings. The next call to {@link #getInstance()} re-reads the properties file.
+     */
+    public static synchronized void reset() {
+        instance = null;
+    }
+
+    /**
+     * @param pHomeDir directory holding the properties file.
+     */
+    FidelityConfiguration(File pHomeDir) {
+        PropertiesConfiguration loaded = new PropertiesConfiguration();
+        File propsFile = new File(pHomeDir, PROPERTIES_FILE_NAME);
+        if (propsFile.isFile()) {
+            try {
+                loaded = new Configurations().properties(propsFile);
+            } catch (ConfigurationException e) {
+                log.error("could not read {}, using defaults.", propsFile.getAbsolutePath(), e);
+            }
+        } else {
+            log.warn("{} not found, using defaults.", propsFile.getAbsolutePath());
+        }
+        properties = loaded;
+    }
+
+    /**
+     * @return the home directory named by the core configuration's system property.
+     */
+    public static File homeDirectory() {
+        return new File(System.getProperty(Configuration.PropertyConstants.HOME_KEY, "."));
+    }
+
+    /**
+     * @return number of digits to the right of the decimal point in fixed-point prices.
+     */
+    public int getScale() {
+        return getInt(PropertyConstants.SCALE_KEY, DEFAULT_SCALE);
+    }
+
+    /**
+     * @return true when the trades should be parsed into scaled longs instead of BigDecimals.
+     */
+    public boolean isFixedPoint() {
+        return getBoolean(PropertyConstants.FIXED_POINT_KEY, false);
+    }
+
+    /**
+     * @return how a day keeps its trades. When not configured, {@link TradeStore#STREAMING} if the
+     * trades are explicitly left out of the summary, as nothing needs them, and otherwise
+     * {@link TradeStore#OBJECTS}, so the summary figures keep the scale of the BigDecimal trades.
+     */
+    public TradeStore getTradeStore() {
+        TradeStore defaultStore = getBoolean(PropertyConstants.INCLUDE_KEY, true) ? TradeStore.OBJECTS : TradeStore.STREAMING;
+        String value = getString(PropertyConstants.TRADE_STORE_KEY, defaultStore.name());
+        try {
+            return TradeStore.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.error("{} is not a trade store, \"{}\". Using {}.", PropertyConstants.TRADE_STORE_KEY, value, defaultStore);
+            return defaultStore;
+        }
+    }
+
+    /**
+     * @return true when the individual trades are written with the summary.
+     */
+    public boolean isIncludeTrades() {
+        return getBoolean(PropertyConstants.INCLUDE_KEY, true);
+    }
+
+    /**
+     * @return the column header line for the summary output.
+     */
+    public String getHeader1() {
+        return getString(PropertyConstants.HEADER1_KEY,
+                "\"\",\"Date\",\"Avg Price\",\"Volume\",\"Buy\",\"Sell\",\"???\",\"DV\",\"DV Buy\",\"DV Sell\",\"DV ???\",\"Pct Buy\",\"Pct Sell\",\"Pct ???\",\"T-Trade\"");
+    }
+
+    /**
+     * @return true if a running volume weighted daily average is reported.
+     */
+    public boolean isRunningVwda() {
+        return getBoolean(PropertyConstants.RUNNING_VWDA_KEY, false);
+    }
+
+    /**
+     * @return true if parsed exports are cached in, and read back from, binary sidecars.
+     */
+    public boolean isSidecar() {
+        return getBoolean(PropertyConstants.SIDECAR_KEY, false);
+    }
+
+    /**
+     * @return the JWave wavelet class for the chart transforms, Haar1 unless configured otherwise.
+     */
+    public String getWaveletClass() {
+        return getString(PropertyConstants.WAVELET_CLASS_KEY, "jwave.transforms.wavelets.haar.Haar1").trim();
+    }
+
+    /**
+     * @return <code>fast</code> or <code>packet</code>.
+     */
+    public String getWaveletTransform() {
+        return getString(PropertyConstants.WAVELET_TRANSFORM_KEY, "fast").trim();
+    }
+
+    /**
+     * @return the decomposition level, -1 for a full decomposition.
+     */
+    public int getWaveletLevel() {
+        return getInt(PropertyConstants.WAVELET_LEVEL_KEY, -1);
+    }
+
+    /**
+     * @return how series whose length is not a power of two are transformed.
+     */
+    public String getWaveletStrategy() {
+        return getString(PropertyConstants.WAVELET_STRATEGY_KEY, "ancient-egyptian").trim();
+    }
+
+    /**
+     * @return days processed at once by the batch engine; defaults to the number of processors.
+     */
+    public int getBatchThreads() {
+        return Math.max(1, getInt(PropertyConstants.BATCH_THREADS_KEY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return <code>platform</code> or <code>virtual</code>.
+     */
+    public String getBatchExecutor() {
+        return getString(PropertyConstants.BATCH_EXECUTOR_KEY, "platform").trim().toLowerCase();
+    }
+
+    /**
+     * @return <code>csv</code> or <code>binary</code>.
+     */
+    public String getOutputFormat() {
+        return getString(PropertyConstants.OUTPUT_FORMAT_KEY, "csv").trim().toLowerCase();
+    }
+
+    /**
+     * @return most rows of an export that may be rejected, or {@link FidelityQuarantine#UNLIMITED}.
+     */
+    public long getErrorsMax() {
+        return getLong(PropertyConstants.ERRORS_MAX_KEY, FidelityQuarantine.UNLIMITED);
+    }
+
+    /**
+     * @return largest share of the rows of an export that may be rejected.
+     */
+    public double getErrorsFraction() {
+        return getDouble(PropertyConstants.ERRORS_FRACTION_KEY, 1.0d);
+    }
+
+    /**
+     * @return true if rejected rows are written next to the export.
+     */
+    public boolean isQuarantine() {
+        return getBoolean(PropertyConstants.ERRORS_QUARANTINE_KEY, true);
+    }
+
+    /**
+     * @return true if the batch keeps a rolling store per ticker.
+     */
+    public boolean isRollingStore() {
+        return getBoolean(PropertyConstants.ROLLING_STORE_KEY, false);
+    }
+
+    /**
+     * @return days in the rolling VWDA window, at least 1.
+     */
+    public int getRollingDays() {
+        return Math.max(1, getInt(PropertyConstants.ROLLING_DAYS_KEY, 20));
+    }
+
+    /**
+     * @return ranges a large export is parsed in, at least 1.
+     */
+    public int getParseChunks() {
+        int chunks = getInt(PropertyConstants.PARSE_CHUNKS_KEY, 1);
+        return chunks == 0 ? Runtime.getRuntime().availableProcessors() : Math.max(1, chunks);
+    }
+
+    /**
+     * @return smallest range, in bytes, of a parallel parse.
+     */
+    public long getParseChunkMin() {
+        return Math.max(1L, getLong(PropertyConstants.PARSE_CHUNK_MIN_KEY, 8L << 20));
+    }
+
+    /**
+     * @return milliseconds an export must be left alone before the watcher takes it in.
+     */
+    public long getWatchSettle() {
+        return Math.max(0L, getLong(PropertyConstants.WATCH_SETTLE_KEY, 2000L));
+    }
+
+    /**
+     * @return tickers the watcher may have waiting for a worker, at least 1.
+     */
+    public int getWatchQueue() {
+        return Math.max(1, getInt(PropertyConstants.WATCH_QUEUE_KEY, 64));
+    }
+
+    /**
+     * @return <code>scalar</code> or <code>vector</code>; the vector kernel falls back to the scalar one when it is not available.
+     */
+    public String getKernel() {
+        return getString(PropertyConstants.KERNEL_KEY, "vector").trim().toLowerCase();
+    }
+
+    /**
+     * @return true if the batch appends the trades of each new day to the ticker's tape.
+     */
+    public boolean isTape() {
+        return getBoolean(PropertyConstants.TAPE_KEY, false);
+    }
+
+    /**
+     * @param pExport the export about to be parsed.
+     * @return a quarantine for its bad rows with the configured error budget.
+     */
+    public FidelityQuarantine newQuarantine(File pExport) {
+        return new FidelityQuarantine(pExport, getErrorsMax(), getErrorsFraction(), isQuarantine());
+    }
+
+    public String getString(String pKey, String pDefault) {
+        String override = System.getProperty(pKey);
+        if (override != null) {
+            return override;
+        }
+        return properties.getString(pKey, pDefault);
+    }
+
+    public boolean getBoolean(String pKey, boolean pDefault) {
+        String value = getString(pKey, null);
+        return value == null ? pDefault : Boolean.parseBoolean(value.trim());
+    }
+
+    public int getInt(String pKey, int pDefault) {
+        String value = getString(pKey, null);
+        if (value == null) {
+            return pDefault;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("{} is not a number, \"{}\". Using {}.", pKey, value, pDefault);
+            return pDefault;
+        }
+    }
+
+    public long getLong(String pKey, long pDefault) {
+        String value = getString(pKey, null);
+        if (value == null) {
+            return pDefault;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("{} is not a number, \"{}\". Using {}.", pKey, value, pDefault);
+            return pDefault;
+        }
+    }
+
+    public double getDouble(String pKey, double pDefault) {
+        String value = getString(pKey, null);
+        if (value == null) {
+            return pDefault;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("{} is not a number, \"{}\". Using {}.", pKey, value, pDefault);
+            return pDefault;
+        }
+    }
+}
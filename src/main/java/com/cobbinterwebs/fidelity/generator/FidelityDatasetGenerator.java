@@ -0,0 +1,445 @@
+package com.cobbinterwebs.fidelity.generator;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes synthetic Fidelity exports for load testing. The layout is the one the application
+ * reads from <code>com.cobbinterwebs.trades.home</code>:
+ *
+ * <pre>
+ * &lt;out&gt;/&lt;TICKER&gt;/input/&lt;TICKER&gt;-yyyyMMdd.csv        Time &amp; Sales, one per trading day
+ * &lt;out&gt;/&lt;TICKER&gt;/charInput/yyyyMMdd-&lt;n&gt;D-1MIN.csv   1 minute bars over n trading days
+ * </pre>
+ *
+ * <p>Trade files copy the real export: CRLF lines, the 9 line header with the ticker on line 1
+ * and the date on line 2, the quoted column header, newest trade first, "--" for a missing bid
+ * or ask and for empty fields, T conditions outside regular hours, and the empty footer row.
+ * Chart files start with a byte order mark, run oldest first and end with the disclaimer.</p>
+ *
+ * <p>Every file is drawn from its own random stream derived from the seed, the ticker and the
+ * date, so a seed always produces the same bytes whatever the thread count. A trade day is
+ * generated newest first and written as it goes, so its size is not limited by memory.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityDatasetGenerator {
+    private static final Logger log = LogManager.getLogger(FidelityDatasetGenerator.class);
+
+    static final String CRLF = "\r\n";
+    static final String TRADE_HEADER = "\"Time\",\"Last Price\",\"Last Size\",\"Bid Price\",\"Ask Price\",\"Bid Size\",\"Ask Size\",\"Bid Exchange\",\"Ask Exchange\",\"Last Exchange\",\"Trade Condition\"";
+    static final String TRADE_FOOTER = "\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\"";
+    static final String CHART_HEADER = "Date,Time,Open,High,Low,Close,Volume";
+    static final String[] DISCLAIMER = {
+        "\"The data and information in this spreadsheet is provided to you solely for\"",
+        "\"your use and is not for distribution. The spreadsheet is provided for\"",
+        "\"informational purposes only, and is not intended to provide advice, nor\"",
+        "\"should it be construed as an offer to sell, a solicitation of an offer to buy\"",
+        "\"or a recommendation for any security by Fidelity or any third party. Data\"",
+        "\"and information shown is based on information known to Fidelity as of\"",
+        "\"the date it was exported and is subject to change. It should not be used in\"",
+        "\"place of your account statements or trade confirmations and is not\"",
+        "\"intended for tax reporting purposes. For more information on the data\"",
+        "\"included in this spreadsheet, including any limitations thereof, go to\"",
+        "\"Fidelity.com.\"",
+        "",
+        "\"Brokerage services are provided by Fidelity Brokerage Services LLC, 900\"",
+        "\"Salem Street, Smithfield, RI 02917. Custody and other services provided\"",
+        "\"by National Financial Services LLC. Both are Fidelity Investment\"",
+        "\"companies and members SIPC, NYSE.\"",
+        "",
+    };
+    static final String[] EXCHANGES = { "P", "Q", "A", "N", "Z", "DF", "DEX", "J", "K", "X" };
+
+    static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    static final DateTimeFormatter EXPORT_DATE = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    /** Extended hours session, seconds of day. */
+    static final int SESSION_OPEN = 4 * 3600;
+    static final int SESSION_CLOSE = 20 * 3600 - 1;
+    static final int REGULAR_OPEN = 9 * 3600 + 30 * 60;
+    static final int REGULAR_CLOSE = 16 * 3600;
+    static final int BARS_PER_DAY = 390;
+
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    private final long seed;
+
+    /**
+     * @param pSeed the same seed always produces the same files.
+     */
+    public FidelityDatasetGenerator(long pSeed) {
+        seed = pSeed;
+    }
+
+    /**
+     * @param pIndex ticker number.
+     * @return a four letter symbol, distinct for the first 26^4 numbers.
+     */
+    public static String symbol(int pIndex) {
+        char[] rVal = new char[4];
+        int n = pIndex;
+        for (int i = rVal.length - 1; i >= 0; i--) {
+            rVal[i] = (char) ('A' + n % 26);
+            n /= 26;
+        }
+        return new String(rVal);
+    }
+
+    /**
+     * @param pStart first day.
+     * @param pCount number of days.
+     * @return the weekdays from the start date on.
+     */
+    public static List<LocalDate> tradingDays(LocalDate pStart, int pCount) {
+        List<LocalDate> rVal = new ArrayList<>(pCount);
+        LocalDate day = pStart;
+        while (rVal.size() < pCount) {
+            if (day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                rVal.add(day);
+            }
+            day = day.plusDays(1);
+        }
+        return rVal;
+    }
+
+    /**
+     * Writes one day of Time &amp; Sales.
+     * @param pFile the export to write.
+     * @param pTicker the symbol.
+     * @param pDate the trading day.
+     * @param pTrades number of trades.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeTradeDay(File pFile, String pTicker, LocalDate pDate, int pTrades) throws IOException {
+        SplittableRandom random = random(pTicker, pDate, 1);
+        long price = startPrice(random, pTicker);
+        double meanGap = (double) (SESSION_CLOSE - SESSION_OPEN) / Math.max(1, pTrades);
+        double time = SESSION_CLOSE - random.nextDouble() * Math.min(meanGap, 60.0);
+        try (Writer out = writer(pFile, false)) {
+            out.write("Time & Sales" + CRLF);
+            out.write(pTicker + CRLF);
+            out.write(pDate.format(EXPORT_DATE) + CRLF);
+            out.write("Hours: All" + CRLF);
+            out.write("Price: All" + CRLF);
+            out.write("Exch: All" + CRLF);
+            out.write("Size: All" + CRLF);
+            out.write(pDate.plusDays(1).format(EXPORT_DATE) + " 03:53:16 PM ET" + CRLF);
+            out.write(CRLF);
+            out.write(TRADE_HEADER + CRLF);
+            StringBuilder row = new StringBuilder(128);
+            for (int i = 0; i < pTrades; i++) {
+                int secs = Math.max(SESSION_OPEN, (int) time);
+                boolean regular = secs >= REGULAR_OPEN && secs < REGULAR_CLOSE;
+                if (random.nextInt(4) == 0) {
+                    price = Math.max(1L, price + (random.nextBoolean() ? 1L : -1L) * (1 + random.nextInt(3)));
+                }
+                long spread = 1 + random.nextInt(regular ? 3 : 20);
+                long bid;
+                long ask;
+                int side = random.nextInt(10);
+                if (side < 4) {
+                    ask = price;
+                    bid = price - spread;
+                } else if (side < 8) {
+                    bid = price;
+                    ask = price + spread;
+                } else {
+                    bid = price - spread;
+                    ask = price + spread;
+                }
+                long size = tradeSize(random);
+                boolean quoted = random.nextInt(100) >= 3;
+                boolean tee = !regular && random.nextInt(3) == 0;
+
+                row.setLength(0);
+                quote(row, timeOfDay(secs) + " ET").append(',');
+                quote(row, format(price)).append(',');
+                quote(row, Long.toString(size)).append(',');
+                quote(row, quoted ? format(Math.max(0L, bid)) : "--").append(',');
+                quote(row, quoted ? format(ask) : "--").append(',');
+                quote(row, quoted ? Integer.toString(1 + random.nextInt(20)) : "--").append(',');
+                quote(row, quoted ? Integer.toString(1 + random.nextInt(20)) : "--").append(',');
+                quote(row, quoted ? EXCHANGES[random.nextInt(3)] : "--").append(',');
+                quote(row, quoted ? EXCHANGES[random.nextInt(3)] : "--").append(',');
+                quote(row, EXCHANGES[random.nextInt(EXCHANGES.length)]).append(',');
+                quote(row, tee ? "T" : "--").append(CRLF);
+                out.append(row);
+
+                // exponential gaps, walking back from the close
+                time -= -Math.log(1.0 - random.nextDouble()) * meanGap;
+            }
+            out.write(TRADE_FOOTER + CRLF);
+        }
+    }
+
+    /**
+     * Writes 1 minute bars over the regular session of some trading days.
+     * @param pFile the chart file to write.
+     * @param pTicker the symbol, only used to seed the prices.
+     * @param pDays the trading days, oldest first.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeChart(File pFile, String pTicker, List<LocalDate> pDays) throws IOException {
+        SplittableRandom random = random(pTicker, pDays.isEmpty() ? LocalDate.EPOCH : pDays.get(0), 2);
+        long close = startPrice(random, pTicker);
+        try (Writer out = writer(pFile, true)) {
+            out.write(CHART_HEADER + "\n");
+            StringBuilder row = new StringBuilder(64);
+            for (LocalDate day : pDays) {
+                String date = day.format(EXPORT_DATE);
+                for (int bar = 0; bar < BARS_PER_DAY; bar++) {
+                    long open = close;
+                    long high = open;
+                    long low = open;
+                    long last = open;
+                    for (int step = 0; step < 6; step++) {
+                        last = Math.max(1L, last + random.nextInt(7) - 3);
+                        high = Math.max(high, last);
+                        low = Math.min(low, last);
+                    }
+                    close = last;
+                    row.setLength(0);
+                    row.append(date).append(',').append(clockTime(REGULAR_OPEN + bar * 60)).append(',')
+                            .append(plain(open)).append(',').append(plain(high)).append(',')
+                            .append(plain(low)).append(',').append(plain(close)).append(',')
+                            .append(tradeSize(random) * (5 + random.nextInt(50))).append('\n');
+                    out.append(row);
+                }
+            }
+            for (String line : DISCLAIMER) {
+                out.write(line + "\n");
+            }
+            LocalDate downloaded = pDays.isEmpty() ? LocalDate.EPOCH : pDays.get(pDays.size() - 1);
+            out.write("Date downloaded " + downloaded.format(EXPORT_DATE) + " 01:16 PM\n");
+        }
+    }
+
+    /**
+     * Writes a whole home tree, one task per file.
+     * @param pOut the home directory to fill.
+     * @param pTickers the symbols.
+     * @param pDays the trading days.
+     * @param pTradesPerDay trades in each Time &amp; Sales file, none if 0.
+     * @param pChart true to write a 1 minute chart over all the days for each ticker.
+     * @param pThreads files written at once.
+     * @return number of files written.
+     * @throws IOException if a file can not be written.
+     */
+    public int writeHome(File pOut, List<String> pTickers, List<LocalDate> pDays, int pTradesPerDay, boolean pChart, int pThreads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, pThreads));
+        List<Future<File>> futures = new ArrayList<>();
+        try {
+            for (String ticker : pTickers) {
+                File tickerDir = new File(pOut, ticker);
+                if (pTradesPerDay > 0) {
+                    File input = mkdirs(new File(tickerDir, "input"));
+                    for (LocalDate day : pDays) {
+                        File file = new File(input, ticker + "-" + day.format(FILE_DATE) + ".csv");
+                        futures.add(executor.submit(() -> {
+                            writeTradeDay(file, ticker, day, pTradesPerDay);
+                            return file;
+                        }));
+                    }
+                }
+                if (pChart && !pDays.isEmpty()) {
+                    File chartDir = mkdirs(new File(tickerDir, "charInput"));
+                    File file = new File(chartDir, pDays.get(pDays.size() - 1).format(FILE_DATE) + "-" + pDays.size() + "D-1MIN.csv");
+                    futures.add(executor.submit(() -> {
+                        writeChart(file, ticker, pDays);
+                        return file;
+                    }));
+                }
+            }
+            for (Future<File> future : futures) {
+                log.debug("wrote {}", future.get().getPath());
+            }
+            return futures.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SplittableRandom random(String pTicker, LocalDate pDate, int pKind) {
+        long h = seed;
+        h = mix(h * 31 + pTicker.hashCode());
+        h = mix(h * 31 + pDate.toEpochDay());
+        return new SplittableRandom(mix(h * 31 + pKind));
+    }
+
+    private static long mix(long pValue) {
+        long z = pValue * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return a start price in cents, stable for a ticker so its days join up roughly.
+     */
+    private static long startPrice(SplittableRandom pRandom, String pTicker) {
+        long base = 500L + Math.floorMod(mix(pTicker.hashCode()), 40000L);
+        return base + pRandom.nextInt(50);
+    }
+
+    /**
+     * @return mostly odd lots and round lots, now and then a block.
+     */
+    private static long tradeSize(SplittableRandom pRandom) {
+        int kind = pRandom.nextInt(100);
+        if (kind < 55) {
+            return 1 + pRandom.nextInt(99);
+        } else if (kind < 95) {
+            return 100L * (1 + pRandom.nextInt(10));
+        }
+        return 100L * (10 + pRandom.nextInt(500));
+    }
+
+    private static StringBuilder quote(StringBuilder pRow, String pValue) {
+        return pRow.append('"').append(pValue).append('"');
+    }
+
+    /**
+     * @return the price as Fidelity writes it in Time &amp; Sales, two decimals.
+     */
+    static String format(long pCents) {
+        return BigDecimal.valueOf(pCents, 2).toPlainString();
+    }
+
+    /**
+     * @return the price as Fidelity writes it in a chart, trailing zeros dropped.
+     */
+    static String plain(long pCents) {
+        return BigDecimal.valueOf(pCents, 2).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * @return HH:MM:SS
+     */
+    static String timeOfDay(int pSecondOfDay) {
+        int h = pSecondOfDay / 3600;
+        int m = pSecondOfDay / 60 % 60;
+        int s = pSecondOfDay % 60;
+        return (h < 10 ? "0" : "") + h + (m < 10 ? ":0" : ":") + m + (s < 10 ? ":0" : ":") + s;
+    }
+
+    /**
+     * @return h:mm AM as in the chart exports.
+     */
+    static String clockTime(int pSecondOfDay) {
+        int h = pSecondOfDay / 3600;
+        int m = pSecondOfDay / 60 % 60;
+        int h12 = h % 12 == 0 ? 12 : h % 12;
+        return h12 + (m < 10 ? ":0" : ":") + m + (h < 12 ? " AM" : " PM");
+    }
+
+    private static Writer writer(File pFile, boolean pByteOrderMark) throws IOException {
+        Writer rVal = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(pFile.toPath()), StandardCharsets.UTF_8), WRITE_BUFFER);
+        if (pByteOrderMark) {
+            rVal.write('\uFEFF');
+        }
+        return rVal;
+    }
+
+    private static File mkdirs(File pDir) throws IOException {
+        if (!pDir.isDirectory() && !pDir.mkdirs()) {
+            throw new IOException("can not create " + pDir.getAbsolutePath());
+        }
+        return pDir;
+    }
+
+    /**
+     * Command line entry point.
+     * @param args see the usage printed for <code>-help</code>.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("out", true, "home directory to write (required)");
+        options.addOption("seed", true, "random seed, default 1");
+        options.addOption("tickers", true, "number of generated symbols, default 10");
+        options.addOption("symbols", true, "comma separated symbols to use instead of generated ones");
+        options.addOption("days", true, "trading days per ticker, default 5");
+        options.addOption("start", true, "first day, yyyyMMdd, default 20211025");
+        options.addOption("trades", true, "trades per Time & Sales file, default 1000000, 0 for none");
+        options.addOption("chart", false, "also write a 1 minute chart over the days for each ticker");
+        options.addOption("properties", true, "trade-data.properties to copy into the home directory");
+        options.addOption("threads", true, "files written at once, default the number of processors");
+        options.addOption("help", false, "print this message");
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("help") || !cmd.hasOption("out")) {
+                new HelpFormatter().printHelp(FidelityDatasetGenerator.class.getSimpleName(), options);
+                return;
+            }
+            File out = mkdirs(new File(cmd.getOptionValue("out")));
+            List<String> tickers = new ArrayList<>();
+            if (cmd.hasOption("symbols")) {
+                for (String symbol : cmd.getOptionValue("symbols").split(",")) {
+                    tickers.add(symbol.trim().toUpperCase());
+                }
+            } else {
+                int count = Integer.parseInt(cmd.getOptionValue("tickers", "10"));
+                for (int i = 0; i < count; i++) {
+                    tickers.add(symbol(i));
+                }
+            }
+            List<LocalDate> days = tradingDays(LocalDate.parse(cmd.getOptionValue("start", "20211025"), FILE_DATE),
+                    Integer.parseInt(cmd.getOptionValue("days", "5")));
+            if (cmd.hasOption("properties")) {
+                Files.copy(new File(cmd.getOptionValue("properties")).toPath(), new File(out, "trade-data.properties").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            FidelityDatasetGenerator generator = new FidelityDatasetGenerator(Long.parseLong(cmd.getOptionValue("seed", "1")));
+            long started = System.nanoTime();
+            int files = generator.writeHome(out, tickers, days, Integer.parseInt(cmd.getOptionValue("trades", "1000000")),
+                    cmd.hasOption("chart"), Integer.parseInt(cmd.getOptionValue("threads", Integer.toString(Runtime.getRuntime().availableProcessors()))));
+            log.info("wrote {} files under {} in {} ms.", files, out.getAbsolutePath(), (System.nanoTime() - started) / 1_000_000L);
+        } catch (ParseException | NumberFormatException | DateTimeParseException e) {
+            log.error(e.getMessage());
+            new HelpFormatter().printHelp(FidelityDatasetGenerator.class.getSimpleName(), options);
+            System.exit(2);
+        } catch (IOException e) {
+            log.error("generation failed.", e);
+            System.exit(1);
+        }
+    }
+}
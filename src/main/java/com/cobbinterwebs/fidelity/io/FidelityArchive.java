@@ -0,0 +1,187 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Compressed exports. A Fidelity export may be kept gzipped, <code>MSFT-20211025.csv.gz</code>,
+ * or bundled with others in a zip, <code>MSFT-2021-10.zip</code>. An export inside a zip is
+ * addressed as a file below the zip itself, <code>MSFT-2021-10.zip/MSFT-20211025.csv</code>,
+ * so the readers can be handed an entry like any other export.
+ *
+ * <p>Files whose neighbours are named after them (sidecars, quarantined rows) use
+ * {@link #outside(File)} so an entry's neighbours sit next to its zip.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelityArchive {
+    private static final Logger log = LogManager.getLogger(FidelityArchive.class);
+
+    /** Extension of a gzipped export. */
+    public static final String GZIP = ".gz";
+    /** Extension of a bundle of exports. */
+    public static final String ZIP = ".zip";
+
+    private static final int INFLATE_BUFFER = 1 << 16;
+
+    private FidelityArchive() {
+    }
+
+    /**
+     * @param pFile an export.
+     * @return true if the export has to be inflated to be read.
+     */
+    public static boolean isCompressed(File pFile) {
+        return hasExtension(pFile.getName(), GZIP) || archiveOf(pFile) != null;
+    }
+
+    /**
+     * @param pFile an export.
+     * @return true if the export is an entry of a zip bundle.
+     */
+    public static boolean isEntry(File pFile) {
+        return archiveOf(pFile) != null;
+    }
+
+    /**
+     * @param pFile an export.
+     * @return the zip bundle holding the export, or null if it is not an entry of one.
+     */
+    public static File archiveOf(File pFile) {
+        for (File parent = pFile.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (hasExtension(parent.getName(), ZIP) && parent.isFile()) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param pFile an export.
+     * @return the file on disk holding the export; its zip bundle for an entry.
+     */
+    public static File container(File pFile) {
+        File archive = archiveOf(pFile);
+        return archive == null ? pFile : archive;
+    }
+
+    /**
+     * @param pFile an export.
+     * @return the export itself, or for an entry, a file of the entry's name next to its zip.
+     */
+    public static File outside(File pFile) {
+        File archive = archiveOf(pFile);
+        return archive == null ? pFile : new File(archive.getParentFile(), pFile.getName());
+    }
+
+    /**
+     * Opens an export for reading, inflating it if it is compressed.
+     * @param pFile an export, gzipped export or zip entry.
+     * @return the content of the export. Closing it closes the zip bundle, if any.
+     * @throws IOException if the export can not be opened.
+     */
+    public static InputStream open(File pFile) throws IOException {
+        File archive = archiveOf(pFile);
+        if (archive != null) {
+            ZipFile zip = new ZipFile(archive);
+            try {
+                ZipEntry entry = zip.getEntry(entryName(archive, pFile));
+                if (entry == null) {
+                    throw new IOException("no entry " + pFile.getName() + " in " + archive.getAbsolutePath());
+                }
+                return new FilterInputStream(zip.getInputStream(entry)) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            zip.close();
+                        }
+                    }
+                };
+            } catch (IOException | RuntimeException e) {
+                zip.close();
+                throw e;
+            }
+        }
+        InputStream in = Files.newInputStream(pFile.toPath());
+        if (!hasExtension(pFile.getName(), GZIP)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, INFLATE_BUFFER);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the exports in a directory, looking inside any zip bundles found there.
+     * @param pDir the directory.
+     * @param pName accepts the names of the exports wanted; a gzipped export is offered with its extension.
+     * @return the exports, plain files and zip entries, sorted. Empty if the directory can not be listed.
+     */
+    public static List<File> list(File pDir, Predicate<String> pName) {
+        List<File> rVal = new ArrayList<>();
+        File[] files = pDir.listFiles(File::isFile);
+        if (files == null) {
+            return rVal;
+        }
+        for (File file : files) {
+            if (hasExtension(file.getName(), ZIP)) {
+                addEntries(file, pName, rVal);
+            } else if (pName.test(file.getName())) {
+                rVal.add(file);
+            }
+        }
+        Collections.sort(rVal);
+        return rVal;
+    }
+
+    private static void addEntries(File pArchive, Predicate<String> pName, List<File> pFiles) {
+        try (ZipFile zip = new ZipFile(pArchive)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File file = new File(pArchive, entry.getName());
+                if (!entry.isDirectory() && pName.test(file.getName())) {
+                    pFiles.add(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("ignoring {}, not a readable zip.", pArchive.getAbsolutePath(), e);
+        }
+    }
+
+    private static String entryName(File pArchive, File pFile) {
+        return pArchive.toPath().relativize(pFile.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private static boolean hasExtension(String pName, String pExtension) {
+        return pName.toLowerCase(Locale.ROOT).endsWith(pExtension);
+    }
+}
@@ -0,0 +1,259 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary output. The file starts with the magic <code>FOS1</code>; then every value is
+ * a one byte tag followed by its data, little-endian:
+ *
+ * <pre>
+ * 'H' int length, UTF-8 bytes      header line
+ * 'S' int length, UTF-8 bytes      text
+ * 'Q' int length, UTF-8 bytes      label
+ * 'J' long                         long
+ * 'D' double                       double
+ * 'B' int scale, long unscaled     decimal whose unscaled value fits a long
+ * 'b' int scale, int length, bytes decimal, unscaled value as two's-complement big-endian bytes
+ * 'N'                              null decimal
+ * 'R'                              end of row
+ * </pre>
+ *
+ * Values are gathered in a 64 KB buffer and written when it fills. {@link #replay(InputStream, FidelityOutputSink)}
+ * reads a file back into any other sink.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityBinarySink implements FidelityOutputSink {
+    static final int MAGIC = 0x31534f46; // FOS1, little-endian
+    static final int BUFFER_SIZE = 1 << 16;
+
+    static final byte HEADER = 'H';
+    static final byte TEXT = 'S';
+    static final byte LABEL = 'Q';
+    static final byte LONG = 'J';
+    static final byte DOUBLE = 'D';
+    static final byte DECIMAL = 'B';
+    static final byte BIG_DECIMAL = 'b';
+    static final byte NULL = 'N';
+    static final byte ROW = 'R';
+
+    private final OutputStream out;
+    private final boolean closeTarget;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * @param pFile file to write, replaced.
+     * @throws IOException if the file can not be created.
+     */
+    public FidelityBinarySink(File pFile) throws IOException {
+        this(new FileOutputStream(pFile), true);
+    }
+
+    /**
+     * @param pOut the target; buffered here, so it need not be.
+     * @param pCloseTarget false to leave the target open on {@link #close()}.
+     */
+    public FidelityBinarySink(OutputStream pOut, boolean pCloseTarget) {
+        out = pOut;
+        closeTarget = pCloseTarget;
+        buffer.putInt(MAGIC);
+    }
+
+    @Override
+    public FidelityOutputSink header(String pHeader) {
+        return string(HEADER, pHeader);
+    }
+
+    @Override
+    public FidelityOutputSink text(String pValue) {
+        return string(TEXT, pValue);
+    }
+
+    @Override
+    public FidelityOutputSink label(String pValue) {
+        return string(LABEL, pValue);
+    }
+
+    @Override
+    public FidelityOutputSink decimal(BigDecimal pValue) {
+        if (pValue == null) {
+            room(1).put(NULL);
+        } else if (pValue.unscaledValue().bitLength() < Long.SIZE) {
+            room(13).put(DECIMAL).putInt(pValue.scale()).putLong(pValue.unscaledValue().longValue());
+        } else {
+            byte[] unscaled = pValue.unscaledValue().toByteArray();
+            room(9).put(BIG_DECIMAL).putInt(pValue.scale()).putInt(unscaled.length);
+            bytes(unscaled);
+        }
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink longValue(long pValue) {
+        room(9).put(LONG).putLong(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink doubleValue(double pValue) {
+        room(9).put(DOUBLE).putDouble(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink endRow() {
+        room(1).put(ROW);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (closeTarget) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads a binary output stream and writes its values into another sink, e.g. to turn a
+     * binary file into CSV or to check it in a {@link FidelityMemorySink}.
+     * @param pIn the binary output, read to its end but not closed.
+     * @param pSink where the values go.
+     * @throws IOException if the stream can not be read or is not binary output.
+     */
+    public static void replay(InputStream pIn, FidelityOutputSink pSink) throws IOException {
+        byte[] all = pIn.readAllBytes();
+        ByteBuffer in = ByteBuffer.wrap(all).order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < 4 || in.getInt() != MAGIC) {
+            throw new IOException("not binary output");
+        }
+        try {
+            while (in.hasRemaining()) {
+                byte tag = in.get();
+                switch (tag) {
+                case HEADER:
+                    pSink.header(string(in));
+                    break;
+                case TEXT:
+                    pSink.text(string(in));
+                    break;
+                case LABEL:
+                    pSink.label(string(in));
+                    break;
+                case LONG:
+                    pSink.longValue(in.getLong());
+                    break;
+                case DOUBLE:
+                    pSink.doubleValue(in.getDouble());
+                    break;
+                case DECIMAL: {
+                    int scale = in.getInt();
+                    pSink.decimal(BigDecimal.valueOf(in.getLong(), scale));
+                    break;
+                }
+                case BIG_DECIMAL: {
+                    int scale = in.getInt();
+                    byte[] unscaled = new byte[in.getInt()];
+                    in.get(unscaled);
+                    pSink.decimal(new BigDecimal(new BigInteger(unscaled), scale));
+                    break;
+                }
+                case NULL:
+                    pSink.decimal(null);
+                    break;
+                case ROW:
+                    pSink.endRow();
+                    break;
+                default:
+                    throw new IOException("unknown tag " + tag + " at " + (in.position() - 1));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("binary output is truncated");
+        }
+    }
+
+    /**
+     * @param pFile a binary output file.
+     * @param pSink where the values go.
+     * @throws IOException if the file can not be read or is not binary output.
+     */
+    public static void replay(File pFile, FidelityOutputSink pSink) throws IOException {
+        try (InputStream in = new FileInputStream(pFile)) {
+            replay(in, pSink);
+        }
+    }
+
+    private static String string(ByteBuffer pIn) {
+        byte[] bytes = new byte[pIn.getInt()];
+        pIn.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FidelityOutputSink string(byte pTag, String pValue) {
+        byte[] bytes = String.valueOf(pValue).getBytes(StandardCharsets.UTF_8);
+        room(5).put(pTag).putInt(bytes.length);
+        bytes(bytes);
+        return this;
+    }
+
+    private void bytes(byte[] pBytes) {
+        int offset = 0;
+        while (offset < pBytes.length) {
+            int n = Math.min(room(1).remaining(), pBytes.length - offset);
+            buffer.put(pBytes, offset, n);
+            offset += n;
+        }
+    }
+
+    private ByteBuffer room(int pBytes) {
+        if (buffer.remaining() < pBytes) {
+            drain();
+        }
+        return buffer;
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,801 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.locale.DisplayKeys;
+
+/**
+ * Memory-mapped scanner for the CSV exports produced by Fidelity (Time &amp; Sales and charts).
+ * Replaces the old <code>BufferedReader</code> wrappers. The file is mapped and each row is
+ * tokenized in place; the scanner itself is the cursor over the current row so the
+ * line is never materialized as a <code>String</code>. Callers pull typed values out of
+ * the fields (decimal, long, time of day) directly from the bytes.
+ *
+ * <p>The summary header Fidelity puts at the top of its exports is skipped when the file
+ * is initialized. The date line within that header is kept and made available through
+ * {@link #getDate()}.</p>
+ *
+ * <p>A compressed export (see {@link FidelityArchive}) can not be mapped. It is inflated into a
+ * heap window instead, which is refilled as the rows are consumed; the rows are read the same way.</p>
+ *
+ * <p>A large export can be read by several scanners at once: {@link #split(int)} cuts the rows
+ * into byte ranges at line boundaries and each range is read by its own scanner, see
+ * {@link #FidelityCSVScanner(File, long, long)}.</p>
+ *
+ * <p>Not thread safe. One scanner per file per thread.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityCSVScanner implements Closeable {
+    private static final Logger log = LogManager.getLogger(FidelityCSVScanner.class);
+
+    /**
+     * Files larger than this are mapped in windows of this size. A row that straddles the
+     * end of a window causes the window to be re-mapped starting at that row.
+     */
+    static final int MAX_WINDOW = 1 << 30;
+
+    /**
+     * Initial size of the window a compressed file is inflated into. It grows if a single row
+     * does not fit.
+     */
+    static final int STREAM_WINDOW = 1 << 20;
+
+    private static final int INITIAL_FIELD_CAPACITY = 16;
+
+    private final File file;
+    private final int headerSkipLineCount;
+    private final int dateLineNumber;
+    private final long rangeStart;
+    private final long rangeEnd;
+    private String dateStr;
+    private String[] headerLines;
+
+    private FileChannel channel;
+    private InputStream stream;
+    private boolean endOfStream;
+    private long fileSize;
+    private long windowStart;
+    private ByteBuffer buffer;
+    private int position;
+
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+    private int fieldCount;
+    private int[] fieldStart = new int[INITIAL_FIELD_CAPACITY];
+    private int[] fieldEnd = new int[INITIAL_FIELD_CAPACITY];
+    private char[] scratch = new char[64];
+
+    /**
+     * CTOR accepting an instance of a File.
+     * @param pFile the file to read from.
+     * @param pHeaderSkipLineCount number of summary lines Fidelity puts before the column header.
+     * @param pDateLineNumber zero based line number, within the skipped lines, holding the date. Use a
+     * negative number when the file has no date line.
+     */
+    public FidelityCSVScanner(File pFile, int pHeaderSkipLineCount, int pDateLineNumber) {
+        file = pFile;
+        headerSkipLineCount = pHeaderSkipLineCount;
+        dateLineNumber = pDateLineNumber;
+        rangeStart = 0L;
+        rangeEnd = -1L;
+    }
+
+    /**
+     * CTOR for a range of the rows of a file, as returned by {@link #split(int)}. Nothing is skipped;
+     * line numbers count from the start of the range.
+     * @param pFile the file to read from. Must not be compressed.
+     * @param pStart offset of the first byte of the range, at the start of a line.
+     * @param pEnd offset just past the range, at the start of a line or the end of the file.
+     */
+    public FidelityCSVScanner(File pFile, long pStart, long pEnd) {
+        file = pFile;
+        headerSkipLineCount = 0;
+        dateLineNumber = -1;
+        rangeStart = pStart;
+        rangeEnd = pEnd;
+    }
+
+    /**
+     * Maps the file and throws away the first few lines (as set by <code>pHeaderSkipLineCount</code>).
+     * @throws IOException when the file cannot be opened or mapped.
+     */
+    public void initFile() throws IOException {
+        log.info("Reading file {}", file.getCanonicalFile());
+        if (FidelityArchive.isCompressed(file)) {
+            stream = FidelityArchive.open(file);
+            fileSize = FidelityArchive.container(file).length();
+            buffer = ByteBuffer.allocate(STREAM_WINDOW).limit(0);
+            fill();
+        } else if (rangeEnd >= 0L) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            fileSize = Math.min(rangeEnd, channel.size());
+            map(Math.min(rangeStart, fileSize));
+        } else {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            fileSize = channel.size();
+            map(0L);
+        }
+        if (rangeStart == 0L) {
+            skipByteOrderMark();
+        }
+        headerLines = new String[Math.max(0, headerSkipLineCount)];
+        for (int i = 0; i < headerSkipLineCount; i++) {
+            if (!nextRow()) {
+                break;
+            }
+            headerLines[i] = getLine();
+            if (i == dateLineNumber) { // the date line number. Date is read from file.
+                log.debug(DisplayKeys.get(DisplayKeys.PROCESSING_FILE_DATE), headerLines[i]);
+                dateStr = headerLines[i];
+            }
+        }
+    }
+
+    /**
+     * @return the date line from the header, as it appears in the file.
+     */
+    public String getDate() {
+        return this.dateStr;
+    }
+
+    /**
+     * @param pIndex zero based line number within the skipped header.
+     * @return the header line or null when the header was shorter than expected.
+     */
+    public String getHeaderLine(int pIndex) {
+        return pIndex < headerLines.length ? headerLines[pIndex] : null;
+    }
+
+    /**
+     * @return the file being scanned.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the size, in bytes, of the file being scanned; of the compressed file, or its zip, when inflated.
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return bytes read so far, up to the end of the current row. Inflated bytes for a compressed file.
+     */
+    public long getBytesRead() {
+        return buffer == null ? 0L : windowStart + position;
+    }
+
+    /**
+     * Advances to the next row and splits it into fields.
+     * @return false at the end of the file.
+     * @throws IOException when a window of the file cannot be mapped or inflated.
+     */
+    public boolean nextRow() throws IOException {
+        while (true) {
+            int limit = buffer.limit();
+            if (position >= limit) {
+                if (!hasMore()) {
+                    return false;
+                }
+                advance();
+                continue;
+            }
+            int eol = indexOfNewLine(position, limit);
+            if (eol < 0 && hasMore()) {
+                if (position == 0 && stream == null) {
+                    throw new IOException("line " + (lineNumber + 1) + " is longer than the mapping window in " + file.getAbsolutePath());
+                }
+                advance();
+                continue;
+            }
+            int end = eol < 0 ? limit : eol;
+            int next = eol < 0 ? limit : eol + 1;
+            if (end > position && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            lineStart = position;
+            lineEnd = end;
+            position = next;
+            lineNumber++;
+            tokenize();
+            return true;
+        }
+    }
+
+    /**
+     * Cuts the rows after the current one into byte ranges of about the same size, each starting
+     * at the beginning of a line. The current row is usually the column header.
+     * @param pChunks number of ranges wanted.
+     * @return the offsets where the ranges start, followed by the end of the file. A compressed
+     *         file, which can only be read front to back, is a single range ending at <code>Long.MAX_VALUE</code>.
+     * @throws IOException if the file can not be read.
+     */
+    public long[] split(int pChunks) throws IOException {
+        long start = windowStart + position;
+        if (channel == null || pChunks <= 1) {
+            return new long[] { start, stream == null ? fileSize : Long.MAX_VALUE };
+        }
+        long[] rVal = new long[pChunks + 1];
+        int count = 0;
+        rVal[count++] = start;
+        ByteBuffer probe = ByteBuffer.allocate(1 << 12);
+        for (int k = 1; k < pChunks; k++) {
+            long offset = Math.max(rVal[count - 1], start + (fileSize - start) * k / pChunks);
+            long next = nextLineStart(offset, probe);
+            if (next > rVal[count - 1] && next < fileSize) {
+                rVal[count++] = next;
+            }
+        }
+        rVal[count++] = fileSize;
+        return Arrays.copyOf(rVal, count);
+    }
+
+    private long nextLineStart(long pOffset, ByteBuffer pProbe) throws IOException {
+        long offset = pOffset;
+        while (offset < fileSize) {
+            pProbe.clear();
+            int n = channel.read(pProbe, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (pProbe.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return fileSize;
+    }
+
+    /**
+     * @return the one based line number of the current row within the file.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return number of fields in the current row.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Fidelity terminates the Time &amp; Sales data with a row of empty fields.
+     * @return true if every field in the current row is empty.
+     */
+    public boolean isEmptyRow() {
+        for (int i = 0; i < fieldCount; i++) {
+            if (fieldEnd[i] > fieldStart[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @return true if the field is missing or holds no characters.
+     */
+    public boolean isEmpty(int pField) {
+        return pField >= fieldCount || fieldEnd[pField] == fieldStart[pField];
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @param pValue ASCII text to compare against.
+     * @return true if the field holds exactly <code>pValue</code>.
+     */
+    public boolean fieldEquals(int pField, String pValue) {
+        if (pField >= fieldCount || fieldEnd[pField] - fieldStart[pField] != pValue.length()) {
+            return false;
+        }
+        return regionMatches(fieldStart[pField], pValue);
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @param pPrefix ASCII text to compare against.
+     * @return true if the field begins with <code>pPrefix</code>.
+     */
+    public boolean fieldStartsWith(int pField, String pPrefix) {
+        if (pField >= fieldCount || fieldEnd[pField] - fieldStart[pField] < pPrefix.length()) {
+            return false;
+        }
+        return regionMatches(fieldStart[pField], pPrefix);
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @return true if the field is a plain decimal number; optional sign, digits and at most one point.
+     */
+    public boolean isDecimal(int pField) {
+        if (pField >= fieldCount) {
+            return false;
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            i++;
+        }
+        boolean digits = false;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                digits = true;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return false;
+            }
+        }
+        return digits;
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @return true if {@link #getLong(int)} can read the field; optional sign and digits only.
+     */
+    public boolean isInteger(int pField) {
+        if (pField >= fieldCount) {
+            return false;
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @return true if {@link #getSecondOfDay(int)} can read the field; it starts with hours and minutes.
+     */
+    public boolean isTime(int pField) {
+        if (pField >= fieldCount) {
+            return false;
+        }
+        int digits = 0;
+        int part = 0;
+        for (int i = fieldStart[pField]; i < fieldEnd[pField]; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                digits++;
+            } else if (b == ':' && part < 2) {
+                part++;
+            } else {
+                break;
+            }
+        }
+        return digits > 0 && part > 0;
+    }
+
+    /**
+     * Builds a BigDecimal straight from the field bytes.
+     * @param pField zero based field index.
+     * @param pMathCtx the math context used to round the value.
+     * @return the field as a BigDecimal.
+     * @throws NumberFormatException if the field is not a number.
+     */
+    public BigDecimal getDecimal(int pField, MathContext pMathCtx) {
+        int len = toScratch(pField);
+        return new BigDecimal(scratch, 0, len, pMathCtx);
+    }
+
+    /**
+     * Reads a decimal as fixed-point ticks without building a BigDecimal. Digits past the
+     * scale are rounded half up.
+     * @param pField zero based field index.
+     * @param pScale digits to keep to the right of the decimal point.
+     * @return the field as scaled ticks.
+     * @throws NumberFormatException if the field is not a plain decimal.
+     * @see FixedPoint
+     */
+    public long getScaled(int pField, int pScale) {
+        if (!isDecimal(pField)) {
+            throw new NumberFormatException("not a decimal, field " + pField + " at line " + lineNumber);
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        boolean negative = buffer.get(i) == '-';
+        if (negative || buffer.get(i) == '+') {
+            i++;
+        }
+        long value = 0L;
+        int fractionDigits = -1;
+        boolean roundUp = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.') {
+                fractionDigits = 0;
+            } else if (fractionDigits < 0) {
+                value = value * 10 + (b - '0');
+            } else if (fractionDigits < pScale) {
+                value = value * 10 + (b - '0');
+                fractionDigits++;
+            } else {
+                roundUp = b >= '5';
+                break;
+            }
+        }
+        int kept = Math.max(0, fractionDigits);
+        value = value * FixedPoint.pow10(pScale - kept) + (roundUp ? 1 : 0);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a decimal field as the double nearest to it, without allocating. Up to 15 significant
+     * digits the digits are read as a long and divided once by a power of ten, which IEEE division
+     * rounds correctly; longer values go through {@link Double#parseDouble(String)}.
+     * @param pField zero based field index.
+     * @return the field as a double.
+     * @throws NumberFormatException if the field is not a plain decimal.
+     */
+    public double getDouble(int pField) {
+        if (!isDecimal(pField)) {
+            throw new NumberFormatException("not a decimal, field " + pField + " at line " + lineNumber);
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        boolean negative = buffer.get(i) == '-';
+        if (negative || buffer.get(i) == '+') {
+            i++;
+        }
+        long value = 0L;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            if (value != 0L || b != '0') {
+                digits++;
+            }
+            value = value * 10 + (b - '0');
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits > 15 || fractionDigits > 18) {
+            return Double.parseDouble(getString(pField));
+        }
+        double rVal = fractionDigits <= 0 ? value : value / (double) FixedPoint.pow10(fractionDigits);
+        return negative ? -rVal : rVal;
+    }
+
+    /**
+     * @param pField zero based field index.
+     * @return the field as a long.
+     * @throws NumberFormatException if the field is not an integer.
+     */
+    public long getLong(int pField) {
+        if (pField >= fieldCount || fieldEnd[pField] == fieldStart[pField]) {
+            throw new NumberFormatException("empty field " + pField + " at line " + lineNumber);
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        boolean negative = buffer.get(i) == '-';
+        if (negative || buffer.get(i) == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("no digits in field " + pField + " at line " + lineNumber);
+        }
+        long rVal = 0L;
+        for (; i < end; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) {
+                throw new NumberFormatException("not an integer, field " + pField + " at line " + lineNumber);
+            }
+            rVal = rVal * 10 + d;
+        }
+        return negative ? -rVal : rVal;
+    }
+
+    /**
+     * Reads a time of day. Understands the Time &amp; Sales format, <code>"19:59:59 ET"</code>, and
+     * the chart format, <code>"4:00 PM"</code>. Anything after the clock other than AM/PM is ignored.
+     * @param pField zero based field index.
+     * @return seconds since midnight.
+     * @throws NumberFormatException if the field does not start with a clock time.
+     */
+    public int getSecondOfDay(int pField) {
+        if (pField >= fieldCount) {
+            throw new NumberFormatException("missing time field " + pField + " at line " + lineNumber);
+        }
+        int i = fieldStart[pField];
+        int end = fieldEnd[pField];
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int part = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                int d = b - '0';
+                if (part == 0) {
+                    hour = hour * 10 + d;
+                } else if (part == 1) {
+                    minute = minute * 10 + d;
+                } else {
+                    second = second * 10 + d;
+                }
+                digits++;
+            } else if (b == ':' && part < 2) {
+                part++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0 || part == 0) {
+            throw new NumberFormatException("not a time, field " + pField + " at line " + lineNumber);
+        }
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == 'P' || b == 'p') {
+                hour = hour % 12 + 12;
+                break;
+            } else if (b == 'A' || b == 'a') {
+                hour = hour % 12;
+                break;
+            } else if (b != ' ') {
+                break;
+            }
+        }
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Reads a calendar date in the <code>MM/DD/YYYY</code> layout used by the chart exports.
+     * @param pField zero based field index.
+     * @return the date as a count of days since the epoch (see <code>java.time.LocalDate.toEpochDay()</code>).
+     * @throws NumberFormatException if the field is not a date.
+     */
+    public long getEpochDay(int pField) {
+        if (pField >= fieldCount) {
+            throw new NumberFormatException("missing date field " + pField + " at line " + lineNumber);
+        }
+        int month = 0;
+        int day = 0;
+        int year = 0;
+        int part = 0;
+        for (int i = fieldStart[pField]; i < fieldEnd[pField]; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                int d = b - '0';
+                if (part == 0) {
+                    month = month * 10 + d;
+                } else if (part == 1) {
+                    day = day * 10 + d;
+                } else {
+                    year = year * 10 + d;
+                }
+            } else if (b == '/' && part < 2) {
+                part++;
+            } else {
+                throw new NumberFormatException("not a date, field " + pField + " at line " + lineNumber);
+            }
+        }
+        if (part != 2) {
+            throw new NumberFormatException("not a date, field " + pField + " at line " + lineNumber);
+        }
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    /**
+     * Allocates a String. Intended for the few short fields that are kept as text.
+     * @param pField zero based field index.
+     * @return the field as a String.
+     */
+    public String getString(int pField) {
+        if (pField >= fieldCount) {
+            return "";
+        }
+        return decode(fieldStart[pField], fieldEnd[pField]);
+    }
+
+    /**
+     * Allocates a String. Intended for logging and error reporting only.
+     * @return the current row, as it appears in the file.
+     */
+    public String getLine() {
+        return decode(lineStart, lineEnd);
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer = null;
+            if (channel != null) {
+                channel.close();
+            }
+            if (stream != null) {
+                stream.close();
+            }
+        } catch (Exception e) {
+            log.error(DisplayKeys.get(DisplayKeys.ERROR_FILE_CLOSE), file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * @return true if there is more of the file past the end of the window.
+     */
+    private boolean hasMore() {
+        return stream == null ? windowStart + buffer.limit() < fileSize : !endOfStream;
+    }
+
+    /**
+     * Moves the window so it starts at the current position.
+     */
+    private void advance() throws IOException {
+        if (stream == null) {
+            map(windowStart + position);
+        } else {
+            fill();
+        }
+    }
+
+    /**
+     * Keeps the unread bytes of the heap window, moved to its start, and inflates more after them.
+     * The window is doubled when it is full of a single row.
+     */
+    private void fill() throws IOException {
+        int remaining = buffer.limit() - position;
+        byte[] bytes = buffer.array();
+        if (position == 0 && remaining == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        } else {
+            System.arraycopy(bytes, position, bytes, 0, remaining);
+        }
+        windowStart += position;
+        position = 0;
+        int filled = remaining;
+        while (filled < bytes.length) {
+            int n = stream.read(bytes, filled, bytes.length - filled);
+            if (n < 0) {
+                endOfStream = true;
+                break;
+            }
+            filled += n;
+        }
+        buffer = ByteBuffer.wrap(bytes, 0, filled);
+    }
+
+    private void map(long pOffset) throws IOException {
+        long length = Math.min(MAX_WINDOW, fileSize - pOffset);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, pOffset, length);
+        windowStart = pOffset;
+        position = 0;
+    }
+
+    private void skipByteOrderMark() {
+        if (buffer.limit() >= 3
+                && (buffer.get(0) & 0xFF) == 0xEF
+                && (buffer.get(1) & 0xFF) == 0xBB
+                && (buffer.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+    }
+
+    private int indexOfNewLine(int pFrom, int pLimit) {
+        for (int i = pFrom; i < pLimit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the current row at the commas. Quoted fields have their quotes removed; a comma
+     * inside quotes does not end the field.
+     */
+    private void tokenize() {
+        fieldCount = 0;
+        int i = lineStart;
+        while (true) {
+            if (fieldCount == fieldStart.length) {
+                fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+                fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+            }
+            if (i < lineEnd && buffer.get(i) == '"') {
+                int start = ++i;
+                while (i < lineEnd && buffer.get(i) != '"') {
+                    i++;
+                }
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+                // skip the closing quote and anything up to the delimiter
+                while (i < lineEnd && buffer.get(i) != ',') {
+                    i++;
+                }
+            } else {
+                int start = i;
+                while (i < lineEnd && buffer.get(i) != ',') {
+                    i++;
+                }
+                fieldStart[fieldCount] = start;
+                fieldEnd[fieldCount] = i;
+            }
+            fieldCount++;
+            if (i >= lineEnd) {
+                break;
+            }
+            i++; // the comma
+        }
+    }
+
+    private boolean regionMatches(int pFrom, String pValue) {
+        for (int i = 0; i < pValue.length(); i++) {
+            if (buffer.get(pFrom + i) != pValue.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int toScratch(int pField) {
+        if (pField >= fieldCount) {
+            throw new NumberFormatException("missing field " + pField + " at line " + lineNumber);
+        }
+        int len = fieldEnd[pField] - fieldStart[pField];
+        if (len > scratch.length) {
+            scratch = new char[len];
+        }
+        for (int i = 0; i < len; i++) {
+            scratch[i] = (char) (buffer.get(fieldStart[pField] + i) & 0xFF);
+        }
+        return len;
+    }
+
+    private String decode(int pFrom, int pTo) {
+        byte[] bytes = new byte[pTo - pFrom];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(pFrom + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,134 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Comma separated output. Values are appended to a row buffer and the rows to a large
+ * character buffer, so the target sees a few big writes instead of one per value. Numbers
+ * are written the way <code>PrintWriter</code> prints them, so the text matches the
+ * summaries written before sinks existed.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityCSVSink implements FidelityOutputSink {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final boolean closeTarget;
+    private final StringBuilder row = new StringBuilder(256);
+    private final String lineSeparator;
+    private boolean first = true;
+
+    /**
+     * @param pFile file to write, replaced.
+     * @throws IOException if the file can not be created.
+     */
+    public FidelityCSVSink(File pFile) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(pFile), StandardCharsets.UTF_8), true);
+    }
+
+    /**
+     * @param pOut the target; buffered here, so it need not be.
+     * @param pCloseTarget false to leave the target open on {@link #close()}, e.g. for <code>System.out</code>.
+     */
+    public FidelityCSVSink(Writer pOut, boolean pCloseTarget) {
+        out = new BufferedWriter(pOut, BUFFER_SIZE);
+        closeTarget = pCloseTarget;
+        lineSeparator = System.lineSeparator();
+    }
+
+    @Override
+    public FidelityOutputSink header(String pHeader) {
+        row.append(pHeader);
+        return endRow();
+    }
+
+    @Override
+    public FidelityOutputSink text(String pValue) {
+        separate().append(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink label(String pValue) {
+        separate().append('"').append(pValue).append('"');
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink decimal(BigDecimal pValue) {
+        separate().append(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink longValue(long pValue) {
+        separate().append(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink doubleValue(double pValue) {
+        separate().append(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink endRow() {
+        row.append(lineSeparator);
+        try {
+            out.append(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        row.setLength(0);
+        first = true;
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (closeTarget) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private StringBuilder separate() {
+        if (!first) {
+            row.append(',');
+        }
+        first = false;
+        return row;
+    }
+}
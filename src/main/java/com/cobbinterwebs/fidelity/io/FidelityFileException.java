@@ -0,0 +1,48 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+
+/**
+ * Thrown when one Fidelity export can not be processed. It fails that file only; the caller
+ * decides whether to carry on with the rest of the batch.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityFileException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+
+    /**
+     * @param pFile the export that failed.
+     * @param pMessage what went wrong.
+     * @param pCause the underlying failure, may be null.
+     */
+    public FidelityFileException(File pFile, String pMessage, Throwable pCause) {
+        super(pMessage + ": " + pFile.getAbsolutePath(), pCause);
+        file = pFile;
+    }
+
+    /**
+     * @param pFile the export that failed.
+     * @param pMessage what went wrong.
+     */
+    public FidelityFileException(File pFile, String pMessage) {
+        this(pFile, pMessage, null);
+    }
+
+    /**
+     * @return the export that failed.
+     */
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,91 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the output in memory, mainly for tests. Values are kept as <code>String</code>,
+ * <code>BigDecimal</code>, <code>Long</code> and <code>Double</code>; labels as strings.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityMemorySink implements FidelityOutputSink {
+    private final List<String> headers = new ArrayList<>();
+    private final List<List<Object>> rows = new ArrayList<>();
+    private List<Object> row = new ArrayList<>();
+
+    @Override
+    public FidelityOutputSink header(String pHeader) {
+        headers.add(pHeader);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink text(String pValue) {
+        row.add(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink label(String pValue) {
+        row.add(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink decimal(BigDecimal pValue) {
+        row.add(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink longValue(long pValue) {
+        row.add(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink doubleValue(double pValue) {
+        row.add(pValue);
+        return this;
+    }
+
+    @Override
+    public FidelityOutputSink endRow() {
+        rows.add(Collections.unmodifiableList(row));
+        row = new ArrayList<>();
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the header lines, in order.
+     */
+    public List<String> getHeaders() {
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * @return the ended rows, in order.
+     */
+    public List<List<Object>> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+}
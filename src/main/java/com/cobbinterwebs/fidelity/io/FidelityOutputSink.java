@@ -0,0 +1,125 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+
+/**
+ * Destination of tabular output: day summary rows, wavelet coefficients. A row is written
+ * value by value and ended with {@link #endRow()}; implementations buffer and write in
+ * large batches, so nothing is guaranteed to reach the target before {@link #flush()} or
+ * {@link #close()}.
+ *
+ * <p>The methods throw {@link UncheckedIOException} so rows can be written from lambdas
+ * and getters without wrapping every call.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public interface FidelityOutputSink extends Closeable {
+
+    /**
+     * Output formats that can be written to a file.
+     */
+    enum Format {
+        /** Comma separated text, see {@link FidelityCSVSink}. */
+        CSV("csv"),
+        /** Tagged little-endian binary, see {@link FidelityBinarySink}. */
+        BINARY("bin");
+
+        private final String extension;
+
+        Format(String pExtension) {
+            extension = pExtension;
+        }
+
+        /**
+         * @return the file name extension, without the dot.
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @param pName <code>csv</code> or <code>binary</code>, any case.
+         * @return the format.
+         * @throws IllegalArgumentException for any other name.
+         */
+        public static Format of(String pName) {
+            return valueOf(pName.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Opens a buffered sink on a file, replacing it.
+     * @param pFile the file.
+     * @param pFormat the format to write.
+     * @return the sink; the caller closes it.
+     * @throws IOException if the file can not be created.
+     */
+    static FidelityOutputSink open(File pFile, Format pFormat) throws IOException {
+        return pFormat == Format.BINARY ? new FidelityBinarySink(pFile) : new FidelityCSVSink(pFile);
+    }
+
+    /**
+     * Writes a header line ahead of the rows. CSV writes the line as given, so it may already hold quoted column names.
+     */
+    FidelityOutputSink header(String pHeader);
+
+    /**
+     * Adds a text value, written unquoted in CSV.
+     */
+    FidelityOutputSink text(String pValue);
+
+    /**
+     * Adds a text value that names the row, written quoted in CSV.
+     */
+    FidelityOutputSink label(String pValue);
+
+    /**
+     * Adds a decimal value; null is allowed.
+     */
+    FidelityOutputSink decimal(BigDecimal pValue);
+
+    FidelityOutputSink longValue(long pValue);
+
+    FidelityOutputSink doubleValue(double pValue);
+
+    /**
+     * Ends the current row.
+     */
+    FidelityOutputSink endRow();
+
+    /**
+     * Writes a whole row of doubles, after any values already added, and ends it.
+     * @param pValues the values.
+     * @param pFrom first index.
+     * @param pTo index after the last.
+     */
+    default FidelityOutputSink doubles(double[] pValues, int pFrom, int pTo) {
+        for (int i = pFrom; i < pTo; i++) {
+            doubleValue(pValues[i]);
+        }
+        return endRow();
+    }
+
+    /**
+     * Writes out whatever is buffered.
+     */
+    void flush();
+
+    /**
+     * Flushes and closes the target.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,157 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Rows of an export that could not be parsed. Each one is written, with its line number and the
+ * reason, to <code>&lt;name&gt;.csv.rejected</code> next to the export, and counted against an
+ * error budget. Going over the budget fails the export with a {@link FidelityFileException};
+ * the rest of the batch carries on.
+ *
+ * <p>The quarantine file is only created once a row is rejected. An export that parses cleanly
+ * removes the one left by an earlier run.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityQuarantine implements Closeable {
+    private static final Logger log = LogManager.getLogger(FidelityQuarantine.class);
+
+    /** Appended to the name of the export. */
+    public static final String EXTENSION = ".rejected";
+    /** No limit on the number of rejected rows. */
+    public static final long UNLIMITED = -1L;
+
+    private final File source;
+    private final File target;
+    private final long maxRejected;
+    private final double maxFraction;
+    private BufferedWriter writer;
+    private long rejected;
+
+    /**
+     * @param pSource the export being parsed.
+     * @param pMaxRejected most rows that may be rejected, or {@link #UNLIMITED}.
+     * @param pMaxFraction largest share of the rows, 0 to 1, that may be rejected.
+     * @param pKeep true to write the rejected rows to the quarantine file.
+     */
+    public FidelityQuarantine(File pSource, long pMaxRejected, double pMaxFraction, boolean pKeep) {
+        source = pSource;
+        target = pKeep ? quarantineFor(pSource) : null;
+        maxRejected = pMaxRejected;
+        maxFraction = pMaxFraction;
+    }
+
+    /**
+     * @param pSource an export.
+     * @return where its rejected rows are kept; next to the zip for an entry of a zip bundle.
+     */
+    public static File quarantineFor(File pSource) {
+        File outside = FidelityArchive.outside(pSource);
+        return new File(outside.getParentFile(), outside.getName() + EXTENSION);
+    }
+
+    /**
+     * Quarantines the current row of the scanner.
+     * @param pRow scanner positioned on the bad row.
+     * @param pReason why the row was rejected.
+     * @throws FidelityFileException once more rows are rejected than the budget allows.
+     */
+    public void reject(FidelityCSVScanner pRow, String pReason) {
+        reject(pRow.getLineNumber(), pRow.getLine(), pReason);
+    }
+
+    /**
+     * Quarantines a row read earlier, e.g. by one of several scanners over parts of the export.
+     * @param pLineNumber one based line number of the row within the export.
+     * @param pLine the row, as it appears in the export.
+     * @param pReason why the row was rejected.
+     * @throws FidelityFileException once more rows are rejected than the budget allows.
+     */
+    public void reject(long pLineNumber, String pLine, String pReason) {
+        rejected++;
+        if (log.isDebugEnabled()) log.debug("rejected line {} of {}: {}", pLineNumber, source.getName(), pReason);
+        if (target != null) {
+            try {
+                if (writer == null) {
+                    writer = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8);
+                    writer.write("line,reason,data");
+                    writer.newLine();
+                }
+                writer.write(Long.toString(pLineNumber));
+                writer.write(',');
+                writer.write(pReason);
+                writer.write(',');
+                writer.write(pLine);
+                writer.newLine();
+            } catch (IOException e) {
+                throw new FidelityFileException(source, "writing the rejected rows failed", e);
+            }
+        }
+        if (maxRejected != UNLIMITED && rejected > maxRejected) {
+            throw new FidelityFileException(source, rejected + " rejected rows exceed the error budget of " + maxRejected);
+        }
+    }
+
+    /**
+     * Checks the share of rejected rows once the export has been read, and logs them once.
+     * @param pRowCount rows read, accepted and rejected.
+     * @throws FidelityFileException if the share of rejected rows is over the budget.
+     */
+    public void finish(long pRowCount) {
+        if (rejected == 0L) {
+            return;
+        }
+        log.warn("rejected {} of {} rows in {}{}", rejected, pRowCount, source.getName(),
+                target == null ? "" : ", see " + target.getName());
+        if (pRowCount > 0L && (double) rejected / pRowCount > maxFraction) {
+            throw new FidelityFileException(source, rejected + " of " + pRowCount + " rows rejected, over the error budget of "
+                    + maxFraction);
+        }
+    }
+
+    /**
+     * @return rows rejected so far.
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * @return the quarantine file, or null when rejected rows are not kept.
+     */
+    public File getFile() {
+        return target;
+    }
+
+    /**
+     * Closes the quarantine file, or removes a stale one if no row was rejected.
+     */
+    @Override
+    public void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+            } else if (target != null) {
+                Files.deleteIfExists(target.toPath());
+            }
+        } catch (IOException e) {
+            log.warn("could not close {}", target.getAbsolutePath(), e);
+        }
+    }
+}
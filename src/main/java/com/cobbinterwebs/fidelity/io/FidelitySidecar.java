@@ -0,0 +1,373 @@
+package com.cobbinterwebs.fidelity.io;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.zip.CRC32C;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Binary columnar copy of a parsed export, kept next to it as <code>&lt;name&gt;.csv.fsc</code>.
+ * The header records the size, modification time and CRC-32C of the CSV it was built from,
+ * the scale of the fixed-point columns and the date from the export's header; then come the
+ * columns, each a packed array of bytes, ints or longs, one value per row.
+ *
+ * <p>{@link #open(File, byte, int)} memory-maps the sidecar and returns null when there is none
+ * or it no longer matches the CSV. A sidecar is written to a temporary file and moved into place
+ * atomically, so concurrent rebuilds of the same export are harmless; the last one wins and a
+ * reader never sees a partial file.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelitySidecar {
+    private static final Logger log = LogManager.getLogger(FidelitySidecar.class);
+
+    /** Appended to the name of the export. */
+    public static final String EXTENSION = ".fsc";
+    /** A day of trades. */
+    public static final byte KIND_TRADES = 1;
+    /** A chart file. */
+    public static final byte KIND_CHART = 2;
+
+    public static final byte TYPE_BYTE = 1;
+    public static final byte TYPE_INT = 4;
+    public static final byte TYPE_LONG = 8;
+
+    static final int MAGIC = 0x46534331; // FSC1
+    static final int VERSION = 2;
+    /** Where the modification time of the export sits in the header; after magic, version, kind and size. */
+    static final int MODIFIED_OFFSET = 4 + 4 + 1 + 8;
+    private static final int HASH_BUFFER = 1 << 20;
+
+    private final ByteBuffer buffer;
+    private final String date;
+    private final int scale;
+    private final int rowCount;
+    private final byte[] columnType;
+    private final int[] columnOffset;
+
+    private FidelitySidecar(ByteBuffer pBuffer, String pDate, int pScale, int pRowCount, byte[] pColumnType, int[] pColumnOffset) {
+        buffer = pBuffer;
+        date = pDate;
+        scale = pScale;
+        rowCount = pRowCount;
+        columnType = pColumnType;
+        columnOffset = pColumnOffset;
+    }
+
+    /**
+     * @param pSource an export.
+     * @return where its sidecar lives.
+     */
+    public static File sidecarFor(File pSource) {
+        return new File(pSource.getParentFile(), pSource.getName() + EXTENSION);
+    }
+
+    /**
+     * Maps the sidecar of an export if it still describes the export. A sidecar whose size or
+     * modification time differ is only trusted if the CSV's content hash still matches; the new
+     * modification time is then written to its header, so the export is not hashed again.
+     * @param pSource the export.
+     * @param pKind {@link #KIND_TRADES} or {@link #KIND_CHART}.
+     * @param pScale the scale the fixed-point columns must have.
+     * @return the sidecar, or null if there is none or it is stale. Entries of a zip bundle have none.
+     */
+    public static FidelitySidecar open(File pSource, byte pKind, int pScale) {
+        File sidecarFile = sidecarFor(pSource);
+        if (FidelityArchive.isEntry(pSource) || !sidecarFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(sidecarFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.warn("ignoring {}, not a sidecar of this version.", sidecarFile.getAbsolutePath());
+                return null;
+            }
+            if (buffer.get() != pKind) {
+                return null;
+            }
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            long sourceHash = buffer.getLong();
+            int scale = buffer.getInt();
+            int rowCount = buffer.getInt();
+            byte[] dateBytes = new byte[buffer.getShort()];
+            buffer.get(dateBytes);
+            byte[] columnType = new byte[buffer.get()];
+            buffer.get(columnType);
+            int[] columnOffset = new int[columnType.length];
+            long offset = buffer.position();
+            for (int c = 0; c < columnType.length; c++) {
+                columnOffset[c] = (int) offset;
+                offset += (long) columnType[c] * rowCount;
+            }
+            if (scale != pScale || offset != channel.size()) {
+                log.debug("ignoring {}, scale {} or length {} does not match.", sidecarFile.getAbsolutePath(), scale, channel.size());
+                return null;
+            }
+            if (sourceSize != pSource.length()) {
+                return null;
+            }
+            long modified = pSource.lastModified();
+            if (sourceModified != modified) {
+                if (sourceHash != hash(pSource)) {
+                    return null;
+                }
+                log.debug("{} was touched but has not changed.", pSource.getAbsolutePath());
+                restamp(sidecarFile, modified);
+            }
+            return new FidelitySidecar(buffer, new String(dateBytes, StandardCharsets.UTF_8), scale, rowCount, columnType, columnOffset);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            log.warn("ignoring unreadable sidecar {}", sidecarFile.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Records a new modification time of the export in the header of its sidecar. The sidecar
+     * stays usable if that fails; the export is just hashed again next time.
+     */
+    private static void restamp(File pSidecar, long pModified) {
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, pModified);
+        try (FileChannel channel = FileChannel.open(pSidecar.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(value, MODIFIED_OFFSET);
+        } catch (IOException e) {
+            log.warn("could not update the stamp of {}", pSidecar.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * @param pSource a file.
+     * @return the CRC-32C of its content.
+     * @throws IOException if the file can not be read.
+     */
+    static long hash(File pSource) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(HASH_BUFFER);
+        try (FileChannel channel = FileChannel.open(pSource.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                crc.update(chunk);
+                chunk.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * The size and modification time of an export. Taken before it is parsed so a sidecar is
+     * not published if the export changes while it is being read.
+     */
+    public static final class Stamp {
+        final long size;
+        final long modified;
+
+        Stamp(long pSize, long pModified) {
+            size = pSize;
+            modified = pModified;
+        }
+
+        /**
+         * @param pSource an export.
+         * @return its size and modification time now.
+         */
+        public static Stamp of(File pSource) {
+            return new Stamp(pSource.length(), pSource.lastModified());
+        }
+
+        boolean matches(File pSource) {
+            return size == pSource.length() && modified == pSource.lastModified();
+        }
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnType.length;
+    }
+
+    /**
+     * @param pColumn column number, in the order they were written.
+     * @return a view of a {@link #TYPE_INT} column.
+     */
+    public IntBuffer intColumn(int pColumn) {
+        return column(pColumn, TYPE_INT).asIntBuffer();
+    }
+
+    /**
+     * @param pColumn column number, in the order they were written.
+     * @return a view of a {@link #TYPE_LONG} column.
+     */
+    public LongBuffer longColumn(int pColumn) {
+        return column(pColumn, TYPE_LONG).asLongBuffer();
+    }
+
+    /**
+     * @param pColumn column number, in the order they were written.
+     * @return a view of a {@link #TYPE_LONG} column written as the bits of doubles.
+     */
+    public DoubleBuffer doubleColumn(int pColumn) {
+        return column(pColumn, TYPE_LONG).asDoubleBuffer();
+    }
+
+    /**
+     * @param pColumn column number, in the order they were written.
+     * @return a view of a {@link #TYPE_BYTE} column.
+     */
+    public ByteBuffer byteColumn(int pColumn) {
+        return column(pColumn, TYPE_BYTE);
+    }
+
+    private ByteBuffer column(int pColumn, byte pType) {
+        if (columnType[pColumn] != pType) {
+            throw new IllegalArgumentException("column " + pColumn + " holds " + columnType[pColumn] + " byte values");
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(columnOffset[pColumn]).limit(columnOffset[pColumn] + pType * rowCount);
+        return view.slice();
+    }
+
+    /**
+     * @param pSource the export the columns were parsed from.
+     * @param pStamp size and modification time of the export before it was parsed.
+     * @param pKind {@link #KIND_TRADES} or {@link #KIND_CHART}.
+     * @param pScale scale of the fixed-point columns.
+     * @param pDate the date from the export's header, may be null.
+     * @param pRowCount number of values in each column.
+     * @return a writer to add the columns to.
+     */
+    public static Writer writer(File pSource, Stamp pStamp, byte pKind, int pScale, String pDate, int pRowCount) {
+        return new Writer(pSource, pStamp, pKind, pScale, pDate, pRowCount);
+    }
+
+    /**
+     * Collects the columns of a sidecar and writes them in one go with {@link #commit()}.
+     */
+    public static final class Writer {
+        private final File source;
+        private final Stamp stamp;
+        private final byte kind;
+        private final int scale;
+        private final String date;
+        private final int rowCount;
+        private final List<Byte> types = new ArrayList<>();
+        private final List<IntToLongFunction> values = new ArrayList<>();
+
+        Writer(File pSource, Stamp pStamp, byte pKind, int pScale, String pDate, int pRowCount) {
+            source = pSource;
+            stamp = pStamp;
+            kind = pKind;
+            scale = pScale;
+            date = pDate == null ? "" : pDate;
+            rowCount = pRowCount;
+        }
+
+        /**
+         * @param pType {@link #TYPE_BYTE}, {@link #TYPE_INT} or {@link #TYPE_LONG}.
+         * @param pValueAt the value of the column for a row; narrowed to the type.
+         * @return this writer.
+         */
+        public Writer column(byte pType, IntToLongFunction pValueAt) {
+            types.add(pType);
+            values.add(pValueAt);
+            return this;
+        }
+
+        /**
+         * Writes the sidecar next to the export, unless the export changed since the stamp was taken.
+         * An entry of a zip bundle gets no sidecar; the bundle would have to be hashed per entry.
+         * @return true if the sidecar was published.
+         * @throws IOException if the sidecar can not be written.
+         */
+        public boolean commit() throws IOException {
+            if (FidelityArchive.isEntry(source)) {
+                return false;
+            }
+            long sourceHash = hash(source);
+            if (!stamp.matches(source)) {
+                log.info("{} changed while it was read, not writing a sidecar.", source.getAbsolutePath());
+                return false;
+            }
+            File target = sidecarFor(source);
+            Path temp = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".tmp");
+            try {
+                try (OutputStream fos = Files.newOutputStream(temp);
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                    byte[] dateBytes = date.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeByte(kind);
+                    out.writeLong(stamp.size);
+                    out.writeLong(stamp.modified);
+                    out.writeLong(sourceHash);
+                    out.writeInt(scale);
+                    out.writeInt(rowCount);
+                    out.writeShort(dateBytes.length);
+                    out.write(dateBytes);
+                    out.writeByte(types.size());
+                    for (byte type : types) {
+                        out.writeByte(type);
+                    }
+                    for (int c = 0; c < types.size(); c++) {
+                        IntToLongFunction valueAt = values.get(c);
+                        byte type = types.get(c);
+                        for (int row = 0; row < rowCount; row++) {
+                            long value = valueAt.applyAsLong(row);
+                            if (type == TYPE_LONG) {
+                                out.writeLong(value);
+                            } else if (type == TYPE_INT) {
+                                out.writeInt((int) value);
+                            } else {
+                                out.writeByte((int) value);
+                            }
+                        }
+                    }
+                }
+                Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                log.debug("wrote {}", target.getAbsolutePath());
+                return true;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cobbinterwebs.fidelity.math;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for prices held as scaled <code>long</code> ticks. A price of 309.55 at scale 8 is
+ * held as 30955000000. Sizes are plain longs (scale 0), so a price times a size is a
+ * dollar amount at the price scale.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FixedPoint {
+
+    /**
+     * Marks a missing price, e.g. a trade without bid or ask info.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * @param pScale 0 through 18.
+     * @return ten raised to <code>pScale</code>.
+     */
+    public static long pow10(int pScale) {
+        return POWERS_OF_TEN[pScale];
+    }
+
+    /**
+     * Parses a plain decimal (optional sign, digits, optional point). Digits past the scale
+     * are rounded half up.
+     * @param pText the number.
+     * @param pScale digits to keep to the right of the decimal point.
+     * @return the number as scaled ticks.
+     * @throws NumberFormatException if the text is not a plain decimal.
+     */
+    public static long parse(CharSequence pText, int pScale) {
+        int len = pText.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (pText.charAt(0) == '-' || pText.charAt(0) == '+')) {
+            negative = pText.charAt(0) == '-';
+            i++;
+        }
+        long value = 0L;
+        int fractionDigits = -1;
+        boolean digits = false;
+        boolean roundUp = false;
+        for (; i < len; i++) {
+            char c = pText.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (fractionDigits < 0) {
+                    value = value * 10 + (c - '0');
+                } else if (fractionDigits < pScale) {
+                    value = value * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == pScale) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                throw new NumberFormatException("not a decimal: \"" + pText + "\"");
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("not a decimal: \"" + pText + "\"");
+        }
+        int kept = Math.max(0, Math.min(fractionDigits, pScale));
+        value = value * POWERS_OF_TEN[pScale - kept] + (roundUp ? 1 : 0);
+        return negative ? -value : value;
+    }
+
+    /**
+     * @param pTicks scaled value.
+     * @param pScale scale of the ticks.
+     * @return the exact BigDecimal, or null for {@link #NONE}.
+     */
+    public static BigDecimal toBigDecimal(long pTicks, int pScale) {
+        return pTicks == NONE ? null : BigDecimal.valueOf(pTicks, pScale);
+    }
+
+    /**
+     * @param pValue a decimal number.
+     * @param pScale scale of the ticks.
+     * @return the value as scaled ticks, rounded half up; {@link #NONE} for null.
+     */
+    public static long fromBigDecimal(BigDecimal pValue, int pScale) {
+        return pValue == null ? NONE : pValue.setScale(pScale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @param pTicks scaled value.
+     * @param pScale scale of the ticks.
+     * @return the value as a double, NaN for {@link #NONE}.
+     */
+    public static double toDouble(long pTicks, int pScale) {
+        return pTicks == NONE ? Double.NaN : (double) pTicks / POWERS_OF_TEN[pScale];
+    }
+}
@@ -0,0 +1,124 @@
+package com.cobbinterwebs.fidelity.math;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Exact running sum of fixed-point values and products. The total is kept as a 128 bit two's
+ * complement integer (a high and a low long) so a day of price times size products at
+ * scale 8 can not overflow.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FixedPointSum {
+    private long hi;
+    private long lo;
+
+    /**
+     * @param pValue added to the total.
+     */
+    public void add(long pValue) {
+        add128(pValue >> 63, pValue);
+    }
+
+    /**
+     * Adds the exact product of the two values to the total.
+     * @param pA a scaled value.
+     * @param pB a scaled value.
+     */
+    public void addProduct(long pA, long pB) {
+        add128(Math.multiplyHigh(pA, pB), pA * pB);
+    }
+
+    /**
+     * @param pOther total to fold into this one.
+     */
+    public void add(FixedPointSum pOther) {
+        add128(pOther.hi, pOther.lo);
+    }
+
+    /**
+     * @param pOther total to take out of this one.
+     */
+    public void subtract(FixedPointSum pOther) {
+        long nlo = ~pOther.lo + 1;
+        long nhi = ~pOther.hi + (nlo == 0 ? 1 : 0);
+        add128(nhi, nlo);
+    }
+
+    public void clear() {
+        hi = 0L;
+        lo = 0L;
+    }
+
+    public long getHigh() {
+        return hi;
+    }
+
+    public long getLow() {
+        return lo;
+    }
+
+    public void set(long pHigh, long pLow) {
+        hi = pHigh;
+        lo = pLow;
+    }
+
+    /**
+     * @return true when the total fits in a long.
+     */
+    public boolean fitsInLong() {
+        return hi == (lo >> 63);
+    }
+
+    /**
+     * @return the total as an integer.
+     */
+    public BigInteger toBigInteger() {
+        if (fitsInLong()) {
+            return BigInteger.valueOf(lo);
+        }
+        BigInteger unsignedLow = BigInteger.valueOf(lo >>> 1).shiftLeft(1).add(BigInteger.valueOf(lo & 1L));
+        return BigInteger.valueOf(hi).shiftLeft(64).add(unsignedLow);
+    }
+
+    /**
+     * @param pScale scale of the values that were summed.
+     * @return the exact total.
+     */
+    public BigDecimal toBigDecimal(int pScale) {
+        if (fitsInLong()) {
+            return BigDecimal.valueOf(lo, pScale);
+        }
+        return new BigDecimal(toBigInteger(), pScale);
+    }
+
+    /**
+     * @param pScale scale of the values that were summed.
+     * @return the total as a double; may lose precision.
+     */
+    public double toDouble(int pScale) {
+        double total = fitsInLong() ? (double) lo : toBigInteger().doubleValue();
+        return total / FixedPoint.pow10(pScale);
+    }
+
+    private void add128(long pHigh, long pLow) {
+        long sum = lo + pLow;
+        long carry = Long.compareUnsigned(sum, lo) < 0 ? 1L : 0L;
+        lo = sum;
+        hi = hi + pHigh + carry;
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+}
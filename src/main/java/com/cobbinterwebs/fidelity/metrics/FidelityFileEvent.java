@@ -0,0 +1,74 @@
+package com.cobbinterwebs.fidelity.metrics;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one file read by a pipeline, committed by {@link FidelityFileMetrics}.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+@Name("com.cobbinterwebs.fidelity.File")
+@Label("Fidelity File")
+@Description("One export read by the trade or chart pipeline")
+@Category({ "Fidelity", "Ingestion" })
+@StackTrace(false)
+class FidelityFileEvent extends Event {
+    @Label("Pipeline")
+    String pipeline;
+
+    @Label("File")
+    String file;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+
+    @Label("Lines Read")
+    long lines;
+
+    @Label("Records")
+    long records;
+
+    @Label("Rejected Lines")
+    long rejected;
+
+    @Label("Heap Allocated")
+    @Description("Bytes allocated by the reading thread, -1 when unknown")
+    @DataAmount
+    long allocated;
+
+    @Label("Open")
+    @Timespan
+    long openNanos;
+
+    @Label("Parse")
+    @Timespan
+    long parseNanos;
+
+    @Label("Aggregate")
+    @Timespan
+    long aggregateNanos;
+
+    @Label("Transform")
+    @Timespan
+    long transformNanos;
+
+    @Label("Output")
+    @Timespan
+    long outputNanos;
+}
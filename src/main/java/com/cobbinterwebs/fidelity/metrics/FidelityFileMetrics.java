@@ -0,0 +1,271 @@
+package com.cobbinterwebs.fidelity.metrics;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Measures the reading of one file: bytes and lines read, records parsed and rejected, time
+ * spent in each {@link Phase} and heap allocated by the reading thread, plus what the threads it
+ * hands parts of the file to report through {@link #addAllocated(long)}. When closed the
+ * figures are added to {@link FidelityMetrics} and committed as a {@link FidelityFileEvent};
+ * each phase is also committed as a {@link FidelityPhaseEvent}, so a flight recording shows
+ * where a run spends its time without trace logging.
+ *
+ * <pre>
+ * try (FidelityFileMetrics metrics = FidelityFileMetrics.start(FidelityFileMetrics.TRADES, file)) {
+ *     metrics.phase(Phase.OPEN);
+ *     ...
+ *     metrics.phase(Phase.PARSE);
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>Not thread safe; the file is expected to be read on one thread.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelityFileMetrics implements AutoCloseable {
+    private static final Logger log = LogManager.getLogger(FidelityFileMetrics.class);
+
+    /** Pipeline name of the trade exports. */
+    public static final String TRADES = "trades";
+    /** Pipeline name of the chart exports. */
+    public static final String CHART = "chart";
+
+    /** Counter suffixes. */
+    public static final String FILES = "files";
+    public static final String BYTES = "bytes";
+    public static final String LINES = "lines";
+    public static final String RECORDS = "records";
+    public static final String REJECTED = "rejected";
+    public static final String ALLOCATED = "allocatedBytes";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The stages a file goes through.
+     */
+    public enum Phase {
+        /** Opening the file and reading its header. */
+        OPEN("open"),
+        /** Reading the rows, or a sidecar. */
+        PARSE("parse"),
+        /** Moving the trades into the configured store and totals. */
+        AGGREGATE("aggregate"),
+        /** Wavelet transforms. */
+        TRANSFORM("transform"),
+        /** Writing results and sidecars. */
+        OUTPUT("output");
+
+        private final String name;
+
+        Phase(String pName) {
+            name = pName;
+        }
+
+        /**
+         * @return the metric name of the phase.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final String pipeline;
+    private final File file;
+    private final FidelityFileEvent event = new FidelityFileEvent();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long threadId = Thread.currentThread().getId();
+    private final long allocatedAtStart;
+    private Phase phase;
+    private long phaseStart;
+    private FidelityPhaseEvent phaseEvent;
+    private long bytes;
+    private long lines;
+    private long records;
+    private long rejected;
+    private long otherAllocated;
+    private boolean closed;
+
+    private FidelityFileMetrics(String pPipeline, File pFile) {
+        pipeline = pPipeline;
+        file = pFile;
+        allocatedAtStart = allocatedBytes();
+        event.begin();
+    }
+
+    /**
+     * @param pPipeline {@link #TRADES}, {@link #CHART} or another pipeline name.
+     * @param pFile the file being read.
+     * @return a recorder with no phase started.
+     */
+    public static FidelityFileMetrics start(String pPipeline, File pFile) {
+        return new FidelityFileMetrics(pPipeline, pFile);
+    }
+
+    /**
+     * Ends the current phase, if any, and starts another. A phase may be entered more than once;
+     * its times add up.
+     * @param pPhase the phase starting now.
+     * @return this recorder.
+     */
+    public FidelityFileMetrics phase(Phase pPhase) {
+        endPhase();
+        phase = pPhase;
+        phaseStart = System.nanoTime();
+        phaseEvent = new FidelityPhaseEvent();
+        phaseEvent.begin();
+        return this;
+    }
+
+    /**
+     * Ends the current phase without starting another.
+     * @return this recorder.
+     */
+    public FidelityFileMetrics endPhase() {
+        if (phase != null) {
+            long nanos = System.nanoTime() - phaseStart;
+            phaseNanos[phase.ordinal()] += nanos;
+            FidelityMetrics.getInstance().timer(pipeline + "." + phase.getName()).record(nanos);
+            phaseEvent.end();
+            if (phaseEvent.shouldCommit()) {
+                phaseEvent.pipeline = pipeline;
+                phaseEvent.file = file.getPath();
+                phaseEvent.phase = phase.getName();
+                phaseEvent.commit();
+            }
+            phase = null;
+            phaseEvent = null;
+        }
+        return this;
+    }
+
+    public FidelityFileMetrics addBytes(long pBytes) {
+        bytes += pBytes;
+        return this;
+    }
+
+    public FidelityFileMetrics addLines(long pLines) {
+        lines += pLines;
+        return this;
+    }
+
+    public FidelityFileMetrics addRecords(long pRecords) {
+        records += pRecords;
+        return this;
+    }
+
+    public FidelityFileMetrics addRejected(long pRejected) {
+        rejected += pRejected;
+        return this;
+    }
+
+    /**
+     * @param pBytes heap allocated for the file by another thread, see {@link #threadAllocatedBytes()}.
+     * @return this recorder.
+     */
+    public FidelityFileMetrics addAllocated(long pBytes) {
+        otherAllocated += Math.max(0L, pBytes);
+        return this;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @param pPhase a phase.
+     * @return nanoseconds spent in the phase so far, not counting a phase still running.
+     */
+    public long getNanos(Phase pPhase) {
+        return phaseNanos[pPhase.ordinal()];
+    }
+
+    /**
+     * Ends the current phase and publishes the figures. Does nothing the second time.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        endPhase();
+        long allocated = allocatedAtStart < 0 ? -1L : Math.max(0L, allocatedBytes() - allocatedAtStart) + otherAllocated;
+
+        FidelityMetrics metrics = FidelityMetrics.getInstance();
+        metrics.add(pipeline + "." + FILES, 1L);
+        metrics.add(pipeline + "." + BYTES, bytes);
+        metrics.add(pipeline + "." + LINES, lines);
+        metrics.add(pipeline + "." + RECORDS, records);
+        metrics.add(pipeline + "." + REJECTED, rejected);
+        if (allocated >= 0) {
+            metrics.add(pipeline + "." + ALLOCATED, allocated);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.pipeline = pipeline;
+            event.file = file.getPath();
+            event.bytes = bytes;
+            event.lines = lines;
+            event.records = records;
+            event.rejected = rejected;
+            event.allocated = allocated;
+            event.openNanos = phaseNanos[Phase.OPEN.ordinal()];
+            event.parseNanos = phaseNanos[Phase.PARSE.ordinal()];
+            event.aggregateNanos = phaseNanos[Phase.AGGREGATE.ordinal()];
+            event.transformNanos = phaseNanos[Phase.TRANSFORM.ordinal()];
+            event.outputNanos = phaseNanos[Phase.OUTPUT.ordinal()];
+            event.commit();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("{} {}: {} bytes, {} lines, {} records, {} rejected, {} bytes allocated, parse {} us",
+                    pipeline, file.getName(), bytes, lines, records, rejected, allocated, phaseNanos[Phase.PARSE.ordinal()] / 1000L);
+        }
+    }
+
+    /**
+     * @return bytes allocated so far by the thread that started the recorder, -1 when the JVM can not tell.
+     */
+    private long allocatedBytes() {
+        return Thread.currentThread().getId() == threadId ? threadAllocatedBytes() : -1L;
+    }
+
+    /**
+     * @return bytes allocated so far by the calling thread, -1 when the JVM can not tell.
+     */
+    public static long threadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1L;
+    }
+}
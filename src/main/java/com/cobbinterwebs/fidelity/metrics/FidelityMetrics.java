@@ -0,0 +1,149 @@
+package com.cobbinterwebs.fidelity.metrics;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of counters and timers, filled by {@link FidelityFileMetrics} as files
+ * are read. Updates are lock free, so the batch workers can record concurrently.
+ * {@link #snapshot()} gives a point-in-time copy to log or export.
+ *
+ * <p>Names are <code>&lt;pipeline&gt;.&lt;metric&gt;</code>, e.g. <code>trades.bytes</code> or
+ * <code>chart.transform</code>. A timer shows up in the snapshot as
+ * <code>&lt;name&gt;.count</code>, <code>&lt;name&gt;.nanos</code> and <code>&lt;name&gt;.maxNanos</code>.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelityMetrics {
+    private static FidelityMetrics instance = new FidelityMetrics();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Number of events and their total and longest duration.
+     */
+    public static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        /**
+         * @param pNanos duration of one event.
+         */
+        public void record(long pNanos) {
+            count.increment();
+            nanos.add(pNanos);
+            maxNanos.accumulate(pNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    private FidelityMetrics() {
+    }
+
+    /**
+     * @return the registry.
+     */
+    public static synchronized FidelityMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts over with an empty registry.
+     */
+    public static synchronized void reset() {
+        instance = new FidelityMetrics();
+    }
+
+    /**
+     * @param pName counter name.
+     * @return the counter, created at zero on first use.
+     */
+    public LongAdder counter(String pName) {
+        return counters.computeIfAbsent(pName, n -> new LongAdder());
+    }
+
+    /**
+     * @param pName timer name.
+     * @return the timer, created empty on first use.
+     */
+    public Timer timer(String pName) {
+        return timers.computeIfAbsent(pName, n -> new Timer());
+    }
+
+    /**
+     * @param pName counter name.
+     * @param pValue amount to add.
+     */
+    public void add(String pName, long pValue) {
+        counter(pName).add(pValue);
+    }
+
+    /**
+     * @param pName counter name.
+     * @return the current value, 0 if never counted.
+     */
+    public long get(String pName) {
+        LongAdder counter = counters.get(pName);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * Bytes read per second of parsing for a pipeline, over everything recorded so far.
+     * @param pPipeline e.g. {@link FidelityFileMetrics#TRADES}.
+     * @return the throughput, 0 before anything was parsed.
+     */
+    public long getParseThroughput(String pPipeline) {
+        Timer parse = timers.get(pPipeline + "." + FidelityFileMetrics.Phase.PARSE.getName());
+        long nanos = parse == null ? 0L : parse.getNanos();
+        return nanos == 0L ? 0L : (long) (get(pPipeline + "." + FidelityFileMetrics.BYTES) * 1e9 / nanos);
+    }
+
+    /**
+     * @return every counter and timer value, sorted by name, plus <code>&lt;pipeline&gt;.parse.bytesPerSecond</code>
+     * for each pipeline that parsed anything.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> rVal = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            rVal.put(counter.getKey(), counter.getValue().sum());
+        }
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            rVal.put(timer.getKey() + ".count", timer.getValue().getCount());
+            rVal.put(timer.getKey() + ".nanos", timer.getValue().getNanos());
+            rVal.put(timer.getKey() + ".maxNanos", timer.getValue().getMaxNanos());
+            String parseSuffix = "." + FidelityFileMetrics.Phase.PARSE.getName();
+            if (timer.getKey().endsWith(parseSuffix)) {
+                String pipeline = timer.getKey().substring(0, timer.getKey().length() - parseSuffix.length());
+                rVal.put(pipeline + ".parse.bytesPerSecond", getParseThroughput(pipeline));
+            }
+        }
+        return Collections.unmodifiableSortedMap(rVal);
+    }
+}
@@ -0,0 +1,416 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.fidelity.metrics.FidelityMetrics;
+import com.cobbinterwebs.trades.config.Configuration;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+/**
+ * Processes every ticker-day in the home tree in parallel. Each export is an independent
+ * {@link FidelityTradeDay}; the days are handed to an executor (platform threads, or
+ * virtual threads on a Java 21 runtime) and collected back in ticker and date order.
+ * A file that fails is recorded in the result and the rest of the batch carries on.
+ * With <code>com.cobbinterwebs.fidelity.rolling.store</code> the totals of each ticker's days are
+ * kept in a {@link FidelityRollingStore} and only new or changed exports are processed.
+ * With <code>com.cobbinterwebs.fidelity.tape</code> the trades of each day are put on the
+ * ticker's {@link FidelityTradeTape}: appended when new, rewritten when the export changed.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityBatchProcessor {
+    private static final Logger log = LogManager.getLogger(FidelityBatchProcessor.class);
+
+    /** Name of the summary written into each ticker directory. */
+    public static final String SUMMARY_FILE = "summary.txt";
+
+    /** Name of the summary written into each ticker directory when the output format is binary. */
+    public static final String BINARY_SUMMARY_FILE = "summary." + FidelityOutputSink.Format.BINARY.getExtension();
+
+    /**
+     * Kind of threads the days run on.
+     */
+    public enum ExecutorKind {
+        PLATFORM, VIRTUAL
+    }
+
+    private final File homeDir;
+    private final int threads;
+    private final ExecutorKind executorKind;
+    /** Open tapes of the tickers being collected; only used on the calling thread. */
+    private final Map<String, FidelityTradeTape> tapes = new HashMap<>();
+    private boolean tapeWarned;
+    /** Whether to use the rolling stores; null to follow the configuration. */
+    private Boolean rollingStore;
+
+    /**
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     * @param pThreads days processed at once.
+     * @param pExecutorKind kind of threads to run the days on.
+     */
+    public FidelityBatchProcessor(File pHomeDir, int pThreads, ExecutorKind pExecutorKind) {
+        homeDir = pHomeDir;
+        threads = Math.max(1, pThreads);
+        executorKind = pExecutorKind;
+    }
+
+    /**
+     * Uses the thread count and executor kind from the configuration.
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     */
+    public FidelityBatchProcessor(File pHomeDir) {
+        this(pHomeDir, FidelityConfiguration.getInstance().getBatchThreads(),
+                "virtual".equals(FidelityConfiguration.getInstance().getBatchExecutor()) ? ExecutorKind.VIRTUAL : ExecutorKind.PLATFORM);
+    }
+
+    /**
+     * @param pRollingStore true to keep the totals of each ticker's days in its rolling store and
+     *        process only new or changed exports, whatever <code>com.cobbinterwebs.fidelity.rolling.store</code> says.
+     */
+    public void setRollingStore(boolean pRollingStore) {
+        rollingStore = pRollingStore;
+    }
+
+    /**
+     * @return the results of every export found under the home directory.
+     */
+    public FidelityBatchResult process() {
+        return process(FidelityInputFile.discover(homeDir));
+    }
+
+    /**
+     * @param pInputs the exports to process, in any order.
+     * @return the results, in ticker and date order.
+     */
+    public FidelityBatchResult process(List<FidelityInputFile> pInputs) {
+        return process(pInputs, null);
+    }
+
+    /**
+     * Processes the exports and hands each ticker to the listener as soon as its last day is in,
+     * while the days of the following tickers are still being parsed. With the streaming trade
+     * store a day holds only its totals, so output of one ticker overlaps parsing of the next
+     * in a small, constant amount of memory per day.
+     * @param pInputs the exports to process, in any order.
+     * @param pTickerDone called, on the calling thread and in ticker order, with each completed ticker. May be null.
+     * @return the results, in ticker and date order.
+     */
+    public FidelityBatchResult process(List<FidelityInputFile> pInputs, Consumer<FidelityBatchResult.TickerResult> pTickerDone) {
+        List<FidelityInputFile> inputs = new ArrayList<>(pInputs);
+        inputs.sort(null);
+        FidelityBatchResult result = new FidelityBatchResult(FidelityConfiguration.getInstance().getScale());
+        TreeSet<String> upToDate = new TreeSet<>();
+        if (rollingStore != null ? rollingStore : FidelityConfiguration.getInstance().isRollingStore()) {
+            inputs = openRollingStores(inputs, result, upToDate);
+        }
+        log.info("processing {} ticker-days on {} {} threads.", inputs.size(), threads, executorKind);
+
+        ExecutorService executor = newExecutor();
+        Semaphore permits = new Semaphore(threads);
+        List<Future<FidelityTradeDay>> futures = new ArrayList<>(inputs.size());
+        try {
+            for (FidelityInputFile input : inputs) {
+                futures.add(executor.submit(() -> processDay(input, permits)));
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                FidelityInputFile input = inputs.get(i);
+                tickersDone(result, upToDate, input.getTicker(), pTickerDone);
+                try {
+                    FidelityTradeDay day = futures.get(i).get();
+                    result.add(input, day);
+                    appendToTape(input, day);
+                } catch (ExecutionException e) {
+                    log.error("failed to process {}", input.getFile().getAbsolutePath(), e.getCause());
+                    result.addFailure(input, e.getCause());
+                } catch (IllegalArgumentException e) {
+                    log.error("could not add {} to the rolling store", input.getFile().getAbsolutePath(), e);
+                    result.addFailure(input, e);
+                }
+                futures.set(i, null);
+                boolean lastOfTicker = i + 1 == inputs.size() || !inputs.get(i + 1).getTicker().equals(input.getTicker());
+                if (lastOfTicker) {
+                    tickerDone(result.getTickers().get(input.getTicker()), pTickerDone);
+                }
+            }
+            tickersDone(result, upToDate, null, pTickerDone);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.stream().filter(f -> f != null).forEach(f -> f.cancel(true));
+            throw new IllegalStateException("batch interrupted", e);
+        } finally {
+            executor.shutdown();
+            closeTapes();
+        }
+    }
+
+    /**
+     * Reads the rolling store of each ticker and works out which exports still have to be
+     * processed: those for dates not stored yet and those of stored days whose content changed.
+     * The other exports are not parsed again, even when they come after a changed day; the
+     * store rebuilds its running totals when the changed day is put back. A store kept under
+     * another configuration is rebuilt.
+     * @param pInputs the exports, sorted.
+     * @param pResult gets the store of each ticker.
+     * @param pUpToDate gets the tickers with nothing to process.
+     * @return the exports to process, sorted.
+     */
+    private List<FidelityInputFile> openRollingStores(List<FidelityInputFile> pInputs, FidelityBatchResult pResult, Set<String> pUpToDate) {
+        FidelityConfiguration config = FidelityConfiguration.getInstance();
+        long fingerprint = FidelityRollingStore.fingerprint();
+        List<FidelityInputFile> rVal = new ArrayList<>();
+        int i = 0;
+        while (i < pInputs.size()) {
+            String ticker = pInputs.get(i).getTicker();
+            int end = i;
+            while (end < pInputs.size() && pInputs.get(end).getTicker().equals(ticker)) {
+                end++;
+            }
+            List<FidelityInputFile> exports = pInputs.subList(i, end);
+            FidelityRollingStore store = FidelityRollingStore.load(FidelityRollingStore.storeFor(new File(homeDir, ticker)),
+                    config.getScale(), config.getRollingDays(), fingerprint);
+            pResult.ticker(ticker).setRollingStore(store);
+            int before = rVal.size();
+            for (FidelityInputFile export : exports) {
+                int k = store.indexOf(export.getDate());
+                if (k < 0) {
+                    rVal.add(export);
+                } else if (!store.isCurrent(k, export.getFile())) {
+                    log.info("{}: the export of {} changed, processing it again.", ticker, export.getDate());
+                    rVal.add(export);
+                }
+            }
+            if (rVal.size() == before) {
+                pUpToDate.add(ticker);
+            }
+            log.debug("{}: {} days stored, {} to process.", ticker, store.size(), rVal.size() - before);
+            i = end;
+        }
+        return rVal;
+    }
+
+    /**
+     * Finishes the up to date tickers that sort before <code>pBefore</code>, all of them if it is null.
+     */
+    private void tickersDone(FidelityBatchResult pResult, TreeSet<String> pUpToDate, String pBefore,
+            Consumer<FidelityBatchResult.TickerResult> pTickerDone) {
+        while (!pUpToDate.isEmpty() && (pBefore == null || pUpToDate.first().compareTo(pBefore) < 0)) {
+            tickerDone(pResult.getTickers().get(pUpToDate.pollFirst()), pTickerDone);
+        }
+    }
+
+    /**
+     * Saves the ticker's rolling store, if it has one, and hands the ticker to the listener. With
+     * the tape on, the ticker's days then only keep their totals.
+     */
+    private void tickerDone(FidelityBatchResult.TickerResult pTicker, Consumer<FidelityBatchResult.TickerResult> pTickerDone) {
+        closeTape(pTicker.getTicker());
+        FidelityRollingStore store = pTicker.getRollingStore();
+        if (store != null) {
+            try {
+                store.save();
+            } catch (IOException e) {
+                log.error("could not save {}", store.getFile().getAbsolutePath(), e);
+            }
+        }
+        if (pTickerDone != null) {
+            pTickerDone.accept(pTicker);
+        }
+        if (FidelityConfiguration.getInstance().isTape()) {
+            pTicker.releaseTrades();
+        }
+    }
+
+    /**
+     * Puts the day's trades on its ticker's tape when the tape is on: a new day is appended, a
+     * changed export replaces its day and a backfilled date is inserted. The trades have to be kept in columns. Once they are on the tape the day
+     * drops them and keeps its totals, so the heap does not grow with the history.
+     */
+    private void appendToTape(FidelityInputFile pInput, FidelityTradeDay pDay) {
+        if (!FidelityConfiguration.getInstance().isTape()) {
+            return;
+        }
+        if (pDay.getTradeColumns() == null) {
+            if (!tapeWarned) {
+                log.warn("the tape needs {}=columns; no trades are appended.", FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+                tapeWarned = true;
+            }
+            return;
+        }
+        try {
+            FidelityTradeTape tape = tapes.get(pInput.getTicker());
+            if (tape == null) {
+                tape = FidelityTradeTape.open(new File(homeDir, pInput.getTicker()), pDay.getTradeColumns().getScale());
+                tapes.put(pInput.getTicker(), tape);
+            }
+            int k = tape.indexOf(pInput.getDate());
+            boolean last = k == -tape.size() - 1;
+            if (!tape.put(pInput.getDate(), pDay.getTradeColumns())) {
+                log.debug("{} is already on the tape of {}", pInput.getDate(), pInput.getTicker());
+            } else if (!last) {
+                log.warn("rewrote the tape of {} from {} on; the day was {}.", pInput.getTicker(), pInput.getDate(),
+                        k >= 0 ? "exported again with other trades" : "backfilled");
+            }
+            pDay.releaseTrades();
+        } catch (IOException e) {
+            log.error("could not put {} on the tape", pInput.getFile().getAbsolutePath(), e);
+        }
+    }
+
+    private void closeTape(String pTicker) {
+        FidelityTradeTape tape = tapes.remove(pTicker);
+        if (tape != null) {
+            try {
+                tape.close();
+            } catch (IOException e) {
+                log.warn("could not close the tape of {}", pTicker, e);
+            }
+        }
+    }
+
+    private void closeTapes() {
+        for (String ticker : new ArrayList<>(tapes.keySet())) {
+            closeTape(ticker);
+        }
+    }
+
+    private FidelityTradeDay processDay(FidelityInputFile pInput, Semaphore pPermits) throws InterruptedException {
+        pPermits.acquire();
+        ThreadContext.put("ticker", pInput.getTicker());
+        try {
+            FidelityTradeDay day = new FidelityTradeDay(pInput.getFile());
+            day.process();
+            return day;
+        } finally {
+            ThreadContext.remove("ticker");
+            pPermits.release();
+        }
+    }
+
+    /**
+     * Writes <code>summary.txt</code> into each ticker directory.
+     * @param pResult the batch result.
+     * @throws IOException if a summary can not be written.
+     */
+    public void writeSummaries(FidelityBatchResult pResult) throws IOException {
+        for (FidelityBatchResult.TickerResult ticker : pResult.getTickers().values()) {
+            writeSummary(ticker);
+        }
+    }
+
+    /**
+     * Writes <code>summary.txt</code>, or <code>summary.bin</code> when the output format is binary,
+     * into the ticker directory.
+     * @param pTicker the ticker's days.
+     * @throws IOException if the summary can not be written.
+     */
+    public void writeSummary(FidelityBatchResult.TickerResult pTicker) throws IOException {
+        FidelityConfiguration config = FidelityConfiguration.getInstance();
+        FidelityOutputSink.Format format = FidelityOutputSink.Format.of(config.getOutputFormat());
+        File summary = new File(new File(homeDir, pTicker.getTicker()),
+                format == FidelityOutputSink.Format.BINARY ? BINARY_SUMMARY_FILE : SUMMARY_FILE);
+        try (FidelityOutputSink sink = FidelityOutputSink.open(summary, format)) {
+            pTicker.writeSummary(sink, config.getHeader1(), config.isRunningVwda());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("wrote {}", summary.getAbsolutePath());
+    }
+
+    private ExecutorService newExecutor() {
+        if (executorKind == ExecutorKind.VIRTUAL) {
+            try {
+                // looked up reflectively; the project still compiles for runtimes without virtual threads
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("virtual threads are not available on this runtime, using platform threads.");
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "fidelity-batch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Command line entry point.
+     * @param args <code>-home dir</code>, optional <code>-threads n</code> and <code>-executor platform|virtual</code>.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("home", true, "home directory holding the ticker directories");
+        options.addOption("threads", true, "days processed at once");
+        options.addOption("executor", true, "platform or virtual");
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("home")) {
+                System.setProperty(Configuration.PropertyConstants.HOME_KEY, cmd.getOptionValue("home"));
+            }
+            if (cmd.hasOption("threads")) {
+                System.setProperty(FidelityConfiguration.PropertyConstants.BATCH_THREADS_KEY, cmd.getOptionValue("threads"));
+            }
+            if (cmd.hasOption("executor")) {
+                System.setProperty(FidelityConfiguration.PropertyConstants.BATCH_EXECUTOR_KEY, cmd.getOptionValue("executor"));
+            }
+            FidelityBatchProcessor processor = new FidelityBatchProcessor(FidelityConfiguration.homeDirectory());
+            FidelityBatchResult result = processor.process(FidelityInputFile.discover(processor.homeDir), ticker -> {
+                try {
+                    processor.writeSummary(ticker);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("metrics {}", FidelityMetrics.getInstance().snapshot());
+            if (result.getFailureCount() > 0) {
+                log.error("{} ticker-days failed.", result.getFailureCount());
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            new HelpFormatter().printHelp(FidelityBatchProcessor.class.getSimpleName(), options);
+            System.exit(2);
+        } catch (UncheckedIOException e) {
+            log.error("could not write the summaries.", e.getCause());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cobbinterwebs.fidelity.io.FidelityCSVSink;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+/**
+ * Outcome of a batch run, grouped by ticker. Within a ticker the days are in date order no
+ * matter which order the workers finished in, so the summary and the running VWDA come out
+ * the same as a serial run.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityBatchResult {
+    private final Map<String, TickerResult> tickers = new TreeMap<>();
+    private final int scale;
+
+    /**
+     * @param pScale scale used for the running VWDA.
+     */
+    public FidelityBatchResult(int pScale) {
+        scale = pScale;
+    }
+
+    /**
+     * The days of one ticker.
+     */
+    public static class TickerResult {
+        private final String ticker;
+        private final List<FidelityInputFile> inputs = new ArrayList<>();
+        private final List<FidelityTradeDay> days = new ArrayList<>();
+        private final List<BigDecimal> runningVwda = new ArrayList<>();
+        private final Map<FidelityInputFile, Throwable> failures = new LinkedHashMap<>();
+        private BigDecimal cumulativeDollarVolume = BigDecimal.ZERO;
+        private BigDecimal cumulativeVolume = BigDecimal.ZERO;
+        private FidelityRollingStore rollingStore;
+
+        TickerResult(String pTicker) {
+            ticker = pTicker;
+        }
+
+        public String getTicker() {
+            return ticker;
+        }
+
+        /**
+         * @return the processed days, in date order.
+         */
+        public List<FidelityTradeDay> getDays() {
+            return Collections.unmodifiableList(days);
+        }
+
+        /**
+         * @return the inputs of the processed days, parallel to {@link #getDays()}.
+         */
+        public List<FidelityInputFile> getInputs() {
+            return Collections.unmodifiableList(inputs);
+        }
+
+        /**
+         * @return cumulative dollar volume over cumulative volume through each day, parallel to {@link #getDays()}.
+         */
+        public List<BigDecimal> getRunningVwda() {
+            return Collections.unmodifiableList(runningVwda);
+        }
+
+        /**
+         * @return the ticker's rolling store when the batch keeps one, otherwise null. Holds the
+         * days of earlier runs as well as the ones processed in this one.
+         */
+        public FidelityRollingStore getRollingStore() {
+            return rollingStore;
+        }
+
+        void setRollingStore(FidelityRollingStore pRollingStore) {
+            rollingStore = pRollingStore;
+        }
+
+        /**
+         * @return the days that could not be processed and why.
+         */
+        public Map<FidelityInputFile, Throwable> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        void add(FidelityInputFile pInput, FidelityTradeDay pDay, int pScale) {
+            if (rollingStore != null) {
+                int index = rollingStore.put(pInput.getDate(), pInput.getFile(), pDay.getTimeIndex().all());
+                inputs.add(pInput);
+                days.add(pDay);
+                pDay.setDayOrdinal(index + 1);
+                runningVwda.add(rollingStore.between(0, index + 1).getAveragePrice());
+                return;
+            }
+            inputs.add(pInput);
+            days.add(pDay);
+            pDay.setDayOrdinal(days.size());
+            cumulativeDollarVolume = cumulativeDollarVolume.add(pDay.getDollarVolume());
+            cumulativeVolume = cumulativeVolume.add(pDay.getVolume());
+            runningVwda.add(cumulativeVolume.signum() == 0 ? BigDecimal.ZERO
+                    : cumulativeDollarVolume.divide(cumulativeVolume, pScale, RoundingMode.HALF_UP));
+        }
+
+        /**
+         * Drops the trades the days keep, leaving their totals, see {@link FidelityTradeDay#releaseTrades()}.
+         */
+        void releaseTrades() {
+            for (FidelityTradeDay day : days) {
+                day.releaseTrades();
+            }
+        }
+
+        /**
+         * Writes the header and one summary row per day.
+         * With a rolling store the rows are every stored day, see {@link FidelityRollingStore#writeSummary}.
+         * @param psw where to write.
+         * @param pHeader1 the column header line.
+         * @param pRunningVwda true to finish with the running VWDA through the last day.
+         */
+        public void writeSummary(PrintWriter psw, String pHeader1, boolean pRunningVwda) {
+            if (rollingStore != null) {
+                FidelityCSVSink sink = new FidelityCSVSink(psw, false);
+                rollingStore.writeSummary(sink, pHeader1, pRunningVwda);
+                return;
+            }
+            psw.println(pHeader1);
+            for (FidelityTradeDay day : days) {
+                day.writeSummary(psw);
+            }
+            if (pRunningVwda && !runningVwda.isEmpty()) {
+                psw.println("\"Running VWDA\"," + runningVwda.get(runningVwda.size() - 1));
+            }
+            psw.flush();
+        }
+
+        /**
+         * Writes the header and one summary row per day, each day's values taken from its getters.
+         * With a rolling store the rows are every stored day, see {@link FidelityRollingStore#writeSummary}.
+         * @param pSink where to write; flushed, not closed.
+         * @param pHeader1 the column header line.
+         * @param pRunningVwda true to finish with the running VWDA through the last day.
+         */
+        public void writeSummary(FidelityOutputSink pSink, String pHeader1, boolean pRunningVwda) {
+            if (rollingStore != null) {
+                rollingStore.writeSummary(pSink, pHeader1, pRunningVwda);
+                return;
+            }
+            pSink.header(pHeader1);
+            for (FidelityTradeDay day : days) {
+                day.writeSummary(pSink);
+            }
+            if (pRunningVwda && !runningVwda.isEmpty()) {
+                pSink.label("Running VWDA").decimal(runningVwda.get(runningVwda.size() - 1)).endRow();
+            }
+            pSink.flush();
+        }
+    }
+
+    /**
+     * Days must be added in date order for each ticker.
+     */
+    void add(FidelityInputFile pInput, FidelityTradeDay pDay) {
+        ticker(pInput.getTicker()).add(pInput, pDay, scale);
+    }
+
+    void addFailure(FidelityInputFile pInput, Throwable pCause) {
+        ticker(pInput.getTicker()).failures.put(pInput, pCause);
+    }
+
+    TickerResult ticker(String pTicker) {
+        return tickers.computeIfAbsent(pTicker, TickerResult::new);
+    }
+
+    /**
+     * @return the results keyed and sorted by ticker.
+     */
+    public Map<String, TickerResult> getTickers() {
+        return Collections.unmodifiableMap(tickers);
+    }
+
+    /**
+     * @return the number of days, over all tickers, that could not be processed.
+     */
+    public int getFailureCount() {
+        int rVal = 0;
+        for (TickerResult t : tickers.values()) {
+            rVal += t.failures.size();
+        }
+        return rVal;
+    }
+}
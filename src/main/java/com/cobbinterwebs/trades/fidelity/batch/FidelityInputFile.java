@@ -0,0 +1,163 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.fidelity.io.FidelityArchive;
+
+/**
+ * One Time &amp; Sales export in the home tree, laid out as
+ * <code>&lt;home&gt;/&lt;TICKER&gt;/input/&lt;TICKER&gt;-yyyyMMdd.csv</code>.
+ * The export may be gzipped, <code>&lt;TICKER&gt;-yyyyMMdd.csv.gz</code>, or be an entry of a
+ * zip in the input directory (see {@link FidelityArchive}).
+ * Ordered by ticker, then date.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelityInputFile implements Comparable<FidelityInputFile> {
+    private static final Logger log = LogManager.getLogger(FidelityInputFile.class);
+
+    /** Name of the directory, under each ticker, holding the trade exports. */
+    public static final String INPUT_DIR = "input";
+
+    static final Pattern FILE_NAME = Pattern.compile("^(.+)-(\\d{8})\\.csv(\\.gz)?$");
+    static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final String ticker;
+    private final LocalDate date;
+    private final File file;
+
+    public FidelityInputFile(String pTicker, LocalDate pDate, File pFile) {
+        ticker = pTicker;
+        date = pDate;
+        file = pFile;
+    }
+
+    /**
+     * @param pTicker the ticker directory the file was found in.
+     * @param pFile a trade export.
+     * @return the input, or null if the file name does not carry a date.
+     */
+    public static FidelityInputFile of(String pTicker, File pFile) {
+        Matcher m = FILE_NAME.matcher(pFile.getName());
+        if (!m.matches()) {
+            return null;
+        }
+        try {
+            return new FidelityInputFile(pTicker, LocalDate.parse(m.group(2), FILE_DATE), pFile);
+        } catch (DateTimeParseException e) {
+            log.warn("ignoring {}, bad date in the file name.", pFile.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * Finds every trade export under the home directory, including those bundled in zips.
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     * @return the exports, sorted by ticker then date.
+     */
+    public static List<FidelityInputFile> discover(File pHomeDir) {
+        List<FidelityInputFile> rVal = new ArrayList<>();
+        File[] tickerDirs = pHomeDir.listFiles(File::isDirectory);
+        if (tickerDirs == null) {
+            log.warn("home directory {} can not be listed.", pHomeDir.getAbsolutePath());
+            return rVal;
+        }
+        for (File tickerDir : tickerDirs) {
+            rVal.addAll(discover(pHomeDir, tickerDir.getName()));
+        }
+        Collections.sort(rVal);
+        return rVal;
+    }
+
+    /**
+     * Finds the trade exports of one ticker.
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     * @param pTicker the ticker directory.
+     * @return the exports, sorted by date.
+     */
+    public static List<FidelityInputFile> discover(File pHomeDir, String pTicker) {
+        List<FidelityInputFile> rVal = new ArrayList<>();
+        for (File export : FidelityArchive.list(new File(new File(pHomeDir, pTicker), INPUT_DIR), FidelityInputFile::isExportName)) {
+            FidelityInputFile input = of(pTicker, export);
+            if (input != null) {
+                rVal.add(input);
+            }
+        }
+        Collections.sort(rVal);
+        return rVal;
+    }
+
+    /**
+     * @param pName a file name.
+     * @return true if the name is that of a trade export, plain or gzipped.
+     */
+    public static boolean isExportName(String pName) {
+        return FILE_NAME.matcher(pName).matches();
+    }
+
+    public String getTicker() {
+        return ticker;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int compareTo(FidelityInputFile o) {
+        int rVal = ticker.compareTo(o.ticker);
+        if (rVal == 0) {
+            rVal = date.compareTo(o.date);
+        }
+        if (rVal == 0) {
+            rVal = file.getName().compareTo(o.file.getName());
+        }
+        return rVal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FidelityInputFile)) {
+            return false;
+        }
+        FidelityInputFile other = (FidelityInputFile) o;
+        return ticker.equals(other.ticker) && date.equals(other.date) && file.equals(other.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ticker, date, file);
+    }
+
+    @Override
+    public String toString() {
+        return "FidelityInputFile[ticker=" + ticker + ", date=" + date + ", file=" + file + "]";
+    }
+}
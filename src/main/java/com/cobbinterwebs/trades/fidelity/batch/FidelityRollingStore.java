@@ -0,0 +1,600 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityArchive;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.fidelity.math.FixedPointSum;
+import com.cobbinterwebs.trades.config.Configuration;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityDayAggregate;
+
+/**
+ * The fixed-point totals of every day of one ticker that has been processed, kept in
+ * <code>&lt;home&gt;/&lt;TICKER&gt;/rolling.frs</code> so a nightly run only has to parse the new
+ * day's export. Each day is a fixed-size record holding its date, the size, modification
+ * time and CRC32C of the export it came from and its totals; the running totals over the days are kept
+ * alongside, so the running VWDA and the totals of the last N days come from two entries,
+ * O(1), and appending a day is O(1) in memory and on disk.
+ *
+ * <p>Days are in date order. A day whose export changed is processed again and
+ * {@link #put(LocalDate, File, FidelityDayAggregate) put} in place of the stored one, and an export
+ * for a date before the last day stored is put in between; only the running totals from that day
+ * on are rebuilt, the later days are not parsed again. An export that was only touched, or copied back with the same content, still
+ * matches by its CRC32C. The header holds a {@link #fingerprint()} of the configuration the totals
+ * depend on; a store kept under a different configuration is rebuilt. Not thread-safe; a ticker's
+ * store is used by one thread.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityRollingStore {
+    private static final Logger log = LogManager.getLogger(FidelityRollingStore.class);
+
+    /** Name of the store in each ticker directory. */
+    public static final String STORE_FILE = "rolling.frs";
+
+    static final int MAGIC = 0x46525331; // FRS1
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 20;
+    /** Date, export size, time and CRC32C, counts, three volumes and three 128 bit dollar volumes. */
+    static final int RECORD_SIZE = 4 + 8 + 8 + 8 + 4 + 4 + 3 * 8 + 6 * 8;
+    static final DateTimeFormatter EXPORT_DATE = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final File file;
+    private final int scale;
+    private final int windowDays;
+    private final long fingerprint;
+    private int size;
+    /** Days already in the file; the rest are appended by {@link #save()}. */
+    private int persisted;
+    /** True when the file has to be written again from the start. */
+    private boolean rewrite;
+
+    private int[] epochDay = new int[INITIAL_CAPACITY];
+    private long[] exportLength = new long[INITIAL_CAPACITY];
+    private long[] exportModified = new long[INITIAL_CAPACITY];
+    private long[] exportCrc = new long[INITIAL_CAPACITY];
+    // running totals; entry i is the sum over days 0 .. i - 1
+    private int[] trades = new int[INITIAL_CAPACITY + 1];
+    private int[] teeTrades = new int[INITIAL_CAPACITY + 1];
+    private long[] volume = new long[INITIAL_CAPACITY + 1];
+    private long[] buyVolume = new long[INITIAL_CAPACITY + 1];
+    private long[] sellVolume = new long[INITIAL_CAPACITY + 1];
+    private long[] dollarHigh = new long[INITIAL_CAPACITY + 1];
+    private long[] dollarLow = new long[INITIAL_CAPACITY + 1];
+    private long[] buyDollarHigh = new long[INITIAL_CAPACITY + 1];
+    private long[] buyDollarLow = new long[INITIAL_CAPACITY + 1];
+    private long[] sellDollarHigh = new long[INITIAL_CAPACITY + 1];
+    private long[] sellDollarLow = new long[INITIAL_CAPACITY + 1];
+
+    /**
+     * An empty store.
+     * @param pFile where the store is kept.
+     * @param pScale scale of the day totals.
+     * @param pWindowDays days in the rolling window of the summary.
+     */
+    public FidelityRollingStore(File pFile, int pScale, int pWindowDays) {
+        this(pFile, pScale, pWindowDays, 0L);
+    }
+
+    /**
+     * An empty store.
+     * @param pFile where the store is kept.
+     * @param pScale scale of the day totals.
+     * @param pWindowDays days in the rolling window of the summary.
+     * @param pFingerprint the configuration the totals are computed under, see {@link #fingerprint()}.
+     */
+    public FidelityRollingStore(File pFile, int pScale, int pWindowDays, long pFingerprint) {
+        file = pFile;
+        scale = pScale;
+        windowDays = Math.max(1, pWindowDays);
+        fingerprint = pFingerprint;
+        rewrite = true;
+    }
+
+    /**
+     * The settings a day's totals depend on: the trade day and trade record classes, the scale,
+     * whether the trades are included and the store that keeps them, fixed point and the header
+     * and date lines of the export.
+     * @return a hash of the current configuration of those settings.
+     */
+    public static long fingerprint() {
+        FidelityConfiguration fidelityConfig = FidelityConfiguration.getInstance();
+        Configuration config = Configuration.getInstance();
+        long rVal = fidelityConfig.getString(FidelityConfiguration.PropertyConstants.TRADE_DAY_CLASS_KEY, "").hashCode();
+        rVal = 31 * rVal + fidelityConfig.getString(FidelityConfiguration.PropertyConstants.TRADE_RECORD_CLASS_KEY, "").hashCode();
+        rVal = 31 * rVal + fidelityConfig.getScale();
+        rVal = 31 * rVal + (fidelityConfig.isIncludeTrades() ? 1 : 0);
+        rVal = 31 * rVal + fidelityConfig.getTradeStore().name().hashCode();
+        rVal = 31 * rVal + (fidelityConfig.isFixedPoint() ? 1 : 0);
+        rVal = 31 * rVal + config.getHeaderSkipLineCount();
+        rVal = 31 * rVal + config.getDateLineNumber();
+        return rVal;
+    }
+
+    /**
+     * @param pTickerDir a ticker directory.
+     * @return where its store is kept.
+     */
+    public static File storeFor(File pTickerDir) {
+        return new File(pTickerDir, STORE_FILE);
+    }
+
+    /**
+     * Reads a store. A missing, damaged or differently scaled store comes back empty and is
+     * rebuilt; a day cut short by a crash while appending is dropped.
+     * @param pFile where the store is kept.
+     * @param pScale scale of the day totals.
+     * @param pWindowDays days in the rolling window of the summary.
+     * @return the store.
+     */
+    public static FidelityRollingStore load(File pFile, int pScale, int pWindowDays) {
+        return load(pFile, pScale, pWindowDays, 0L);
+    }
+
+    /**
+     * Reads a store. A missing, damaged, differently scaled or configured store comes back empty
+     * and is rebuilt; a day cut short by a crash while appending is dropped.
+     * @param pFile where the store is kept.
+     * @param pScale scale of the day totals.
+     * @param pWindowDays days in the rolling window of the summary.
+     * @param pFingerprint the configuration the totals are computed under, see {@link #fingerprint()}.
+     * @return the store.
+     */
+    public static FidelityRollingStore load(File pFile, int pScale, int pWindowDays, long pFingerprint) {
+        FidelityRollingStore rVal = new FidelityRollingStore(pFile, pScale, pWindowDays, pFingerprint);
+        if (!pFile.isFile()) {
+            return rVal;
+        }
+        long length = pFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(pFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("{} is not a rolling store, rebuilding it.", pFile.getAbsolutePath());
+                return rVal;
+            }
+            int fileScale = in.readInt();
+            if (fileScale != pScale) {
+                log.warn("{} is at scale {}, not {}; rebuilding it.", pFile.getAbsolutePath(), fileScale, pScale);
+                return rVal;
+            }
+            if (in.readLong() != pFingerprint) {
+                log.info("{} was kept under another configuration, rebuilding it.", pFile.getAbsolutePath());
+                return rVal;
+            }
+            long days = (length - HEADER_SIZE) / RECORD_SIZE;
+            for (long i = 0; i < days; i++) {
+                rVal.read(in);
+            }
+            rVal.persisted = rVal.size;
+            rVal.rewrite = days * RECORD_SIZE != length - HEADER_SIZE;
+        } catch (EOFException e) {
+            log.warn("{} is cut short, rebuilding it.", pFile.getAbsolutePath());
+            return new FidelityRollingStore(pFile, pScale, pWindowDays, pFingerprint);
+        } catch (IOException e) {
+            log.warn("could not read {}, rebuilding it.", pFile.getAbsolutePath(), e);
+            return new FidelityRollingStore(pFile, pScale, pWindowDays, pFingerprint);
+        }
+        return rVal;
+    }
+
+    /**
+     * Appends a day. O(1).
+     * @param pDate the trading date; after the last day in the store.
+     * @param pExport the export the totals came from, remembered to tell when it changes.
+     * @param pTotals the day totals, at the scale of the store.
+     * @throws IllegalArgumentException if the date is not after the last day or the scale differs.
+     */
+    public void append(LocalDate pDate, File pExport, FidelityDayAggregate pTotals) {
+        if (pTotals.getScale() != scale) {
+            throw new IllegalArgumentException("totals are at scale " + pTotals.getScale() + ", the store at " + scale);
+        }
+        int day = (int) pDate.toEpochDay();
+        if (size > 0 && day <= epochDay[size - 1]) {
+            throw new IllegalArgumentException(pDate + " is not after the last day stored, " + getLastDate());
+        }
+        File container = FidelityArchive.container(pExport);
+        append(day, container.length(), container.lastModified(), crc(container),
+                pTotals.getTradeCount(), pTotals.getTeeTradeCount(),
+                pTotals.getVolumeUnits(), pTotals.getBuyVolumeUnits(), pTotals.getSellVolumeUnits(),
+                pTotals.getDollarVolumeSum(), pTotals.getBuyDollarVolumeSum(), pTotals.getSellDollarVolumeSum());
+    }
+
+    /**
+     * Stores a day: appended after the last day, put in place of a day stored for the same date,
+     * or inserted before the later days. Only the running totals from that day on are rebuilt,
+     * O(days after it).
+     * @param pDate the trading date.
+     * @param pExport the export the totals came from, remembered to tell when it changes.
+     * @param pTotals the day totals, at the scale of the store.
+     * @return index of the day.
+     * @throws IllegalArgumentException if the scale differs.
+     */
+    public int put(LocalDate pDate, File pExport, FidelityDayAggregate pTotals) {
+        int k = indexOf(pDate);
+        if (k == -size - 1) {
+            append(pDate, pExport, pTotals);
+            return size - 1;
+        }
+        if (pTotals.getScale() != scale) {
+            throw new IllegalArgumentException("totals are at scale " + pTotals.getScale() + ", the store at " + scale);
+        }
+        int from = k < 0 ? -k - 1 : k;
+        // the days after it, taken out of the running totals before they are rebuilt
+        int later = k < 0 ? from : from + 1;
+        int count = size - later;
+        int[] laterDay = Arrays.copyOfRange(epochDay, later, size);
+        long[] laterLength = Arrays.copyOfRange(exportLength, later, size);
+        long[] laterModified = Arrays.copyOfRange(exportModified, later, size);
+        long[] laterCrc = Arrays.copyOfRange(exportCrc, later, size);
+        FidelityDayAggregate[] laterTotals = new FidelityDayAggregate[count];
+        for (int j = 0; j < count; j++) {
+            laterTotals[j] = getDay(later + j);
+        }
+        size = from;
+        append(pDate, pExport, pTotals);
+        for (int j = 0; j < count; j++) {
+            FidelityDayAggregate day = laterTotals[j];
+            append(laterDay[j], laterLength[j], laterModified[j], laterCrc[j], day.getTradeCount(), day.getTeeTradeCount(),
+                    day.getVolumeUnits(), day.getBuyVolumeUnits(), day.getSellVolumeUnits(),
+                    day.getDollarVolumeSum(), day.getBuyDollarVolumeSum(), day.getSellDollarVolumeSum());
+        }
+        if (from < persisted) {
+            persisted = from;
+            rewrite = true;
+        }
+        return from;
+    }
+
+    /**
+     * Drops the days from <code>pSize</code> on.
+     * @param pSize days to keep.
+     */
+    public void truncate(int pSize) {
+        if (pSize < size) {
+            size = Math.max(0, pSize);
+            if (size < persisted) {
+                persisted = size;
+                rewrite = true;
+            }
+        }
+    }
+
+    /**
+     * @param pDate a trading date.
+     * @return index of the day, or <code>-(insertion point) - 1</code> if it is not stored.
+     */
+    public int indexOf(LocalDate pDate) {
+        return Arrays.binarySearch(epochDay, 0, size, (int) pDate.toEpochDay());
+    }
+
+    /**
+     * @param pIndex index of a day.
+     * @param pExport the export for its date.
+     * @return true if the export, or the zip holding it, is the one the day was stored from: the same
+     *         size and age, or the same size and CRC32C. A match by CRC32C takes the new age.
+     */
+    public boolean isCurrent(int pIndex, File pExport) {
+        File container = FidelityArchive.container(pExport);
+        if (exportLength[pIndex] != container.length()) {
+            return false;
+        }
+        long modified = container.lastModified();
+        if (exportModified[pIndex] == modified) {
+            return true;
+        }
+        if (exportCrc[pIndex] != crc(container)) {
+            return false;
+        }
+        log.debug("{} was touched but has not changed.", container.getAbsolutePath());
+        exportModified[pIndex] = modified;
+        rewrite = true;
+        return true;
+    }
+
+    /**
+     * Writes the days appended since the store was read or last saved; the whole store if it was
+     * truncated, a stored day was put again or it is new. A new file is written to a temporary file and moved into place.
+     * @throws IOException if the store can not be written.
+     */
+    public void save() throws IOException {
+        if (!rewrite) {
+            if (persisted < size) {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                    write(out, persisted, size);
+                }
+            }
+        } else {
+            Path target = file.toPath();
+            Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(scale);
+                    out.writeLong(fingerprint);
+                    write(out, 0, size);
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            rewrite = false;
+        }
+        persisted = size;
+    }
+
+    /**
+     * @return number of days stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return days in the rolling window of the summary, <code>com.cobbinterwebs.fidelity.rolling.days</code>.
+     */
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param pIndex index of a day, oldest first.
+     * @return its date.
+     */
+    public LocalDate getDate(int pIndex) {
+        return LocalDate.ofEpochDay(epochDay[pIndex]);
+    }
+
+    /**
+     * @return date of the newest day, null if the store is empty.
+     */
+    public LocalDate getLastDate() {
+        return size == 0 ? null : getDate(size - 1);
+    }
+
+    /**
+     * @param pIndex index of a day, oldest first.
+     * @return the totals of that day.
+     */
+    public FidelityDayAggregate getDay(int pIndex) {
+        return between(pIndex, pIndex + 1);
+    }
+
+    /**
+     * @return totals over every day stored.
+     */
+    public FidelityDayAggregate cumulative() {
+        return between(0, size);
+    }
+
+    /**
+     * @param pDays length of the window.
+     * @return totals over the last <code>pDays</code> days stored, or all of them if there are fewer.
+     */
+    public FidelityDayAggregate window(int pDays) {
+        return between(Math.max(0, size - pDays), size);
+    }
+
+    /**
+     * @param pFrom index of the first day, inclusive.
+     * @param pTo index of the last day, exclusive.
+     * @return totals over the days.
+     */
+    public FidelityDayAggregate between(int pFrom, int pTo) {
+        FidelityDayAggregate rVal = new FidelityDayAggregate(scale);
+        rVal.addTotals(trades[pTo] - trades[pFrom], teeTrades[pTo] - teeTrades[pFrom],
+                volume[pTo] - volume[pFrom], buyVolume[pTo] - buyVolume[pFrom], sellVolume[pTo] - sellVolume[pFrom],
+                difference(dollarHigh, dollarLow, pFrom, pTo),
+                difference(buyDollarHigh, buyDollarLow, pFrom, pTo),
+                difference(sellDollarHigh, sellDollarLow, pFrom, pTo));
+        return rVal;
+    }
+
+    /**
+     * @return cumulative dollar volume over cumulative volume of every day stored.
+     */
+    public BigDecimal getRunningVwda() {
+        return cumulative().getAveragePrice();
+    }
+
+    /**
+     * @param pDays length of the window.
+     * @return dollar volume over volume of the last <code>pDays</code> days.
+     */
+    public BigDecimal getRollingVwda(int pDays) {
+        return window(pDays).getAveragePrice();
+    }
+
+    /**
+     * Writes the header and one summary row per stored day, in the columns of
+     * <code>com.cobbinterwebs.trades.output.header1</code>.
+     * @param pSink where to write; flushed, not closed.
+     * @param pHeader1 the column header line.
+     * @param pRunningVwda true to finish with the running VWDA and the rolling VWDA of the window.
+     */
+    public void writeSummary(FidelityOutputSink pSink, String pHeader1, boolean pRunningVwda) {
+        pSink.header(pHeader1);
+        for (int i = 0; i < size; i++) {
+            FidelityDayAggregate day = getDay(i);
+            pSink.longValue(i + 1)
+                    .text(getDate(i).format(EXPORT_DATE))
+                    .decimal(day.getAveragePrice())
+                    .decimal(day.getVolume())
+                    .decimal(day.getBuyVolume())
+                    .decimal(day.getSellVolume())
+                    .decimal(day.getUnknownVolume())
+                    .decimal(day.getDollarVolume())
+                    .decimal(day.getBuyDollarVolume())
+                    .decimal(day.getSellDollarVolume())
+                    .decimal(day.getUnknownDollarVolume())
+                    .decimal(day.getPctBuyDolVol())
+                    .decimal(day.getPctSellDolVol())
+                    .decimal(day.getPctUnknownDolVol())
+                    .longValue(day.getTeeTradeCount())
+                    .endRow();
+        }
+        if (pRunningVwda && size > 0) {
+            pSink.label("Running VWDA").decimal(getRunningVwda()).endRow();
+            pSink.label("Rolling VWDA " + windowDays + "d").decimal(getRollingVwda(windowDays)).endRow();
+        }
+        pSink.flush();
+    }
+
+    private void append(int pEpochDay, long pExportLength, long pExportModified, long pExportCrc, int pTrades, int pTeeTrades,
+            long pVolume, long pBuyVolume, long pSellVolume,
+            FixedPointSum pDollars, FixedPointSum pBuyDollars, FixedPointSum pSellDollars) {
+        if (size == epochDay.length) {
+            grow(size * 2);
+        }
+        int i = size++;
+        epochDay[i] = pEpochDay;
+        exportLength[i] = pExportLength;
+        exportModified[i] = pExportModified;
+        exportCrc[i] = pExportCrc;
+        trades[i + 1] = trades[i] + pTrades;
+        teeTrades[i + 1] = teeTrades[i] + pTeeTrades;
+        volume[i + 1] = volume[i] + pVolume;
+        buyVolume[i + 1] = buyVolume[i] + pBuyVolume;
+        sellVolume[i + 1] = sellVolume[i] + pSellVolume;
+        accumulate(dollarHigh, dollarLow, i, pDollars);
+        accumulate(buyDollarHigh, buyDollarLow, i, pBuyDollars);
+        accumulate(sellDollarHigh, sellDollarLow, i, pSellDollars);
+    }
+
+    private void read(DataInputStream pIn) throws IOException {
+        int day = pIn.readInt();
+        long length = pIn.readLong();
+        long modified = pIn.readLong();
+        long exportCrc = pIn.readLong();
+        int tradeCount = pIn.readInt();
+        int teeTradeCount = pIn.readInt();
+        long vol = pIn.readLong();
+        long buyVol = pIn.readLong();
+        long sellVol = pIn.readLong();
+        FixedPointSum dollars = readSum(pIn);
+        FixedPointSum buyDollars = readSum(pIn);
+        FixedPointSum sellDollars = readSum(pIn);
+        append(day, length, modified, exportCrc, tradeCount, teeTradeCount, vol, buyVol, sellVol, dollars, buyDollars, sellDollars);
+    }
+
+    private void write(DataOutputStream pOut, int pFrom, int pTo) throws IOException {
+        for (int i = pFrom; i < pTo; i++) {
+            pOut.writeInt(epochDay[i]);
+            pOut.writeLong(exportLength[i]);
+            pOut.writeLong(exportModified[i]);
+            pOut.writeLong(exportCrc[i]);
+            pOut.writeInt(trades[i + 1] - trades[i]);
+            pOut.writeInt(teeTrades[i + 1] - teeTrades[i]);
+            pOut.writeLong(volume[i + 1] - volume[i]);
+            pOut.writeLong(buyVolume[i + 1] - buyVolume[i]);
+            pOut.writeLong(sellVolume[i + 1] - sellVolume[i]);
+            writeSum(pOut, difference(dollarHigh, dollarLow, i, i + 1));
+            writeSum(pOut, difference(buyDollarHigh, buyDollarLow, i, i + 1));
+            writeSum(pOut, difference(sellDollarHigh, sellDollarLow, i, i + 1));
+        }
+    }
+
+    /**
+     * @return the CRC32C of the file's bytes, -1 if it can not be read.
+     */
+    static long crc(File pFile) {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(pFile.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            log.warn("could not read {}", pFile.getAbsolutePath(), e);
+            return -1L;
+        }
+        return crc.getValue();
+    }
+
+    private static FixedPointSum readSum(DataInputStream pIn) throws IOException {
+        FixedPointSum rVal = new FixedPointSum();
+        rVal.set(pIn.readLong(), pIn.readLong());
+        return rVal;
+    }
+
+    private static void writeSum(DataOutputStream pOut, FixedPointSum pSum) throws IOException {
+        pOut.writeLong(pSum.getHigh());
+        pOut.writeLong(pSum.getLow());
+    }
+
+    private static void accumulate(long[] pHigh, long[] pLow, int pIndex, FixedPointSum pValue) {
+        FixedPointSum total = new FixedPointSum();
+        total.set(pHigh[pIndex], pLow[pIndex]);
+        total.add(pValue);
+        pHigh[pIndex + 1] = total.getHigh();
+        pLow[pIndex + 1] = total.getLow();
+    }
+
+    private static FixedPointSum difference(long[] pHigh, long[] pLow, int pFrom, int pTo) {
+        FixedPointSum rVal = new FixedPointSum();
+        rVal.set(pHigh[pTo], pLow[pTo]);
+        FixedPointSum before = new FixedPointSum();
+        before.set(pHigh[pFrom], pLow[pFrom]);
+        rVal.subtract(before);
+        return rVal;
+    }
+
+    private void grow(int pCapacity) {
+        epochDay = Arrays.copyOf(epochDay, pCapacity);
+        exportLength = Arrays.copyOf(exportLength, pCapacity);
+        exportModified = Arrays.copyOf(exportModified, pCapacity);
+        exportCrc = Arrays.copyOf(exportCrc, pCapacity);
+        trades = Arrays.copyOf(trades, pCapacity + 1);
+        teeTrades = Arrays.copyOf(teeTrades, pCapacity + 1);
+        volume = Arrays.copyOf(volume, pCapacity + 1);
+        buyVolume = Arrays.copyOf(buyVolume, pCapacity + 1);
+        sellVolume = Arrays.copyOf(sellVolume, pCapacity + 1);
+        dollarHigh = Arrays.copyOf(dollarHigh, pCapacity + 1);
+        dollarLow = Arrays.copyOf(dollarLow, pCapacity + 1);
+        buyDollarHigh = Arrays.copyOf(buyDollarHigh, pCapacity + 1);
+        buyDollarLow = Arrays.copyOf(buyDollarLow, pCapacity + 1);
+        sellDollarHigh = Arrays.copyOf(sellDollarHigh, pCapacity + 1);
+        sellDollarLow = Arrays.copyOf(sellDollarLow, pCapacity + 1);
+    }
+}
@@ -0,0 +1,711 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.trades.fidelity.impl.FidelityDayAggregate;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeColumns;
+
+/**
+ * Every trade of a ticker, day after day, kept off the heap in two memory-mapped files in the
+ * ticker directory so years of ticks can be walked at once without a trade object, or a GC
+ * pause, per trade.
+ *
+ * <p><code>tape.ftt</code> is a header followed by one fixed {@value #RECORD_SIZE} byte record
+ * per trade: price, size, bid and ask ticks, second of day and the flags of
+ * {@link FidelityTradeColumns}. The trades of a day are in time order, oldest first.
+ * <code>tape.fti</code> is a header followed by one fixed entry per day, in date order: the epoch
+ * day, the day's first trade and trade count, then the time index, the first trade of the day at
+ * or after each minute of the day. A date range is found by binary search over the day entries
+ * and a time range by the minute index and a short scan, both in the mapped files.</p>
+ *
+ * <p>The trades are mapped {@value #SEGMENT_TRADES} at a time, so the heap holds a handful of
+ * buffer objects however much history is on the tape. A day is appended by writing its trades,
+ * then its index entry; a day cut short by a crash has no index entry and is dropped when the
+ * tape is opened. A changed or backfilled day is {@link #put put} in place of, or before, the
+ * days after it. Not thread-safe; a ticker's tape is used by one thread.</p>
+ *
+ * <pre>
+ * try (FidelityTradeTape tape = FidelityTradeTape.open(tickerDir, scale)) {
+ *     FidelityTradeTape.Cursor c = tape.cursor(from, to);
+ *     while (c.next()) {
+ *         volume += c.getSizeUnits();
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityTradeTape implements Closeable {
+    private static final Logger log = LogManager.getLogger(FidelityTradeTape.class);
+
+    /** Name of the trades in each ticker directory. */
+    public static final String TAPE_FILE = "tape.ftt";
+    /** Name of the day and time index in each ticker directory. */
+    public static final String INDEX_FILE = "tape.fti";
+
+    static final int TAPE_MAGIC = 0x46545431; // FTT1
+    static final int INDEX_MAGIC = 0x46544931; // FTI1
+    static final int VERSION = 1;
+    /** Magic, version and scale. */
+    static final int HEADER_SIZE = 12;
+    /** Price, size, bid and ask, second of day, flags and padding to a multiple of 8. */
+    static final int RECORD_SIZE = 4 * 8 + 4 + 1 + 3;
+    static final int MINUTES = 24 * 60;
+    /** Epoch day, trade count, first trade and the first trade at or after each minute. */
+    static final int DAY_SIZE = 4 + 4 + 8 + 4 * MINUTES;
+    static final int SEGMENT_BITS = 24;
+    /** Trades in one mapping of the tape. */
+    static final int SEGMENT_TRADES = 1 << SEGMENT_BITS;
+    static final int SEGMENT_MASK = SEGMENT_TRADES - 1;
+    /** Trades written at a time while appending. */
+    private static final int WRITE_TRADES = 4096;
+
+    private static final int PRICE = 0;
+    private static final int SIZE = 8;
+    private static final int BID = 16;
+    private static final int ASK = 24;
+    private static final int SECOND = 32;
+    private static final int FLAGS = 36;
+
+    private final FileChannel tape;
+    private final FileChannel index;
+    private final int scale;
+    private int days;
+    private long trades;
+    private MappedByteBuffer dayIndex;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private ByteBuffer writeBuffer;
+
+    private FidelityTradeTape(FileChannel pTape, FileChannel pIndex, int pScale) {
+        tape = pTape;
+        index = pIndex;
+        scale = pScale;
+    }
+
+    /**
+     * @param pTickerDir a ticker directory.
+     * @return where its trades are kept.
+     */
+    public static File tapeFor(File pTickerDir) {
+        return new File(pTickerDir, TAPE_FILE);
+    }
+
+    /**
+     * Opens the tape of a ticker, creating it if there is none. Trades beyond the last whole day,
+     * and days whose trades are not all on the tape, left by a crash while appending, are dropped.
+     * @param pTickerDir the ticker directory.
+     * @param pScale scale of the price ticks.
+     * @return the tape.
+     * @throws IOException if the tape can not be opened, is not a tape or is at another scale.
+     */
+    public static FidelityTradeTape open(File pTickerDir, int pScale) throws IOException {
+        FileChannel tape = FileChannel.open(new File(pTickerDir, TAPE_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel index = null;
+        try {
+            index = FileChannel.open(new File(pTickerDir, INDEX_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FidelityTradeTape rVal = new FidelityTradeTape(tape, index, pScale);
+            rVal.readHeader(tape, TAPE_MAGIC, pTickerDir);
+            rVal.readHeader(index, INDEX_MAGIC, pTickerDir);
+            rVal.recover();
+            return rVal;
+        } catch (IOException | RuntimeException e) {
+            tape.close();
+            if (index != null) {
+                index.close();
+            }
+            throw e;
+        }
+    }
+
+    private void readHeader(FileChannel pChannel, int pMagic, File pTickerDir) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (pChannel.size() == 0L) {
+            header.putInt(pMagic).putInt(VERSION).putInt(scale).flip();
+            write(pChannel, header, 0L);
+            return;
+        }
+        if (pChannel.size() < HEADER_SIZE) {
+            throw new IOException("the tape in " + pTickerDir.getAbsolutePath() + " is damaged");
+        }
+        read(pChannel, header, 0L);
+        header.flip();
+        if (header.getInt() != pMagic || header.getInt() != VERSION) {
+            throw new IOException("not a trade tape in " + pTickerDir.getAbsolutePath());
+        }
+        int fileScale = header.getInt();
+        if (fileScale != scale) {
+            throw new IOException("the tape in " + pTickerDir.getAbsolutePath() + " is at scale " + fileScale + ", not " + scale);
+        }
+    }
+
+    /**
+     * Drops a day entry or trades written past the last whole day, and the days whose trades did
+     * not reach the disk before their index entry did.
+     */
+    private void recover() throws IOException {
+        long entries = (index.size() - HEADER_SIZE) / DAY_SIZE;
+        if (HEADER_SIZE + entries * DAY_SIZE != index.size()) {
+            log.warn("dropping a cut short day entry from the tape index.");
+            index.truncate(HEADER_SIZE + entries * DAY_SIZE);
+        }
+        days = (int) entries;
+        mapIndex();
+        long written = (tape.size() - HEADER_SIZE) / RECORD_SIZE;
+        int whole = days;
+        while (whole > 0 && getFirstTrade(whole - 1) + getTradeCount(whole - 1) > written) {
+            whole--;
+        }
+        if (whole < days) {
+            log.warn("dropping {} days from the tape index whose trades are not on the tape.", days - whole);
+            dayIndex = null;
+            index.truncate(dayOffset(whole));
+            days = whole;
+            mapIndex();
+        }
+        trades = days == 0 ? 0L : getFirstTrade(days - 1) + getTradeCount(days - 1);
+        long end = HEADER_SIZE + trades * RECORD_SIZE;
+        if (tape.size() > end) {
+            log.warn("dropping {} bytes of trades written past the last day on the tape.", tape.size() - end);
+            tape.truncate(end);
+        }
+    }
+
+    /**
+     * Appends a day. The trades are written oldest first.
+     * @param pDate the trading date; after the last day on the tape.
+     * @param pColumns the day's trades at the scale of the tape, in file order.
+     * @throws IOException if the day can not be written.
+     * @throws IllegalArgumentException if the date is not after the last day or the scale differs.
+     */
+    public void append(LocalDate pDate, FidelityTradeColumns pColumns) throws IOException {
+        if (pColumns.getScale() != scale) {
+            throw new IllegalArgumentException("trades are at scale " + pColumns.getScale() + ", the tape at " + scale);
+        }
+        int epochDay = (int) pDate.toEpochDay();
+        if (days > 0 && epochDay <= getEpochDay(days - 1)) {
+            throw new IllegalArgumentException(pDate + " is not after the last day on the tape, " + getLastDate());
+        }
+        ByteBuffer entry = writeTrades(epochDay, pColumns, trades);
+        // the trades reach the disk before the entry that points at them
+        tape.force(false);
+        write(index, entry, HEADER_SIZE + (long) days * DAY_SIZE);
+
+        long before = trades;
+        trades += pColumns.size();
+        days++;
+        mapIndex();
+        // the last mapping no longer covers the whole of its segment
+        int stale = (int) (before >>> SEGMENT_BITS);
+        for (int k = stale; k < segments.length; k++) {
+            segments[k] = null;
+        }
+    }
+
+    /**
+     * Writes a day's trades oldest first from a place on the tape.
+     * @return the day's index entry, ready to be written.
+     */
+    private ByteBuffer writeTrades(int pEpochDay, FidelityTradeColumns pColumns, long pFirstTrade) throws IOException {
+        int count = pColumns.size();
+        int[] order = timeOrder(pColumns);
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_TRADES * RECORD_SIZE);
+        }
+        ByteBuffer entry = ByteBuffer.allocate(DAY_SIZE);
+        entry.putInt(pEpochDay).putInt(count).putLong(pFirstTrade);
+        int minute = 0;
+        long position = HEADER_SIZE + pFirstTrade * RECORD_SIZE;
+        for (int j = 0; j < count; j++) {
+            int slot = order == null ? count - 1 - j : order[j];
+            int second = pColumns.getSecondOfDay(slot);
+            for (; minute < MINUTES && minute * 60 <= second; minute++) {
+                entry.putInt(j);
+            }
+            writeBuffer.putLong(pColumns.getPriceTicks(slot))
+                    .putLong(pColumns.getSize(slot))
+                    .putLong(pColumns.getBidTicks(slot))
+                    .putLong(pColumns.getAskTicks(slot))
+                    .putInt(second)
+                    .put(pColumns.getFlags(slot))
+                    .put((byte) 0).putShort((short) 0);
+            if (!writeBuffer.hasRemaining()) {
+                position += flush(position);
+            }
+        }
+        flush(position);
+        for (; minute < MINUTES; minute++) {
+            entry.putInt(count);
+        }
+        entry.flip();
+        return entry;
+    }
+
+    /**
+     * Puts a day on the tape: appends it if it is after the last day, replaces the day of the same
+     * date if its trades differ, or inserts it before the later days. A replace or insert rewrites
+     * the tape from that day on; the index is cut back to the day first, so a crash part way
+     * leaves a tape that ends before the day rather than one pointing at the wrong trades.
+     * @param pDate the trading date.
+     * @param pColumns the day's trades at the scale of the tape, in file order.
+     * @return false if the day was already on the tape with the same trades.
+     * @throws IOException if the day can not be written.
+     * @throws IllegalArgumentException if the scale differs.
+     */
+    public boolean put(LocalDate pDate, FidelityTradeColumns pColumns) throws IOException {
+        if (pColumns.getScale() != scale) {
+            throw new IllegalArgumentException("trades are at scale " + pColumns.getScale() + ", the tape at " + scale);
+        }
+        int k = indexOf(pDate);
+        if (k == -days - 1) {
+            append(pDate, pColumns);
+            return true;
+        }
+        if (k >= 0 && holds(k, pColumns)) {
+            return false;
+        }
+        int from = k < 0 ? -k - 1 : k;
+        int later = k < 0 ? from : from + 1;
+        ByteBuffer laterEntries = ByteBuffer.allocate((days - later) * DAY_SIZE);
+        read(index, laterEntries, dayOffset(later));
+        long first = getFirstTrade(from);
+        long laterFirst = later < days ? getFirstTrade(later) : trades;
+        long laterTrades = trades - laterFirst;
+        long moved = first + pColumns.size();
+
+        segments = new MappedByteBuffer[0];
+        dayIndex = null;
+        index.truncate(dayOffset(from));
+        index.force(false);
+        move(HEADER_SIZE + laterFirst * RECORD_SIZE, HEADER_SIZE + moved * RECORD_SIZE, laterTrades * RECORD_SIZE);
+        ByteBuffer entry = writeTrades((int) pDate.toEpochDay(), pColumns, first);
+        for (int j = 8; j < laterEntries.limit(); j += DAY_SIZE) {
+            laterEntries.putLong(j, laterEntries.getLong(j) + moved - laterFirst);
+        }
+        laterEntries.flip();
+        long laterDays = laterEntries.limit() / DAY_SIZE;
+        trades = moved + laterTrades;
+        tape.truncate(HEADER_SIZE + trades * RECORD_SIZE);
+        tape.force(false);
+        write(index, entry, dayOffset(from));
+        write(index, laterEntries, dayOffset(from + 1));
+        days = from + 1 + (int) laterDays;
+        mapIndex();
+        return true;
+    }
+
+    /**
+     * @return true if the day on the tape has the trades of the columns.
+     */
+    private boolean holds(int pDay, FidelityTradeColumns pColumns) {
+        int count = pColumns.size();
+        if (getTradeCount(pDay) != count) {
+            return false;
+        }
+        int[] order = timeOrder(pColumns);
+        long first = getFirstTrade(pDay);
+        Cursor c = new Cursor(pDay, first, first + count);
+        for (int j = 0; c.next(); j++) {
+            int slot = order == null ? count - 1 - j : order[j];
+            if (c.getPriceTicks() != pColumns.getPriceTicks(slot)
+                    || c.getSizeUnits() != pColumns.getSize(slot)
+                    || c.getBidTicks() != pColumns.getBidTicks(slot)
+                    || c.getAskTicks() != pColumns.getAskTicks(slot)
+                    || c.getSecondOfDay() != pColumns.getSecondOfDay(slot)
+                    || c.getFlags() != pColumns.getFlags(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves bytes of the tape, copying from the end first when they move up so nothing is
+     * overwritten before it is copied.
+     */
+    private void move(long pSource, long pTarget, long pBytes) throws IOException {
+        if (pSource == pTarget || pBytes == 0L) {
+            return;
+        }
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_TRADES * RECORD_SIZE);
+        }
+        long done = 0L;
+        while (done < pBytes) {
+            int n = (int) Math.min(writeBuffer.capacity(), pBytes - done);
+            long offset = pTarget > pSource ? pBytes - done - n : done;
+            writeBuffer.clear().limit(n);
+            read(tape, writeBuffer, pSource + offset);
+            writeBuffer.flip();
+            write(tape, writeBuffer, pTarget + offset);
+            done += n;
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Appends a day's trades if its date is after the last day on the tape.
+     * @param pDate the trading date.
+     * @param pColumns the day's trades.
+     * @return true if the day was appended.
+     * @throws IOException if the day can not be written.
+     */
+    public boolean appendIfNew(LocalDate pDate, FidelityTradeColumns pColumns) throws IOException {
+        if (days > 0 && pDate.toEpochDay() <= getEpochDay(days - 1)) {
+            return false;
+        }
+        append(pDate, pColumns);
+        return true;
+    }
+
+    /**
+     * Fidelity lists a day newest first, so the slots are taken last to first. When that is not in
+     * time order the slots are sorted by second, keeping the order of trades in the same second.
+     * @return the slots in time order, null if last to first is already in time order.
+     */
+    private static int[] timeOrder(FidelityTradeColumns pColumns) {
+        int count = pColumns.size();
+        boolean ordered = true;
+        for (int i = count - 1; i > 0 && ordered; i--) {
+            ordered = pColumns.getSecondOfDay(i - 1) >= pColumns.getSecondOfDay(i);
+        }
+        if (ordered) {
+            return null;
+        }
+        long[] keys = new long[count];
+        for (int j = 0; j < count; j++) {
+            int slot = count - 1 - j;
+            keys[j] = ((long) pColumns.getSecondOfDay(slot) << 32) | j;
+        }
+        Arrays.sort(keys);
+        int[] rVal = new int[count];
+        for (int j = 0; j < count; j++) {
+            rVal[j] = count - 1 - (int) keys[j];
+        }
+        return rVal;
+    }
+
+    private int flush(long pPosition) throws IOException {
+        writeBuffer.flip();
+        int rVal = writeBuffer.remaining();
+        write(tape, writeBuffer, pPosition);
+        writeBuffer.clear();
+        return rVal;
+    }
+
+    /**
+     * @return number of days on the tape.
+     */
+    public int size() {
+        return days;
+    }
+
+    /**
+     * @return number of trades on the tape.
+     */
+    public long getTradeCount() {
+        return trades;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @param pDay index of a day, oldest first.
+     * @return its epoch day.
+     */
+    public int getEpochDay(int pDay) {
+        return dayIndex.getInt(dayOffset(pDay));
+    }
+
+    /**
+     * @param pDay index of a day, oldest first.
+     * @return its date.
+     */
+    public LocalDate getDate(int pDay) {
+        return LocalDate.ofEpochDay(getEpochDay(pDay));
+    }
+
+    /**
+     * @return date of the newest day, null if the tape is empty.
+     */
+    public LocalDate getLastDate() {
+        return days == 0 ? null : getDate(days - 1);
+    }
+
+    /**
+     * @param pDay index of a day.
+     * @return number of trades that day.
+     */
+    public int getTradeCount(int pDay) {
+        return dayIndex.getInt(dayOffset(pDay) + 4);
+    }
+
+    /**
+     * @param pDay index of a day.
+     * @return index on the tape of the day's first trade.
+     */
+    public long getFirstTrade(int pDay) {
+        return dayIndex.getLong(dayOffset(pDay) + 8);
+    }
+
+    /**
+     * @param pDate a trading date.
+     * @return index of the day, or <code>-(insertion point) - 1</code> if it is not on the tape.
+     */
+    public int indexOf(LocalDate pDate) {
+        long key = pDate.toEpochDay();
+        int low = 0;
+        int high = days - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int day = getEpochDay(mid);
+            if (day < key) {
+                low = mid + 1;
+            } else if (day > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param pFrom first date, inclusive.
+     * @param pTo last date, inclusive.
+     * @return a cursor over the trades of the days on the tape between the dates, oldest first.
+     */
+    public Cursor cursor(LocalDate pFrom, LocalDate pTo) {
+        int first = dayAtOrAfter(pFrom);
+        int last = dayAtOrAfter(pTo.plusDays(1));
+        if (first >= last) {
+            return new Cursor(first, 0L, 0L);
+        }
+        return new Cursor(first, getFirstTrade(first), getFirstTrade(last - 1) + getTradeCount(last - 1));
+    }
+
+    /**
+     * @param pDate a trading date.
+     * @param pFrom first time of day, inclusive.
+     * @param pTo last time of day, exclusive.
+     * @return a cursor over the trades of the day between the times, oldest first; empty if the day is not on the tape.
+     */
+    public Cursor cursor(LocalDate pDate, LocalTime pFrom, LocalTime pTo) {
+        int day = indexOf(pDate);
+        if (day < 0) {
+            return new Cursor(0, 0L, 0L);
+        }
+        long first = getFirstTrade(day);
+        return new Cursor(day, first + tradeAtOrAfter(day, pFrom.toSecondOfDay()),
+                first + tradeAtOrAfter(day, pTo.toSecondOfDay()));
+    }
+
+    /**
+     * @param pFrom first date, inclusive.
+     * @param pTo last date, inclusive.
+     * @return totals over the trades of the days between the dates.
+     */
+    public FidelityDayAggregate aggregate(LocalDate pFrom, LocalDate pTo) {
+        FidelityDayAggregate rVal = new FidelityDayAggregate(scale);
+        Cursor c = cursor(pFrom, pTo);
+        while (c.next()) {
+            rVal.add(c.getPriceTicks(), c.getSizeUnits(), c.getSentiment(), c.isTeeTrade());
+        }
+        return rVal;
+    }
+
+    private int dayAtOrAfter(LocalDate pDate) {
+        int rVal = indexOf(pDate);
+        return rVal < 0 ? -rVal - 1 : rVal;
+    }
+
+    /**
+     * @return offset within the day of its first trade at or after the second.
+     */
+    private int tradeAtOrAfter(int pDay, int pSecondOfDay) {
+        int count = getTradeCount(pDay);
+        int minute = pSecondOfDay / 60;
+        if (minute >= MINUTES) {
+            return count;
+        }
+        int rVal = dayIndex.getInt(dayOffset(pDay) + 16 + 4 * minute);
+        long first = getFirstTrade(pDay);
+        while (rVal < count && secondOfDay(first + rVal) < pSecondOfDay) {
+            rVal++;
+        }
+        return rVal;
+    }
+
+    private static int dayOffset(int pDay) {
+        return HEADER_SIZE + pDay * DAY_SIZE;
+    }
+
+    private int secondOfDay(long pTrade) {
+        return segment(pTrade).getInt(recordOffset(pTrade) + SECOND);
+    }
+
+    private static int recordOffset(long pTrade) {
+        return (int) (pTrade & SEGMENT_MASK) * RECORD_SIZE;
+    }
+
+    /**
+     * @return the mapping holding the trade, mapped on first use.
+     */
+    private MappedByteBuffer segment(long pTrade) {
+        int k = (int) (pTrade >>> SEGMENT_BITS);
+        if (k >= segments.length) {
+            segments = Arrays.copyOf(segments, k + 1);
+        }
+        MappedByteBuffer rVal = segments[k];
+        if (rVal == null) {
+            long first = (long) k << SEGMENT_BITS;
+            long count = Math.min(SEGMENT_TRADES, trades - first);
+            try {
+                rVal = tape.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, count * RECORD_SIZE);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not map trades " + first + " on of the tape", e);
+            }
+            segments[k] = rVal;
+        }
+        return rVal;
+    }
+
+    private void mapIndex() throws IOException {
+        // a long index of every day fits one mapping: 2GB is over 350,000 days
+        dayIndex = index.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE + (long) days * DAY_SIZE);
+    }
+
+    private static void write(FileChannel pChannel, ByteBuffer pBuffer, long pPosition) throws IOException {
+        long position = pPosition;
+        while (pBuffer.hasRemaining()) {
+            position += pChannel.write(pBuffer, position);
+        }
+    }
+
+    private static void read(FileChannel pChannel, ByteBuffer pBuffer, long pPosition) throws IOException {
+        long position = pPosition;
+        while (pBuffer.hasRemaining() && pChannel.read(pBuffer, position) >= 0) {
+            position = pPosition + pBuffer.position();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        dayIndex = null;
+        try {
+            tape.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Flyweight over a range of trades on the tape, read straight from the mapped file. Nothing
+     * is allocated while moving through the range. Do not append to the tape while a cursor is in use.
+     */
+    public final class Cursor {
+        private final long end;
+        private long trade;
+        private int day;
+        private long dayEnd;
+        private MappedByteBuffer buffer;
+        private int offset;
+
+        Cursor(int pDay, long pStart, long pEnd) {
+            end = pEnd;
+            trade = pStart - 1;
+            day = pDay;
+            dayEnd = pStart < pEnd ? getFirstTrade(pDay) + getTradeCount(pDay) : pEnd;
+        }
+
+        /**
+         * @return false once the last trade of the range has been passed.
+         */
+        public boolean next() {
+            if (trade + 1 >= end) {
+                trade = end;
+                return false;
+            }
+            trade++;
+            while (trade >= dayEnd) {
+                day++;
+                dayEnd = getFirstTrade(day) + getTradeCount(day);
+            }
+            if (buffer == null || (trade & SEGMENT_MASK) == 0) {
+                buffer = segment(trade);
+            }
+            offset = recordOffset(trade);
+            return true;
+        }
+
+        /**
+         * @return index of the trade on the tape.
+         */
+        public long getIndex() {
+            return trade;
+        }
+
+        public int getEpochDay() {
+            return FidelityTradeTape.this.getEpochDay(day);
+        }
+
+        public int getSecondOfDay() {
+            return buffer.getInt(offset + SECOND);
+        }
+
+        public long getPriceTicks() {
+            return buffer.getLong(offset + PRICE);
+        }
+
+        public long getSizeUnits() {
+            return buffer.getLong(offset + SIZE);
+        }
+
+        public long getBidTicks() {
+            return buffer.getLong(offset + BID);
+        }
+
+        public long getAskTicks() {
+            return buffer.getLong(offset + ASK);
+        }
+
+        public byte getFlags() {
+            return buffer.get(offset + FLAGS);
+        }
+
+        public boolean isTeeTrade() {
+            return (getFlags() & FidelityTradeColumns.FLAG_TEE_TRADE) != 0;
+        }
+
+        /**
+         * @return {@link FidelityDayAggregate#BUY}, {@link FidelityDayAggregate#SELL} or {@link FidelityDayAggregate#UNKNOWN}.
+         */
+        public byte getSentiment() {
+            return FidelityDayAggregate.classify(getPriceTicks(), getBidTicks(), getAskTicks());
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysis;
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysisResult;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityArchive;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.trades.config.Configuration;
+
+/**
+ * Keeps the summaries and wavelet coefficients of the home tree current while exports land in it.
+ * The ticker <code>input</code> and chart directories are watched with a <code>WatchService</code>;
+ * an export is taken in once its size and age have not changed for
+ * <code>com.cobbinterwebs.fidelity.watch.settle</code> milliseconds, so a file still being written is
+ * left alone.
+ *
+ * <p>Work is done a ticker at a time: a ticker with a settled trade export has its days processed
+ * by a single-threaded {@link FidelityBatchProcessor} and its summary rewritten; a ticker with a
+ * settled chart export has its charts analyzed by {@link FidelityChartAnalysis}. A ticker is never
+ * worked on by two threads at once and exports that settle while it is being worked on are taken in
+ * by one more pass, so its days never race each other. The tickers run on
+ * <code>com.cobbinterwebs.fidelity.batch.threads</code> workers; once
+ * <code>com.cobbinterwebs.fidelity.watch.queue</code> tickers are waiting, the watcher waits too.</p>
+ *
+ * <p>The daemon always keeps each ticker's {@link FidelityRollingStore}, whatever
+ * <code>com.cobbinterwebs.fidelity.rolling.store</code> says, so only the new or changed exports of a
+ * ticker are parsed when one lands rather than all of its days.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityWatchDaemon implements Closeable {
+    private static final Logger log = LogManager.getLogger(FidelityWatchDaemon.class);
+
+    /** How often, in milliseconds, the exports waiting to settle are looked at. */
+    private static final long POLL_MILLIS = 100L;
+
+    /**
+     * What changed in a ticker's directory.
+     */
+    public enum Kind {
+        TRADES, CHARTS
+    }
+
+    private final File homeDir;
+    private final int threads;
+    private final long settleMillis;
+    private final Semaphore queue;
+    private final Map<WatchKey, Path> watched = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final Map<String, TickerLane> lanes = new ConcurrentHashMap<>();
+    private WatchService watcher;
+    private ExecutorService workers;
+    private Thread watchThread;
+    private volatile Consumer<FidelityBatchResult.TickerResult> tickerListener;
+    private volatile Consumer<FidelityChartAnalysisResult> chartListener;
+
+    /**
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     * @param pThreads tickers worked on at once.
+     * @param pQueue tickers that may wait for a worker.
+     * @param pSettleMillis time an export must be left alone before it is taken in.
+     */
+    public FidelityWatchDaemon(File pHomeDir, int pThreads, int pQueue, long pSettleMillis) {
+        homeDir = pHomeDir;
+        threads = Math.max(1, pThreads);
+        queue = new Semaphore(threads + Math.max(1, pQueue));
+        settleMillis = pSettleMillis;
+    }
+
+    /**
+     * Uses the thread count, queue and settle time from the configuration.
+     * @param pHomeDir the <code>com.cobbinterwebs.trades.home</code> directory.
+     */
+    public FidelityWatchDaemon(File pHomeDir) {
+        this(pHomeDir, FidelityConfiguration.getInstance().getBatchThreads(), FidelityConfiguration.getInstance().getWatchQueue(),
+                FidelityConfiguration.getInstance().getWatchSettle());
+    }
+
+    /**
+     * @param pListener called, on a worker, after a ticker's days were processed and its summary written.
+     */
+    public void setTickerListener(Consumer<FidelityBatchResult.TickerResult> pListener) {
+        tickerListener = pListener;
+    }
+
+    /**
+     * @param pListener called, on a worker, after a ticker's charts were analyzed and written.
+     */
+    public void setChartListener(Consumer<FidelityChartAnalysisResult> pListener) {
+        chartListener = pListener;
+    }
+
+    /**
+     * Starts watching and brings every ticker up to date with the exports already there.
+     * @throws IOException if the home tree can not be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("already started");
+        }
+        if (!FidelityConfiguration.getInstance().isRollingStore()) {
+            log.info("{} is off; the daemon keeps the rolling stores anyway, so only new exports are parsed.",
+                    FidelityConfiguration.PropertyConstants.ROLLING_STORE_KEY);
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "fidelity-watch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        register(homeDir.toPath());
+        File[] tickerDirs = homeDir.listFiles(File::isDirectory);
+        if (tickerDirs != null) {
+            for (File tickerDir : tickerDirs) {
+                registerTicker(tickerDir.toPath());
+            }
+        }
+        watchThread = new Thread(this::watch, "fidelity-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("watching {} with {} workers.", homeDir.getAbsolutePath(), threads);
+    }
+
+    /**
+     * Stops watching and waits for the tickers being worked on.
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            log.warn("could not close the watch service.", e);
+        }
+        watchThread.interrupt();
+        workers.shutdown();
+        try {
+            watchThread.join();
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("tickers still being worked on after a minute.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The watcher thread: takes in the events, then hands the exports that settled to the workers.
+     */
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(key);
+                    key = watcher.poll();
+                }
+                settle(System.currentTimeMillis());
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("stopped watching {}", homeDir.getAbsolutePath());
+        }
+    }
+
+    private void handle(WatchKey pKey) {
+        Path dir = watched.get(pKey);
+        for (WatchEvent<?> event : pKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("missed changes under {}, looking at every ticker again.", homeDir.getAbsolutePath());
+                rescan();
+                continue;
+            }
+            if (dir != null) {
+                changed(dir.resolve((Path) event.context()));
+            }
+        }
+        if (!pKey.reset()) {
+            watched.remove(pKey);
+        }
+    }
+
+    /**
+     * Notes a change in the home tree. A new ticker, input or chart directory is watched and what it
+     * already holds is taken in; an export is left to settle.
+     */
+    private void changed(Path pPath) {
+        Path parent = pPath.getParent();
+        if (Files.isDirectory(pPath)) {
+            if (parent.equals(homeDir.toPath())) {
+                registerTicker(pPath);
+            } else if (parent.getParent().equals(homeDir.toPath()) && kindOf(pPath) != null) {
+                registerExports(pPath);
+            }
+            return;
+        }
+        if (kindOf(parent) != null && isExport(pPath)) {
+            pending.computeIfAbsent(pPath, p -> new Pending()).touch(pPath, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Hands the exports that have not changed for the settle time to their tickers.
+     */
+    void settle(long pNow) {
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, Pending> entry = it.next();
+            Path path = entry.getKey();
+            if (!Files.exists(path)) {
+                it.remove();
+            } else if (!entry.getValue().touch(path, pNow) && pNow - entry.getValue().since >= settleMillis) {
+                it.remove();
+                Path kindDir = path.getParent();
+                submit(kindDir.getParent().getFileName().toString(), kindOf(kindDir));
+            }
+        }
+    }
+
+    private void rescan() {
+        File[] tickerDirs = homeDir.listFiles(File::isDirectory);
+        if (tickerDirs != null) {
+            for (File tickerDir : tickerDirs) {
+                registerTicker(tickerDir.toPath());
+            }
+        }
+    }
+
+    private void register(Path pDir) {
+        try {
+            WatchKey key = pDir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watched.put(key, pDir);
+        } catch (IOException e) {
+            log.error("can not watch {}", pDir, e);
+        }
+    }
+
+    private void registerTicker(Path pTickerDir) {
+        register(pTickerDir);
+        for (Kind kind : Kind.values()) {
+            Path dir = pTickerDir.resolve(dirName(kind));
+            if (Files.isDirectory(dir)) {
+                registerExports(dir);
+            }
+        }
+    }
+
+    /**
+     * Watches an input or chart directory and brings its ticker up to date with what is there.
+     */
+    private void registerExports(Path pDir) {
+        if (watched.containsValue(pDir)) {
+            submit(pDir.getParent().getFileName().toString(), kindOf(pDir));
+            return;
+        }
+        register(pDir);
+        submit(pDir.getParent().getFileName().toString(), kindOf(pDir));
+    }
+
+    /**
+     * Queues a pass over a ticker. Blocks while the queue is full.
+     */
+    private void submit(String pTicker, Kind pKind) {
+        TickerLane lane = lanes.computeIfAbsent(pTicker, TickerLane::new);
+        if (!lane.mark(pKind)) {
+            return;
+        }
+        try {
+            queue.acquire();
+        } catch (InterruptedException e) {
+            lane.unmark();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            workers.execute(lane);
+        } catch (RuntimeException e) {
+            lane.unmark();
+            queue.release();
+            log.warn("{} not queued, the watcher is closing.", pTicker);
+        }
+    }
+
+    private static String dirName(Kind pKind) {
+        return pKind == Kind.TRADES ? FidelityInputFile.INPUT_DIR : FidelityChartAnalysis.CHART_DIR;
+    }
+
+    private Kind kindOf(Path pDir) {
+        Path tickerDir = pDir.getParent();
+        if (tickerDir == null || !homeDir.toPath().equals(tickerDir.getParent())) {
+            return null;
+        }
+        for (Kind kind : Kind.values()) {
+            if (dirName(kind).equals(pDir.getFileName().toString())) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private boolean isExport(Path pPath) {
+        String name = pPath.getFileName().toString();
+        if (name.toLowerCase().endsWith(FidelityArchive.ZIP)) {
+            return true;
+        }
+        return kindOf(pPath.getParent()) == Kind.TRADES ? FidelityInputFile.isExportName(name) : FidelityChartAnalysis.isChartName(name);
+    }
+
+    /**
+     * Size and age of an export the last time it was looked at, and since when they have not changed.
+     */
+    private static final class Pending {
+        long size = -1L;
+        long modified = -1L;
+        long since;
+
+        /**
+         * @return true if the export changed since it was last looked at.
+         */
+        boolean touch(Path pPath, long pNow) {
+            File file = pPath.toFile();
+            long nowSize = file.length();
+            long nowModified = file.lastModified();
+            if (nowSize == size && nowModified == modified) {
+                return false;
+            }
+            size = nowSize;
+            modified = nowModified;
+            since = pNow;
+            return true;
+        }
+    }
+
+    /**
+     * The work waiting for one ticker. Runs on one worker at a time and keeps going while more
+     * work for the ticker comes in.
+     */
+    private final class TickerLane implements Runnable {
+        private final String ticker;
+        private boolean trades;
+        private boolean charts;
+        private boolean queued;
+
+        TickerLane(String pTicker) {
+            ticker = pTicker;
+        }
+
+        /**
+         * @return true if the lane has to be queued; false if it already is.
+         */
+        synchronized boolean mark(Kind pKind) {
+            if (pKind == Kind.TRADES) {
+                trades = true;
+            } else {
+                charts = true;
+            }
+            if (queued) {
+                return false;
+            }
+            queued = true;
+            return true;
+        }
+
+        synchronized void unmark() {
+            queued = false;
+        }
+
+        @Override
+        public void run() {
+            ThreadContext.put("ticker", ticker);
+            try {
+                while (true) {
+                    boolean doTrades;
+                    boolean doCharts;
+                    synchronized (this) {
+                        doTrades = trades;
+                        doCharts = charts;
+                        trades = false;
+                        charts = false;
+                        if (!doTrades && !doCharts) {
+                            queued = false;
+                            return;
+                        }
+                    }
+                    if (doTrades) {
+                        processTrades(ticker);
+                    }
+                    if (doCharts) {
+                        analyzeCharts(ticker);
+                    }
+                }
+            } finally {
+                ThreadContext.remove("ticker");
+                queue.release();
+            }
+        }
+    }
+
+    /**
+     * Processes the days of a ticker that are not in its rolling store yet and rewrites its summary.
+     */
+    void processTrades(String pTicker) {
+        List<FidelityInputFile> inputs = FidelityInputFile.discover(homeDir, pTicker);
+        if (inputs.isEmpty()) {
+            return;
+        }
+        FidelityBatchProcessor processor = new FidelityBatchProcessor(homeDir, 1, FidelityBatchProcessor.ExecutorKind.PLATFORM);
+        processor.setRollingStore(true);
+        try {
+            processor.process(inputs, ticker -> {
+                try {
+                    processor.writeSummary(ticker);
+                } catch (IOException e) {
+                    log.error("could not write the summary of {}", ticker.getTicker(), e);
+                }
+                Consumer<FidelityBatchResult.TickerResult> listener = tickerListener;
+                if (listener != null) {
+                    listener.accept(ticker);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("processing {} failed", pTicker, e);
+        }
+    }
+
+    /**
+     * Transforms the charts of a ticker and rewrites its coefficients.
+     */
+    void analyzeCharts(String pTicker) {
+        List<File> charts = FidelityChartAnalysis.discover(homeDir, pTicker);
+        if (charts.isEmpty()) {
+            return;
+        }
+        FidelityChartAnalysis analysis = new FidelityChartAnalysis(homeDir, 1);
+        try {
+            FidelityChartAnalysisResult result = analysis.analyze(Collections.singletonMap(pTicker, charts));
+            analysis.writeCoefficients(result, FidelityOutputSink.Format.of(FidelityConfiguration.getInstance().getOutputFormat()));
+            Consumer<FidelityChartAnalysisResult> listener = chartListener;
+            if (listener != null) {
+                listener.accept(result);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("analyzing the charts of {} failed", pTicker, e);
+        }
+    }
+
+    /**
+     * Command line entry point. Runs until the process is stopped.
+     * @param args <code>-home dir</code>, optional <code>-threads n</code>.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("home", true, "home directory holding the ticker directories");
+        options.addOption("threads", true, "tickers worked on at once");
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("home")) {
+                System.setProperty(Configuration.PropertyConstants.HOME_KEY, cmd.getOptionValue("home"));
+            }
+            if (cmd.hasOption("threads")) {
+                System.setProperty(FidelityConfiguration.PropertyConstants.BATCH_THREADS_KEY, cmd.getOptionValue("threads"));
+            }
+            FidelityWatchDaemon daemon = new FidelityWatchDaemon(FidelityConfiguration.homeDirectory());
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "fidelity-watch-shutdown"));
+            daemon.start();
+            daemon.watchThread.join();
+        } catch (ParseException e) {
+            new HelpFormatter().printHelp(FidelityWatchDaemon.class.getSimpleName(), options);
+            System.exit(2);
+        } catch (IOException e) {
+            log.error("could not watch the home directory.", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
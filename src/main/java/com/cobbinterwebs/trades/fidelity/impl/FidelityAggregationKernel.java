@@ -0,0 +1,131 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.fidelity.math.FixedPointSum;
+
+/**
+ * Folds a block of trades held in primitive columns into a set of day totals: each trade is
+ * classified by its price against the bid and ask, and the volume, dollar volume and the buy and
+ * sell shares of both are summed along with the T-trade count.
+ *
+ * <p>The scalar kernel is always there. The vector kernel, built from <code>src/vector/java</code>
+ * with <code>mvn -P vector</code> on a JDK with <code>jdk.incubator.vector</code>, does the same with
+ * SIMD masks and is used when <code>com.cobbinterwebs.fidelity.kernel</code> is <code>vector</code>
+ * and the runtime has the module (<code>--add-modules jdk.incubator.vector</code>). Both give exactly
+ * the same totals.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public abstract class FidelityAggregationKernel {
+    private static final Logger log = LogManager.getLogger(FidelityAggregationKernel.class);
+
+    /** Class of the vector kernel; looked up reflectively, it is only compiled with the vector profile. */
+    static final String VECTOR_KERNEL = "com.cobbinterwebs.trades.fidelity.impl.FidelityVectorKernel";
+
+    /** The kernel that is always available. */
+    public static final FidelityAggregationKernel SCALAR = new Scalar();
+
+    private static volatile FidelityAggregationKernel vector;
+    private static volatile boolean vectorLooked;
+
+    /**
+     * @return the kernel named by <code>com.cobbinterwebs.fidelity.kernel</code>; the scalar kernel
+     *         if the vector kernel was asked for but is not available.
+     */
+    public static FidelityAggregationKernel getInstance() {
+        if (!"vector".equals(FidelityConfiguration.getInstance().getKernel())) {
+            return SCALAR;
+        }
+        FidelityAggregationKernel rVal = vector();
+        return rVal == null ? SCALAR : rVal;
+    }
+
+    /**
+     * @return the vector kernel, null if it was not built or the runtime lacks <code>jdk.incubator.vector</code>.
+     */
+    public static FidelityAggregationKernel vector() {
+        if (!vectorLooked) {
+            synchronized (FidelityAggregationKernel.class) {
+                if (!vectorLooked) {
+                    try {
+                        vector = (FidelityAggregationKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+                    } catch (ReflectiveOperationException | LinkageError e) {
+                        log.info("the vector kernel is not available ({}), using the scalar kernel.", e.toString());
+                    }
+                    vectorLooked = true;
+                }
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * @return <code>scalar</code> or <code>vector</code>.
+     */
+    public abstract String getName();
+
+    /**
+     * Classifies the trades <code>pFrom</code> to <code>pTo</code> by {@link FidelityDayAggregate#classify(long, long, long)}
+     * and adds their totals.
+     * @param pPrice price ticks.
+     * @param pSize sizes.
+     * @param pBid bid ticks, or {@link FixedPoint#NONE}.
+     * @param pAsk ask ticks, or {@link FixedPoint#NONE}.
+     * @param pFlags flags as kept by {@link FidelityTradeColumns}; only the T-trade bit is read.
+     * @param pFrom first trade, inclusive.
+     * @param pTo last trade, exclusive.
+     * @param pAggregate totals at the scale of the ticks.
+     */
+    public abstract void aggregate(long[] pPrice, long[] pSize, long[] pBid, long[] pAsk, byte[] pFlags,
+            int pFrom, int pTo, FidelityDayAggregate pAggregate);
+
+    /**
+     * A trade at a time, with exact 128 bit dollar volumes.
+     */
+    static final class Scalar extends FidelityAggregationKernel {
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void aggregate(long[] pPrice, long[] pSize, long[] pBid, long[] pAsk, byte[] pFlags,
+                int pFrom, int pTo, FidelityDayAggregate pAggregate) {
+            int teeTrades = 0;
+            long volume = 0L;
+            long buyVolume = 0L;
+            long sellVolume = 0L;
+            FixedPointSum dollars = new FixedPointSum();
+            FixedPointSum buyDollars = new FixedPointSum();
+            FixedPointSum sellDollars = new FixedPointSum();
+            for (int i = pFrom; i < pTo; i++) {
+                long price = pPrice[i];
+                long size = pSize[i];
+                teeTrades += pFlags[i] & FidelityTradeColumns.FLAG_TEE_TRADE;
+                volume += size;
+                dollars.addProduct(price, size);
+                byte sentiment = FidelityDayAggregate.classify(price, pBid[i], pAsk[i]);
+                if (sentiment == FidelityDayAggregate.BUY) {
+                    buyVolume += size;
+                    buyDollars.addProduct(price, size);
+                } else if (sentiment == FidelityDayAggregate.SELL) {
+                    sellVolume += size;
+                    sellDollars.addProduct(price, size);
+                }
+            }
+            pAggregate.addTotals(pTo - pFrom, teeTrades, volume, buyVolume, sellVolume, dollars, buyDollars, sellDollars);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.fidelity.math.FixedPointSum;
+import com.cobbinterwebs.trades.ITradeRecord;
+
+/**
+ * The day totals kept in fixed point. Volumes are longs and dollar volumes are exact
+ * 128 bit sums of price ticks times size, so nothing is rounded until the totals are
+ * converted to BigDecimal for the summary.
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityDayAggregate {
+    /** Sentiment code. The trade went off between the bid and the ask, or there was no quote. */
+    public static final byte UNKNOWN = 0;
+    /** Sentiment code. The trade went off at or above the ask. */
+    public static final byte BUY = 1;
+    /** Sentiment code. The trade went off at or below the bid. */
+    public static final byte SELL = 2;
+
+    private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100L);
+
+    private final int scale;
+    private int tradeCount;
+    private int teeTradeCount;
+    private long volume;
+    private long buyVolume;
+    private long sellVolume;
+    private long unknownVolume;
+    private final FixedPointSum dollarVolume = new FixedPointSum();
+    private final FixedPointSum buyDollarVolume = new FixedPointSum();
+    private final FixedPointSum sellDollarVolume = new FixedPointSum();
+    private final FixedPointSum unknownDollarVolume = new FixedPointSum();
+
+    /**
+     * @param pScale scale of the price ticks that will be added.
+     */
+    public FidelityDayAggregate(int pScale) {
+        scale = pScale;
+    }
+
+    /**
+     * Same rule as the BigDecimal sentiment in the core TradeRecord: at or above the ask is a buy,
+     * at or below the bid is a sell, anything else (including a missing quote) is unknown.
+     * @param pPriceTicks trade price.
+     * @param pBidTicks bid, or {@link FixedPoint#NONE}.
+     * @param pAskTicks ask, or {@link FixedPoint#NONE}.
+     * @return {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}.
+     */
+    public static byte classify(long pPriceTicks, long pBidTicks, long pAskTicks) {
+        if (pAskTicks != FixedPoint.NONE && pPriceTicks >= pAskTicks) {
+            return BUY;
+        }
+        if (pBidTicks != FixedPoint.NONE && pPriceTicks <= pBidTicks) {
+            return SELL;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @param pSentiment {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}.
+     * @return the matching core enum value.
+     */
+    public static ITradeRecord.BuySell toBuySell(byte pSentiment) {
+        switch (pSentiment) {
+        case BUY:
+            return ITradeRecord.BuySell.BUY;
+        case SELL:
+            return ITradeRecord.BuySell.SELL;
+        default:
+            return ITradeRecord.BuySell.UNKNOWN;
+        }
+    }
+
+    /**
+     * @param pBuySell the core enum value.
+     * @return {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}.
+     */
+    public static byte toSentiment(ITradeRecord.BuySell pBuySell) {
+        switch (pBuySell) {
+        case BUY:
+            return BUY;
+        case SELL:
+            return SELL;
+        default:
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * @param pTradeRecord a trade parsed in fixed-point mode at the same scale.
+     */
+    public void add(FidelityTradeRecord pTradeRecord) {
+        add(pTradeRecord.getPriceTicks(), pTradeRecord.getSizeUnits(),
+                classify(pTradeRecord.getPriceTicks(), pTradeRecord.getBidTicks(), pTradeRecord.getAskTicks()),
+                pTradeRecord.isTeeTrade());
+    }
+
+    /**
+     * Folds the trade on the scanner's current row into the totals without creating a record.
+     * @param pRow scanner positioned on a trade row.
+     */
+    public void add(FidelityCSVScanner pRow) {
+        long priceTicks = pRow.getScaled(FidelityTradeRecord.Indexes.LAST_PRICE, scale);
+        long size = pRow.getLong(FidelityTradeRecord.Indexes.LAST_SIZE);
+        long bidTicks = pRow.isDecimal(FidelityTradeRecord.Indexes.BID_PRICE)
+                ? pRow.getScaled(FidelityTradeRecord.Indexes.BID_PRICE, scale) : FixedPoint.NONE;
+        long askTicks = pRow.isDecimal(FidelityTradeRecord.Indexes.ASK_PRICE)
+                ? pRow.getScaled(FidelityTradeRecord.Indexes.ASK_PRICE, scale) : FixedPoint.NONE;
+        add(priceTicks, size, classify(priceTicks, bidTicks, askTicks),
+                pRow.fieldEquals(FidelityTradeRecord.Indexes.CONDITION, "T"));
+    }
+
+    /**
+     * Folds one trade into the totals.
+     * @param pPriceTicks trade price.
+     * @param pSize trade size.
+     * @param pSentiment {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}.
+     * @param pTeeTrade true for a T (extended hours) trade.
+     */
+    public void add(long pPriceTicks, long pSize, byte pSentiment, boolean pTeeTrade) {
+        tradeCount++;
+        if (pTeeTrade) {
+            teeTradeCount++;
+        }
+        volume += pSize;
+        dollarVolume.addProduct(pPriceTicks, pSize);
+        switch (pSentiment) {
+        case BUY:
+            buyVolume += pSize;
+            buyDollarVolume.addProduct(pPriceTicks, pSize);
+            break;
+        case SELL:
+            sellVolume += pSize;
+            sellDollarVolume.addProduct(pPriceTicks, pSize);
+            break;
+        default:
+            unknownVolume += pSize;
+            unknownDollarVolume.addProduct(pPriceTicks, pSize);
+        }
+    }
+
+    /**
+     * Adds another set of totals, at the same scale, to this one.
+     * @param pOther the totals to add.
+     */
+    public void merge(FidelityDayAggregate pOther) {
+        tradeCount += pOther.tradeCount;
+        teeTradeCount += pOther.teeTradeCount;
+        volume += pOther.volume;
+        buyVolume += pOther.buyVolume;
+        sellVolume += pOther.sellVolume;
+        unknownVolume += pOther.unknownVolume;
+        dollarVolume.add(pOther.dollarVolume);
+        buyDollarVolume.add(pOther.buyDollarVolume);
+        sellDollarVolume.add(pOther.sellDollarVolume);
+        unknownDollarVolume.add(pOther.unknownDollarVolume);
+    }
+
+    /**
+     * Adds totals taken elsewhere, e.g. the difference of two entries of a {@link FidelityTradeIndex}.
+     * The unknown volumes are what is left of the volumes after the buys and sells.
+     * @param pTradeCount number of trades.
+     * @param pTeeTradeCount number of T trades.
+     * @param pVolume volume.
+     * @param pBuyVolume volume of the buys.
+     * @param pSellVolume volume of the sells.
+     * @param pDollarVolume dollar volume, at the scale of these totals.
+     * @param pBuyDollarVolume dollar volume of the buys.
+     * @param pSellDollarVolume dollar volume of the sells.
+     */
+    public void addTotals(int pTradeCount, int pTeeTradeCount, long pVolume, long pBuyVolume, long pSellVolume,
+            FixedPointSum pDollarVolume, FixedPointSum pBuyDollarVolume, FixedPointSum pSellDollarVolume) {
+        tradeCount += pTradeCount;
+        teeTradeCount += pTeeTradeCount;
+        volume += pVolume;
+        buyVolume += pBuyVolume;
+        sellVolume += pSellVolume;
+        unknownVolume += pVolume - pBuyVolume - pSellVolume;
+        dollarVolume.add(pDollarVolume);
+        buyDollarVolume.add(pBuyDollarVolume);
+        sellDollarVolume.add(pSellDollarVolume);
+        unknownDollarVolume.add(pDollarVolume);
+        unknownDollarVolume.subtract(pBuyDollarVolume);
+        unknownDollarVolume.subtract(pSellDollarVolume);
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getTradeCount() {
+        return tradeCount;
+    }
+
+    public int getTeeTradeCount() {
+        return teeTradeCount;
+    }
+
+    public long getVolumeUnits() {
+        return volume;
+    }
+
+    public long getBuyVolumeUnits() {
+        return buyVolume;
+    }
+
+    public long getSellVolumeUnits() {
+        return sellVolume;
+    }
+
+    public long getUnknownVolumeUnits() {
+        return unknownVolume;
+    }
+
+    public FixedPointSum getDollarVolumeSum() {
+        return dollarVolume;
+    }
+
+    public FixedPointSum getBuyDollarVolumeSum() {
+        return buyDollarVolume;
+    }
+
+    public FixedPointSum getSellDollarVolumeSum() {
+        return sellDollarVolume;
+    }
+
+    public FixedPointSum getUnknownDollarVolumeSum() {
+        return unknownDollarVolume;
+    }
+
+    public BigDecimal getVolume() {
+        return BigDecimal.valueOf(volume);
+    }
+
+    public BigDecimal getBuyVolume() {
+        return BigDecimal.valueOf(buyVolume);
+    }
+
+    public BigDecimal getSellVolume() {
+        return BigDecimal.valueOf(sellVolume);
+    }
+
+    public BigDecimal getUnknownVolume() {
+        return BigDecimal.valueOf(unknownVolume);
+    }
+
+    public BigDecimal getDollarVolume() {
+        return dollarVolume.toBigDecimal(scale);
+    }
+
+    public BigDecimal getBuyDollarVolume() {
+        return buyDollarVolume.toBigDecimal(scale);
+    }
+
+    public BigDecimal getSellDollarVolume() {
+        return sellDollarVolume.toBigDecimal(scale);
+    }
+
+    public BigDecimal getUnknownDollarVolume() {
+        return unknownDollarVolume.toBigDecimal(scale);
+    }
+
+    /**
+     * @return dollar volume over volume, the volume weighted average price.
+     */
+    public BigDecimal getAveragePrice() {
+        if (volume == 0L) {
+            return BigDecimal.ZERO;
+        }
+        return getDollarVolume().divide(getVolume(), scale, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal getPctBuyVol() {
+        return percent(getBuyVolume(), getVolume());
+    }
+
+    public BigDecimal getPctSellVol() {
+        return percent(getSellVolume(), getVolume());
+    }
+
+    public BigDecimal getPctUnknownVol() {
+        return percent(getUnknownVolume(), getVolume());
+    }
+
+    public BigDecimal getPctBuyDolVol() {
+        return percent(getBuyDollarVolume(), getDollarVolume());
+    }
+
+    public BigDecimal getPctSellDolVol() {
+        return percent(getSellDollarVolume(), getDollarVolume());
+    }
+
+    public BigDecimal getPctUnknownDolVol() {
+        return percent(getUnknownDollarVolume(), getDollarVolume());
+    }
+
+    private BigDecimal percent(BigDecimal pPart, BigDecimal pTotal) {
+        if (pTotal.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        return pPart.multiply(ONE_HUNDRED).divide(pTotal, scale, RoundingMode.HALF_UP);
+    }
+}
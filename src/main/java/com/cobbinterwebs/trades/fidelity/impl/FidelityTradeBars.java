@@ -0,0 +1,531 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns.Series;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartRecord;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.io.FidelityFileException;
+import com.cobbinterwebs.fidelity.io.FidelityQuarantine;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.trades.config.Configuration;
+
+import jwave.exceptions.JWaveException;
+
+/**
+ * The trades of one day resampled into OHLCV bars of a fixed number of seconds, with the
+ * buy and sell volume of each bar. Prices stay in fixed-point ticks until they are handed
+ * out as doubles.
+ *
+ * <p>Trades are best added in export order, newest first, which only ever opens a bar at the
+ * end; trades out of that order, e.g. the newer trades a refresh put after a day's columns, go
+ * into their bar by its start. {@link #finish()} puts the bars in time order and fills the intervals without trades with a flat bar at the previous close and no
+ * volume, so the series are evenly spaced for the wavelet transforms.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityTradeBars {
+    static final DateTimeFormatter EXPORT_DATE = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    static final int INITIAL_CAPACITY = 64;
+
+    private final int interval;
+    private final int scale;
+    private String dateStr;
+    private boolean finished;
+
+    private int size;
+    private int[] bucket = new int[INITIAL_CAPACITY];
+    private long[] open = new long[INITIAL_CAPACITY];
+    private long[] high = new long[INITIAL_CAPACITY];
+    private long[] low = new long[INITIAL_CAPACITY];
+    private long[] close = new long[INITIAL_CAPACITY];
+    private int[] openSecond = new int[INITIAL_CAPACITY];
+    private int[] closeSecond = new int[INITIAL_CAPACITY];
+    private long[] volume = new long[INITIAL_CAPACITY];
+    private long[] buyVolume = new long[INITIAL_CAPACITY];
+    private long[] sellVolume = new long[INITIAL_CAPACITY];
+    private int[] tradeCount = new int[INITIAL_CAPACITY];
+
+    /**
+     * @param pInterval bar length in seconds.
+     * @param pScale scale of the price ticks that will be added.
+     */
+    public FidelityTradeBars(int pInterval, int pScale) {
+        if (pInterval <= 0) {
+            throw new IllegalArgumentException("bar interval must be positive: " + pInterval);
+        }
+        interval = pInterval;
+        scale = pScale;
+    }
+
+    /**
+     * @param pInterval <code>1s</code>, <code>5s</code>, <code>1m</code>, <code>5m</code> and so on,
+     * or a plain number of seconds.
+     * @return the interval in seconds.
+     * @throws IllegalArgumentException if the interval can not be read or is not positive.
+     */
+    public static int parseInterval(String pInterval) {
+        String text = pInterval.trim().toLowerCase();
+        int unit = 1;
+        if (text.endsWith("s")) {
+            text = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("m")) {
+            unit = 60;
+            text = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("h")) {
+            unit = 3600;
+            text = text.substring(0, text.length() - 1);
+        }
+        int rVal;
+        try {
+            rVal = Integer.parseInt(text.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a bar interval: " + pInterval, e);
+        }
+        if (rVal <= 0) {
+            throw new IllegalArgumentException("bar interval must be positive: " + pInterval);
+        }
+        return rVal;
+    }
+
+    /**
+     * Resamples a processed day. Uses the day's columns or fixed-point trades when it kept them,
+     * otherwise reads the export again without keeping the trades.
+     * @param pDay a processed day.
+     * @param pInterval bar length in seconds.
+     * @return the finished bars.
+     * @throws FidelityFileException if the export has to be read again and can not be.
+     */
+    public static FidelityTradeBars of(FidelityTradeDay pDay, int pInterval) {
+        FidelityTradeColumns columns = pDay.getTradeColumns();
+        if (columns != null) {
+            FidelityTradeBars rVal = of(columns, pInterval);
+            rVal.dateStr = pDay.getDateStr();
+            return rVal;
+        }
+        List<FidelityTradeRecord> trades = pDay.getFixedPointTrades();
+        if (!trades.isEmpty()) {
+            FidelityTradeBars rVal = new FidelityTradeBars(pInterval, trades.get(0).getScale());
+            rVal.dateStr = pDay.getDateStr();
+            for (FidelityTradeRecord trade : trades) {
+                rVal.add(trade.getSecondOfDay(), trade.getPriceTicks(), trade.getSizeUnits(),
+                        FidelityDayAggregate.classify(trade.getPriceTicks(), trade.getBidTicks(), trade.getAskTicks()));
+            }
+            rVal.finish();
+            return rVal;
+        }
+        return read(pDay.getExportFile(), pInterval, FidelityConfiguration.getInstance().getScale());
+    }
+
+    /**
+     * @param pColumns the trades of a day, e.g. in export order.
+     * @param pInterval bar length in seconds.
+     * @return the finished bars; no date.
+     */
+    public static FidelityTradeBars of(FidelityTradeColumns pColumns, int pInterval) {
+        FidelityTradeBars rVal = new FidelityTradeBars(pInterval, pColumns.getScale());
+        for (int i = 0; i < pColumns.size(); i++) {
+            rVal.add(pColumns.getSecondOfDay(i), pColumns.getPriceTicks(i), pColumns.getSize(i), pColumns.getSentiment(i));
+        }
+        rVal.finish();
+        return rVal;
+    }
+
+    /**
+     * Streams a trade export straight into bars; no trade is kept.
+     * @param pExport a Time &amp; Sales export.
+     * @param pInterval bar length in seconds.
+     * @param pScale scale of the price ticks.
+     * @return the finished bars.
+     * @throws FidelityFileException if the export can not be read or has more bad rows than the error budget allows.
+     */
+    public static FidelityTradeBars read(File pExport, int pInterval, int pScale) {
+        Configuration config = Configuration.getInstance();
+        FidelityTradeBars rVal = new FidelityTradeBars(pInterval, pScale);
+        try (FidelityQuarantine quarantine = FidelityConfiguration.getInstance().newQuarantine(pExport);
+                FidelityCSVScanner csvScanner = new FidelityCSVScanner(pExport, config.getHeaderSkipLineCount(), config.getDateLineNumber())) {
+            csvScanner.initFile();
+            rVal.dateStr = csvScanner.getDate();
+            csvScanner.nextRow(); // column header
+            long rowCount = 0L;
+            while (csvScanner.nextRow() && !csvScanner.isEmptyRow()) {
+                rowCount++;
+                String reason = FidelityTradeRecord.validate(csvScanner);
+                if (reason != null) {
+                    quarantine.reject(csvScanner, reason);
+                    continue;
+                }
+                long priceTicks = csvScanner.getScaled(FidelityTradeRecord.Indexes.LAST_PRICE, pScale);
+                long bidTicks = csvScanner.isDecimal(FidelityTradeRecord.Indexes.BID_PRICE)
+                        ? csvScanner.getScaled(FidelityTradeRecord.Indexes.BID_PRICE, pScale) : FixedPoint.NONE;
+                long askTicks = csvScanner.isDecimal(FidelityTradeRecord.Indexes.ASK_PRICE)
+                        ? csvScanner.getScaled(FidelityTradeRecord.Indexes.ASK_PRICE, pScale) : FixedPoint.NONE;
+                rVal.add(csvScanner.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP), priceTicks,
+                        csvScanner.getLong(FidelityTradeRecord.Indexes.LAST_SIZE),
+                        FidelityDayAggregate.classify(priceTicks, bidTicks, askTicks));
+            }
+            quarantine.finish(rowCount);
+        } catch (IOException e) {
+            throw new FidelityFileException(pExport, "reading file failed", e);
+        }
+        rVal.finish();
+        return rVal;
+    }
+
+    /**
+     * Adds a trade. Trades in the same second keep the order of the export: the last one added
+     * opens the bar and the first one closes it.
+     * @param pSecondOfDay trade time, seconds since midnight.
+     * @param pPriceTicks trade price.
+     * @param pSize trade size.
+     * @param pSentiment {@link FidelityDayAggregate#BUY}, {@link FidelityDayAggregate#SELL} or {@link FidelityDayAggregate#UNKNOWN}.
+     * @throws IllegalStateException once the bars are finished.
+     */
+    public void add(int pSecondOfDay, long pPriceTicks, long pSize, byte pSentiment) {
+        if (finished) {
+            throw new IllegalStateException("bars are finished");
+        }
+        int b = pSecondOfDay / interval;
+        int i = size - 1;
+        if (size == 0 || bucket[i] > b) {
+            i = insert(size, b, pSecondOfDay, pPriceTicks);
+        } else if (bucket[i] < b) {
+            i = indexOf(b);
+            if (i < 0) {
+                i = insert(-i - 1, b, pSecondOfDay, pPriceTicks);
+            }
+        }
+        if (pSecondOfDay <= openSecond[i]) {
+            openSecond[i] = pSecondOfDay;
+            open[i] = pPriceTicks;
+        }
+        if (pSecondOfDay > closeSecond[i]) {
+            closeSecond[i] = pSecondOfDay;
+            close[i] = pPriceTicks;
+        }
+        high[i] = Math.max(high[i], pPriceTicks);
+        low[i] = Math.min(low[i], pPriceTicks);
+        volume[i] += pSize;
+        if (pSentiment == FidelityDayAggregate.BUY) {
+            buyVolume[i] += pSize;
+        } else if (pSentiment == FidelityDayAggregate.SELL) {
+            sellVolume[i] += pSize;
+        }
+        tradeCount[i]++;
+    }
+
+    /**
+     * @param pBucket a bar start in intervals.
+     * @return slot of the bar, or <code>-(insertion point) - 1</code>; the bars are newest first.
+     */
+    private int indexOf(int pBucket) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bucket[mid] > pBucket) {
+                lo = mid + 1;
+            } else if (bucket[mid] < pBucket) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Opens a bar for the trade at the given slot, moving the older bars up one.
+     * @return the slot.
+     */
+    private int insert(int pIndex, int pBucket, int pSecondOfDay, long pPriceTicks) {
+        if (size == bucket.length) {
+            grow(size * 2);
+        }
+        int moved = size - pIndex;
+        if (moved > 0) {
+            System.arraycopy(bucket, pIndex, bucket, pIndex + 1, moved);
+            System.arraycopy(open, pIndex, open, pIndex + 1, moved);
+            System.arraycopy(high, pIndex, high, pIndex + 1, moved);
+            System.arraycopy(low, pIndex, low, pIndex + 1, moved);
+            System.arraycopy(close, pIndex, close, pIndex + 1, moved);
+            System.arraycopy(openSecond, pIndex, openSecond, pIndex + 1, moved);
+            System.arraycopy(closeSecond, pIndex, closeSecond, pIndex + 1, moved);
+            System.arraycopy(volume, pIndex, volume, pIndex + 1, moved);
+            System.arraycopy(buyVolume, pIndex, buyVolume, pIndex + 1, moved);
+            System.arraycopy(sellVolume, pIndex, sellVolume, pIndex + 1, moved);
+            System.arraycopy(tradeCount, pIndex, tradeCount, pIndex + 1, moved);
+        }
+        size++;
+        bucket[pIndex] = pBucket;
+        open[pIndex] = pPriceTicks;
+        high[pIndex] = pPriceTicks;
+        low[pIndex] = pPriceTicks;
+        close[pIndex] = pPriceTicks;
+        openSecond[pIndex] = pSecondOfDay;
+        closeSecond[pIndex] = pSecondOfDay;
+        volume[pIndex] = 0L;
+        buyVolume[pIndex] = 0L;
+        sellVolume[pIndex] = 0L;
+        tradeCount[pIndex] = 0;
+        return pIndex;
+    }
+
+    /**
+     * Puts the bars in time order and fills the empty intervals between the first and the last trade.
+     * Does nothing once finished.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (size == 0) {
+            grow(0);
+            return;
+        }
+        int first = bucket[size - 1];
+        int count = bucket[0] - first + 1;
+        int[] b = new int[count];
+        long[] o = new long[count];
+        long[] h = new long[count];
+        long[] l = new long[count];
+        long[] c = new long[count];
+        long[] v = new long[count];
+        long[] bv = new long[count];
+        long[] sv = new long[count];
+        int[] tc = new int[count];
+        int from = size - 1;
+        for (int j = 0; j < count; j++) {
+            b[j] = first + j;
+            if (from >= 0 && bucket[from] == b[j]) {
+                o[j] = open[from];
+                h[j] = high[from];
+                l[j] = low[from];
+                c[j] = close[from];
+                v[j] = volume[from];
+                bv[j] = buyVolume[from];
+                sv[j] = sellVolume[from];
+                tc[j] = tradeCount[from];
+                from--;
+            } else {
+                o[j] = c[j - 1];
+                h[j] = c[j - 1];
+                l[j] = c[j - 1];
+                c[j] = c[j - 1];
+            }
+        }
+        bucket = b;
+        open = o;
+        high = h;
+        low = l;
+        close = c;
+        openSecond = null;
+        closeSecond = null;
+        volume = v;
+        buyVolume = bv;
+        sellVolume = sv;
+        tradeCount = tc;
+        size = count;
+    }
+
+    /**
+     * @return number of bars; only final once finished.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bar length in seconds.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the export date, e.g. <code>10/25/2021</code>, or null if the trades did not come with one.
+     */
+    public String getDateStr() {
+        return dateStr;
+    }
+
+    /**
+     * @param pIndex a bar.
+     * @return second of day the bar starts at.
+     */
+    public int getStartSecond(int pIndex) {
+        return bucket[pIndex] * interval;
+    }
+
+    public long getOpenTicks(int pIndex) {
+        return open[pIndex];
+    }
+
+    public long getHighTicks(int pIndex) {
+        return high[pIndex];
+    }
+
+    public long getLowTicks(int pIndex) {
+        return low[pIndex];
+    }
+
+    public long getCloseTicks(int pIndex) {
+        return close[pIndex];
+    }
+
+    public long getVolume(int pIndex) {
+        return volume[pIndex];
+    }
+
+    public long getBuyVolume(int pIndex) {
+        return buyVolume[pIndex];
+    }
+
+    public long getSellVolume(int pIndex) {
+        return sellVolume[pIndex];
+    }
+
+    /**
+     * @param pIndex a bar.
+     * @return number of trades in the bar, 0 for a filled interval.
+     */
+    public int getTradeCount(int pIndex) {
+        return tradeCount[pIndex];
+    }
+
+    /**
+     * @param pSeries a series.
+     * @return the series as a new array of doubles, one value per bar.
+     */
+    public double[] getSeries(Series pSeries) {
+        finish();
+        long[] column;
+        switch (pSeries) {
+        case OPEN:
+            column = open;
+            break;
+        case HIGH:
+            column = high;
+            break;
+        case LOW:
+            column = low;
+            break;
+        case CLOSE:
+            column = close;
+            break;
+        default:
+            return toDoubles(volume);
+        }
+        double[] rVal = new double[size];
+        for (int i = 0; i < size; i++) {
+            rVal[i] = FixedPoint.toDouble(column[i], scale);
+        }
+        return rVal;
+    }
+
+    /**
+     * @return the buy volume of each bar as a new array of doubles.
+     */
+    public double[] getBuyVolumeSeries() {
+        finish();
+        return toDoubles(buyVolume);
+    }
+
+    /**
+     * @return the sell volume of each bar as a new array of doubles.
+     */
+    public double[] getSellVolumeSeries() {
+        finish();
+        return toDoubles(sellVolume);
+    }
+
+    /**
+     * Transforms every series with the configured {@link FidelityWaveletEngine}.
+     * @return the coefficients of each series, in series order.
+     * @throws JWaveException if a transform fails.
+     */
+    public Map<Series, double[]> transform() throws JWaveException {
+        Series[] series = Series.values();
+        double[][] input = new double[series.length][];
+        for (int i = 0; i < series.length; i++) {
+            input[i] = getSeries(series[i]);
+        }
+        double[][] coefficients = FidelityWaveletEngine.getInstance().forwardAll(input);
+        Map<Series, double[]> rVal = new EnumMap<>(Series.class);
+        for (int i = 0; i < series.length; i++) {
+            rVal.put(series[i], coefficients[i]);
+        }
+        return rVal;
+    }
+
+    /**
+     * @return the bars as chart points, timed at the start of each bar on the export date.
+     * @throws IllegalStateException if the bars have no date.
+     */
+    public FidelityChartColumns toChartColumns() {
+        finish();
+        if (dateStr == null) {
+            throw new IllegalStateException("bars have no date");
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.parse(dateStr.trim(), EXPORT_DATE).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalStateException("not an export date: " + dateStr, e);
+        }
+        FidelityChartColumns rVal = new FidelityChartColumns(size);
+        for (int i = 0; i < size; i++) {
+            rVal.add(FidelityChartRecord.toDate(epochDay, getStartSecond(i)).getTime(),
+                    FixedPoint.toDouble(open[i], scale), FixedPoint.toDouble(high[i], scale),
+                    FixedPoint.toDouble(low[i], scale), FixedPoint.toDouble(close[i], scale), volume[i]);
+        }
+        rVal.trimToSize();
+        return rVal;
+    }
+
+    private double[] toDoubles(long[] pColumn) {
+        double[] rVal = new double[size];
+        for (int i = 0; i < size; i++) {
+            rVal[i] = pColumn[i];
+        }
+        return rVal;
+    }
+
+    private void grow(int pCapacity) {
+        bucket = Arrays.copyOf(bucket, pCapacity);
+        open = Arrays.copyOf(open, pCapacity);
+        high = Arrays.copyOf(high, pCapacity);
+        low = Arrays.copyOf(low, pCapacity);
+        close = Arrays.copyOf(close, pCapacity);
+        openSecond = Arrays.copyOf(openSecond, pCapacity);
+        closeSecond = Arrays.copyOf(closeSecond, pCapacity);
+        volume = Arrays.copyOf(volume, pCapacity);
+        buyVolume = Arrays.copyOf(buyVolume, pCapacity);
+        sellVolume = Arrays.copyOf(sellVolume, pCapacity);
+        tradeCount = Arrays.copyOf(tradeCount, pCapacity);
+    }
+}
@@ -0,0 +1,289 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.io.FidelitySidecar;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeRecord.Indexes;
+
+/**
+ * Struct-of-arrays store for one day of trades. Each trade is a slot in a set of parallel
+ * primitive columns: second of day, price, size, bid and ask (fixed-point ticks) and a
+ * flags byte holding the T-trade bit and the sentiment. About 37 bytes a trade, against
+ * several hundred for a {@link FidelityTradeRecord}.
+ *
+ * <p>The columns grow a chunk at a time so adding a trade never copies the trades already
+ * stored. Slots are kept in file order, which for Fidelity is newest first.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityTradeColumns {
+    static final int CHUNK_BITS = 14;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Flag bit set for a T (extended hours) trade. */
+    public static final byte FLAG_TEE_TRADE = 0x01;
+    static final int SENTIMENT_SHIFT = 1;
+    static final int SENTIMENT_MASK = 0x03;
+
+    private final int scale;
+    private int size;
+    private int[][] secondOfDay = new int[0][];
+    private long[][] price = new long[0][];
+    private long[][] tradeSize = new long[0][];
+    private long[][] bid = new long[0][];
+    private long[][] ask = new long[0][];
+    private byte[][] flags = new byte[0][];
+
+    /**
+     * @param pScale scale of the price ticks, <code>com.cobbinterwebs.trades.scale</code>.
+     */
+    public FidelityTradeColumns(int pScale) {
+        scale = pScale;
+    }
+
+    /**
+     * @return the scale of the price ticks.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return number of trades stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Parses the current row of the scanner straight into the columns.
+     * @param pRow scanner positioned on a row of trade data.
+     * @return the slot of the new trade.
+     * @throws NumberFormatException if the time, price or size can not be read.
+     */
+    public int add(FidelityCSVScanner pRow) {
+        int secs = pRow.getSecondOfDay(Indexes.TIME_STAMP);
+        long priceTicks = pRow.getScaled(Indexes.LAST_PRICE, scale);
+        long sizeUnits = pRow.getLong(Indexes.LAST_SIZE);
+        long bidTicks = pRow.isDecimal(Indexes.BID_PRICE) ? pRow.getScaled(Indexes.BID_PRICE, scale) : FixedPoint.NONE;
+        long askTicks = pRow.isDecimal(Indexes.ASK_PRICE) ? pRow.getScaled(Indexes.ASK_PRICE, scale) : FixedPoint.NONE;
+        return add(secs, priceTicks, sizeUnits, bidTicks, askTicks, pRow.fieldEquals(Indexes.CONDITION, "T"));
+    }
+
+    /**
+     * Adds a trade parsed in fixed-point mode. The record must use the same scale.
+     * @param pTradeRecord the trade.
+     * @param pSecondOfDay trade time, seconds since midnight.
+     * @return the slot of the new trade.
+     */
+    public int add(FidelityTradeRecord pTradeRecord, int pSecondOfDay) {
+        return add(pSecondOfDay, pTradeRecord.getPriceTicks(), pTradeRecord.getSizeUnits(),
+                pTradeRecord.getBidTicks(), pTradeRecord.getAskTicks(), pTradeRecord.isTeeTrade());
+    }
+
+    /**
+     * @param pSecondOfDay trade time, seconds since midnight.
+     * @param pPriceTicks trade price.
+     * @param pSize trade size.
+     * @param pBidTicks bid, or {@link FixedPoint#NONE}.
+     * @param pAskTicks ask, or {@link FixedPoint#NONE}.
+     * @param pTeeTrade true for a T trade.
+     * @return the slot of the new trade.
+     */
+    public int add(int pSecondOfDay, long pPriceTicks, long pSize, long pBidTicks, long pAskTicks, boolean pTeeTrade) {
+        int chunk = size >>> CHUNK_BITS;
+        if (chunk == secondOfDay.length) {
+            addChunk();
+        }
+        int slot = size & CHUNK_MASK;
+        byte sentiment = FidelityDayAggregate.classify(pPriceTicks, pBidTicks, pAskTicks);
+        secondOfDay[chunk][slot] = pSecondOfDay;
+        price[chunk][slot] = pPriceTicks;
+        tradeSize[chunk][slot] = pSize;
+        bid[chunk][slot] = pBidTicks;
+        ask[chunk][slot] = pAskTicks;
+        flags[chunk][slot] = (byte) ((sentiment << SENTIMENT_SHIFT) | (pTeeTrade ? FLAG_TEE_TRADE : 0));
+        return size++;
+    }
+
+    /**
+     * Appends every trade of another store, in order.
+     * @param pOther trades at the same scale.
+     */
+    public void addAll(FidelityTradeColumns pOther) {
+        for (int i = 0; i < pOther.size; i++) {
+            int c = i >>> CHUNK_BITS;
+            int s = i & CHUNK_MASK;
+            add(pOther.secondOfDay[c][s], pOther.price[c][s], pOther.tradeSize[c][s], pOther.bid[c][s],
+                    pOther.ask[c][s], (pOther.flags[c][s] & FLAG_TEE_TRADE) != 0);
+        }
+    }
+
+    public int getSecondOfDay(int pIndex) {
+        return secondOfDay[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public long getPriceTicks(int pIndex) {
+        return price[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public long getSize(int pIndex) {
+        return tradeSize[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public long getBidTicks(int pIndex) {
+        return bid[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public long getAskTicks(int pIndex) {
+        return ask[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public byte getFlags(int pIndex) {
+        return flags[pIndex >>> CHUNK_BITS][pIndex & CHUNK_MASK];
+    }
+
+    public boolean isTeeTrade(int pIndex) {
+        return (getFlags(pIndex) & FLAG_TEE_TRADE) != 0;
+    }
+
+    /**
+     * @param pIndex slot of the trade.
+     * @return {@link FidelityDayAggregate#BUY}, {@link FidelityDayAggregate#SELL} or {@link FidelityDayAggregate#UNKNOWN}.
+     */
+    public byte getSentiment(int pIndex) {
+        return (byte) ((getFlags(pIndex) >> SENTIMENT_SHIFT) & SENTIMENT_MASK);
+    }
+
+    /**
+     * @return a new cursor, positioned before the first trade.
+     */
+    public FidelityTradeCursor cursor() {
+        return new FidelityTradeCursor(this);
+    }
+
+    /**
+     * Folds every stored trade into a set of day totals, a chunk at a time through the configured
+     * {@link FidelityAggregationKernel}.
+     * @param pAggregate totals at the same scale.
+     */
+    public void aggregateInto(FidelityDayAggregate pAggregate) {
+        aggregateInto(pAggregate, FidelityAggregationKernel.getInstance());
+    }
+
+    /**
+     * @param pAggregate totals at the same scale.
+     * @param pKernel the kernel that sums each chunk.
+     */
+    public void aggregateInto(FidelityDayAggregate pAggregate, FidelityAggregationKernel pKernel) {
+        for (int c = 0; c < secondOfDay.length; c++) {
+            int n = Math.min(CHUNK_SIZE, size - (c << CHUNK_BITS));
+            pKernel.aggregate(price[c], tradeSize[c], bid[c], ask[c], flags[c], 0, n, pAggregate);
+        }
+    }
+
+    /**
+     * Adds the columns, in slot order, to a sidecar writer: second of day, price, size, bid, ask and flags.
+     * @param pWriter writer for a {@link FidelitySidecar#KIND_TRADES} sidecar of {@link #size()} rows.
+     * @return the writer.
+     */
+    public FidelitySidecar.Writer writeTo(FidelitySidecar.Writer pWriter) {
+        return pWriter.column(FidelitySidecar.TYPE_INT, this::getSecondOfDay)
+                .column(FidelitySidecar.TYPE_LONG, this::getPriceTicks)
+                .column(FidelitySidecar.TYPE_LONG, this::getSize)
+                .column(FidelitySidecar.TYPE_LONG, this::getBidTicks)
+                .column(FidelitySidecar.TYPE_LONG, this::getAskTicks)
+                .column(FidelitySidecar.TYPE_BYTE, this::getFlags);
+    }
+
+    /**
+     * Copies the columns of a trades sidecar written by {@link #writeTo(FidelitySidecar.Writer)}, a chunk at a time.
+     * @param pSidecar the mapped sidecar.
+     * @return the trades.
+     */
+    public static FidelityTradeColumns readFrom(FidelitySidecar pSidecar) {
+        FidelityTradeColumns rVal = new FidelityTradeColumns(pSidecar.getScale());
+        IntBuffer secs = pSidecar.intColumn(0);
+        LongBuffer prices = pSidecar.longColumn(1);
+        LongBuffer sizes = pSidecar.longColumn(2);
+        LongBuffer bids = pSidecar.longColumn(3);
+        LongBuffer asks = pSidecar.longColumn(4);
+        ByteBuffer flagBytes = pSidecar.byteColumn(5);
+        int rows = pSidecar.getRowCount();
+        while (rVal.size < rows) {
+            rVal.addChunk();
+            int c = rVal.secondOfDay.length - 1;
+            int n = Math.min(CHUNK_SIZE, rows - rVal.size);
+            secs.get(rVal.secondOfDay[c], 0, n);
+            prices.get(rVal.price[c], 0, n);
+            sizes.get(rVal.tradeSize[c], 0, n);
+            bids.get(rVal.bid[c], 0, n);
+            asks.get(rVal.ask[c], 0, n);
+            flagBytes.get(rVal.flags[c], 0, n);
+            rVal.size += n;
+        }
+        return rVal;
+    }
+
+    /**
+     * Folds the trades of a mapped sidecar into a set of day totals. The columns are copied a
+     * chunk at a time into one set of scratch arrays for the configured {@link FidelityAggregationKernel}.
+     * @param pSidecar a trades sidecar.
+     * @param pAggregate totals at the scale of the sidecar.
+     */
+    public static void aggregateInto(FidelitySidecar pSidecar, FidelityDayAggregate pAggregate) {
+        LongBuffer prices = pSidecar.longColumn(1);
+        LongBuffer sizes = pSidecar.longColumn(2);
+        LongBuffer bids = pSidecar.longColumn(3);
+        LongBuffer asks = pSidecar.longColumn(4);
+        ByteBuffer flagBytes = pSidecar.byteColumn(5);
+        FidelityAggregationKernel kernel = FidelityAggregationKernel.getInstance();
+        int rows = pSidecar.getRowCount();
+        int scratch = Math.min(CHUNK_SIZE, rows);
+        long[] price = new long[scratch];
+        long[] size = new long[scratch];
+        long[] bid = new long[scratch];
+        long[] ask = new long[scratch];
+        byte[] flags = new byte[scratch];
+        for (int done = 0; done < rows; done += scratch) {
+            int n = Math.min(scratch, rows - done);
+            prices.get(price, 0, n);
+            sizes.get(size, 0, n);
+            bids.get(bid, 0, n);
+            asks.get(ask, 0, n);
+            flagBytes.get(flags, 0, n);
+            kernel.aggregate(price, size, bid, ask, flags, 0, n, pAggregate);
+        }
+    }
+
+    private void addChunk() {
+        int chunks = secondOfDay.length + 1;
+        secondOfDay = Arrays.copyOf(secondOfDay, chunks);
+        price = Arrays.copyOf(price, chunks);
+        tradeSize = Arrays.copyOf(tradeSize, chunks);
+        bid = Arrays.copyOf(bid, chunks);
+        ask = Arrays.copyOf(ask, chunks);
+        flags = Arrays.copyOf(flags, chunks);
+        int last = chunks - 1;
+        secondOfDay[last] = new int[CHUNK_SIZE];
+        price[last] = new long[CHUNK_SIZE];
+        tradeSize[last] = new long[CHUNK_SIZE];
+        bid[last] = new long[CHUNK_SIZE];
+        ask[last] = new long[CHUNK_SIZE];
+        flags[last] = new byte[CHUNK_SIZE];
+    }
+}
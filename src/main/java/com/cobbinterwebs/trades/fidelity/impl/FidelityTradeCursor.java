@@ -0,0 +1,114 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.trades.ITradeRecord;
+
+/**
+ * Flyweight view of one trade in a {@link FidelityTradeColumns}. The accessors mirror
+ * {@link ITradeRecord} so code written against trade records reads the same, but nothing is
+ * allocated while moving through the day. Do not hold on to a cursor as if it were a trade;
+ * use {@link #toTradeRecord()} when a real record is needed.
+ *
+ * <pre>
+ * FidelityTradeCursor c = columns.cursor();
+ * while (c.next()) {
+ *     total += c.getSizeUnits();
+ * }
+ * </pre>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityTradeCursor {
+    private final FidelityTradeColumns columns;
+    private int index = -1;
+
+    FidelityTradeCursor(FidelityTradeColumns pColumns) {
+        columns = pColumns;
+    }
+
+    /**
+     * @return false once the last trade has been passed.
+     */
+    public boolean next() {
+        if (index + 1 >= columns.size()) {
+            index = columns.size();
+            return false;
+        }
+        index++;
+        return true;
+    }
+
+    /**
+     * @param pIndex slot to move to.
+     * @return this cursor.
+     */
+    public FidelityTradeCursor moveTo(int pIndex) {
+        if (pIndex < 0 || pIndex >= columns.size()) {
+            throw new IndexOutOfBoundsException("trade " + pIndex + " of " + columns.size());
+        }
+        index = pIndex;
+        return this;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getSecondOfDay() {
+        return columns.getSecondOfDay(index);
+    }
+
+    public long getPriceTicks() {
+        return columns.getPriceTicks(index);
+    }
+
+    public long getSizeUnits() {
+        return columns.getSize(index);
+    }
+
+    public long getBidTicks() {
+        return columns.getBidTicks(index);
+    }
+
+    public long getAskTicks() {
+        return columns.getAskTicks(index);
+    }
+
+    public BigDecimal getPrice() {
+        return FixedPoint.toBigDecimal(getPriceTicks(), columns.getScale());
+    }
+
+    public BigDecimal getSize() {
+        return BigDecimal.valueOf(getSizeUnits());
+    }
+
+    public BigDecimal getDollarVolume() {
+        return getPrice().multiply(getSize());
+    }
+
+    public ITradeRecord.BuySell sentiment() {
+        return FidelityDayAggregate.toBuySell(columns.getSentiment(index));
+    }
+
+    public Boolean isTeeTrade() {
+        return columns.isTeeTrade(index);
+    }
+
+    /**
+     * @return a fixed-point trade record holding a copy of the current trade.
+     */
+    public FidelityTradeRecord toTradeRecord() {
+        return new FidelityTradeRecord(getSecondOfDay(), getPriceTicks(), getSizeUnits(), getBidTicks(),
+                getAskTicks(), columns.isTeeTrade(index), columns.getScale());
+    }
+}
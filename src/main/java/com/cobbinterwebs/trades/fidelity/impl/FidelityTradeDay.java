@@ -1,14 +1,37 @@
 package com.cobbinterwebs.trades.fidelity.impl;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.cobbinterwebs.locale.DisplayKeys;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration.TradeStore;
+import com.cobbinterwebs.fidelity.io.FidelityArchive;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.io.FidelityCSVSink;
+import com.cobbinterwebs.fidelity.io.FidelityFileException;
+import com.cobbinterwebs.fidelity.io.FidelityQuarantine;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.fidelity.io.FidelitySidecar;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.fidelity.metrics.FidelityFileMetrics;
+import com.cobbinterwebs.fidelity.metrics.FidelityFileMetrics.Phase;
+import com.cobbinterwebs.fidelity.metrics.FidelityMetrics;
 
 ////////////////////////////////////////////////////////////////////////////////
 // Copyright 2021 Cobb Interwebs, LLC
@@ -19,7 +42,6 @@ import com.cobbinterwebs.locale.DisplayKeys;
 // THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 ////////////////////////////////////////////////////////////////////////////////
 
-import com.cobbinterwebs.trades.ITradeRecord;
 import com.cobbinterwebs.trades.config.Configuration;
 
 /**
@@ -27,10 +49,40 @@ import com.cobbinterwebs.trades.config.Configuration;
  * in a list. Also, puts the dollar volume into <i>buckets</i> which are
  * defined in the configuration properties files.
  * 
+ * <p>The trades may instead be kept in primitive columns, see
+ * {@link FidelityTradeColumns} and <code>com.cobbinterwebs.fidelity.trades.store</code>,
+ * or not kept at all when only the summary is wanted. A streaming day takes the same
+ * small amount of memory however many trades it has.</p>
+ *
+ * <p>With a fixed-point store, a large export may be cut into ranges of rows that are parsed on
+ * several threads and put back together in file order, see
+ * <code>com.cobbinterwebs.fidelity.parse.chunks</code>.</p>
  */
 public class FidelityTradeDay extends com.cobbinterwebs.trades.TradeDay {
     private static final Logger log = LogManager.getLogger(FidelityTradeDay.class);
     
+    /**
+     * Day totals when the trades are parsed in fixed-point mode. Null otherwise, in which case
+     * the totals are the ones kept by the core TradeDay.
+     */
+    private FidelityDayAggregate aggregate;
+    private List<FidelityTradeRecord> fixedPointTrades;
+    private FidelityTradeColumns tradeColumns;
+    /**
+     * Per-second totals of the trades taken in, whatever the store, and the time-of-day index
+     * built from them on first use.
+     */
+    private FidelityTradeIndex.Builder indexBuilder;
+    private FidelityTradeIndex timeIndex;
+    /**
+     * Second of day of the newest trade taken in, and the fingerprints of the trades at that
+     * second, so {@link #refresh(File)} knows where the trades of a fresh export start to overlap.
+     */
+    private int newestSecond = -1;
+    private Map<Long, Integer> newestFingerprints = new HashMap<>();
+    /** The date line of the export as days since the epoch; the day the trades are put on. */
+    private long epochDay = FidelityTradeRecord.NO_DAY;
+    
     /**
      * The data comes as a CSV of trades for one day.
      */
@@ -40,128 +92,822 @@ public class FidelityTradeDay extends com.cobbinterwebs.trades.TradeDay {
     
     /**
      * Reads the File for the day. Puts the trade dollar-volume in the
-     * appropriate bucket.
+     * appropriate bucket. When sidecars are enabled and the totals are kept in fixed point,
+     * the trades come from the export's sidecar if it is current, otherwise the export is parsed
+     * and its sidecar written. The work is recorded in {@link FidelityMetrics}.
+     * @throws FidelityFileException if the file can not be read or has more bad rows than the
+     *         error budget allows. Only this day fails.
      */
     @Override
     public void process() {
-        FidelityCSVInputReader csvInputReader = new FidelityCSVInputReader(aFile);
+        try (FidelityFileMetrics metrics = FidelityFileMetrics.start(FidelityFileMetrics.TRADES, aFile)) {
+            process(metrics);
+        }
+    }
+
+    private void process(FidelityFileMetrics pMetrics) {
+        Configuration config = Configuration.getInstance();
+        FidelityConfiguration fidelityConfig = FidelityConfiguration.getInstance();
+        TradeStore tradeStore = fidelityConfig.getTradeStore();
+        int scale = fidelityConfig.getScale();
+        indexBuilder = new FidelityTradeIndex.Builder(scale);
+        timeIndex = null;
+        if (tradeStore == TradeStore.STREAMING) {
+            aggregate = new FidelityDayAggregate(scale);
+        } else if (tradeStore == TradeStore.COLUMNS) {
+            aggregate = new FidelityDayAggregate(scale);
+            tradeColumns = new FidelityTradeColumns(scale);
+        } else if (fidelityConfig.isFixedPoint()) {
+            aggregate = new FidelityDayAggregate(scale);
+            fixedPointTrades = new ArrayList<>();
+        }
+        boolean useSidecar = aggregate != null && fidelityConfig.isSidecar();
+        if (useSidecar && readSidecar(tradeStore, pMetrics)) {
+            return;
+        }
+        FidelitySidecar.Stamp stamp = FidelitySidecar.Stamp.of(aFile);
+        boolean keepColumns = tradeColumns != null;
+        if (useSidecar && !keepColumns) {
+            // parse into columns for the sidecar, then hand the trades to the configured store
+            tradeColumns = new FidelityTradeColumns(scale);
+            fixedPointTrades = null;
+        }
+        boolean complete = parse(config, scale, pMetrics);
+        if (useSidecar) {
+            if (complete) {
+                pMetrics.phase(Phase.OUTPUT);
+                writeSidecar(stamp, scale);
+            }
+            // else rows were quarantined; the sidecar would not match the file
+            if (!keepColumns) {
+                pMetrics.phase(Phase.AGGREGATE);
+                useColumns(tradeColumns, tradeStore, false);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the export into the configured store, in parallel ranges when the export
+     * is large enough. Rows that can not be read are quarantined, see {@link FidelityQuarantine}.
+     * Trades read into columns are summed once they are all in, through the configured
+     * {@link FidelityAggregationKernel}.
+     * @return false if a row was rejected, so the day does not hold every row of the file.
+     * @throws FidelityFileException if the file can not be read or has more bad rows than the error budget allows.
+     */
+    private boolean parse(Configuration config, int scale, FidelityFileMetrics pMetrics) {
+        pMetrics.phase(Phase.OPEN);
+        FidelityQuarantine quarantine = FidelityConfiguration.getInstance().newQuarantine(aFile);
+        FidelityCSVScanner csvScanner = new FidelityCSVScanner(aFile, config.getHeaderSkipLineCount(), config.getDateLineNumber());
         try {
-            csvInputReader.initFile();
-            dateStr = csvInputReader.getDate();
+            csvScanner.initFile();
+            setDate(csvScanner.getDate());
         } catch (IOException e) {
-            log.error("reader initiation failed.",e);
-            System.exit(-1);
+            csvScanner.close();
+            throw new FidelityFileException(aFile, "reader initiation failed", e);
         }
         try {
-            String currentLine = csvInputReader.readLine();
-            log.trace("throwing away header [{}]",currentLine);
-            long lineCounter = 1L;
+            csvScanner.nextRow();
+            log.trace("throwing away header at line {}", csvScanner.getLineNumber());
+            long[] ranges = aggregate == null ? null : chunkRanges(csvScanner);
+            if (ranges != null) {
+                parseChunks(csvScanner.getLineNumber(), ranges, scale, quarantine, pMetrics);
+                return quarantine.getRejectedCount() == 0L;
+            }
+            pMetrics.phase(Phase.PARSE);
+            long rowCount = 0L;
             boolean done = false;
+            boolean atNewest = aggregate != null;
             while(!done) {
-                if ((currentLine = csvInputReader.readLine()) == null
-                        || currentLine.startsWith("\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",")) {
+                if (!csvScanner.nextRow() || csvScanner.isEmptyRow()) {
                     done = true;
                 } else {
 
-                    if (log.isTraceEnabled()) log.trace("LINE: {}", currentLine);
+                    if (log.isTraceEnabled()) log.trace("LINE: {}", csvScanner.getLine());
 
-                    try {
-                        ITradeRecord tr = ITradeRecord.create(currentLine);
-                        if (log.isDebugEnabled()) log.debug("adding a trade . . . {}", tr);
-                        if(null == tr) {
-                            Exception e = new IllegalStateException();
-                            log.fatal("BOOM!!!", e);
-                            System.exit(-1);
+                    rowCount++;
+                    String reason = FidelityTradeRecord.validate(csvScanner);
+                    if (reason != null) {
+                        pMetrics.addRejected(1L);
+                        quarantine.reject(csvScanner, reason);
+                    } else {
+                        addTrade(csvScanner, scale);
+                        pMetrics.addRecords(1L);
+                        if (atNewest) {
+                            // newest first; only the leading rows at the newest second are remembered
+                            atNewest = noteNewest(csvScanner.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP),
+                                    fingerprint(csvScanner, scale));
                         }
-                        super.addTradeRecord(tr);
-                    } catch (Exception e) {
-                        log.error("error processing line {} in file {}", lineCounter,aFile.getName());
-                        log.error("error processing data, \"{}\"", currentLine, e);
                     }
                 } // end if check for end of file
-                lineCounter++;
             } // end while not done
+            quarantine.finish(rowCount);
+            if (tradeColumns != null) {
+                pMetrics.phase(Phase.AGGREGATE);
+                tradeColumns.aggregateInto(aggregate);
+            }
+            return quarantine.getRejectedCount() == 0L;
         } catch (IOException e) {
-            log.error("reading file failed: {}", aFile.getAbsolutePath(), e);
+            throw new FidelityFileException(aFile, "reading file failed", e);
         } finally {
-            csvInputReader.close();
+            pMetrics.addLines(csvScanner.getLineNumber()).addBytes(csvScanner.getBytesRead());
+            csvScanner.close();
+            quarantine.close();
         }
     }
 
+    /**
+     * @return the offsets of the ranges to parse in parallel, see {@link FidelityCSVScanner#split(int)},
+     *         or null if the rows are parsed on this thread.
+     */
+    private long[] chunkRanges(FidelityCSVScanner pScanner) throws IOException {
+        FidelityConfiguration fidelityConfig = FidelityConfiguration.getInstance();
+        int chunks = fidelityConfig.getParseChunks();
+        if (chunks <= 1 || FidelityArchive.isCompressed(aFile)) {
+            return null;
+        }
+        long rowBytes = pScanner.getFileSize() - pScanner.getBytesRead();
+        chunks = (int) Math.min(chunks, rowBytes / fidelityConfig.getParseChunkMin());
+        if (chunks <= 1) {
+            return null;
+        }
+        long[] rVal = pScanner.split(chunks);
+        return rVal.length > 2 ? rVal : null;
+    }
 
-
+    /**
+     * Parses the ranges on the fork/join pool, then folds their trades, totals and rejected rows
+     * into the day in file order. The rows after an empty row are dropped, as when the export is
+     * read on one thread.
+     * @param pHeaderLines lines before the first range.
+     */
+    private void parseChunks(long pHeaderLines, long[] pRanges, int pScale, FidelityQuarantine pQuarantine,
+            FidelityFileMetrics pMetrics) {
+        boolean keepTrades = tradeColumns != null || fixedPointTrades != null;
+        List<ChunkParser> parsers = new ArrayList<>(pRanges.length - 1);
+        for (int i = 0; i + 1 < pRanges.length; i++) {
+            parsers.add(new ChunkParser(aFile, pRanges[i], pRanges[i + 1], pScale, keepTrades));
+        }
+        log.debug("parsing {} in {} ranges", aFile.getName(), parsers.size());
+        pMetrics.phase(Phase.PARSE);
+        ForkJoinTask.invokeAll(parsers);
+        pMetrics.phase(Phase.AGGREGATE);
+        long lineOffset = pHeaderLines;
+        long rowCount = 0L;
+        boolean atNewest = true;
+        for (ChunkParser parser : parsers) {
+            for (int i = 0; i < parser.rejectedCount; i++) {
+                pQuarantine.reject(lineOffset + parser.rejectedLine[i], parser.rejectedRow[i], parser.rejectedReason[i]);
+            }
+            for (int i = 0; atNewest && i < parser.leadingCount; i++) {
+                atNewest = noteNewest(parser.leadingSecond[i], parser.leadingFingerprint[i]);
+            }
+            atNewest &= parser.allLeading;
+            aggregate.merge(parser.aggregate);
+            indexBuilder.addAll(parser.index);
+            if (tradeColumns != null) {
+                tradeColumns.addAll(parser.columns);
+            } else if (fixedPointTrades != null) {
+                FidelityTradeCursor cursor = parser.columns.cursor();
+                while (cursor.next()) {
+                    fixedPointTrades.add(onDay(cursor.toTradeRecord()));
+                }
+            }
+            pMetrics.addLines(parser.lineCount).addBytes(parser.byteCount)
+                    .addRecords(parser.aggregate.getTradeCount()).addRejected(parser.rejectedCount)
+                    .addAllocated(parser.allocated);
+            lineOffset += parser.lineCount;
+            rowCount += parser.rowCount;
+            if (parser.ended) {
+                break;
+            }
+        }
+        pQuarantine.finish(rowCount);
+    }
 
     /**
-     * Wrapper around a buffered reader. While there is not much value in wrapping that class
-     * this class will skip the summary header info Fidelity puts in their exports.
+     * Parses one range of the rows of an export into its own totals, index and, when the day keeps
+     * them, trade columns; kept trades are summed from the columns through the kernel once the
+     * range is read. Rejected rows are only noted; they are quarantined in file order once
+     * every range is done.
      */
-    public class FidelityCSVInputReader {
-        private final Logger log = LogManager.getLogger(FidelityCSVInputReader.class);
-        private final int LINE_NO_DATE = Configuration.getInstance().getDateLineNumber();
-        private BufferedReader reader;
-        private String dateStr;
+    private static final class ChunkParser extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
         private final File file;
+        private final long start;
+        private final long end;
+        /** The thread that folds the range in; what it allocates its file metrics see already. */
+        private final Thread owner = Thread.currentThread();
+        final FidelityDayAggregate aggregate;
+        final FidelityTradeIndex.Builder index;
+        final FidelityTradeColumns columns;
+        long lineCount;
+        long byteCount;
+        long rowCount;
+        /** True if the range holds the empty row that ends the trades. */
+        boolean ended;
+        /** The leading rows at the newest second, see {@link FidelityTradeDay#noteNewest(int, long)}. */
+        int leadingCount;
+        /** True if every trade of the range is a leading row. */
+        boolean allLeading;
+        int[] leadingSecond = new int[8];
+        long[] leadingFingerprint = new long[8];
+        int rejectedCount;
+        long[] rejectedLine = new long[0];
+        String[] rejectedRow = new String[0];
+        String[] rejectedReason = new String[0];
+        /** Heap allocated parsing the range on a thread other than the owner. */
+        long allocated;
+
+        ChunkParser(File pFile, long pStart, long pEnd, int pScale, boolean pKeepTrades) {
+            file = pFile;
+            start = pStart;
+            end = pEnd;
+            aggregate = new FidelityDayAggregate(pScale);
+            index = new FidelityTradeIndex.Builder(pScale);
+            columns = pKeepTrades ? new FidelityTradeColumns(pScale) : null;
+        }
 
-        /**
-         * CTOR accepting an instance of a File .
-         * @param pFile the file to read from.
-         */
-        public FidelityCSVInputReader(File pFile) {
-            file=pFile;
-        }
-
-        void initFile() throws IOException {
-            log.info("Reading file {}", file.getCanonicalFile());
-            reader = new BufferedReader(new FileReader(file));
-            // throw away the first few lines (as set by getHeaderSkipLineCount)
-            for (int i = 0; i < Configuration.getInstance().getHeaderSkipLineCount(); i++) {
-                String line = reader.readLine();
-                if(i == LINE_NO_DATE) { // the date line number. Date is read from file.
-                    log.debug(DisplayKeys.get(DisplayKeys.PROCESSING_FILE_DATE), line);
-                    dateStr = line;
+        @Override
+        protected void compute() {
+            long allocatedAtStart = Thread.currentThread() == owner ? -1L : FidelityFileMetrics.threadAllocatedBytes();
+            int scale = aggregate.getScale();
+            FidelityCSVScanner scanner = new FidelityCSVScanner(file, start, end);
+            try {
+                scanner.initFile();
+                boolean atNewest = true;
+                int newest = -1;
+                while (scanner.nextRow()) {
+                    if (scanner.isEmptyRow()) {
+                        ended = true;
+                        break;
+                    }
+                    rowCount++;
+                    String reason = FidelityTradeRecord.validate(scanner);
+                    if (reason != null) {
+                        reject(scanner.getLineNumber(), scanner.getLine(), reason);
+                        continue;
+                    }
+                    int secs = scanner.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP);
+                    long priceTicks = scanner.getScaled(FidelityTradeRecord.Indexes.LAST_PRICE, scale);
+                    long size = scanner.getLong(FidelityTradeRecord.Indexes.LAST_SIZE);
+                    long bidTicks = scanner.isDecimal(FidelityTradeRecord.Indexes.BID_PRICE)
+                            ? scanner.getScaled(FidelityTradeRecord.Indexes.BID_PRICE, scale) : FixedPoint.NONE;
+                    long askTicks = scanner.isDecimal(FidelityTradeRecord.Indexes.ASK_PRICE)
+                            ? scanner.getScaled(FidelityTradeRecord.Indexes.ASK_PRICE, scale) : FixedPoint.NONE;
+                    byte sentiment = FidelityDayAggregate.classify(priceTicks, bidTicks, askTicks);
+                    boolean teeTrade = scanner.fieldEquals(FidelityTradeRecord.Indexes.CONDITION, "T");
+                    if (columns != null) {
+                        columns.add(secs, priceTicks, size, bidTicks, askTicks, teeTrade);
+                    } else {
+                        aggregate.add(priceTicks, size, sentiment, teeTrade);
+                    }
+                    index.add(secs, priceTicks, size, sentiment, teeTrade);
+                    if (atNewest) {
+                        atNewest = secs >= newest;
+                        if (atNewest) {
+                            newest = secs;
+                            lead(secs, fingerprint(secs, priceTicks, size, bidTicks, askTicks, teeTrade));
+                        }
+                    }
+                }
+                if (columns != null) {
+                    columns.aggregateInto(aggregate);
+                }
+                allLeading = atNewest;
+                lineCount = scanner.getLineNumber();
+                byteCount = scanner.getBytesRead() - start;
+            } catch (IOException e) {
+                throw new FidelityFileException(file, "reading file failed", e);
+            } finally {
+                scanner.close();
+                if (allocatedAtStart >= 0) {
+                    allocated = FidelityFileMetrics.threadAllocatedBytes() - allocatedAtStart;
                 }
             }
         }
 
-        String getDate() {
-            return this.dateStr;
+        private void lead(int pSecondOfDay, long pFingerprint) {
+            if (leadingCount == leadingSecond.length) {
+                leadingSecond = Arrays.copyOf(leadingSecond, leadingCount * 2);
+                leadingFingerprint = Arrays.copyOf(leadingFingerprint, leadingCount * 2);
+            }
+            leadingSecond[leadingCount] = pSecondOfDay;
+            leadingFingerprint[leadingCount++] = pFingerprint;
         }
 
-        String readLine() throws IOException {
-            return reader.readLine();
+        private void reject(long pLineNumber, String pRow, String pReason) {
+            if (rejectedCount == rejectedLine.length) {
+                int capacity = Math.max(4, rejectedCount * 2);
+                rejectedLine = Arrays.copyOf(rejectedLine, capacity);
+                rejectedRow = Arrays.copyOf(rejectedRow, capacity);
+                rejectedReason = Arrays.copyOf(rejectedReason, capacity);
+            }
+            rejectedLine[rejectedCount] = pLineNumber;
+            rejectedRow[rejectedCount] = pRow;
+            rejectedReason[rejectedCount++] = pReason;
         }
+    }
 
-        void close() {
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.error(DisplayKeys.get(DisplayKeys.ERROR_FILE_CLOSE),file.getAbsolutePath(), e);
+    /**
+     * @return true if the day was loaded from a current sidecar.
+     */
+    private boolean readSidecar(TradeStore pTradeStore, FidelityFileMetrics pMetrics) {
+        pMetrics.phase(Phase.OPEN);
+        FidelitySidecar sidecar = FidelitySidecar.open(aFile, FidelitySidecar.KIND_TRADES, aggregate.getScale());
+        if (sidecar == null) {
+            return false;
+        }
+        pMetrics.phase(Phase.PARSE).addBytes(FidelitySidecar.sidecarFor(aFile).length()).addRecords(sidecar.getRowCount());
+        log.debug("reading {} trades from the sidecar of {}", sidecar.getRowCount(), aFile.getName());
+        setDate(sidecar.getDate());
+        IntBuffer secs = sidecar.intColumn(0);
+        LongBuffer prices = sidecar.longColumn(1);
+        LongBuffer sizes = sidecar.longColumn(2);
+        LongBuffer bids = sidecar.longColumn(3);
+        LongBuffer asks = sidecar.longColumn(4);
+        ByteBuffer flags = sidecar.byteColumn(5);
+        for (int i = 0; i < sidecar.getRowCount() && noteNewest(secs.get(i), fingerprint(secs.get(i), prices.get(i),
+                sizes.get(i), bids.get(i), asks.get(i), (flags.get(i) & FidelityTradeColumns.FLAG_TEE_TRADE) != 0)); i++) {
+            // the leading rows at the newest second
+        }
+        pMetrics.phase(Phase.AGGREGATE);
+        for (int i = 0; i < sidecar.getRowCount(); i++) {
+            byte f = flags.get(i);
+            indexBuilder.add(secs.get(i), prices.get(i), sizes.get(i),
+                    (byte) ((f >> FidelityTradeColumns.SENTIMENT_SHIFT) & FidelityTradeColumns.SENTIMENT_MASK),
+                    (f & FidelityTradeColumns.FLAG_TEE_TRADE) != 0);
+        }
+        if (pTradeStore == TradeStore.STREAMING) {
+            FidelityTradeColumns.aggregateInto(sidecar, aggregate);
+        } else {
+            useColumns(FidelityTradeColumns.readFrom(sidecar), pTradeStore, true);
+        }
+        return true;
+    }
+
+    /**
+     * Moves trades read into columns over to the configured store.
+     * @param pAggregate true if the totals still have to be taken from the columns.
+     */
+    private void useColumns(FidelityTradeColumns pColumns, TradeStore pTradeStore, boolean pAggregate) {
+        if (pAggregate) {
+            pColumns.aggregateInto(aggregate);
+        }
+        tradeColumns = null;
+        fixedPointTrades = null;
+        if (pTradeStore == TradeStore.COLUMNS) {
+            tradeColumns = pColumns;
+        } else if (pTradeStore != TradeStore.STREAMING) {
+            fixedPointTrades = new ArrayList<>(pColumns.size());
+            FidelityTradeCursor cursor = pColumns.cursor();
+            while (cursor.next()) {
+                fixedPointTrades.add(onDay(cursor.toTradeRecord()));
+            }
+        }
+    }
+
+    private void writeSidecar(FidelitySidecar.Stamp pStamp, int pScale) {
+        try {
+            tradeColumns.writeTo(FidelitySidecar.writer(aFile, pStamp, FidelitySidecar.KIND_TRADES, pScale, dateStr,
+                    tradeColumns.size())).commit();
+        } catch (IOException e) {
+            log.warn("could not write the sidecar of {}", aFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Takes in the trades of a fresh export of the same ticker-date that this day does not have
+     * yet. Fidelity writes newest first, so only the rows down to the newest trade already taken
+     * in are parsed; they are added to the store and the totals and the rest of the file is not
+     * read. Trades sharing the boundary second are told apart by their fields, counting
+     * duplicates, so a trade printed in the same second after the last export is not lost. The
+     * newest second is only moved on once the export has been read without error, so a failed
+     * refresh leaves the day ready for the next one. The new trades are held aside until then as
+     * well; a refresh that fails, e.g. on the error budget, adds nothing.
+     *
+     * <p>The day must have been processed with a fixed-point trade store. The new trades are put
+     * in front of the ones already held, so the columns and the fixed-point trades stay newest
+     * first, the order of the export.</p>
+     * @param pFile the fresh export.
+     * @return number of trades added.
+     * @throws FidelityFileException if the export can not be read or is for another date, or has more
+     *         bad rows than the error budget allows.
+     * @throws IllegalStateException if the day is not kept in fixed point.
+     */
+    public int refresh(File pFile) {
+        if (aggregate == null) {
+            throw new IllegalStateException("refresh needs a fixed-point trade store, see " + FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+        }
+        Configuration config = Configuration.getInstance();
+        int scale = aggregate.getScale();
+        FidelityQuarantine quarantine = FidelityConfiguration.getInstance().newQuarantine(pFile);
+        FidelityCSVScanner csvScanner = new FidelityCSVScanner(pFile, config.getHeaderSkipLineCount(), config.getDateLineNumber());
+        try {
+            csvScanner.initFile();
+        } catch (IOException e) {
+            csvScanner.close();
+            throw new FidelityFileException(pFile, "reader initiation failed", e);
+        }
+        FidelityTradeColumns fresh = new FidelityTradeColumns(scale);
+        int boundary = newestSecond;
+        Map<Long, Integer> alreadyIn = new HashMap<>(newestFingerprints);
+        int freshSecond = -1;
+        Map<Long, Integer> freshFingerprints = new HashMap<>();
+        boolean atNewest = true;
+        String date = csvScanner.getDate();
+        try {
+            if (dateStr != null && !dateStr.equals(date)) {
+                throw new FidelityFileException(pFile, "export is for " + date + ", not " + dateStr);
+            }
+            csvScanner.nextRow();
+            long rowCount = 0L;
+            while (csvScanner.nextRow() && !csvScanner.isEmptyRow()) {
+                rowCount++;
+                String reason = FidelityTradeRecord.validate(csvScanner);
+                if (reason != null) {
+                    quarantine.reject(csvScanner, reason);
+                    continue;
+                }
+                int secs = csvScanner.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP);
+                if (secs < boundary) {
+                    break;
+                }
+                long fingerprint = fingerprint(csvScanner, scale);
+                if (atNewest) {
+                    freshSecond = noteNewest(freshSecond, freshFingerprints, secs, fingerprint);
+                    atNewest = freshSecond == secs;
+                }
+                if (secs == boundary && alreadyIn.containsKey(fingerprint)) {
+                    // taken in from the previous export
+                    alreadyIn.computeIfPresent(fingerprint, (k, n) -> n == 1 ? null : n - 1);
+                    continue;
+                }
+                fresh.add(csvScanner);
+            }
+            quarantine.finish(rowCount);
+        } catch (IOException e) {
+            throw new FidelityFileException(pFile, "reading file failed", e);
+        } finally {
+            csvScanner.close();
+            quarantine.close();
+        }
+        setDate(date);
+        if (freshSecond >= 0) {
+            // nothing at or after the boundary keeps the boundary that was there
+            newestSecond = freshSecond;
+            newestFingerprints = freshFingerprints;
+        }
+        int rVal = fresh.size();
+        if (rVal > 0) {
+            takeIn(fresh);
+            timeIndex = null;
+        }
+        log.debug("refresh of {} added {} trades.", pFile.getName(), rVal);
+        return rVal;
+    }
+
+    /**
+     * Adds the trades of a refresh to the store, the totals and the time index.
+     * @param pFresh the new trades, newest first.
+     */
+    private void takeIn(FidelityTradeColumns pFresh) {
+        List<FidelityTradeRecord> records = fixedPointTrades == null ? null : new ArrayList<>(pFresh.size());
+        pFresh.aggregateInto(aggregate);
+        for (int i = 0; i < pFresh.size(); i++) {
+            indexBuilder.add(pFresh.getSecondOfDay(i), pFresh.getPriceTicks(i), pFresh.getSize(i),
+                    pFresh.getSentiment(i), pFresh.isTeeTrade(i));
+            if (records != null) {
+                records.add(onDay(new FidelityTradeRecord(pFresh.getSecondOfDay(i), pFresh.getPriceTicks(i),
+                        pFresh.getSize(i), pFresh.getBidTicks(i), pFresh.getAskTicks(i), pFresh.isTeeTrade(i),
+                        pFresh.getScale())));
             }
         }
+        if (tradeColumns != null) {
+            pFresh.addAll(tradeColumns);
+            tradeColumns = pFresh;
+        } else if (records != null) {
+            fixedPointTrades.addAll(0, records);
+        }
+    }
+
+    /**
+     * Remembers a trade if it is at the newest second seen so far.
+     * @return false once the trades are older than the newest second.
+     */
+    private boolean noteNewest(int pSecondOfDay, long pFingerprint) {
+        newestSecond = noteNewest(newestSecond, newestFingerprints, pSecondOfDay, pFingerprint);
+        return newestSecond == pSecondOfDay;
+    }
+
+    /**
+     * Remembers a trade in the given fingerprints if it is at the newest second seen so far.
+     * @return the newest second after the trade; not the second of the trade once the trades are
+     *         older than the newest second.
+     */
+    private static int noteNewest(int pNewestSecond, Map<Long, Integer> pFingerprints, int pSecondOfDay, long pFingerprint) {
+        if (pSecondOfDay < pNewestSecond) {
+            return pNewestSecond;
+        }
+        if (pSecondOfDay > pNewestSecond) {
+            pFingerprints.clear();
+        }
+        pFingerprints.merge(pFingerprint, 1, Integer::sum);
+        return pSecondOfDay;
+    }
+
+    private static long fingerprint(FidelityCSVScanner pRow, int pScale) {
+        return fingerprint(pRow.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP),
+                pRow.getScaled(FidelityTradeRecord.Indexes.LAST_PRICE, pScale),
+                pRow.getLong(FidelityTradeRecord.Indexes.LAST_SIZE),
+                pRow.isDecimal(FidelityTradeRecord.Indexes.BID_PRICE) ? pRow.getScaled(FidelityTradeRecord.Indexes.BID_PRICE, pScale) : FixedPoint.NONE,
+                pRow.isDecimal(FidelityTradeRecord.Indexes.ASK_PRICE) ? pRow.getScaled(FidelityTradeRecord.Indexes.ASK_PRICE, pScale) : FixedPoint.NONE,
+                pRow.fieldEquals(FidelityTradeRecord.Indexes.CONDITION, "T"));
+    }
+
+    /**
+     * Hash of the fields a trade is kept with. Two trades with the same fingerprint in the same
+     * second are the same as far as the totals are concerned.
+     */
+    private static long fingerprint(int pSecondOfDay, long pPrice, long pSize, long pBid, long pAsk, boolean pTeeTrade) {
+        long h = pSecondOfDay;
+        h = mix(h * 31 + pPrice);
+        h = mix(h * 31 + pSize);
+        h = mix(h * 31 + pBid);
+        h = mix(h * 31 + pAsk);
+        return mix(h * 31 + (pTeeTrade ? 1 : 0));
+    }
+
+    private static long mix(long pValue) {
+        long z = pValue * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Parses the current row into the configured store and, unless it goes into the columns, folds
+     * it into the totals.
+     */
+    private void addTrade(FidelityCSVScanner pRow, int pScale) {
+        if (tradeColumns != null) {
+            // summed once every row is in, see parse
+            int i = tradeColumns.add(pRow);
+            if (log.isDebugEnabled()) log.debug("adding trade {} to the columns . . .", i);
+            indexBuilder.add(tradeColumns.getSecondOfDay(i), tradeColumns.getPriceTicks(i), tradeColumns.getSize(i),
+                    tradeColumns.getSentiment(i), tradeColumns.isTeeTrade(i));
+        } else if (fixedPointTrades == null && aggregate != null) {
+            long priceTicks = pRow.getScaled(FidelityTradeRecord.Indexes.LAST_PRICE, pScale);
+            long size = pRow.getLong(FidelityTradeRecord.Indexes.LAST_SIZE);
+            long bidTicks = pRow.isDecimal(FidelityTradeRecord.Indexes.BID_PRICE)
+                    ? pRow.getScaled(FidelityTradeRecord.Indexes.BID_PRICE, pScale) : FixedPoint.NONE;
+            long askTicks = pRow.isDecimal(FidelityTradeRecord.Indexes.ASK_PRICE)
+                    ? pRow.getScaled(FidelityTradeRecord.Indexes.ASK_PRICE, pScale) : FixedPoint.NONE;
+            byte sentiment = FidelityDayAggregate.classify(priceTicks, bidTicks, askTicks);
+            boolean teeTrade = pRow.fieldEquals(FidelityTradeRecord.Indexes.CONDITION, "T");
+            aggregate.add(priceTicks, size, sentiment, teeTrade);
+            indexBuilder.add(pRow.getSecondOfDay(FidelityTradeRecord.Indexes.TIME_STAMP), priceTicks, size, sentiment, teeTrade);
+        } else if (aggregate != null) {
+            FidelityTradeRecord tr = onDay(new FidelityTradeRecord(pRow, pScale));
+            if (log.isDebugEnabled()) log.debug("adding a fixed-point trade . . . {}", tr);
+            aggregate.add(tr);
+            fixedPointTrades.add(tr);
+            indexBuilder.add(tr.getSecondOfDay(), tr.getPriceTicks(), tr.getSizeUnits(),
+                    FidelityDayAggregate.classify(tr.getPriceTicks(), tr.getBidTicks(), tr.getAskTicks()), tr.isTeeTrade());
+        } else {
+            FidelityTradeRecord tr = onDay(new FidelityTradeRecord(pRow));
+            if (log.isDebugEnabled()) log.debug("adding a trade . . . {}", tr);
+            super.addTradeRecord(tr);
+            indexBuilder.add(tr.getSecondOfDay(), FixedPoint.fromBigDecimal(tr.getPrice(), pScale), tr.getSize().longValue(),
+                    FidelityDayAggregate.toSentiment(tr.sentiment()), tr.isTeeTrade());
+        }
+    }
+
+    private void setDate(String pDateStr) {
+        dateStr = pDateStr;
+        epochDay = FidelityTradeRecord.toEpochDay(pDateStr);
+    }
+
+    private FidelityTradeRecord onDay(FidelityTradeRecord pTradeRecord) {
+        pTradeRecord.setEpochDay(epochDay);
+        return pTradeRecord;
+    }
+
+    /**
+     * @return the date of the export as days since the epoch, or {@link FidelityTradeRecord#NO_DAY}
+     *         if the day has not been processed or its date line is not a date.
+     */
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    /**
+     * The time-of-day index of the trades; totals for any window of the day, e.g. the regular
+     * session or the last half hour, without going over the trades again. Built on first use and
+     * again after a {@link #refresh(File)} has added trades.
+     * @return the index.
+     * @throws IllegalStateException if the day has not been processed.
+     */
+    public FidelityTradeIndex getTimeIndex() {
+        if (indexBuilder == null) {
+            throw new IllegalStateException("the day has not been processed: " + aFile.getName());
+        }
+        if (timeIndex == null) {
+            timeIndex = indexBuilder.build();
+        }
+        return timeIndex;
+    }
+
+    /**
+     * Drops the trades kept in fixed point, e.g. once they are on the ticker's tape. The totals
+     * and the time index stay; the day is then {@link #isStreaming() streaming}.
+     */
+    public void releaseTrades() {
+        if (aggregate != null) {
+            tradeColumns = null;
+            fixedPointTrades = null;
+        }
+    }
+
+    /**
+     * @return true if the day keeps no trades, only the totals.
+     */
+    public boolean isStreaming() {
+        return aggregate != null && tradeColumns == null && fixedPointTrades == null;
+    }
+
+    /**
+     * @return true if the day totals are kept in fixed point; fixed-point mode, the columnar or the streaming store.
+     */
+    public boolean isFixedPoint() {
+        return aggregate != null;
+    }
+
+    /**
+     * @return the trades parsed in fixed-point mode, in file order. Empty otherwise; the core
+     * TradeDay keeps the trades in BigDecimal mode.
+     */
+    public List<FidelityTradeRecord> getFixedPointTrades() {
+        return fixedPointTrades == null ? Collections.emptyList() : Collections.unmodifiableList(fixedPointTrades);
+    }
+
+    /**
+     * @return the export this day is read from.
+     */
+    File getExportFile() {
+        return aFile;
+    }
+
+    /**
+     * @return the trades when the day was processed with the columnar store, otherwise null.
+     */
+    public FidelityTradeColumns getTradeColumns() {
+        return tradeColumns;
+    }
+
+    @Override
+    public BigDecimal getVolume() {
+        return aggregate == null ? super.getVolume() : aggregate.getVolume();
+    }
+
+    @Override
+    public BigDecimal getBuyVolume() {
+        return aggregate == null ? super.getBuyVolume() : aggregate.getBuyVolume();
+    }
+
+    @Override
+    public BigDecimal getSellVolume() {
+        return aggregate == null ? super.getSellVolume() : aggregate.getSellVolume();
+    }
+
+    @Override
+    public BigDecimal getUnknownVolume() {
+        return aggregate == null ? super.getUnknownVolume() : aggregate.getUnknownVolume();
+    }
+
+    @Override
+    public BigDecimal getDollarVolume() {
+        return aggregate == null ? super.getDollarVolume() : aggregate.getDollarVolume();
+    }
+
+    @Override
+    public BigDecimal getBuyDollarVolume() {
+        return aggregate == null ? super.getBuyDollarVolume() : aggregate.getBuyDollarVolume();
+    }
+
+    @Override
+    public BigDecimal getSellDollarVolume() {
+        return aggregate == null ? super.getSellDollarVolume() : aggregate.getSellDollarVolume();
+    }
+
+    @Override
+    public BigDecimal getUnknownDollarVolume() {
+        return aggregate == null ? super.getUnknownDollarVolume() : aggregate.getUnknownDollarVolume();
+    }
+
+    @Override
+    public BigDecimal getAveragePrice() {
+        return aggregate == null ? super.getAveragePrice() : aggregate.getAveragePrice();
+    }
+
+    @Override
+    public int getTeeTradeCount() {
+        return aggregate == null ? super.getTeeTradeCount() : aggregate.getTeeTradeCount();
+    }
+
+    @Override
+    public BigDecimal getPctBuyVol() {
+        return aggregate == null ? super.getPctBuyVol() : aggregate.getPctBuyVol();
+    }
+
+    @Override
+    public BigDecimal getPctSellVol() {
+        return aggregate == null ? super.getPctSellVol() : aggregate.getPctSellVol();
+    }
+
+    @Override
+    public BigDecimal getPctUnknownVol() {
+        return aggregate == null ? super.getPctUnknownVol() : aggregate.getPctUnknownVol();
+    }
+
+    @Override
+    public BigDecimal getPctBuyDolVol() {
+        return aggregate == null ? super.getPctBuyDolVol() : aggregate.getPctBuyDolVol();
+    }
+
+    @Override
+    public BigDecimal getPctSellDolVol() {
+        return aggregate == null ? super.getPctSellDolVol() : aggregate.getPctSellDolVol();
+    }
+
+    @Override
+    public BigDecimal getPctUnknownDolVol() {
+        return aggregate == null ? super.getPctUnknownDolVol() : aggregate.getPctUnknownDolVol();
+    }
+
+    /**
+     * In fixed-point mode the row is written here, in the order of the
+     * <code>com.cobbinterwebs.trades.output.header1</code> columns, because the core totals are not populated.
+     */
+    @Override
+    public void writeSummary(PrintWriter psw) {
+        if (aggregate == null) {
+            super.writeSummary(psw);
+            return;
+        }
+        FidelityCSVSink sink = new FidelityCSVSink(psw, false);
+        writeSummary(sink);
+        sink.flush();
+    }
+
+    /**
+     * Writes the summary row in the order of the <code>com.cobbinterwebs.trades.output.header1</code> columns.
+     * @param pSink where to write.
+     */
+    public void writeSummary(FidelityOutputSink pSink) {
+        pSink.longValue(this.getDayOrdinal())
+                .text(this.getDateStr())
+                .decimal(this.getAveragePrice())
+                .decimal(this.getVolume())
+                .decimal(this.getBuyVolume())
+                .decimal(this.getSellVolume())
+                .decimal(this.getUnknownVolume())
+                .decimal(this.getDollarVolume())
+                .decimal(this.getBuyDollarVolume())
+                .decimal(this.getSellDollarVolume())
+                .decimal(this.getUnknownDollarVolume())
+                .decimal(this.getPctBuyDolVol())
+                .decimal(this.getPctSellDolVol())
+                .decimal(this.getPctUnknownDolVol())
+                .longValue(this.getTeeTradeCount())
+                .endRow();
     }
 
     public String getDebugString() {
-        String delimiter = "|";
+        char delimiter = '|';
     
-        return this.getDayOrdinal() + delimiter +
-                this.getDateStr() + delimiter +
-                this.getVolume() + delimiter +
-                this.getBuyVolume() + delimiter +
-                this.getSellVolume() + delimiter +
-                this.getUnknownVolume() + delimiter +
-                this.getDollarVolume() + delimiter +
-                this.getBuyDollarVolume() + delimiter +
-                this.getSellDollarVolume() + delimiter +
-                this.getUnknownDollarVolume() + "FidelityTradeDay[Date=" + getDateStr() + ", " +
-                "Volume=" + getVolume() + ", " +
-                "BuyVolume=" + getBuyVolume() + ", " +
-                "SellVolume=" + getSellVolume() + ", " +
-                "UnknownVolume=" + getUnknownVolume() + ", " +
-                "DollarVolume=" + getDollarVolume() + ", " +
-                "BuyDollarVolume=" + getBuyDollarVolume() + ", " +
-                "SellDollarVolume=" + getSellDollarVolume() + ", " +
-                "UnknownDollarVolume=" + getUnknownDollarVolume() + ", " +
-                "TeeTrade=" + getTeeTradeCount() + "]";
+        return new StringBuilder(256)
+                .append(this.getDayOrdinal()).append(delimiter)
+                .append(this.getDateStr()).append(delimiter)
+                .append(this.getVolume()).append(delimiter)
+                .append(this.getBuyVolume()).append(delimiter)
+                .append(this.getSellVolume()).append(delimiter)
+                .append(this.getUnknownVolume()).append(delimiter)
+                .append(this.getDollarVolume()).append(delimiter)
+                .append(this.getBuyDollarVolume()).append(delimiter)
+                .append(this.getSellDollarVolume()).append(delimiter)
+                .append(this.getUnknownDollarVolume())
+                .append("FidelityTradeDay[Date=").append(getDateStr())
+                .append(", Volume=").append(getVolume())
+                .append(", BuyVolume=").append(getBuyVolume())
+                .append(", SellVolume=").append(getSellVolume())
+                .append(", UnknownVolume=").append(getUnknownVolume())
+                .append(", DollarVolume=").append(getDollarVolume())
+                .append(", BuyDollarVolume=").append(getBuyDollarVolume())
+                .append(", SellDollarVolume=").append(getSellDollarVolume())
+                .append(", UnknownDollarVolume=").append(getUnknownDollarVolume())
+                .append(", TeeTrade=").append(getTeeTradeCount()).append(']')
+                .toString();
     }
 
 }
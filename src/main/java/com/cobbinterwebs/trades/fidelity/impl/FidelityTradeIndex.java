@@ -0,0 +1,429 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Arrays;
+
+import com.cobbinterwebs.fidelity.math.FixedPointSum;
+
+/**
+ * Time-of-day index of a day of trades. The trades are summed per second of the day and the
+ * seconds kept in order with running totals of the counts, volumes and 128 bit dollar volumes,
+ * so the totals for any window of the day are the difference of two entries found by binary
+ * search, O(log n) in the number of distinct seconds, however many trades fall in the window.
+ *
+ * <p>Windows are half open, <code>[from, to)</code>, in seconds since midnight ET. The Fidelity
+ * exports include pre-market and after-hours trades; {@link #preMarket()},
+ * {@link #regularSession()} and {@link #afterHours()} split the day at the usual session times.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public class FidelityTradeIndex {
+    /** 09:30 ET, the opening bell. */
+    public static final int REGULAR_OPEN = 9 * 3600 + 30 * 60;
+    /** 16:00 ET, the closing bell. */
+    public static final int REGULAR_CLOSE = 16 * 3600;
+    /** One past the last second of the day. */
+    public static final int END_OF_DAY = 24 * 3600;
+
+    private final int scale;
+    private final int[] seconds;
+    // running totals; entry i is the sum over seconds[0] .. seconds[i - 1]
+    private final int[] trades;
+    private final int[] teeTrades;
+    private final long[] volume;
+    private final long[] buyVolume;
+    private final long[] sellVolume;
+    private final long[] dollarHigh;
+    private final long[] dollarLow;
+    private final long[] buyDollarHigh;
+    private final long[] buyDollarLow;
+    private final long[] sellDollarHigh;
+    private final long[] sellDollarLow;
+
+    private FidelityTradeIndex(int pScale, int pSize) {
+        scale = pScale;
+        seconds = new int[pSize];
+        trades = new int[pSize + 1];
+        teeTrades = new int[pSize + 1];
+        volume = new long[pSize + 1];
+        buyVolume = new long[pSize + 1];
+        sellVolume = new long[pSize + 1];
+        dollarHigh = new long[pSize + 1];
+        dollarLow = new long[pSize + 1];
+        buyDollarHigh = new long[pSize + 1];
+        buyDollarLow = new long[pSize + 1];
+        sellDollarHigh = new long[pSize + 1];
+        sellDollarLow = new long[pSize + 1];
+    }
+
+    /**
+     * Indexes the trades held in columns.
+     * @param pColumns the trades, in any order.
+     * @return the index.
+     */
+    public static FidelityTradeIndex of(FidelityTradeColumns pColumns) {
+        Builder builder = new Builder(pColumns.getScale());
+        for (int i = 0; i < pColumns.size(); i++) {
+            builder.add(pColumns.getSecondOfDay(i), pColumns.getPriceTicks(i), pColumns.getSize(i),
+                    pColumns.getSentiment(i), pColumns.isTeeTrade(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param pHour hour of the day, 0 to 23.
+     * @param pMinute minute of the hour.
+     * @return seconds since midnight.
+     */
+    public static int secondOf(int pHour, int pMinute) {
+        return pHour * 3600 + pMinute * 60;
+    }
+
+    /**
+     * Totals of the trades in a window of the day.
+     * @param pFromSecond first second of the window, inclusive.
+     * @param pToSecond end of the window, exclusive.
+     * @return the totals; empty if no trade falls in the window.
+     */
+    public FidelityDayAggregate between(int pFromSecond, int pToSecond) {
+        int from = lowerBound(pFromSecond);
+        int to = Math.max(from, lowerBound(pToSecond));
+        FidelityDayAggregate rVal = new FidelityDayAggregate(scale);
+        rVal.addTotals(trades[to] - trades[from], teeTrades[to] - teeTrades[from],
+                volume[to] - volume[from], buyVolume[to] - buyVolume[from], sellVolume[to] - sellVolume[from],
+                difference(dollarHigh, dollarLow, from, to),
+                difference(buyDollarHigh, buyDollarLow, from, to),
+                difference(sellDollarHigh, sellDollarLow, from, to));
+        return rVal;
+    }
+
+    /**
+     * Totals of the trades in the last part of the day, counted back from the newest trade.
+     * @param pSeconds length of the window.
+     * @return the totals; e.g. <code>last(1800)</code> for the last 30 minutes of trading.
+     */
+    public FidelityDayAggregate last(int pSeconds) {
+        if (seconds.length == 0) {
+            return new FidelityDayAggregate(scale);
+        }
+        int end = getLastSecond() + 1;
+        return between(end - pSeconds, end);
+    }
+
+    /**
+     * @return totals of the trades before {@link #REGULAR_OPEN}.
+     */
+    public FidelityDayAggregate preMarket() {
+        return between(0, REGULAR_OPEN);
+    }
+
+    /**
+     * @return totals of the trades from {@link #REGULAR_OPEN} up to {@link #REGULAR_CLOSE}.
+     */
+    public FidelityDayAggregate regularSession() {
+        return between(REGULAR_OPEN, REGULAR_CLOSE);
+    }
+
+    /**
+     * @return totals of the trades from {@link #REGULAR_CLOSE} on.
+     */
+    public FidelityDayAggregate afterHours() {
+        return between(REGULAR_CLOSE, END_OF_DAY);
+    }
+
+    /**
+     * @return totals of every trade indexed.
+     */
+    public FidelityDayAggregate all() {
+        return between(0, END_OF_DAY);
+    }
+
+    /**
+     * @return number of distinct seconds that have trades.
+     */
+    public int size() {
+        return seconds.length;
+    }
+
+    /**
+     * @return number of trades indexed.
+     */
+    public int getTradeCount() {
+        return trades[seconds.length];
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return second of day of the oldest trade, -1 if there are none.
+     */
+    public int getFirstSecond() {
+        return seconds.length == 0 ? -1 : seconds[0];
+    }
+
+    /**
+     * @return second of day of the newest trade, -1 if there are none.
+     */
+    public int getLastSecond() {
+        return seconds.length == 0 ? -1 : seconds[seconds.length - 1];
+    }
+
+    /**
+     * @param pIndex zero based, oldest first.
+     * @return the second of day of an entry.
+     */
+    public int getSecond(int pIndex) {
+        return seconds[pIndex];
+    }
+
+    /**
+     * @return index of the first second not before <code>pSecond</code>.
+     */
+    private int lowerBound(int pSecond) {
+        int lo = 0;
+        int hi = seconds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seconds[mid] < pSecond) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static FixedPointSum difference(long[] pHigh, long[] pLow, int pFrom, int pTo) {
+        FixedPointSum rVal = new FixedPointSum();
+        rVal.set(pHigh[pTo], pLow[pTo]);
+        FixedPointSum before = new FixedPointSum();
+        before.set(pHigh[pFrom], pLow[pFrom]);
+        rVal.subtract(before);
+        return rVal;
+    }
+
+    /**
+     * Sums trades per second as they are parsed. Trades may come in any order; runs of trades at
+     * the same second, as in an export, share one entry. More trades may be added after
+     * {@link #build()}, e.g. by a refresh, and the index built again.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private final int scale;
+        private int size;
+        private int[] second = new int[INITIAL_CAPACITY];
+        private int[] tradeCount = new int[INITIAL_CAPACITY];
+        private int[] teeTradeCount = new int[INITIAL_CAPACITY];
+        private long[] vol = new long[INITIAL_CAPACITY];
+        private long[] buyVol = new long[INITIAL_CAPACITY];
+        private long[] sellVol = new long[INITIAL_CAPACITY];
+        // 128 bit dollar volumes as high and low words
+        private long[] dollarHi = new long[INITIAL_CAPACITY];
+        private long[] dollarLo = new long[INITIAL_CAPACITY];
+        private long[] buyDollarHi = new long[INITIAL_CAPACITY];
+        private long[] buyDollarLo = new long[INITIAL_CAPACITY];
+        private long[] sellDollarHi = new long[INITIAL_CAPACITY];
+        private long[] sellDollarLo = new long[INITIAL_CAPACITY];
+        private final FixedPointSum scratch = new FixedPointSum();
+
+        /**
+         * @param pScale scale of the price ticks that will be added.
+         */
+        public Builder(int pScale) {
+            scale = pScale;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+        /**
+         * Adds one trade.
+         * @param pSecondOfDay trade time, seconds since midnight.
+         * @param pPriceTicks trade price.
+         * @param pSize trade size.
+         * @param pSentiment {@link FidelityDayAggregate#BUY}, {@link FidelityDayAggregate#SELL} or {@link FidelityDayAggregate#UNKNOWN}.
+         * @param pTeeTrade true for a T (extended hours) trade.
+         */
+        public void add(int pSecondOfDay, long pPriceTicks, long pSize, byte pSentiment, boolean pTeeTrade) {
+            int i = size - 1;
+            if (size == 0 || second[i] != pSecondOfDay) {
+                if (size == second.length) {
+                    grow(size * 2);
+                }
+                i = size++;
+                second[i] = pSecondOfDay;
+            }
+            tradeCount[i]++;
+            if (pTeeTrade) {
+                teeTradeCount[i]++;
+            }
+            vol[i] += pSize;
+            addProduct(dollarHi, dollarLo, i, pPriceTicks, pSize);
+            if (pSentiment == FidelityDayAggregate.BUY) {
+                buyVol[i] += pSize;
+                addProduct(buyDollarHi, buyDollarLo, i, pPriceTicks, pSize);
+            } else if (pSentiment == FidelityDayAggregate.SELL) {
+                sellVol[i] += pSize;
+                addProduct(sellDollarHi, sellDollarLo, i, pPriceTicks, pSize);
+            }
+        }
+
+        /**
+         * Appends the entries of another builder, as if its trades had been added here after the ones
+         * already added.
+         * @param pOther a builder at the same scale.
+         */
+        public void addAll(Builder pOther) {
+            FixedPointSum other = new FixedPointSum();
+            for (int j = 0; j < pOther.size; j++) {
+                int i = size - 1;
+                if (size == 0 || second[i] != pOther.second[j]) {
+                    if (size == second.length) {
+                        grow(size * 2);
+                    }
+                    i = size++;
+                    second[i] = pOther.second[j];
+                }
+                tradeCount[i] += pOther.tradeCount[j];
+                teeTradeCount[i] += pOther.teeTradeCount[j];
+                vol[i] += pOther.vol[j];
+                buyVol[i] += pOther.buyVol[j];
+                sellVol[i] += pOther.sellVol[j];
+                other.set(pOther.dollarHi[j], pOther.dollarLo[j]);
+                addSum(dollarHi, dollarLo, i, other);
+                other.set(pOther.buyDollarHi[j], pOther.buyDollarLo[j]);
+                addSum(buyDollarHi, buyDollarLo, i, other);
+                other.set(pOther.sellDollarHi[j], pOther.sellDollarLo[j]);
+                addSum(sellDollarHi, sellDollarLo, i, other);
+            }
+        }
+
+        private void addSum(long[] pHigh, long[] pLow, int pIndex, FixedPointSum pOther) {
+            scratch.set(pHigh[pIndex], pLow[pIndex]);
+            scratch.add(pOther);
+            pHigh[pIndex] = scratch.getHigh();
+            pLow[pIndex] = scratch.getLow();
+        }
+
+        private void addProduct(long[] pHigh, long[] pLow, int pIndex, long pPriceTicks, long pSize) {
+            scratch.set(pHigh[pIndex], pLow[pIndex]);
+            scratch.addProduct(pPriceTicks, pSize);
+            pHigh[pIndex] = scratch.getHigh();
+            pLow[pIndex] = scratch.getLow();
+        }
+
+        /**
+         * Puts the entries in time order, merges the ones for the same second and takes the running totals.
+         * @return the index of the trades added so far.
+         */
+        public FidelityTradeIndex build() {
+            // Fidelity lists a day newest first, so the entries are usually walked backwards
+            boolean ascending = true;
+            boolean descending = true;
+            for (int i = 1; i < size; i++) {
+                ascending &= second[i - 1] <= second[i];
+                descending &= second[i - 1] >= second[i];
+            }
+            boolean reversed = !ascending && descending;
+            int[] order = ascending || descending ? null : timeOrder();
+            int distinct = 0;
+            for (int n = 0; n < size; n++) {
+                if (n == 0 || second[slot(order, reversed, n)] != second[slot(order, reversed, n - 1)]) {
+                    distinct++;
+                }
+            }
+            FidelityTradeIndex rVal = new FidelityTradeIndex(scale, distinct);
+            FixedPointSum dollar = new FixedPointSum();
+            FixedPointSum buyDollar = new FixedPointSum();
+            FixedPointSum sellDollar = new FixedPointSum();
+            int k = 0;
+            for (int n = 0; n < size; n++) {
+                int i = slot(order, reversed, n);
+                if (n > 0 && second[i] == rVal.seconds[k - 1]) {
+                    k--;
+                } else {
+                    rVal.seconds[k] = second[i];
+                    rVal.trades[k + 1] = rVal.trades[k];
+                    rVal.teeTrades[k + 1] = rVal.teeTrades[k];
+                    rVal.volume[k + 1] = rVal.volume[k];
+                    rVal.buyVolume[k + 1] = rVal.buyVolume[k];
+                    rVal.sellVolume[k + 1] = rVal.sellVolume[k];
+                }
+                rVal.trades[k + 1] += tradeCount[i];
+                rVal.teeTrades[k + 1] += teeTradeCount[i];
+                rVal.volume[k + 1] += vol[i];
+                rVal.buyVolume[k + 1] += buyVol[i];
+                rVal.sellVolume[k + 1] += sellVol[i];
+                add(dollar, dollarHi[i], dollarLo[i]);
+                add(buyDollar, buyDollarHi[i], buyDollarLo[i]);
+                add(sellDollar, sellDollarHi[i], sellDollarLo[i]);
+                rVal.dollarHigh[k + 1] = dollar.getHigh();
+                rVal.dollarLow[k + 1] = dollar.getLow();
+                rVal.buyDollarHigh[k + 1] = buyDollar.getHigh();
+                rVal.buyDollarLow[k + 1] = buyDollar.getLow();
+                rVal.sellDollarHigh[k + 1] = sellDollar.getHigh();
+                rVal.sellDollarLow[k + 1] = sellDollar.getLow();
+                k++;
+            }
+            return rVal;
+        }
+
+        /**
+         * @return the entries sorted by second, as packed <code>second &lt;&lt; 32 | entry</code> keys
+         *         so nothing is boxed.
+         */
+        private int[] timeOrder() {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) second[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] rVal = new int[size];
+            for (int n = 0; n < size; n++) {
+                rVal[n] = (int) keys[n];
+            }
+            return rVal;
+        }
+
+        /**
+         * @return the entry at a place in time order.
+         */
+        private int slot(int[] pOrder, boolean pReversed, int pN) {
+            if (pOrder != null) {
+                return pOrder[pN];
+            }
+            return pReversed ? size - 1 - pN : pN;
+        }
+
+        private void add(FixedPointSum pTotal, long pHigh, long pLow) {
+            scratch.set(pHigh, pLow);
+            pTotal.add(scratch);
+        }
+
+        private void grow(int pCapacity) {
+            second = Arrays.copyOf(second, pCapacity);
+            tradeCount = Arrays.copyOf(tradeCount, pCapacity);
+            teeTradeCount = Arrays.copyOf(teeTradeCount, pCapacity);
+            vol = Arrays.copyOf(vol, pCapacity);
+            buyVol = Arrays.copyOf(buyVol, pCapacity);
+            sellVol = Arrays.copyOf(sellVol, pCapacity);
+            dollarHi = Arrays.copyOf(dollarHi, pCapacity);
+            dollarLo = Arrays.copyOf(dollarLo, pCapacity);
+            buyDollarHi = Arrays.copyOf(buyDollarHi, pCapacity);
+            buyDollarLo = Arrays.copyOf(buyDollarLo, pCapacity);
+            sellDollarHi = Arrays.copyOf(sellDollarHi, pCapacity);
+            sellDollarLo = Arrays.copyOf(sellDollarLo, pCapacity);
+        }
+    }
+}
@@ -9,15 +9,19 @@ package com.cobbinterwebs.trades.fidelity.impl;
 ////////////////////////////////////////////////////////////////////////////////
 
 import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.StringTokenizer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
 import com.cobbinterwebs.locale.DisplayKeys;
+import com.cobbinterwebs.trades.ITradeRecord;
 import com.cobbinterwebs.trades.TradeRecord;
 
 /**
@@ -37,6 +41,11 @@ import com.cobbinterwebs.trades.TradeRecord;
  * <li>Last Exchange</li>
  * <li>Trade Condition</li>
  * <ol>
+ *
+ * <h2>Time</h2>
+ * The trade time is kept as seconds since midnight plus the day, as a count of days since the
+ * epoch, taken from the date line of the export; see {@link #getTimestamp()}. A
+ * <code>Calendar</code> is only built for the calendar delegates.
  * @author Cobb Interwebs, LLC
  * @see com.cobbinterwebs.trades.TradeRecord
  */
@@ -44,76 +53,124 @@ public class FidelityTradeRecord extends TradeRecord {
 
 	private static final Logger log = LogManager.getLogger("com.cobbinterwebs.fidelity.FidelityTradeRecord");
 	
-	private Calendar cal = new GregorianCalendar();
+	/** Epoch day of a trade whose export date is not known. */
+	public static final long NO_DAY = Long.MIN_VALUE;
+
+	private static final int SECONDS_PER_DAY = 86400;
+
+	private int secondOfDay;
+	private long epochDay = NO_DAY;
+	/* built on first use of the calendar delegates */
+	private Calendar cal;
+	
+	/*
+	 * FIXED POINT. Populated by the fixed-point constructor only; scale stays -1 when
+	 * the trade was parsed into BigDecimals. The BigDecimals are then built on demand.
+	 */
+	private int scale = -1;
+	private long priceTicks = FixedPoint.NONE;
+	private long sizeUnits;
+	private long bidTicks = FixedPoint.NONE;
+	private long askTicks = FixedPoint.NONE;
 	/*
 	 * DELEGATES for the calendar. Might be overkill. At this time (06NOV2021) I
 	 * think there are a few that I can absolutely justify. I am deviating from
 	 * agile methodology only because it is so easy to generate these with the
 	 * click of a button. When I finish implementing the wavelet  feature,
 	 * I will revisit and delete/deprecate the unused.
+	 *
+	 * The calendar is built from the second of day and epoch day when first asked
+	 * for; a trade without a day is put on today's date, as before. The setters write
+	 * the calendar's time back.
 	 */
 	
 	/**
 	 * @see java.util.Calendar
 	 */
 	public final Date getTime() {
-		return cal.getTime();
+		return calendar().getTime();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public final void setTime(Date date) {
-		cal.setTime(date);
+		calendar().setTime(date);
+		fromCalendar();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public long getTimeInMillis() {
-		return cal.getTimeInMillis();
+		return calendar().getTimeInMillis();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public void setTimeInMillis(long millis) {
-		cal.setTimeInMillis(millis);
+		calendar().setTimeInMillis(millis);
+		fromCalendar();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public int get(int field) {
-		return cal.get(field);
+		return calendar().get(field);
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public void set(int field, int value) {
-		cal.set(field, value);
+		calendar().set(field, value);
+		fromCalendar();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public final void set(int year, int month, int date) {
-		cal.set(year, month, date);
+		calendar().set(year, month, date);
+		fromCalendar();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public final void set(int year, int month, int date, int hourOfDay, int minute) {
-		cal.set(year, month, date, hourOfDay, minute);
+		calendar().set(year, month, date, hourOfDay, minute);
+		fromCalendar();
 	}
 
 	/**
 	 * @see java.util.Calendar
 	 */
 	public final void set(int year, int month, int date, int hourOfDay, int minute, int second) {
-		cal.set(year, month, date, hourOfDay, minute, second);
+		calendar().set(year, month, date, hourOfDay, minute, second);
+		fromCalendar();
+	}
+
+	private Calendar calendar() {
+		if (cal == null) {
+			cal = new GregorianCalendar();
+			if (epochDay != NO_DAY) {
+				LocalDate day = LocalDate.ofEpochDay(epochDay);
+				cal.set(day.getYear(), day.getMonthValue() - 1, day.getDayOfMonth());
+			}
+			cal.set(Calendar.HOUR_OF_DAY, secondOfDay / 3600);
+			cal.set(Calendar.MINUTE, (secondOfDay / 60) % 60);
+			cal.set(Calendar.SECOND, secondOfDay % 60);
+			cal.set(Calendar.MILLISECOND, 0);
+		}
+		return cal;
+	}
+
+	private void fromCalendar() {
+		secondOfDay = cal.get(Calendar.HOUR_OF_DAY) * 3600 + cal.get(Calendar.MINUTE) * 60 + cal.get(Calendar.SECOND);
+		epochDay = LocalDate.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH)).toEpochDay();
 	} /////////////////////////////////////		
 	  ///////////////////////////////////////
 	  /////// END OF CALENDAR DELEGATES /////
@@ -147,46 +204,355 @@ public class FidelityTradeRecord extends TradeRecord {
 		log.trace(DisplayKeys.get(DisplayKeys.LOG_PARSING), pData);
 		
 		timeStr = super.rawTokens.get(Indexes.TIME_STAMP);
-		int[] timeArray = convertDateString(timeStr);
-		cal.set(Calendar.HOUR_OF_DAY, timeArray[FidelityTradeRecord.HOUR]);
-		cal.set(Calendar.MINUTE, timeArray[FidelityTradeRecord.MINUTE]);
-		cal.set(Calendar.SECOND, timeArray[FidelityTradeRecord.SECOND]);
+		secondOfDay = parseSecondOfDay(timeStr);
 		
 		price = new BigDecimal(super.rawTokens.get(Indexes.LAST_PRICE),mathCtx);
 		size = new BigDecimal(super.rawTokens.get(Indexes.LAST_SIZE),mathCtx);
-		try {
-			bid = new BigDecimal(super.rawTokens.get(Indexes.BID_PRICE), mathCtx);
-		} catch(NumberFormatException nfex) {
+		String bidStr = super.rawTokens.get(Indexes.BID_PRICE);
+		if (isDecimal(bidStr)) {
+			bid = new BigDecimal(bidStr, mathCtx);
+		} else if (log.isDebugEnabled()) {
 			log.debug("Trade record has no bid info. Data: {}", pData);
 		}
 		
-		try {
-			ask = new BigDecimal(super.rawTokens.get(Indexes.ASK_PRICE), mathCtx);
-		} catch(NumberFormatException nfex) {
+		String askStr = super.rawTokens.get(Indexes.ASK_PRICE);
+		if (isDecimal(askStr)) {
+			ask = new BigDecimal(askStr, mathCtx);
+		} else if (log.isDebugEnabled()) {
 			log.debug("Trade trade has no ask info. Data: {}", pData);
 		}
 		
 		super.tTrade = "T".equals(super.rawTokens.get(Indexes.CONDITION));
 	}
 
+	/**
+	 * Checks the current row of the scanner without parsing it. Bid and ask may be missing, as
+	 * they often are out of hours; the other fields must be there.
+	 * @param pRow scanner positioned on a row of trade data.
+	 * @return why the row can not be read, or null if it can.
+	 */
+	public static String validate(FidelityCSVScanner pRow) {
+		if (!pRow.isTime(Indexes.TIME_STAMP)) {
+			return "bad time";
+		}
+		if (!pRow.isDecimal(Indexes.LAST_PRICE)) {
+			return "bad price";
+		}
+		if (!pRow.isInteger(Indexes.LAST_SIZE)) {
+			return "bad size";
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the token is a plain decimal number; optional sign, digits and at most one point.
+	 */
+	private static boolean isDecimal(String pToken) {
+		int i = 0;
+		int end = pToken.length();
+		if (i < end && (pToken.charAt(i) == '-' || pToken.charAt(i) == '+')) {
+			i++;
+		}
+		boolean digits = false;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = pToken.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				return false;
+			}
+		}
+		return digits;
+	}
+
+	/**
+	 * CTOR reading the trade from the current row of the scanner. The fields are
+	 * converted straight from the file bytes; neither the line nor the raw tokens
+	 * are kept.
+	 * @param pRow scanner positioned on a row of trade data.
+	 */
+	public FidelityTradeRecord(FidelityCSVScanner pRow) {
+		super(pRow.getString(Indexes.TIME_STAMP), null, null, null, null);
+
+		setTimeOfDay(pRow.getSecondOfDay(Indexes.TIME_STAMP));
+
+		price = pRow.getDecimal(Indexes.LAST_PRICE, mathCtx);
+		size = pRow.getDecimal(Indexes.LAST_SIZE, mathCtx);
+		if (pRow.isDecimal(Indexes.BID_PRICE)) {
+			bid = pRow.getDecimal(Indexes.BID_PRICE, mathCtx);
+		} else if (log.isDebugEnabled()) {
+			log.debug("Trade record has no bid info. Line: {}", pRow.getLineNumber());
+		}
+		if (pRow.isDecimal(Indexes.ASK_PRICE)) {
+			ask = pRow.getDecimal(Indexes.ASK_PRICE, mathCtx);
+		} else if (log.isDebugEnabled()) {
+			log.debug("Trade trade has no ask info. Line: {}", pRow.getLineNumber());
+		}
+
+		super.tTrade = pRow.fieldEquals(Indexes.CONDITION, "T");
+	}
+
+	/**
+	 * CTOR for fixed-point mode. Price, bid and ask become longs scaled by <code>pScale</code>
+	 * and the size becomes a long. No BigDecimal is created unless a caller asks for one.
+	 * @param pRow scanner positioned on a row of trade data.
+	 * @param pScale digits to the right of the decimal point, <code>com.cobbinterwebs.trades.scale</code>.
+	 */
+	public FidelityTradeRecord(FidelityCSVScanner pRow, int pScale) {
+		super(pRow.getString(Indexes.TIME_STAMP), null, null, null, null);
+
+		setTimeOfDay(pRow.getSecondOfDay(Indexes.TIME_STAMP));
+
+		scale = pScale;
+		priceTicks = pRow.getScaled(Indexes.LAST_PRICE, pScale);
+		sizeUnits = pRow.getLong(Indexes.LAST_SIZE);
+		if (pRow.isDecimal(Indexes.BID_PRICE)) {
+			bidTicks = pRow.getScaled(Indexes.BID_PRICE, pScale);
+		}
+		if (pRow.isDecimal(Indexes.ASK_PRICE)) {
+			askTicks = pRow.getScaled(Indexes.ASK_PRICE, pScale);
+		}
+
+		super.tTrade = pRow.fieldEquals(Indexes.CONDITION, "T");
+	}
+
+	/**
+	 * CTOR for a fixed-point trade that has already been parsed, e.g. one held in a
+	 * {@link FidelityTradeColumns}.
+	 * @param pSecondOfDay trade time, seconds since midnight.
+	 * @param pPriceTicks trade price.
+	 * @param pSize trade size.
+	 * @param pBidTicks bid, or {@link FixedPoint#NONE}.
+	 * @param pAskTicks ask, or {@link FixedPoint#NONE}.
+	 * @param pTeeTrade true for a T trade.
+	 * @param pScale scale of the ticks.
+	 */
+	public FidelityTradeRecord(int pSecondOfDay, long pPriceTicks, long pSize, long pBidTicks, long pAskTicks,
+			boolean pTeeTrade, int pScale) {
+		super(formatTimeOfDay(pSecondOfDay), null, null, null, null);
+		setTimeOfDay(pSecondOfDay);
+		scale = pScale;
+		priceTicks = pPriceTicks;
+		sizeUnits = pSize;
+		bidTicks = pBidTicks;
+		askTicks = pAskTicks;
+		super.tTrade = pTeeTrade;
+	}
+
+	private void setTimeOfDay(int pSecondOfDay) {
+		secondOfDay = pSecondOfDay;
+		cal = null;
+	}
+
+	/**
+	 * Puts the trade on the day of its export.
+	 * @param pEpochDay days since the epoch, or {@link #NO_DAY}.
+	 */
+	public void setEpochDay(long pEpochDay) {
+		epochDay = pEpochDay;
+		cal = null;
+	}
+
+	/**
+	 * @return days since the epoch of the trade's export, or {@link #NO_DAY} if it is not known.
+	 */
+	public long getEpochDay() {
+		return epochDay;
+	}
+
+	/**
+	 * Orders trades across days with a single comparison.
+	 * @return seconds since the epoch, in exchange time; the second of day alone when the day is not known.
+	 */
+	public long getTimestamp() {
+		return epochDay == NO_DAY ? secondOfDay : epochDay * SECONDS_PER_DAY + secondOfDay;
+	}
+
+	/**
+	 * Reads a time of day as Fidelity writes it, e.g. <code>19:59:59 ET</code>, with digit
+	 * arithmetic. Anything after the clock is ignored.
+	 * @param pTimeStr the time.
+	 * @return seconds since midnight.
+	 * @throws NumberFormatException if the text does not start with hours and minutes.
+	 */
+	static int parseSecondOfDay(CharSequence pTimeStr) {
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		int part = 0;
+		int digits = 0;
+		for (int i = 0; i < pTimeStr.length(); i++) {
+			char c = pTimeStr.charAt(i);
+			if (c >= '0' && c <= '9') {
+				int d = c - '0';
+				if (part == 0) {
+					hour = hour * 10 + d;
+				} else if (part == 1) {
+					minute = minute * 10 + d;
+				} else {
+					second = second * 10 + d;
+				}
+				digits++;
+			} else if (c == ':' && part < 2) {
+				part++;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0 || part == 0) {
+			throw new NumberFormatException("not a time: " + pTimeStr);
+		}
+		return hour * 3600 + minute * 60 + second;
+	}
+
+	/**
+	 * Reads the date line of an export, e.g. <code>10/25/2021</code>.
+	 * @param pDateStr the date, month first.
+	 * @return days since the epoch, or {@link #NO_DAY} if the text is not a date.
+	 */
+	public static long toEpochDay(String pDateStr) {
+		if (pDateStr == null) {
+			return NO_DAY;
+		}
+		int month = 0;
+		int day = 0;
+		int year = 0;
+		int part = 0;
+		String text = pDateStr.trim();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				int d = c - '0';
+				if (part == 0) {
+					month = month * 10 + d;
+				} else if (part == 1) {
+					day = day * 10 + d;
+				} else {
+					year = year * 10 + d;
+				}
+			} else if (c == '/' && part < 2) {
+				part++;
+			} else {
+				return NO_DAY;
+			}
+		}
+		if (part != 2 || month < 1 || month > 12 || day < 1 || day > 31 || year == 0) {
+			return NO_DAY;
+		}
+		try {
+			return LocalDate.of(year, month, day).toEpochDay();
+		} catch (DateTimeException e) {
+			return NO_DAY;
+		}
+	}
+
+	/**
+	 * @param pSecondOfDay seconds since midnight.
+	 * @return the time as Fidelity writes it, e.g. <code>09:30:00 ET</code>.
+	 */
+	static String formatTimeOfDay(int pSecondOfDay) {
+		int hour = pSecondOfDay / 3600;
+		int minute = (pSecondOfDay / 60) % 60;
+		int second = pSecondOfDay % 60;
+		char[] text = {
+				(char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+				(char) ('0' + minute / 10), (char) ('0' + minute % 10), ':',
+				(char) ('0' + second / 10), (char) ('0' + second % 10), ' ', 'E', 'T' };
+		return new String(text);
+	}
+
+	/**
+	 * @return true if this trade was parsed in fixed-point mode.
+	 */
+	public boolean isFixedPoint() {
+		return scale >= 0;
+	}
+
+	/**
+	 * @return the scale of the price ticks, -1 when not in fixed-point mode.
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	public long getPriceTicks() {
+		return priceTicks;
+	}
+
+	public long getSizeUnits() {
+		return sizeUnits;
+	}
+
+	/**
+	 * @return the trade time, seconds since midnight.
+	 */
+	public int getSecondOfDay() {
+		return secondOfDay;
+	}
+
+	/**
+	 * @return the bid as ticks, or {@link FixedPoint#NONE} if the trade has no bid info.
+	 */
+	public long getBidTicks() {
+		return bidTicks;
+	}
+
+	/**
+	 * @return the ask as ticks, or {@link FixedPoint#NONE} if the trade has no ask info.
+	 */
+	public long getAskTicks() {
+		return askTicks;
+	}
+
+	@Override
+	public BigDecimal getPrice() {
+		if (price == null && isFixedPoint()) {
+			price = FixedPoint.toBigDecimal(priceTicks, scale);
+		}
+		return super.getPrice();
+	}
+
+	@Override
+	public BigDecimal getSize() {
+		if (size == null && isFixedPoint()) {
+			size = BigDecimal.valueOf(sizeUnits);
+		}
+		return super.getSize();
+	}
+
+	@Override
+	public BigDecimal getDollarVolume() {
+		if (isFixedPoint()) {
+			return getPrice().multiply(getSize());
+		}
+		return super.getDollarVolume();
+	}
+
+	@Override
+	public ITradeRecord.BuySell sentiment() {
+		if (isFixedPoint()) {
+			return FidelityDayAggregate.toBuySell(FidelityDayAggregate.classify(priceTicks, bidTicks, askTicks));
+		}
+		return super.sentiment();
+	}
+
 	/**
 	 * It will return the trade time as an
 	 * array of ints. This is useful for the time aspects of the jfreechart
 	 * library which has it's own representation of time.
 	 * @param pDateStr The time string as read from the trade csv file.
 	 * @return array of integers (int) hours[0], min[1], sec[2]
+	 * @see #getSecondOfDay()
 	 */
 	protected static int[] convertDateString(String pDateStr) {
-		String dateString = pDateStr.substring(0,8);
-		StringTokenizer strtok = new StringTokenizer(dateString, ":");
-		int hr = Integer.parseInt(strtok.nextToken());
-		int min = Integer.parseInt(strtok.nextToken());
-		int sec = Integer.parseInt(strtok.nextToken());
-				
+		int secs = parseSecondOfDay(pDateStr);
 		int[] rVal = new int[3];
-		rVal[FidelityTradeRecord.HOUR] = hr;
-		rVal[FidelityTradeRecord.MINUTE] = min;
-		rVal[FidelityTradeRecord.SECOND] = sec;
+		rVal[FidelityTradeRecord.HOUR] = secs / 3600;
+		rVal[FidelityTradeRecord.MINUTE] = (secs / 60) % 60;
+		rVal[FidelityTradeRecord.SECOND] = secs % 60;
 		
 		return rVal;
 	}
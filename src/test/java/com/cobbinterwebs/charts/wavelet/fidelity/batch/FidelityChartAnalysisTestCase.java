@@ -0,0 +1,101 @@
+package com.cobbinterwebs.charts.wavelet.fidelity.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysis;
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysisResult;
+import com.cobbinterwebs.charts.wavlet.fidelity.batch.FidelityChartAnalysisResult.ChartCoefficients;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns.Series;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.generator.FidelityDatasetGenerator;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeBars;
+
+import jwave.exceptions.JWaveException;
+
+public class FidelityChartAnalysisTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("charts");
+	}
+
+	@Test
+	public void testMatchesSerialTransforms() throws IOException, JWaveException {
+		List<String> tickers = Arrays.asList("AAAA", "BBBB", "CCCC");
+		new FidelityDatasetGenerator(11L).writeHome(dir, tickers, FidelityDatasetGenerator.tradingDays(LocalDate.of(2021, 11, 1), 2), 10, true, 2);
+
+		Map<String, List<File>> charts = FidelityChartAnalysis.discover(dir);
+		assertEquals(tickers, Arrays.asList(charts.keySet().toArray()));
+
+		FidelityChartAnalysis analysis = new FidelityChartAnalysis(dir, 4);
+		FidelityChartAnalysisResult result = analysis.analyze();
+		assertEquals(0, result.getFailureCount());
+		for (String ticker : tickers) {
+			List<ChartCoefficients> analyzed = result.getTickers().get(ticker).getCharts();
+			assertEquals(1, analyzed.size());
+			ChartCoefficients chart = analyzed.get(0);
+			FidelityChartColumns columns = new FidelityChartProcessor(chart.getChart()).read();
+			assertEquals(columns.size(), chart.getPoints());
+			for (Series series : Series.values()) {
+				double[] expected = FidelityWaveletEngine.getInstance().forward(columns.getSeries(series));
+				assertArrayEquals(expected, chart.get(series), 0.0);
+			}
+		}
+
+		analysis.writeCoefficients(result, FidelityOutputSink.Format.CSV);
+		List<String> lines = Files.readAllLines(new File(new File(dir, "BBBB"), FidelityChartAnalysis.COEFFICIENTS_FILE + ".csv").toPath());
+		assertEquals("Chart,Index,OPEN,HIGH,LOW,CLOSE,VOLUME", lines.get(0));
+		assertEquals(result.getTickers().get("BBBB").getCharts().get(0).get(Series.OPEN).length + 1, lines.size());
+	}
+
+	@Test
+	public void testFailureIsRecorded() {
+		File good = new File("test-data/DWAC/charInput/20211108-1D-5MIN.csv");
+		File missing = new File(dir, "missing.csv");
+		Map<String, List<File>> charts = new TreeMap<>();
+		charts.put("DWAC", Arrays.asList(missing, good));
+
+		FidelityChartAnalysisResult result = new FidelityChartAnalysis(dir, 2).analyze(charts);
+		assertEquals(1, result.getFailureCount());
+		assertTrue(result.getTickers().get("DWAC").getFailures().containsKey(missing));
+		assertEquals(291, result.getTickers().get("DWAC").getCharts().get(0).getPoints());
+		assertEquals(291, result.get("DWAC", good.getName(), Series.VOLUME).length);
+	}
+
+	@Test
+	public void testTradeBars() throws JWaveException {
+		File home = new File("test-data");
+		FidelityChartAnalysisResult result = new FidelityChartAnalysis(home, 4).analyzeTrades(60);
+		assertEquals(0, result.getFailureCount());
+		assertEquals(2, result.getTickers().get("MSFT").getCharts().size());
+
+		File export = new File("test-data/MSFT/input/MSFT-20211025.csv");
+		FidelityTradeBars bars = FidelityTradeBars.read(export, 60, FidelityConfiguration.getInstance().getScale());
+		ChartCoefficients chart = result.getTickers().get("MSFT").getCharts().get(0);
+		assertEquals(export.getName(), chart.getChart().getName());
+		assertEquals(bars.size(), chart.getPoints());
+		assertArrayEquals(bars.transform().get(Series.VOLUME), chart.get(Series.VOLUME), 0.0);
+	}
+}
@@ -0,0 +1,81 @@
+package com.cobbinterwebs.charts.wavelet.fidelity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartRecord;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityChartColumnsTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private static final File CHART = new File("test-data/DWAC/charInput/20211108-1D-5MIN.csv");
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+	}
+
+	@Test
+	public void testMatchesChartRecords() throws IOException {
+		FidelityChartProcessor processor = new FidelityChartProcessor(CHART);
+		processor.process();
+		FidelityChartColumns columns = processor.getColumns();
+
+		int i = 0;
+		try (FidelityCSVScanner csv = new FidelityCSVScanner(CHART, 0, -1)) {
+			csv.initFile();
+			csv.nextRow(); // column header
+			while (csv.nextRow() && !csv.fieldStartsWith(0, "The data and information")) {
+				FidelityChartRecord expected = new FidelityChartRecord(csv);
+				assertEquals(expected.getDateTime().getTime(), columns.getDateTime(i));
+				assertEquals(expected.getOpenPrice().doubleValue(), columns.getOpen(i), 0.0);
+				assertEquals(expected.getHighPrice().doubleValue(), columns.getHigh(i), 0.0);
+				assertEquals(expected.getLowPrice().doubleValue(), columns.getLow(i), 0.0);
+				assertEquals(expected.getClosePrice().doubleValue(), columns.getClose(i), 0.0);
+				assertEquals(expected.getVolume().longValue(), columns.getVolume(i));
+				i++;
+			}
+		}
+		assertEquals(i, columns.size());
+		assertTrue(i > 0);
+	}
+
+	@Test
+	public void testArraysAreNotCopied() {
+		FidelityChartProcessor processor = new FidelityChartProcessor(CHART);
+		processor.process();
+		double[] open = processor.getOpenPriceArray();
+		assertSame(open, processor.getOpenPriceArray());
+		assertEquals(processor.getColumns().size(), open.length);
+	}
+
+	@Test
+	public void testGrowAndViews() {
+		FidelityChartColumns columns = new FidelityChartColumns(1);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, columns.add(i * 60_000L, i, i + 1, i - 1, i + 0.5, i * 10L));
+		}
+		assertEquals(1000, columns.getOpenPrices().length);
+		assertEquals(999.5, columns.getClosePrices()[999], 0.0);
+		assertEquals(1000, columns.closeView().remaining());
+		assertEquals(9990L, columns.volumeView().get(999));
+		assertTrue(columns.openView().isReadOnly());
+		try {
+			columns.openView().put(0, 1.0);
+			fail("view is writable");
+		} catch (ReadOnlyBufferException e) {
+			// expected
+		}
+	}
+}
@@ -3,17 +3,32 @@ package com.cobbinterwebs.charts.wavelet.fidelity.impl;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityFileException;
+import com.cobbinterwebs.fidelity.io.FidelityQuarantine;
 import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
 
 public class FidelityChartProcessorTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase{
 	@Before
 	public void beforeClass() {
 		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY);
+		FidelityConfiguration.reset();
 	}
 
 	@Test
@@ -30,4 +45,29 @@ public class FidelityChartProcessorTestCase extends FidelityAbstractBaseSecurity
 		}
 	}
 
+	@Test
+	public void testBadRowIsQuarantined() throws IOException {
+		List<String> lines = Files.readAllLines(new File("test-data/DWAC/charInput/20211108-1D-5MIN.csv").toPath(), StandardCharsets.UTF_8);
+		lines.set(100, "11/05/2021,9:35 AM,x,65.18,64.44,64.903,196128");
+		File chart = File.createTempFile("20211108-1D-5MIN", ".csv");
+		File rejected = FidelityQuarantine.quarantineFor(chart);
+		try {
+			Files.write(chart.toPath(), lines, StandardCharsets.UTF_8);
+			assertEquals(290, new FidelityChartProcessor(chart).read().size());
+			assertTrue(rejected.isFile());
+
+			System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY, "0");
+			FidelityConfiguration.reset();
+			try {
+				new FidelityChartProcessor(chart).process();
+				fail("the rest of the chart was transformed");
+			} catch (FidelityFileException e) {
+				// expected
+			}
+		} finally {
+			chart.delete();
+			rejected.delete();
+		}
+	}
+
 }
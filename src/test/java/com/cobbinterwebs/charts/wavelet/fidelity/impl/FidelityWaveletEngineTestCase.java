@@ -0,0 +1,96 @@
+package com.cobbinterwebs.charts.wavelet.fidelity.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine.Strategy;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityWaveletEngine.TransformKind;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+import jwave.exceptions.JWaveException;
+import jwave.transforms.AncientEgyptianDecomposition;
+import jwave.transforms.FastWaveletTransform;
+import jwave.transforms.wavelets.haar.Haar1;
+
+public class FidelityWaveletEngineTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.WAVELET_STRATEGY_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static double[] series(int pLength) {
+		Random random = new Random(pLength);
+		double[] rVal = new double[pLength];
+		for (int i = 0; i < pLength; i++) {
+			rVal[i] = 60.0 + random.nextGaussian();
+		}
+		return rVal;
+	}
+
+	@Test
+	public void testMatchesAncientEgyptianDecomposition() throws JWaveException {
+		FidelityWaveletEngine engine = FidelityWaveletEngine.getInstance();
+		assertSame(engine, FidelityWaveletEngine.getInstance());
+		for (int length : new int[] { 1, 2, 310, 512, 1000 }) {
+			double[] x = series(length);
+			double[] expected = new AncientEgyptianDecomposition(new FastWaveletTransform(new Haar1())).forward(x);
+			assertArrayEquals(expected, engine.forward(x), 1e-12);
+		}
+	}
+
+	@Test
+	public void testPaddingStrategies() throws JWaveException {
+		double[] x = series(310);
+		double[] padded = new double[512];
+		System.arraycopy(x, 0, padded, 0, 310);
+		FidelityWaveletEngine zeroPad = new FidelityWaveletEngine(Haar1.class, TransformKind.FAST, -1, Strategy.ZERO_PAD);
+		assertEquals(512, zeroPad.outputLength(310));
+		assertArrayEquals(new FastWaveletTransform(new Haar1()).forward(padded), zeroPad.forward(x), 1e-12);
+
+		Arrays.fill(padded, 310, 512, x[309]);
+		FidelityWaveletEngine padLast = new FidelityWaveletEngine(Haar1.class, TransformKind.FAST, -1, Strategy.PAD_LAST);
+		assertArrayEquals(new FastWaveletTransform(new Haar1()).forward(padded), padLast.forward(x), 1e-12);
+
+		double[] tail = Arrays.copyOfRange(x, 310 - 256, 310);
+		FidelityWaveletEngine truncate = new FidelityWaveletEngine(Haar1.class, TransformKind.FAST, -1, Strategy.TRUNCATE);
+		assertEquals(256, truncate.outputLength(310));
+		assertArrayEquals(new FastWaveletTransform(new Haar1()).forward(tail), truncate.forward(x), 1e-12);
+	}
+
+	@Test
+	public void testStrategyFromConfiguration() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.WAVELET_STRATEGY_KEY, "pad-last");
+		FidelityConfiguration.reset();
+		assertEquals(Strategy.PAD_LAST, FidelityWaveletEngine.getInstance().getStrategy());
+	}
+
+	@Test
+	public void testForwardAllAndReuse() throws JWaveException {
+		FidelityWaveletEngine engine = FidelityWaveletEngine.getInstance();
+		double[][] all = { series(310), series(310), series(310) };
+		double[][] coefficients = engine.forwardAll(all);
+		double[] out = new double[310];
+		for (int i = 0; i < all.length; i++) {
+			assertSame(out, engine.forward(all[i], all[i].length, out));
+			assertArrayEquals(coefficients[i], out, 0.0);
+		}
+	}
+}
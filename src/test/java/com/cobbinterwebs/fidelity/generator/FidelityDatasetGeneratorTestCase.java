@@ -0,0 +1,114 @@
+package com.cobbinterwebs.fidelity.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityCSVScanner;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.batch.FidelityInputFile;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+public class FidelityDatasetGeneratorTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("generated");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	@Test
+	public void testTradeDayParses() throws IOException {
+		File file = new File(dir, "ABCD-20211025.csv");
+		new FidelityDatasetGenerator(7L).writeTradeDay(file, "ABCD", LocalDate.of(2021, 10, 25), 20000);
+
+		for (String store : new String[] { "objects", "columns", "streaming" }) {
+			System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+			FidelityTradeDay day = new FidelityTradeDay(file);
+			day.process();
+			assertEquals("10/25/2021", day.getDateStr());
+			assertTrue(day.getTeeTradeCount() > 0);
+			assertEquals(day.getVolume(), day.getBuyVolume().add(day.getSellVolume()).add(day.getUnknownVolume()));
+			if ("columns".equals(store)) {
+				assertEquals(20000, day.getTradeColumns().size());
+			}
+		}
+
+		try (FidelityCSVScanner scanner = new FidelityCSVScanner(file, 9, 2)) {
+			scanner.initFile();
+			assertEquals("ABCD", scanner.getHeaderLine(1));
+			scanner.nextRow();
+			int previous = Integer.MAX_VALUE;
+			int rows = 0;
+			boolean missingQuote = false;
+			while (scanner.nextRow() && !scanner.isEmptyRow()) {
+				int secs = scanner.getSecondOfDay(0);
+				assertTrue("newest first", secs <= previous);
+				previous = secs;
+				missingQuote |= !scanner.isDecimal(3);
+				rows++;
+			}
+			assertEquals(20000, rows);
+			assertTrue(missingQuote);
+			assertTrue("footer", scanner.isEmptyRow());
+		}
+	}
+
+	@Test
+	public void testSameSeedSameBytes() throws IOException {
+		List<LocalDate> days = FidelityDatasetGenerator.tradingDays(LocalDate.of(2021, 10, 29), 3);
+		assertEquals(Arrays.asList(LocalDate.of(2021, 10, 29), LocalDate.of(2021, 11, 1), LocalDate.of(2021, 11, 2)), days);
+
+		File one = new File(dir, "one");
+		File two = new File(dir, "two");
+		List<String> tickers = Arrays.asList(FidelityDatasetGenerator.symbol(0), FidelityDatasetGenerator.symbol(27));
+		assertEquals(Arrays.asList("AAAA", "AABB"), tickers);
+		assertEquals(8, new FidelityDatasetGenerator(3L).writeHome(one, tickers, days, 500, true, 1));
+		assertEquals(8, new FidelityDatasetGenerator(3L).writeHome(two, tickers, days, 500, true, 4));
+
+		List<FidelityInputFile> inputs = FidelityInputFile.discover(one);
+		assertEquals(6, inputs.size());
+		for (FidelityInputFile input : inputs) {
+			File other = new File(two, input.getTicker() + "/input/" + input.getFile().getName());
+			assertArrayEquals(Files.readAllBytes(input.getFile().toPath()), Files.readAllBytes(other.toPath()));
+		}
+		File chart = new File(one, "AAAA/charInput/20211102-3D-1MIN.csv");
+		assertArrayEquals(Files.readAllBytes(chart.toPath()), Files.readAllBytes(new File(two, "AAAA/charInput/20211102-3D-1MIN.csv").toPath()));
+
+		File otherSeed = new File(dir, "three");
+		new FidelityDatasetGenerator(4L).writeHome(otherSeed, tickers, days, 500, false, 1);
+		assertFalse(Arrays.equals(Files.readAllBytes(inputs.get(0).getFile().toPath()),
+				Files.readAllBytes(new File(otherSeed, "AAAA/input/" + inputs.get(0).getFile().getName()).toPath())));
+	}
+
+	@Test
+	public void testChartParses() throws IOException {
+		File file = new File(dir, "20211102-3D-1MIN.csv");
+		new FidelityDatasetGenerator(1L).writeChart(file, "ABCD", FidelityDatasetGenerator.tradingDays(LocalDate.of(2021, 10, 29), 3));
+		FidelityChartProcessor processor = new FidelityChartProcessor(file);
+		processor.process();
+		assertEquals(3 * FidelityDatasetGenerator.BARS_PER_DAY, processor.getOpenPriceArray().length);
+	}
+}
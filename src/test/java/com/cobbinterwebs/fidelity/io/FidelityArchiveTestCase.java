@@ -0,0 +1,147 @@
+package com.cobbinterwebs.fidelity.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.batch.FidelityInputFile;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+public class FidelityArchiveTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private static final File EXPORT = new File("test-data/MSFT/input/MSFT-20211025.csv");
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("archive");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static File gzip(byte[] pContent, File pTarget) throws IOException {
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(pTarget.toPath()))) {
+			out.write(pContent);
+		}
+		return pTarget;
+	}
+
+	private static File zip(File pTarget, String... pEntries) throws IOException {
+		byte[] content = Files.readAllBytes(EXPORT.toPath());
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(pTarget.toPath()))) {
+			for (String entry : pEntries) {
+				out.putNextEntry(new ZipEntry(entry));
+				out.write(content);
+				out.closeEntry();
+			}
+		}
+		return pTarget;
+	}
+
+	private static void assertSameDay(File pExport) {
+		FidelityTradeDay day = new FidelityTradeDay(pExport);
+		day.process();
+		assertEquals(new BigDecimal("24851"), day.getVolume());
+		assertEquals(0, new BigDecimal("7687494.6017").compareTo(day.getDollarVolume()));
+		assertEquals(53, day.getTimeIndex().all().getTeeTradeCount());
+	}
+
+	@Test
+	public void testGzipAndZipReadLikeThePlainExport() throws IOException {
+		File gz = gzip(Files.readAllBytes(EXPORT.toPath()), new File(dir, "MSFT-20211025.csv.gz"));
+		File bundle = zip(new File(dir, "MSFT-2021-10.zip"), "MSFT-20211025.csv");
+		File entry = new File(bundle, "MSFT-20211025.csv");
+		assertTrue(FidelityArchive.isCompressed(gz));
+		assertFalse(FidelityArchive.isEntry(gz));
+		assertEquals(bundle, FidelityArchive.archiveOf(entry));
+		assertNull(FidelityArchive.archiveOf(EXPORT));
+		for (String store : new String[] { "columns", "streaming" }) {
+			System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+			FidelityConfiguration.reset();
+			assertSameDay(gz);
+			assertSameDay(entry);
+		}
+		// no sidecar can be written inside a zip; rejected rows of an entry go next to it
+		assertFalse(new File(dir, "MSFT-20211025.csv" + FidelitySidecar.EXTENSION).exists());
+		assertEquals(new File(dir, "MSFT-20211025.csv" + FidelityQuarantine.EXTENSION), FidelityQuarantine.quarantineFor(entry));
+	}
+
+	@Test
+	public void testRowsAcrossRefills() throws IOException {
+		List<String> lines = Files.readAllLines(EXPORT.toPath(), StandardCharsets.UTF_8);
+		List<String> rows = new ArrayList<>(lines.subList(0, 10));
+		for (int i = 0; i < 60; i++) {
+			rows.addAll(lines.subList(10, 508));
+		}
+		rows.addAll(lines.subList(508, lines.size()));
+		File plain = new File(dir, "MSFT-20211025.csv");
+		Files.write(plain.toPath(), rows, StandardCharsets.UTF_8);
+		assertTrue(plain.length() > FidelityCSVScanner.STREAM_WINDOW * 2);
+		File gz = gzip(Files.readAllBytes(plain.toPath()), new File(dir, "MSFT-20211025.csv.gz"));
+
+		long[] expected = sizes(plain);
+		long[] actual = sizes(gz);
+		assertEquals(60 * 498, actual[0]);
+		assertEquals(expected[0], actual[0]);
+		assertEquals(expected[1], actual[1]);
+		assertEquals(expected[2], actual[2]);
+	}
+
+	/**
+	 * @return the row count, the sum of the sizes and the bytes read.
+	 */
+	private static long[] sizes(File pExport) throws IOException {
+		long[] rVal = new long[3];
+		try (FidelityCSVScanner scanner = new FidelityCSVScanner(pExport, 9, 2)) {
+			scanner.initFile();
+			assertEquals("10/25/2021", scanner.getDate());
+			scanner.nextRow(); // column header
+			while (scanner.nextRow() && !scanner.isEmptyRow()) {
+				rVal[0]++;
+				rVal[1] += scanner.getLong(2);
+			}
+			rVal[2] = scanner.getBytesRead();
+		}
+		return rVal;
+	}
+
+	@Test
+	public void testDiscoverLooksInsideZips() throws IOException {
+		File input = new File(dir, "MSFT/" + FidelityInputFile.INPUT_DIR);
+		assertTrue(input.mkdirs());
+		zip(new File(input, "MSFT-2021-10.zip"), "2021-10/MSFT-20211025.csv", "2021-10/MSFT-20211026.csv", "README.txt");
+		gzip(Files.readAllBytes(EXPORT.toPath()), new File(input, "MSFT-20211027.csv.gz"));
+
+		List<FidelityInputFile> inputs = FidelityInputFile.discover(dir);
+		assertEquals(3, inputs.size());
+		assertEquals("2021-10-25", inputs.get(0).getDate().toString());
+		assertEquals("2021-10-26", inputs.get(1).getDate().toString());
+		assertEquals("2021-10-27", inputs.get(2).getDate().toString());
+		assertTrue(FidelityArchive.isEntry(inputs.get(1).getFile()));
+		assertSameDay(inputs.get(1).getFile());
+	}
+}
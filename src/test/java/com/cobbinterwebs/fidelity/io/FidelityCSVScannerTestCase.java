@@ -0,0 +1,82 @@
+package com.cobbinterwebs.fidelity.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityCSVScannerTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	FidelityCSVScanner scanner;
+
+	@Before
+	public void openTradeFile() throws IOException {
+		super.setHome("test-data");
+		scanner = new FidelityCSVScanner(new File("test-data/MSFT/input/MSFT-20211025.csv"), 9, 2);
+		scanner.initFile();
+	}
+
+	@After
+	public void closeTradeFile() {
+		scanner.close();
+	}
+
+	@Test
+	public void testHeader() throws IOException {
+		assertEquals("10/25/2021", scanner.getDate());
+		assertEquals("MSFT", scanner.getHeaderLine(1));
+		assertTrue(scanner.nextRow());
+		assertTrue(scanner.fieldEquals(0, "Time"));
+		assertEquals(11, scanner.getFieldCount());
+	}
+
+	@Test
+	public void testFirstTrade() throws IOException {
+		scanner.nextRow(); // column header
+		assertTrue(scanner.nextRow());
+		assertEquals(19 * 3600 + 59 * 60 + 59, scanner.getSecondOfDay(0));
+		assertEquals(new BigDecimal("309.55"), scanner.getDecimal(1, MathContext.DECIMAL64));
+		assertEquals(10L, scanner.getLong(2));
+		assertEquals(309.55, scanner.getDouble(1), 0.0);
+		assertEquals(309.26, scanner.getDouble(3), 0.0);
+		assertTrue(scanner.isDecimal(3));
+		assertTrue(scanner.fieldEquals(10, "--"));
+		assertEquals("\"19:59:59 ET\",\"309.55\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"A\",\"--\"", scanner.getLine());
+	}
+
+	@Test
+	public void testStopsAtFooter() throws IOException {
+		scanner.nextRow(); // column header
+		int rows = 0;
+		while (scanner.nextRow() && !scanner.isEmptyRow()) {
+			rows++;
+		}
+		assertEquals(498, rows);
+		assertTrue(scanner.isEmptyRow());
+		assertFalse(scanner.nextRow());
+	}
+
+	@Test
+	public void testChartFile() throws IOException {
+		try (FidelityCSVScanner chart = new FidelityCSVScanner(new File("test-data/DWAC/charInput/20211108-1D-5MIN.csv"), 0, -1)) {
+			chart.initFile();
+			assertTrue(chart.nextRow());
+			assertTrue("byte order mark is skipped", chart.fieldEquals(0, "Date"));
+			assertTrue(chart.nextRow());
+			assertEquals(LocalDate.of(2021, 11, 2).toEpochDay(), chart.getEpochDay(0));
+			assertEquals(16 * 3600, chart.getSecondOfDay(1));
+			assertEquals(196128L, chart.getLong(6));
+			assertFalse(chart.isDecimal(0));
+		}
+	}
+}
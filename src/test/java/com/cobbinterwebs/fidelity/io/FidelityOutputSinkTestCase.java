@@ -0,0 +1,100 @@
+package com.cobbinterwebs.fidelity.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityOutputSinkTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private static final String NL = System.lineSeparator();
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+	}
+
+	private static void write(FidelityOutputSink pSink) {
+		pSink.header("\"\",\"Date\",\"DV\"");
+		pSink.longValue(1).text("10/25/2021").decimal(new BigDecimal("7687494.6017")).endRow();
+		pSink.label("Running VWDA").decimal(null).doubleValue(-0.5).endRow();
+		pSink.decimal(new BigDecimal("123456789012345678901234567890.12345")).endRow();
+		pSink.doubles(new double[] { 1.0, 2.5, 3.0 }, 1, 3);
+	}
+
+	@Test
+	public void testCSV() {
+		StringWriter out = new StringWriter();
+		try (FidelityOutputSink sink = new FidelityCSVSink(out, true)) {
+			write(sink);
+		}
+		assertEquals("\"\",\"Date\",\"DV\"" + NL
+				+ "1,10/25/2021,7687494.6017" + NL
+				+ "\"Running VWDA\",null,-0.5" + NL
+				+ "123456789012345678901234567890.12345" + NL
+				+ "2.5,3.0" + NL, out.toString());
+	}
+
+	@Test
+	public void testBinaryReplaysToTheSameCSV() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (FidelityOutputSink sink = new FidelityBinarySink(bytes, true)) {
+			write(sink);
+		}
+		StringWriter direct = new StringWriter();
+		try (FidelityOutputSink sink = new FidelityCSVSink(direct, true)) {
+			write(sink);
+		}
+		StringWriter replayed = new StringWriter();
+		try (FidelityOutputSink sink = new FidelityCSVSink(replayed, true)) {
+			FidelityBinarySink.replay(new ByteArrayInputStream(bytes.toByteArray()), sink);
+		}
+		assertEquals(direct.toString(), replayed.toString());
+	}
+
+	@Test
+	public void testBinaryValues() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (FidelityOutputSink sink = new FidelityBinarySink(bytes, true)) {
+			write(sink);
+		}
+		FidelityMemorySink memory = new FidelityMemorySink();
+		FidelityBinarySink.replay(new ByteArrayInputStream(bytes.toByteArray()), memory);
+
+		List<List<Object>> rows = memory.getRows();
+		assertEquals(4, rows.size());
+		assertEquals(Arrays.asList(1L, "10/25/2021", new BigDecimal("7687494.6017")), rows.get(0));
+		assertNull(rows.get(1).get(1));
+		assertEquals(-0.5, (Double) rows.get(1).get(2), 0.0);
+		assertEquals(new BigDecimal("123456789012345678901234567890.12345"), rows.get(2).get(0));
+		assertEquals(Arrays.asList(2.5, 3.0), rows.get(3));
+	}
+
+	@Test
+	public void testBinaryLargerThanBuffer() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		char[] text = new char[FidelityBinarySink.BUFFER_SIZE * 2 + 3];
+		Arrays.fill(text, 'x');
+		try (FidelityOutputSink sink = new FidelityBinarySink(bytes, true)) {
+			for (int i = 0; i < 100_000; i++) {
+				sink.longValue(i).doubleValue(i / 2.0).endRow();
+			}
+			sink.text(new String(text)).endRow();
+		}
+		FidelityMemorySink memory = new FidelityMemorySink();
+		FidelityBinarySink.replay(new ByteArrayInputStream(bytes.toByteArray()), memory);
+		assertEquals(100_001, memory.getRows().size());
+		assertEquals(Arrays.asList(99_999L, 49_999.5), memory.getRows().get(99_999));
+		assertEquals(text.length, ((String) memory.getRows().get(100_000).get(0)).length());
+	}
+}
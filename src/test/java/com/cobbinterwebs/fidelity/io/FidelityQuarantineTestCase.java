@@ -0,0 +1,151 @@
+package com.cobbinterwebs.fidelity.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeBars;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+public class FidelityQuarantineTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private static final String[] BAD_ROWS = {
+		"\"19:59:58 ET\",\"\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"P\",\"--\"",
+		"\"19:59:58 ET\",\"309.50\",\"ten\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"P\",\"--\"",
+		"\"--\",\"309.50\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"P\",\"--\"",
+	};
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("quarantine");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_FRACTION_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_QUARANTINE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNKS_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNK_MIN_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	/**
+	 * The MSFT export with a trade missing its bid and ask after the third row (file line 14),
+	 * then the bad rows (lines 15 to 17).
+	 */
+	private File noisyExport() throws IOException {
+		List<String> lines = Files.readAllLines(new File("test-data/MSFT/input/MSFT-20211025.csv").toPath(), StandardCharsets.UTF_8);
+		lines.add(13, "\"19:59:58 ET\",\"309.50\",\"5\",\"\",\"\",\"\",\"\",\"\",\"\",\"P\",\"--\"");
+		for (int i = 0; i < BAD_ROWS.length; i++) {
+			lines.add(14 + i, BAD_ROWS[i]);
+		}
+		File rVal = new File(dir, "MSFT-20211025.csv");
+		Files.write(rVal.toPath(), lines, StandardCharsets.UTF_8);
+		return rVal;
+	}
+
+	@Test
+	public void testRejectedRowsAreQuarantined() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		File csv = noisyExport();
+		FidelityTradeDay day = new FidelityTradeDay(csv);
+		day.process();
+		assertEquals(499, day.getTradeColumns().size());
+		assertEquals(new BigDecimal("24856"), day.getVolume());
+
+		File rejected = FidelityQuarantine.quarantineFor(csv);
+		assertTrue(rejected.isFile());
+		List<String> lines = Files.readAllLines(rejected.toPath(), StandardCharsets.UTF_8);
+		assertEquals(4, lines.size());
+		assertEquals("line,reason,data", lines.get(0));
+		assertEquals("15,bad price," + BAD_ROWS[0], lines.get(1));
+		assertEquals("16,bad size," + BAD_ROWS[1], lines.get(2));
+		assertEquals("17,bad time," + BAD_ROWS[2], lines.get(3));
+
+		// a clean export removes the quarantine file of an earlier run
+		Files.copy(new File("test-data/MSFT/input/MSFT-20211025.csv").toPath(), csv.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		new FidelityTradeDay(csv).process();
+		assertFalse(rejected.exists());
+	}
+
+	@Test
+	public void testRejectedRowsOfParallelRanges() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		System.setProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNKS_KEY, "8");
+		System.setProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNK_MIN_KEY, "1");
+		File csv = noisyExport();
+		FidelityTradeDay day = new FidelityTradeDay(csv);
+		day.process();
+		assertEquals(499, day.getTradeColumns().size());
+		assertEquals(new BigDecimal("24856"), day.getVolume());
+
+		List<String> lines = Files.readAllLines(FidelityQuarantine.quarantineFor(csv).toPath(), StandardCharsets.UTF_8);
+		assertEquals(4, lines.size());
+		assertEquals("15,bad price," + BAD_ROWS[0], lines.get(1));
+		assertEquals("17,bad time," + BAD_ROWS[2], lines.get(3));
+	}
+
+	@Test
+	public void testStreamingAndBars() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_QUARANTINE_KEY, "false");
+		File csv = noisyExport();
+		FidelityTradeDay day = new FidelityTradeDay(csv);
+		day.process();
+		assertEquals(new BigDecimal("24856"), day.getVolume());
+		assertEquals(0, new BigDecimal("7689042.1017").compareTo(day.getDollarVolume()));
+		assertFalse(FidelityQuarantine.quarantineFor(csv).exists());
+
+		FidelityTradeBars bars = FidelityTradeBars.read(csv, 60, 8);
+		long volume = 0L;
+		for (int i = 0; i < bars.size(); i++) {
+			volume += bars.getVolume(i);
+		}
+		assertEquals(24856L, volume);
+	}
+
+	@Test
+	public void testErrorBudget() throws IOException {
+		File csv = noisyExport();
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY, "2");
+		try {
+			new FidelityTradeDay(csv).process();
+			fail("three rejected rows are over a budget of two");
+		} catch (FidelityFileException e) {
+			assertEquals(csv, e.getFile());
+		}
+
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY, "3");
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_FRACTION_KEY, "0.001");
+		try {
+			new FidelityTradeDay(csv).process();
+			fail("three rejected rows of 502 are over a budget of 0.1%");
+		} catch (FidelityFileException e) {
+			assertEquals(csv, e.getFile());
+		}
+
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_FRACTION_KEY, "0.01");
+		new FidelityTradeDay(csv).process();
+		assertTrue(FidelityQuarantine.quarantineFor(csv).isFile());
+	}
+}
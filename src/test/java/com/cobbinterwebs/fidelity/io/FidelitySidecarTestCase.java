@@ -0,0 +1,146 @@
+package com.cobbinterwebs.fidelity.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+public class FidelitySidecarTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		System.setProperty(FidelityConfiguration.PropertyConstants.SIDECAR_KEY, "true");
+		FidelityConfiguration.reset();
+		dir = createTempDir("sidecar");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.SIDECAR_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private File copy(String pPath) throws IOException {
+		File source = new File(pPath);
+		File rVal = new File(dir, source.getName());
+		Files.copy(source.toPath(), rVal.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+		return rVal;
+	}
+
+	@Test
+	public void testTradesRoundTrip() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		File csv = copy("test-data/MSFT/input/MSFT-20211025.csv");
+		FidelityTradeDay parsed = new FidelityTradeDay(csv);
+		parsed.process();
+		assertTrue(FidelitySidecar.sidecarFor(csv).isFile());
+
+		FidelitySidecar sidecar = FidelitySidecar.open(csv, FidelitySidecar.KIND_TRADES, 8);
+		assertNotNull(sidecar);
+		assertEquals(498, sidecar.getRowCount());
+		assertEquals("10/25/2021", sidecar.getDate());
+		assertNull(FidelitySidecar.open(csv, FidelitySidecar.KIND_TRADES, 4));
+		assertNull(FidelitySidecar.open(csv, FidelitySidecar.KIND_CHART, 8));
+
+		FidelityTradeDay cached = new FidelityTradeDay(csv);
+		cached.process();
+		assertEquals(498, cached.getTradeColumns().size());
+		assertEquals(498, cached.getTimeIndex().all().getTradeCount());
+		assertEquals(parsed.getDateStr(), cached.getDateStr());
+		assertEquals(parsed.getVolume(), cached.getVolume());
+		assertEquals(parsed.getBuyDollarVolume(), cached.getBuyDollarVolume());
+		assertEquals(parsed.getTeeTradeCount(), cached.getTeeTradeCount());
+		for (int i = 0; i < 498; i++) {
+			assertEquals(parsed.getTradeColumns().getPriceTicks(i), cached.getTradeColumns().getPriceTicks(i));
+			assertEquals(parsed.getTradeColumns().getFlags(i), cached.getTradeColumns().getFlags(i));
+		}
+
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		FidelityTradeDay streamed = new FidelityTradeDay(csv);
+		streamed.process();
+		assertTrue(streamed.isStreaming());
+		assertEquals(0, new BigDecimal("7687494.6017").compareTo(streamed.getDollarVolume()));
+		assertEquals(streamed.getDollarVolume(), streamed.getTimeIndex().all().getDollarVolume());
+	}
+
+	@Test
+	public void testNotWrittenWithRejectedRows() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		File csv = copy("test-data/MSFT/input/MSFT-20211025.csv");
+		String text = new String(Files.readAllBytes(csv.toPath()), StandardCharsets.UTF_8);
+		Files.write(csv.toPath(), text.replaceFirst("\"19:59:59 ET\"", "\"--\",\"309.50\",\"10\"\r\n\"19:59:59 ET\"")
+				.getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+		FidelityTradeDay day = new FidelityTradeDay(csv);
+		day.process();
+		assertEquals(24851L, day.getVolume().longValue());
+		assertTrue(FidelityQuarantine.quarantineFor(csv).isFile());
+		// the sidecar would not match the file
+		assertFalse(FidelitySidecar.sidecarFor(csv).exists());
+	}
+
+	@Test
+	public void testTouchedButUnchanged() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		File csv = copy("test-data/MSFT/input/MSFT-20211025.csv");
+		new FidelityTradeDay(csv).process();
+		assertTrue(csv.setLastModified(csv.lastModified() + 60_000L));
+		assertNotNull(FidelitySidecar.open(csv, FidelitySidecar.KIND_TRADES, 8));
+		// the new time is recorded, so the next open does not hash the export again
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(FidelitySidecar.sidecarFor(csv).toPath()));
+		assertEquals(csv.lastModified(), header.getLong(FidelitySidecar.MODIFIED_OFFSET));
+	}
+
+	@Test
+	public void testInvalidatedWhenChanged() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		File csv = copy("test-data/MSFT/input/MSFT-20211025.csv");
+		new FidelityTradeDay(csv).process();
+
+		// same size, different content and time
+		String text = new String(Files.readAllBytes(csv.toPath()), StandardCharsets.UTF_8);
+		Files.write(csv.toPath(), text.replaceFirst("\"309\\.55\"", "\"309.56\"").getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.TRUNCATE_EXISTING);
+		assertTrue(csv.setLastModified(csv.lastModified() + 60_000L));
+		assertNull(FidelitySidecar.open(csv, FidelitySidecar.KIND_TRADES, 8));
+
+		FidelityTradeDay day = new FidelityTradeDay(csv);
+		day.process();
+		assertEquals(0, new BigDecimal("7687494.7017").compareTo(day.getDollarVolume()));
+		assertNotNull(FidelitySidecar.open(csv, FidelitySidecar.KIND_TRADES, 8));
+	}
+
+	@Test
+	public void testChartRoundTrip() throws IOException {
+		File csv = copy("test-data/DWAC/charInput/20211108-1D-5MIN.csv");
+		FidelityChartProcessor parsed = new FidelityChartProcessor(csv);
+		parsed.process();
+		assertTrue(FidelitySidecar.sidecarFor(csv).isFile());
+
+		FidelityChartProcessor cached = new FidelityChartProcessor(csv);
+		cached.process();
+		assertArrayEquals(parsed.getOpenPriceArray(), cached.getOpenPriceArray(), 0.0);
+	}
+}
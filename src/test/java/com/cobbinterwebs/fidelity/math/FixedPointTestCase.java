@@ -0,0 +1,59 @@
+package com.cobbinterwebs.fidelity.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class FixedPointTestCase {
+
+	@Test
+	public void testParse() {
+		assertEquals(30955000000L, FixedPoint.parse("309.55", 8));
+		assertEquals(100L, FixedPoint.parse("100", 0));
+		assertEquals(-125L, FixedPoint.parse("-1.25", 2));
+		assertEquals(13L, FixedPoint.parse("1.25", 1)); // half up
+		assertEquals(12L, FixedPoint.parse("1.249", 1));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseEmpty() {
+		FixedPoint.parse("", 8);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		assertEquals(new BigDecimal("309.55000000"), FixedPoint.toBigDecimal(30955000000L, 8));
+		assertEquals(30955000000L, FixedPoint.fromBigDecimal(new BigDecimal("309.55"), 8));
+		assertEquals(null, FixedPoint.toBigDecimal(FixedPoint.NONE, 8));
+	}
+
+	@Test
+	public void testSumPastLongRange() {
+		FixedPointSum sum = new FixedPointSum();
+		sum.addProduct(Long.MAX_VALUE, 4L);
+		sum.addProduct(Long.MAX_VALUE, 4L);
+		assertFalse(sum.fitsInLong());
+		BigInteger expected = BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(8L));
+		assertEquals(expected, sum.toBigInteger());
+
+		FixedPointSum part = new FixedPointSum();
+		part.addProduct(Long.MAX_VALUE, 4L);
+		sum.subtract(part);
+		sum.subtract(part);
+		assertTrue(sum.fitsInLong());
+		assertEquals(BigInteger.ZERO, sum.toBigInteger());
+	}
+
+	@Test
+	public void testNegativeSum() {
+		FixedPointSum sum = new FixedPointSum();
+		sum.add(-5L);
+		sum.addProduct(-3L, 2L);
+		assertEquals(new BigDecimal("-0.11"), sum.toBigDecimal(2));
+	}
+}
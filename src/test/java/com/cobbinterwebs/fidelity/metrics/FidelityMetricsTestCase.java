@@ -0,0 +1,132 @@
+package com.cobbinterwebs.fidelity.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartProcessor;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FidelityMetricsTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	static final File MSFT_20211025 = new File("test-data/MSFT/input/MSFT-20211025.csv");
+	static final File DWAC_CHART = new File("test-data/DWAC/charInput/20211108-1D-5MIN.csv");
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		FidelityMetrics.reset();
+	}
+
+	@After
+	public void after() {
+		FidelityMetrics.reset();
+	}
+
+	@Test
+	public void testTradeDay() {
+		new FidelityTradeDay(MSFT_20211025).process();
+
+		Map<String, Long> snapshot = FidelityMetrics.getInstance().snapshot();
+		assertEquals(Long.valueOf(1L), snapshot.get("trades.files"));
+		assertEquals(Long.valueOf(498L), snapshot.get("trades.records"));
+		assertEquals(Long.valueOf(0L), snapshot.get("trades.rejected"));
+		assertTrue(snapshot.get("trades.lines") > 498L);
+		assertTrue(snapshot.get("trades.bytes") > 0L && snapshot.get("trades.bytes") <= MSFT_20211025.length());
+		assertEquals(Long.valueOf(1L), snapshot.get("trades.open.count"));
+		assertEquals(Long.valueOf(1L), snapshot.get("trades.parse.count"));
+		assertTrue(snapshot.get("trades.parse.nanos") > 0L);
+		assertTrue(snapshot.get("trades.parse.bytesPerSecond") > 0L);
+		assertEquals(FidelityMetrics.getInstance().getParseThroughput(FidelityFileMetrics.TRADES),
+				snapshot.get("trades.parse.bytesPerSecond").longValue());
+	}
+
+	@Test
+	public void testChart() {
+		FidelityChartProcessor processor = new FidelityChartProcessor(DWAC_CHART);
+		processor.process();
+
+		Map<String, Long> snapshot = FidelityMetrics.getInstance().snapshot();
+		assertEquals(Long.valueOf(1L), snapshot.get("chart.files"));
+		assertEquals(Long.valueOf(291L), snapshot.get("chart.records"));
+		assertEquals(Long.valueOf(1L), snapshot.get("chart.transform.count"));
+		assertEquals(Long.valueOf(1L), snapshot.get("chart.output.count"));
+		assertTrue(snapshot.get("chart.allocatedBytes") > 0L);
+	}
+
+	@Test
+	public void testPhasesAddUp() {
+		try (FidelityFileMetrics metrics = FidelityFileMetrics.start("test", MSFT_20211025)) {
+			metrics.phase(FidelityFileMetrics.Phase.PARSE).addRecords(2L).addRejected(1L);
+			metrics.phase(FidelityFileMetrics.Phase.OUTPUT);
+			metrics.phase(FidelityFileMetrics.Phase.PARSE).addRecords(3L);
+			metrics.endPhase();
+			assertEquals(5L, metrics.getRecords());
+			assertTrue(metrics.getNanos(FidelityFileMetrics.Phase.PARSE) > 0L);
+			assertEquals(0L, metrics.getNanos(FidelityFileMetrics.Phase.TRANSFORM));
+		}
+		FidelityMetrics registry = FidelityMetrics.getInstance();
+		assertEquals(2L, registry.timer("test.parse").getCount());
+		assertEquals(5L, registry.get("test.records"));
+		assertEquals(1L, registry.get("test.rejected"));
+	}
+
+	@Test
+	public void testAllocatedOnOtherThreads() throws InterruptedException {
+		long[] worker = new long[1];
+		try (FidelityFileMetrics metrics = FidelityFileMetrics.start("test", MSFT_20211025)) {
+			Thread t = new Thread(() -> {
+				long start = FidelityFileMetrics.threadAllocatedBytes();
+				byte[] block = new byte[1 << 20];
+				worker[0] = FidelityFileMetrics.threadAllocatedBytes() - start;
+				assertEquals(1 << 20, block.length);
+			});
+			t.start();
+			t.join();
+			metrics.addAllocated(worker[0]);
+		}
+		assertTrue(worker[0] >= 1L << 20);
+		assertTrue(FidelityMetrics.getInstance().get("test.allocatedBytes") >= 1L << 20);
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws IOException {
+		Path dump = Files.createTempFile("fidelity", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable("com.cobbinterwebs.fidelity.File");
+				recording.enable("com.cobbinterwebs.fidelity.Phase");
+				recording.start();
+				new FidelityTradeDay(MSFT_20211025).process();
+				recording.stop();
+				recording.dump(dump);
+			}
+			List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+			RecordedEvent file = events.stream().filter(e -> e.getEventType().getName().equals("com.cobbinterwebs.fidelity.File"))
+					.findFirst().orElseThrow(AssertionError::new);
+			assertEquals("trades", file.getString("pipeline"));
+			assertEquals(498L, file.getLong("records"));
+			assertTrue(file.getLong("parseNanos") > 0L);
+			assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("com.cobbinterwebs.fidelity.Phase")
+					&& "parse".equals(e.getString("phase"))));
+		} finally {
+			Files.deleteIfExists(dump);
+		}
+	}
+}
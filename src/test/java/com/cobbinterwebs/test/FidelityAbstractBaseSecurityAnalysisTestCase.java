@@ -3,6 +3,12 @@
  */
 package com.cobbinterwebs.test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+
 import com.cobbinterwebs.trades.config.Configuration;
 
 /**
@@ -10,6 +16,7 @@ import com.cobbinterwebs.trades.config.Configuration;
  *
  */
 public abstract class FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File tempDir;
 
 	/**
 	 * @param baseDir corresponds the application's value for com.cobbinterwebs.trades.home.
@@ -24,4 +31,31 @@ public abstract class FidelityAbstractBaseSecurityAnalysisTestCase {
 	protected void setHome(String baseDir) {
 		System.setProperty(Configuration.PropertyConstants.HOME_KEY, baseDir);
 	}
+
+	/**
+	 * @param pPrefix start of the directory's name.
+	 * @return a new, empty directory, deleted with everything in it once the test is done.
+	 */
+	protected File createTempDir(String pPrefix) throws IOException {
+		tempDir = Files.createTempDirectory(pPrefix).toFile();
+		return tempDir;
+	}
+
+	@After
+	public void deleteTempDir() {
+		if (tempDir != null) {
+			delete(tempDir);
+			tempDir = null;
+		}
+	}
+
+	private static void delete(File pFile) {
+		File[] children = pFile.listFiles();
+		if (children != null) {
+			for (File f : children) {
+				delete(f);
+			}
+		}
+		pFile.delete();
+	}
 }
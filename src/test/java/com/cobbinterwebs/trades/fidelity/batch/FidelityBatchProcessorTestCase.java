@@ -0,0 +1,121 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityBinarySink;
+import com.cobbinterwebs.fidelity.io.FidelityCSVSink;
+import com.cobbinterwebs.fidelity.io.FidelityMemorySink;
+import com.cobbinterwebs.fidelity.io.FidelityOutputSink;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityBatchProcessorTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	static final File HOME = new File("test-data");
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	@Test
+	public void testDiscover() {
+		List<FidelityInputFile> inputs = FidelityInputFile.discover(HOME);
+		assertEquals(7, inputs.size());
+		for (int i = 1; i < inputs.size(); i++) {
+			assertTrue(inputs.get(i - 1).compareTo(inputs.get(i)) < 0);
+		}
+	}
+
+	@Test
+	public void testParallelMatchesSerial() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+		FidelityBatchResult serial = new FidelityBatchProcessor(HOME, 1, FidelityBatchProcessor.ExecutorKind.PLATFORM).process();
+		FidelityBatchResult parallel = new FidelityBatchProcessor(HOME, 4, FidelityBatchProcessor.ExecutorKind.PLATFORM).process();
+
+		assertEquals(0, parallel.getFailureCount());
+		assertEquals(serial.getTickers().keySet(), parallel.getTickers().keySet());
+		for (String ticker : serial.getTickers().keySet()) {
+			FidelityBatchResult.TickerResult s = serial.getTickers().get(ticker);
+			FidelityBatchResult.TickerResult p = parallel.getTickers().get(ticker);
+			assertEquals(summary(s), summary(p));
+			assertEquals(s.getRunningVwda(), p.getRunningVwda());
+			assertEquals(p.getDays().size(), p.getDays().get(p.getDays().size() - 1).getDayOrdinal());
+		}
+	}
+
+	@Test
+	public void testFailureDoesNotStopBatch() {
+		List<FidelityInputFile> inputs = FidelityInputFile.discover(HOME);
+		inputs.add(FidelityInputFile.of("MSFT", new File("test-data/MSFT/input/MSFT-20200101.csv")));
+		FidelityBatchResult result = new FidelityBatchProcessor(HOME, 2, FidelityBatchProcessor.ExecutorKind.PLATFORM).process(inputs);
+
+		assertEquals(1, result.getFailureCount());
+		assertEquals(1, result.getTickers().get("MSFT").getFailures().size());
+		assertEquals(7, result.getTickers().values().stream().mapToInt(t -> t.getDays().size()).sum());
+	}
+
+	@Test
+	public void testTickerDoneInOrder() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		List<String> done = new ArrayList<>();
+		FidelityBatchResult result = new FidelityBatchProcessor(HOME, 4, FidelityBatchProcessor.ExecutorKind.PLATFORM)
+				.process(FidelityInputFile.discover(HOME), ticker -> {
+					assertTrue(ticker.getDays().get(0).isStreaming());
+					done.add(ticker.getTicker());
+				});
+		assertEquals(new ArrayList<>(result.getTickers().keySet()), done);
+	}
+
+	@Test
+	public void testSinkSummaryMatchesPrintWriter() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		FidelityBatchResult result = new FidelityBatchProcessor(HOME, 2, FidelityBatchProcessor.ExecutorKind.PLATFORM).process();
+		FidelityBatchResult.TickerResult msft = result.getTickers().get("MSFT");
+
+		StringWriter out = new StringWriter();
+		try (FidelityOutputSink sink = new FidelityCSVSink(out, true)) {
+			msft.writeSummary(sink, "header", true);
+		}
+		assertEquals(summary(msft), out.toString());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (FidelityOutputSink sink = new FidelityBinarySink(bytes, true)) {
+			msft.writeSummary(sink, "header", true);
+		}
+		FidelityMemorySink memory = new FidelityMemorySink();
+		FidelityBinarySink.replay(new ByteArrayInputStream(bytes.toByteArray()), memory);
+		assertEquals(Arrays.asList("header"), memory.getHeaders());
+		assertEquals(msft.getDays().size() + 1, memory.getRows().size());
+		assertEquals(msft.getDays().get(0).getDollarVolume(), memory.getRows().get(0).get(7));
+		assertEquals(msft.getRunningVwda().get(msft.getDays().size() - 1), memory.getRows().get(msft.getDays().size()).get(1));
+	}
+
+	private static String summary(FidelityBatchResult.TickerResult pTicker) {
+		StringWriter out = new StringWriter();
+		pTicker.writeSummary(new PrintWriter(out), "header", true);
+		return out.toString();
+	}
+}
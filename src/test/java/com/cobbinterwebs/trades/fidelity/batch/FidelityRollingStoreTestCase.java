@@ -0,0 +1,201 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityDayAggregate;
+
+public class FidelityRollingStoreTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("rolling");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ROLLING_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_RECORD_CLASS_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static FidelityDayAggregate day(long pPriceTicks, long pSize) {
+		FidelityDayAggregate rVal = new FidelityDayAggregate(2);
+		rVal.add(pPriceTicks, pSize, FidelityDayAggregate.BUY, false);
+		rVal.add(pPriceTicks + 10, pSize, FidelityDayAggregate.SELL, true);
+		return rVal;
+	}
+
+	@Test
+	public void testWindowsAndPersistence() throws IOException {
+		File file = new File(dir, FidelityRollingStore.STORE_FILE);
+		File export = new File(dir, "export.csv");
+		Files.write(export.toPath(), new byte[] { 1, 2, 3 });
+		FidelityRollingStore store = new FidelityRollingStore(file, 2, 3);
+		LocalDate date = LocalDate.of(2021, 10, 1);
+		for (int i = 0; i < 100; i++) {
+			store.append(date.plusDays(i), export, day(10000 + i, 10 + i));
+		}
+		try {
+			store.append(date, export, day(1, 1));
+			fail("days must be appended in date order");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(100, store.size());
+		assertEquals(200, store.cumulative().getTradeCount());
+
+		FidelityDayAggregate expected = new FidelityDayAggregate(2);
+		for (int i = 95; i < 100; i++) {
+			expected.merge(day(10000 + i, 10 + i));
+		}
+		FidelityDayAggregate window = store.window(5);
+		assertEquals(expected.getVolumeUnits(), window.getVolumeUnits());
+		assertEquals(expected.getDollarVolume(), window.getDollarVolume());
+		assertEquals(expected.getBuyDollarVolume(), window.getBuyDollarVolume());
+		assertEquals(expected.getTeeTradeCount(), window.getTeeTradeCount());
+		assertEquals(expected.getAveragePrice(), store.getRollingVwda(5));
+		assertEquals(day(10042, 52).getDollarVolume(), store.getDay(42).getDollarVolume());
+
+		store.save();
+		assertEquals(FidelityRollingStore.HEADER_SIZE + 100L * FidelityRollingStore.RECORD_SIZE, file.length());
+		FidelityRollingStore loaded = FidelityRollingStore.load(file, 2, 3);
+		assertEquals(100, loaded.size());
+		assertEquals(store.getRunningVwda(), loaded.getRunningVwda());
+		assertEquals(date.plusDays(99), loaded.getLastDate());
+		assertTrue(loaded.isCurrent(0, export));
+
+		// appended days go on the end of the file
+		loaded.append(date.plusDays(100), export, day(20000, 5));
+		loaded.save();
+		assertEquals(FidelityRollingStore.HEADER_SIZE + 101L * FidelityRollingStore.RECORD_SIZE, file.length());
+		assertEquals(101, FidelityRollingStore.load(file, 2, 3).size());
+
+		// a truncated store is written again
+		loaded.truncate(50);
+		loaded.save();
+		assertEquals(FidelityRollingStore.HEADER_SIZE + 50L * FidelityRollingStore.RECORD_SIZE, file.length());
+		FidelityRollingStore reloaded = FidelityRollingStore.load(file, 2, 3);
+		assertEquals(50, reloaded.size());
+		assertEquals(store.between(0, 50).getDollarVolume(), reloaded.cumulative().getDollarVolume());
+		assertEquals(-51, reloaded.indexOf(date.plusDays(50)));
+
+		// a changed day is put in place and an earlier one in front; the later days keep their totals
+		assertEquals(10, reloaded.put(date.plusDays(10), export, day(30000, 7)));
+		assertEquals(0, reloaded.put(date.minusDays(1), export, day(40000, 3)));
+		assertEquals(51, reloaded.put(date.plusDays(50), export, day(50000, 1)));
+		FidelityRollingStore rebuilt = new FidelityRollingStore(new File(dir, "rebuilt.frs"), 2, 3);
+		rebuilt.append(date.minusDays(1), export, day(40000, 3));
+		for (int i = 0; i < 51; i++) {
+			rebuilt.append(date.plusDays(i), export, i == 10 ? day(30000, 7) : i == 50 ? day(50000, 1) : day(10000 + i, 10 + i));
+		}
+		assertEquals(rebuilt.size(), reloaded.size());
+		for (int i = 0; i <= rebuilt.size(); i++) {
+			assertEquals(rebuilt.between(0, i).getDollarVolume(), reloaded.between(0, i).getDollarVolume());
+			assertEquals(rebuilt.between(0, i).getVolumeUnits(), reloaded.between(0, i).getVolumeUnits());
+		}
+		reloaded.save();
+		FidelityRollingStore put = FidelityRollingStore.load(file, 2, 3);
+		assertEquals(52, put.size());
+		assertEquals(date.minusDays(1), put.getDate(0));
+		assertEquals(rebuilt.getRunningVwda(), put.getRunningVwda());
+		assertEquals(0, FidelityRollingStore.load(file, 4, 3).size());
+	}
+
+	@Test
+	public void testNightlyRunOnlyProcessesNewDays() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.ROLLING_STORE_KEY, "true");
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		File input = new File(dir, "MSFT/" + FidelityInputFile.INPUT_DIR);
+		input.mkdirs();
+		File first = new File(input, "MSFT-20211025.csv");
+		File second = new File(input, "MSFT-20211026.csv");
+		Files.copy(new File("test-data/DWAC/input/MSFT-20211025.csv").toPath(), first.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+
+		FidelityBatchProcessor processor = new FidelityBatchProcessor(dir, 2, FidelityBatchProcessor.ExecutorKind.PLATFORM);
+		FidelityBatchResult.TickerResult run1 = processor.process().getTickers().get("MSFT");
+		assertEquals(1, run1.getDays().size());
+		assertEquals(1, run1.getRollingStore().size());
+		assertTrue(FidelityRollingStore.storeFor(new File(dir, "MSFT")).isFile());
+
+		Files.copy(new File("test-data/DWAC/input/MSFT-20211026.csv").toPath(), second.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+		FidelityBatchResult.TickerResult run2 = processor.process().getTickers().get("MSFT");
+		assertEquals(1, run2.getDays().size());
+		assertEquals(2, run2.getDays().get(0).getDayOrdinal());
+		assertEquals(2, run2.getRollingStore().size());
+
+		// the summary from the store matches a full run without it
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ROLLING_STORE_KEY);
+		FidelityConfiguration.reset();
+		FidelityBatchResult.TickerResult full = processor.process().getTickers().get("MSFT");
+		assertEquals(full.getRunningVwda().get(1), run2.getRunningVwda().get(0));
+		String header1 = FidelityConfiguration.getInstance().getHeader1();
+		String expected = summary(full, header1);
+		String actual = summary(run2, header1);
+		assertTrue(actual, actual.startsWith(expected));
+		assertTrue(actual, actual.substring(expected.length()).startsWith("\"Rolling VWDA 20d\","));
+
+		// nothing new: no day is parsed and the ticker is still reported
+		System.setProperty(FidelityConfiguration.PropertyConstants.ROLLING_STORE_KEY, "true");
+		FidelityConfiguration.reset();
+		FidelityBatchResult run3 = processor.process();
+		assertNotNull(run3.getTickers().get("MSFT"));
+		assertEquals(0, run3.getTickers().get("MSFT").getDays().size());
+		assertEquals(2, run3.getTickers().get("MSFT").getRollingStore().size());
+
+		// a touched export has the same content and is not processed again
+		assertTrue(first.setLastModified(first.lastModified() + 60_000L));
+		assertEquals(0, processor.process().getTickers().get("MSFT").getDays().size());
+		assertEquals(0, processor.process().getTickers().get("MSFT").getDays().size());
+
+		// a changed export is processed again, without the days after it
+		Files.write(first.toPath(), "\r\n".getBytes(), StandardOpenOption.APPEND);
+		FidelityBatchResult.TickerResult run4 = processor.process().getTickers().get("MSFT");
+		assertEquals(1, run4.getDays().size());
+		assertEquals(1, run4.getDays().get(0).getDayOrdinal());
+		assertEquals(full.getRunningVwda().get(0), run4.getRunningVwda().get(0));
+		assertEquals(0, processor.process().getTickers().get("MSFT").getDays().size());
+		assertEquals(2, run4.getRollingStore().size());
+		assertEquals(full.getRunningVwda().get(1), run4.getRollingStore().getRunningVwda());
+
+		// so is every day when the configuration the totals depend on changes
+		System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+		FidelityConfiguration.reset();
+		assertEquals(2, processor.process().getTickers().get("MSFT").getDays().size());
+		assertEquals(0, processor.process().getTickers().get("MSFT").getDays().size());
+
+		// or the classes the exports are parsed with
+		long fingerprint = FidelityRollingStore.fingerprint();
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_RECORD_CLASS_KEY, "com.cobbinterwebs.trades.fidelity.impl.OtherTradeRecord");
+		FidelityConfiguration.reset();
+		assertTrue(fingerprint != FidelityRollingStore.fingerprint());
+	}
+
+	private static String summary(FidelityBatchResult.TickerResult pTicker, String pHeader1) {
+		StringWriter out = new StringWriter();
+		pTicker.writeSummary(new PrintWriter(out), pHeader1, true);
+		return out.toString();
+	}
+}
@@ -0,0 +1,240 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityDayAggregate;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeColumns;
+import com.cobbinterwebs.trades.fidelity.impl.FidelityTradeDay;
+
+public class FidelityTradeTapeTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private static final LocalDate DAY1 = LocalDate.of(2021, 10, 25);
+	private static final LocalDate DAY2 = LocalDate.of(2021, 10, 26);
+
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		FidelityConfiguration.reset();
+		dir = createTempDir("tape");
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TAPE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static FidelityTradeDay day(String pName) {
+		return day(new File("test-data/MSFT/input", pName));
+	}
+
+	private static FidelityTradeDay day(File pFile) {
+		FidelityTradeDay rVal = new FidelityTradeDay(pFile);
+		rVal.process();
+		return rVal;
+	}
+
+	@Test
+	public void testAppendAndRanges() throws IOException {
+		FidelityTradeDay day1 = day("MSFT-20211025.csv");
+		FidelityTradeDay day2 = day("MSFT-20211026.csv");
+		FidelityTradeColumns columns1 = day1.getTradeColumns();
+		int scale = columns1.getScale();
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, scale)) {
+			tape.append(DAY1, columns1);
+			tape.append(DAY2, day2.getTradeColumns());
+			try {
+				tape.append(DAY1, columns1);
+				fail("days must be appended in date order");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertFalse(tape.appendIfNew(DAY2, day2.getTradeColumns()));
+		}
+
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, scale)) {
+			assertEquals(2, tape.size());
+			assertEquals(DAY2, tape.getLastDate());
+			assertEquals(498, tape.getTradeCount(0));
+			assertEquals(498L + day2.getTradeColumns().size(), tape.getTradeCount());
+
+			FidelityDayAggregate first = tape.aggregate(DAY1, DAY1);
+			assertEquals(498, first.getTradeCount());
+			assertEquals(53, first.getTeeTradeCount());
+			assertEquals(24851L, first.getVolumeUnits());
+			assertEquals(4994L, first.getBuyVolumeUnits());
+			assertEquals(4835L, first.getSellVolumeUnits());
+			assertEquals(day1.getDollarVolume(), first.getDollarVolume());
+			assertEquals(day2.getVolume().longValue(), tape.aggregate(DAY2, DAY2.plusDays(30)).getVolumeUnits());
+			assertEquals(0, tape.aggregate(DAY1.minusDays(30), DAY1.minusDays(1)).getTradeCount());
+
+			// oldest first across the days
+			FidelityTradeTape.Cursor c = tape.cursor(DAY1, DAY2);
+			int previousDay = 0;
+			int previousSecond = -1;
+			long count = 0;
+			while (c.next()) {
+				assertTrue(c.getEpochDay() > previousDay || c.getSecondOfDay() >= previousSecond);
+				previousDay = c.getEpochDay();
+				previousSecond = c.getSecondOfDay();
+				count++;
+			}
+			assertEquals(tape.getTradeCount(), count);
+
+			// a time range within a day matches the columns
+			LocalTime from = LocalTime.of(10, 0, 30);
+			LocalTime to = LocalTime.of(11, 15);
+			long expected = 0;
+			for (int i = 0; i < columns1.size(); i++) {
+				int secs = columns1.getSecondOfDay(i);
+				if (secs >= from.toSecondOfDay() && secs < to.toSecondOfDay()) {
+					expected += columns1.getSize(i);
+				}
+			}
+			long actual = 0;
+			c = tape.cursor(DAY1, from, to);
+			while (c.next()) {
+				assertEquals(DAY1.toEpochDay(), c.getEpochDay());
+				actual += c.getSizeUnits();
+			}
+			assertEquals(expected, actual);
+			assertFalse(tape.cursor(DAY1.plusDays(3), from, to).next());
+		}
+	}
+
+	@Test
+	public void testCutShortDayIsDropped() throws IOException {
+		FidelityTradeColumns columns = day("MSFT-20211025.csv").getTradeColumns();
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns.getScale())) {
+			tape.append(DAY1, columns);
+		}
+		File tapeFile = FidelityTradeTape.tapeFor(dir);
+		long length = tapeFile.length();
+		try (RandomAccessFile raf = new RandomAccessFile(tapeFile, "rw")) {
+			raf.setLength(length + 3 * FidelityTradeTape.RECORD_SIZE);
+		}
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns.getScale())) {
+			assertEquals(1, tape.size());
+			assertEquals(498L, tape.getTradeCount());
+		}
+		assertEquals(length, tapeFile.length());
+		try {
+			FidelityTradeTape.open(dir, columns.getScale() + 1).close();
+			fail("a tape is read at its own scale");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPutReplacesAndInserts() throws IOException {
+		FidelityTradeColumns columns1 = day("MSFT-20211025.csv").getTradeColumns();
+		FidelityTradeColumns columns2 = day("MSFT-20211026.csv").getTradeColumns();
+		long volume2 = 0;
+		for (int i = 0; i < columns2.size(); i++) {
+			volume2 += columns2.getSize(i);
+		}
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns1.getScale())) {
+			assertTrue(tape.put(DAY2, columns2));
+			// a backfilled day goes before the later days
+			assertTrue(tape.put(DAY1, columns1));
+			assertFalse(tape.put(DAY1, columns1));
+			assertEquals(2, tape.size());
+			assertEquals(DAY1, tape.getDate(0));
+			assertEquals(24851L, tape.aggregate(DAY1, DAY1).getVolumeUnits());
+			assertEquals(volume2, tape.aggregate(DAY2, DAY2).getVolumeUnits());
+			// an export with other trades replaces its day
+			assertTrue(tape.put(DAY1, columns2));
+			assertEquals(2L * columns2.size(), tape.getTradeCount());
+		}
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns1.getScale())) {
+			assertEquals(2, tape.size());
+			assertEquals(columns2.size(), tape.getTradeCount(0));
+			assertEquals(volume2, tape.aggregate(DAY1, DAY1).getVolumeUnits());
+			assertEquals(volume2, tape.aggregate(DAY2, DAY2).getVolumeUnits());
+			assertEquals(tape.getFirstTrade(0) + columns2.size(), tape.getFirstTrade(1));
+		}
+		assertEquals(FidelityTradeTape.HEADER_SIZE + 2L * columns2.size() * FidelityTradeTape.RECORD_SIZE,
+				FidelityTradeTape.tapeFor(dir).length());
+	}
+
+	@Test
+	public void testShortTapeDropsDays() throws IOException {
+		FidelityTradeColumns columns = day("MSFT-20211025.csv").getTradeColumns();
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns.getScale())) {
+			tape.append(DAY1, columns);
+			tape.append(DAY2, day("MSFT-20211026.csv").getTradeColumns());
+		}
+		// the index entry of the second day reached the disk, not all of its trades
+		File tapeFile = FidelityTradeTape.tapeFor(dir);
+		try (RandomAccessFile raf = new RandomAccessFile(tapeFile, "rw")) {
+			raf.setLength(tapeFile.length() - 3 * FidelityTradeTape.RECORD_SIZE);
+		}
+		try (FidelityTradeTape tape = FidelityTradeTape.open(dir, columns.getScale())) {
+			assertEquals(1, tape.size());
+			assertEquals(498L, tape.getTradeCount());
+			assertEquals(24851L, tape.aggregate(DAY1, DAY2).getVolumeUnits());
+		}
+		assertEquals(FidelityTradeTape.HEADER_SIZE + 498L * FidelityTradeTape.RECORD_SIZE, tapeFile.length());
+		assertEquals(FidelityTradeTape.HEADER_SIZE + FidelityTradeTape.DAY_SIZE, new File(dir, FidelityTradeTape.INDEX_FILE).length());
+	}
+
+	@Test
+	public void testBatchAppendsNewDays() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TAPE_KEY, "true");
+		FidelityConfiguration.reset();
+		File input = new File(dir, "MSFT/" + FidelityInputFile.INPUT_DIR);
+		assertTrue(input.mkdirs());
+		Files.copy(new File("test-data/MSFT/input/MSFT-20211025.csv").toPath(), new File(input, "MSFT-20211025.csv").toPath());
+		FidelityBatchProcessor processor = new FidelityBatchProcessor(dir, 2, FidelityBatchProcessor.ExecutorKind.PLATFORM);
+		// once on the tape a day keeps only its totals
+		FidelityTradeDay day = processor.process().getTickers().get("MSFT").getDays().get(0);
+		assertTrue(day.isStreaming());
+		assertEquals(null, day.getTradeColumns());
+		assertEquals(24851L, day.getVolume().longValue());
+		assertEquals(498, day.getTimeIndex().all().getTradeCount());
+		Files.copy(new File("test-data/MSFT/input/MSFT-20211026.csv").toPath(), new File(input, "MSFT-20211026.csv").toPath());
+		processor.process();
+		try (FidelityTradeTape tape = FidelityTradeTape.open(new File(dir, "MSFT"), FidelityConfiguration.getInstance().getScale())) {
+			assertEquals(2, tape.size());
+			assertEquals(DAY1, tape.getDate(0));
+			assertEquals(24851L, tape.aggregate(DAY1, DAY1).getVolumeUnits());
+		}
+
+		// the first day is exported again without its first trade
+		File changed = new File(input, "MSFT-20211025.csv");
+		List<String> lines = Files.readAllLines(changed.toPath(), StandardCharsets.US_ASCII);
+		lines.remove(10);
+		Files.write(changed.toPath(), (String.join("\r\n", lines) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		long volume = day(changed).getVolume().longValue();
+		assertTrue(volume < 24851L);
+		processor.process();
+		try (FidelityTradeTape tape = FidelityTradeTape.open(new File(dir, "MSFT"), FidelityConfiguration.getInstance().getScale())) {
+			assertEquals(2, tape.size());
+			assertEquals(497, tape.getTradeCount(0));
+			assertEquals(volume, tape.aggregate(DAY1, DAY1).getVolumeUnits());
+			assertEquals(day("MSFT-20211026.csv").getVolume().longValue(), tape.aggregate(DAY2, DAY2).getVolumeUnits());
+		}
+	}
+}
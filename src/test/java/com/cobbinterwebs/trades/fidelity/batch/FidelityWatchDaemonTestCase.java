@@ -0,0 +1,66 @@
+package com.cobbinterwebs.trades.fidelity.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityWatchDaemonTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+		dir = createTempDir("watch");
+	}
+
+	@After
+	public void after() {
+		FidelityConfiguration.reset();
+	}
+
+	private static void copy(String pName, File pDir) throws IOException {
+		Files.copy(new File("test-data/MSFT/input", pName).toPath(), new File(pDir, pName).toPath());
+	}
+
+	@Test
+	public void testExportsAreTakenInOnceSettled() throws IOException, InterruptedException {
+		File input = new File(new File(dir, "MSFT"), FidelityInputFile.INPUT_DIR);
+		assertTrue(input.mkdirs());
+		copy("MSFT-20211025.csv", input);
+
+		BlockingQueue<FidelityBatchResult.TickerResult> done = new LinkedBlockingQueue<>();
+		try (FidelityWatchDaemon daemon = new FidelityWatchDaemon(dir, 2, 4, 200L)) {
+			daemon.setTickerListener(done::add);
+			daemon.start();
+
+			FidelityBatchResult.TickerResult ticker = done.poll(30, TimeUnit.SECONDS);
+			assertEquals("MSFT", ticker.getTicker());
+			assertEquals(1, ticker.getDays().size());
+			assertEquals(24851L, ticker.getDays().get(0).getVolume().longValue());
+			assertTrue(new File(new File(dir, "MSFT"), FidelityBatchProcessor.SUMMARY_FILE).isFile());
+
+			// sidecars and rejected rows written next to the exports are not exports
+			Files.write(new File(input, "notes.txt").toPath(), new byte[] { 'x' });
+			copy("MSFT-20211026.csv", input);
+			ticker = done.poll(30, TimeUnit.SECONDS);
+			// only the new export is parsed; the first day comes from the rolling store
+			assertEquals(1, ticker.getDays().size());
+			assertEquals("10/26/2021", ticker.getDays().get(0).getDateStr());
+			assertEquals(2, ticker.getRollingStore().size());
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityAggregationKernelTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.KERNEL_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static List<FidelityAggregationKernel> kernels() {
+		List<FidelityAggregationKernel> rVal = new ArrayList<>();
+		rVal.add(FidelityAggregationKernel.SCALAR);
+		if (FidelityAggregationKernel.vector() != null) {
+			rVal.add(FidelityAggregationKernel.vector());
+		}
+		return rVal;
+	}
+
+	private static void assertSame(String pKernel, FidelityDayAggregate pExpected, FidelityDayAggregate pActual) {
+		assertEquals(pKernel, pExpected.getTradeCount(), pActual.getTradeCount());
+		assertEquals(pKernel, pExpected.getTeeTradeCount(), pActual.getTeeTradeCount());
+		assertEquals(pKernel, pExpected.getVolumeUnits(), pActual.getVolumeUnits());
+		assertEquals(pKernel, pExpected.getBuyVolumeUnits(), pActual.getBuyVolumeUnits());
+		assertEquals(pKernel, pExpected.getSellVolumeUnits(), pActual.getSellVolumeUnits());
+		assertEquals(pKernel, pExpected.getUnknownVolumeUnits(), pActual.getUnknownVolumeUnits());
+		assertEquals(pKernel, pExpected.getDollarVolume(), pActual.getDollarVolume());
+		assertEquals(pKernel, pExpected.getBuyDollarVolume(), pActual.getBuyDollarVolume());
+		assertEquals(pKernel, pExpected.getSellDollarVolume(), pActual.getSellDollarVolume());
+		assertEquals(pKernel, pExpected.getUnknownDollarVolume(), pActual.getUnknownDollarVolume());
+	}
+
+	@Test
+	public void testKernelsMatchTradeAtATime() {
+		Random random = new Random(20211025L);
+		int n = 5003;
+		long[] price = new long[n];
+		long[] size = new long[n];
+		long[] bid = new long[n];
+		long[] ask = new long[n];
+		byte[] flags = new byte[n];
+		FidelityDayAggregate expected = new FidelityDayAggregate(8);
+		for (int i = 0; i < n; i++) {
+			// mostly ordinary trades, with a run of products big enough to need 128 bits
+			boolean huge = i >= 2000 && i < 2100;
+			price[i] = huge ? 9_000_000_000_000L + random.nextInt(1000) : 30_000_000_000L + random.nextInt(100_000_000);
+			size[i] = huge ? 1_000_000L : 1 + random.nextInt(5000);
+			bid[i] = random.nextInt(10) == 0 ? FixedPoint.NONE : price[i] - 50_000_000 + random.nextInt(100_000_000);
+			ask[i] = random.nextInt(10) == 0 ? FixedPoint.NONE : price[i] - 50_000_000 + random.nextInt(100_000_000);
+			flags[i] = random.nextInt(7) == 0 ? FidelityTradeColumns.FLAG_TEE_TRADE : 0;
+			expected.add(price[i], size[i], FidelityDayAggregate.classify(price[i], bid[i], ask[i]),
+					flags[i] == FidelityTradeColumns.FLAG_TEE_TRADE);
+		}
+		for (FidelityAggregationKernel kernel : kernels()) {
+			FidelityDayAggregate actual = new FidelityDayAggregate(8);
+			kernel.aggregate(price, size, bid, ask, flags, 0, 17, actual);
+			kernel.aggregate(price, size, bid, ask, flags, 17, n, actual);
+			assertSame(kernel.getName(), expected, actual);
+		}
+	}
+
+	@Test
+	public void testColumnsDay() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		FidelityConfiguration.reset();
+		FidelityTradeDay day = new FidelityTradeDay(FidelityTradeBarsTestCase.MSFT_20211025);
+		day.process();
+		for (FidelityAggregationKernel kernel : kernels()) {
+			FidelityDayAggregate actual = new FidelityDayAggregate(day.getTradeColumns().getScale());
+			day.getTradeColumns().aggregateInto(actual, kernel);
+			assertEquals(kernel.getName(), 498, actual.getTradeCount());
+			assertEquals(kernel.getName(), 53, actual.getTeeTradeCount());
+			assertEquals(kernel.getName(), 4994L, actual.getBuyVolumeUnits());
+			assertEquals(kernel.getName(), 4835L, actual.getSellVolumeUnits());
+			assertEquals(kernel.getName(), new BigDecimal("7687494.6017"), actual.getDollarVolume().stripTrailingZeros());
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns;
+import com.cobbinterwebs.charts.wavlet.fidelity.impl.FidelityChartColumns.Series;
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+import jwave.exceptions.JWaveException;
+
+public class FidelityTradeBarsTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	static final File MSFT_20211025 = new File("test-data/MSFT/input/MSFT-20211025.csv");
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	@Test
+	public void testParseInterval() {
+		assertEquals(1, FidelityTradeBars.parseInterval("1s"));
+		assertEquals(5, FidelityTradeBars.parseInterval("5s"));
+		assertEquals(60, FidelityTradeBars.parseInterval("1m"));
+		assertEquals(300, FidelityTradeBars.parseInterval(" 5M "));
+		assertEquals(15, FidelityTradeBars.parseInterval("15"));
+		for (String bad : new String[] { "0s", "m", "-1m", "1d" }) {
+			try {
+				FidelityTradeBars.parseInterval(bad);
+				fail(bad);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testTotalsMatchTheDay() {
+		int scale = FidelityConfiguration.getInstance().getScale();
+		for (int interval : new int[] { 1, 5, 60, 300 }) {
+			FidelityTradeBars bars = FidelityTradeBars.read(MSFT_20211025, interval, scale);
+			assertEquals("10/25/2021", bars.getDateStr());
+			long volume = 0;
+			long buy = 0;
+			long sell = 0;
+			int trades = 0;
+			for (int i = 0; i < bars.size(); i++) {
+				volume += bars.getVolume(i);
+				buy += bars.getBuyVolume(i);
+				sell += bars.getSellVolume(i);
+				trades += bars.getTradeCount(i);
+				assertTrue(bars.getLowTicks(i) <= bars.getOpenTicks(i) && bars.getOpenTicks(i) <= bars.getHighTicks(i));
+				assertTrue(bars.getLowTicks(i) <= bars.getCloseTicks(i) && bars.getCloseTicks(i) <= bars.getHighTicks(i));
+				if (i > 0) {
+					assertEquals(bars.getStartSecond(i - 1) + interval, bars.getStartSecond(i));
+				}
+			}
+			assertEquals(24851L, volume);
+			assertEquals(4994L, buy);
+			assertEquals(4835L, sell);
+			assertEquals(498, trades);
+			// the newest trade, first in the export, closes the last bar
+			assertEquals(FixedPoint.parse("309.55", scale), bars.getCloseTicks(bars.size() - 1));
+			assertEquals(19 * 3600 + 59 * 60 + 59 - (19 * 3600 + 59 * 60 + 59) % interval, bars.getStartSecond(bars.size() - 1));
+		}
+	}
+
+	@Test
+	public void testSameBarsFromEveryStore() {
+		FidelityTradeBars streamed = FidelityTradeBars.read(MSFT_20211025, 60, FidelityConfiguration.getInstance().getScale());
+		for (String store : new String[] { "columns", "objects" }) {
+			System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+			System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+			FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+			day.process();
+			FidelityTradeBars bars = FidelityTradeBars.of(day, 60);
+			assertEquals(streamed.size(), bars.size());
+			for (Series series : Series.values()) {
+				assertArrayEquals(streamed.getSeries(series), bars.getSeries(series), 0.0);
+			}
+			assertArrayEquals(streamed.getBuyVolumeSeries(), bars.getBuyVolumeSeries(), 0.0);
+			assertArrayEquals(streamed.getSellVolumeSeries(), bars.getSellVolumeSeries(), 0.0);
+		}
+	}
+
+	@Test
+	public void testGapsAreFilled() {
+		FidelityTradeBars bars = new FidelityTradeBars(60, 0);
+		bars.add(250, 12, 3, FidelityDayAggregate.SELL);
+		bars.add(130, 11, 2, FidelityDayAggregate.BUY);
+		bars.add(10, 9, 1, FidelityDayAggregate.UNKNOWN);
+		bars.add(5, 10, 1, FidelityDayAggregate.BUY);
+		bars.finish();
+
+		assertEquals(5, bars.size());
+		assertArrayEquals(new double[] { 10, 9, 11, 11, 12 }, bars.getSeries(Series.OPEN), 0.0);
+		assertArrayEquals(new double[] { 9, 9, 11, 11, 12 }, bars.getSeries(Series.CLOSE), 0.0);
+		assertArrayEquals(new double[] { 10, 9, 11, 11, 12 }, bars.getSeries(Series.HIGH), 0.0);
+		assertArrayEquals(new double[] { 2, 0, 2, 0, 3 }, bars.getSeries(Series.VOLUME), 0.0);
+		assertArrayEquals(new double[] { 1, 0, 2, 0, 0 }, bars.getBuyVolumeSeries(), 0.0);
+		assertArrayEquals(new double[] { 0, 0, 0, 0, 3 }, bars.getSellVolumeSeries(), 0.0);
+		assertEquals(0, bars.getTradeCount(3));
+		try {
+			bars.add(300, 1, 1, FidelityDayAggregate.BUY);
+			fail("added after finish");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testOutOfOrderTrades() {
+		FidelityTradeBars newestFirst = new FidelityTradeBars(60, 0);
+		newestFirst.add(250, 12, 3, FidelityDayAggregate.SELL);
+		newestFirst.add(130, 11, 2, FidelityDayAggregate.BUY);
+		newestFirst.add(70, 8, 1, FidelityDayAggregate.BUY);
+		newestFirst.add(10, 9, 1, FidelityDayAggregate.UNKNOWN);
+		newestFirst.add(5, 10, 1, FidelityDayAggregate.BUY);
+
+		FidelityTradeBars mixed = new FidelityTradeBars(60, 0);
+		mixed.add(10, 9, 1, FidelityDayAggregate.UNKNOWN);
+		mixed.add(5, 10, 1, FidelityDayAggregate.BUY);
+		mixed.add(250, 12, 3, FidelityDayAggregate.SELL);
+		mixed.add(70, 8, 1, FidelityDayAggregate.BUY);
+		mixed.add(130, 11, 2, FidelityDayAggregate.BUY);
+
+		assertEquals(newestFirst.size(), mixed.size());
+		for (Series series : Series.values()) {
+			assertArrayEquals(newestFirst.getSeries(series), mixed.getSeries(series), 0.0);
+		}
+		assertArrayEquals(newestFirst.getBuyVolumeSeries(), mixed.getBuyVolumeSeries(), 0.0);
+		assertArrayEquals(new double[] { 10, 8, 11, 11, 12 }, mixed.getSeries(Series.OPEN), 0.0);
+	}
+
+	@Test
+	public void testBarsOfRefreshedColumns() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		List<String> lines = Files.readAllLines(MSFT_20211025.toPath(), StandardCharsets.UTF_8);
+		// the export without its newest 50 trades
+		lines.subList(10, 60).clear();
+		File older = File.createTempFile("MSFT-20211025", ".csv");
+		try {
+			Files.write(older.toPath(), String.join("\r\n", lines).concat("\r\n").getBytes(StandardCharsets.UTF_8));
+			FidelityTradeDay day = new FidelityTradeDay(older);
+			day.process();
+			assertEquals(50, day.refresh(MSFT_20211025));
+			// the new trades go in front, as in the export
+			assertEquals(19 * 3600 + 59 * 60 + 59, day.getTradeColumns().getSecondOfDay(0));
+
+			FidelityTradeBars bars = FidelityTradeBars.of(day, 60);
+			FidelityTradeBars streamed = FidelityTradeBars.read(MSFT_20211025, 60, FidelityConfiguration.getInstance().getScale());
+			assertEquals(streamed.size(), bars.size());
+			for (Series series : Series.values()) {
+				assertArrayEquals(streamed.getSeries(series), bars.getSeries(series), 0.0);
+			}
+			assertArrayEquals(streamed.getSellVolumeSeries(), bars.getSellVolumeSeries(), 0.0);
+		} finally {
+			older.delete();
+		}
+	}
+
+	@Test
+	public void testTransform() throws JWaveException {
+		FidelityTradeBars bars = FidelityTradeBars.read(MSFT_20211025, 60, FidelityConfiguration.getInstance().getScale());
+		FidelityChartColumns columns = bars.toChartColumns();
+		assertEquals(bars.size(), columns.size());
+		Map<Series, double[]> coefficients = bars.transform();
+		assertEquals(Series.values().length, coefficients.size());
+		assertArrayEquals(columns.getClosePrices(), bars.getSeries(Series.CLOSE), 0.0);
+		assertEquals(bars.size(), coefficients.get(Series.CLOSE).length);
+	}
+}
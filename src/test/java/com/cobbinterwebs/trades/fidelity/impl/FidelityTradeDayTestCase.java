@@ -0,0 +1,303 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.math.BigDecimal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.fidelity.io.FidelityFileException;
+import com.cobbinterwebs.trades.ITradeRecord;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityTradeDayTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+	static final File MSFT_20211025 = new File("test-data/MSFT/input/MSFT-20211025.csv");
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.INCLUDE_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNKS_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNK_MIN_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY);
+		System.clearProperty(FidelityConfiguration.PropertyConstants.ERRORS_QUARANTINE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	@Test
+	public void testFixedPointTotals() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "objects");
+		FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+		day.process();
+
+		assertTrue(day.isFixedPoint());
+		assertEquals("10/25/2021", day.getDateStr());
+		assertEquals(498, day.getFixedPointTrades().size());
+		assertEquals(LocalDate.of(2021, 10, 25).toEpochDay(), day.getEpochDay());
+		FidelityTradeRecord newest = day.getFixedPointTrades().get(0);
+		assertEquals(day.getEpochDay() * 86400 + 19 * 3600 + 59 * 60 + 59, newest.getTimestamp());
+		assertTrue(newest.getTimestamp() >= day.getFixedPointTrades().get(497).getTimestamp());
+		assertEquals(new BigDecimal("24851"), day.getVolume());
+		assertEquals(0, new BigDecimal("7687494.6017").compareTo(day.getDollarVolume()));
+		assertEquals(53, day.getTeeTradeCount());
+		assertEquals(day.getVolume(), day.getBuyVolume().add(day.getSellVolume()).add(day.getUnknownVolume()));
+		assertEquals(day.getDollarVolume(),
+				day.getBuyDollarVolume().add(day.getSellDollarVolume()).add(day.getUnknownDollarVolume()));
+	}
+
+	@Test
+	public void testStreamingStore() {
+		// the fixed-point stores are opt-in; objects stays the default unless the trades are left out
+		System.setProperty(FidelityConfiguration.PropertyConstants.INCLUDE_KEY, "true");
+		FidelityConfiguration.reset();
+		assertEquals(FidelityConfiguration.TradeStore.OBJECTS, FidelityConfiguration.getInstance().getTradeStore());
+		System.setProperty(FidelityConfiguration.PropertyConstants.INCLUDE_KEY, "false");
+		FidelityConfiguration.reset();
+		assertEquals(FidelityConfiguration.TradeStore.STREAMING, FidelityConfiguration.getInstance().getTradeStore());
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "objects");
+		FidelityConfiguration.reset();
+		assertEquals(FidelityConfiguration.TradeStore.OBJECTS, FidelityConfiguration.getInstance().getTradeStore());
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "streaming");
+		FidelityConfiguration.reset();
+		assertEquals(FidelityConfiguration.TradeStore.STREAMING, FidelityConfiguration.getInstance().getTradeStore());
+		FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+		day.process();
+
+		assertTrue(day.isStreaming());
+		assertEquals(null, day.getTradeColumns());
+		assertTrue(day.getFixedPointTrades().isEmpty());
+		assertEquals("10/25/2021", day.getDateStr());
+		assertEquals(new BigDecimal("24851"), day.getVolume());
+		assertEquals(new BigDecimal("4994"), day.getBuyVolume());
+		assertEquals(new BigDecimal("4835"), day.getSellVolume());
+		assertEquals(0, new BigDecimal("7687494.6017").compareTo(day.getDollarVolume()));
+		assertEquals(53, day.getTeeTradeCount());
+	}
+
+	@Test
+	public void testRefreshTakesOnlyNewTrades() throws IOException {
+		// cut inside the 19:59:59 group and inside the 19:59:21 group
+		for (int cut : new int[] { 1, 5, 0 }) {
+			for (String store : new String[] { "streaming", "columns", "objects" }) {
+				System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+				System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+				File older = olderExport(cut);
+				try {
+					FidelityTradeDay full = new FidelityTradeDay(MSFT_20211025);
+					full.process();
+					FidelityTradeDay day = new FidelityTradeDay(older);
+					day.process();
+					assertEquals(cut, day.refresh(MSFT_20211025));
+					assertEquals(0, day.refresh(MSFT_20211025));
+
+					assertEquals(full.getVolume(), day.getVolume());
+					assertEquals(full.getDollarVolume(), day.getDollarVolume());
+					assertEquals(full.getBuyDollarVolume(), day.getBuyDollarVolume());
+					assertEquals(full.getSellVolume(), day.getSellVolume());
+					assertEquals(full.getTeeTradeCount(), day.getTeeTradeCount());
+					if ("objects".equals(store)) {
+						assertEquals(full.getFixedPointTrades().get(0).getPrice(), day.getFixedPointTrades().get(0).getPrice());
+						assertEquals(498, day.getFixedPointTrades().size());
+					}
+				} finally {
+					older.delete();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testChunkedParseMatchesOneThread() throws IOException {
+		File older = olderExport(5);
+		try {
+			for (String store : new String[] { "streaming", "columns", "objects" }) {
+				System.setProperty(FidelityConfiguration.PropertyConstants.FIXED_POINT_KEY, "true");
+				System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, store);
+				System.clearProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNKS_KEY);
+				FidelityConfiguration.reset();
+				FidelityTradeDay serial = new FidelityTradeDay(MSFT_20211025);
+				serial.process();
+
+				System.setProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNKS_KEY, "4");
+				System.setProperty(FidelityConfiguration.PropertyConstants.PARSE_CHUNK_MIN_KEY, "1");
+				FidelityConfiguration.reset();
+				FidelityTradeDay chunked = new FidelityTradeDay(MSFT_20211025);
+				chunked.process();
+
+				assertEquals("10/25/2021", chunked.getDateStr());
+				assertEquals(serial.getVolume(), chunked.getVolume());
+				assertEquals(serial.getBuyVolume(), chunked.getBuyVolume());
+				assertEquals(serial.getSellDollarVolume(), chunked.getSellDollarVolume());
+				assertEquals(serial.getDollarVolume(), chunked.getDollarVolume());
+				assertEquals(serial.getTeeTradeCount(), chunked.getTeeTradeCount());
+				assertEquals(serial.getTimeIndex().size(), chunked.getTimeIndex().size());
+				int from = FidelityTradeIndex.secondOf(18, 0);
+				int to = FidelityTradeIndex.secondOf(19, 0);
+				assertEquals(serial.getTimeIndex().between(from, to).getDollarVolume(),
+						chunked.getTimeIndex().between(from, to).getDollarVolume());
+				if ("columns".equals(store)) {
+					FidelityTradeColumns expected = serial.getTradeColumns();
+					FidelityTradeColumns actual = chunked.getTradeColumns();
+					assertEquals(expected.size(), actual.size());
+					for (int i = 0; i < expected.size(); i++) {
+						assertEquals(expected.getSecondOfDay(i), actual.getSecondOfDay(i));
+						assertEquals(expected.getPriceTicks(i), actual.getPriceTicks(i));
+						assertEquals(expected.getFlags(i), actual.getFlags(i));
+					}
+				} else if ("objects".equals(store)) {
+					assertEquals(498, chunked.getFixedPointTrades().size());
+					assertEquals(serial.getFixedPointTrades().get(497).getPrice(), chunked.getFixedPointTrades().get(497).getPrice());
+				}
+				// the newest trades were noted from the first range
+				assertEquals(0, chunked.refresh(MSFT_20211025));
+				FidelityTradeDay day = new FidelityTradeDay(older);
+				day.process();
+				assertEquals(5, day.refresh(MSFT_20211025));
+				assertEquals(serial.getDollarVolume(), day.getDollarVolume());
+			}
+		} finally {
+			older.delete();
+		}
+	}
+
+	@Test
+	public void testFailedRefreshKeepsBoundary() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		String text = new String(Files.readAllBytes(MSFT_20211025.toPath()), StandardCharsets.UTF_8);
+		File nextDay = File.createTempFile("MSFT-20211026", ".csv");
+		try {
+			Files.write(nextDay.toPath(), text.replaceFirst("\r\n10/25/2021\r\n", "\r\n10/26/2021\r\n")
+					.getBytes(StandardCharsets.UTF_8));
+			FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+			day.process();
+			try {
+				day.refresh(nextDay);
+				fail("an export of another date was taken in");
+			} catch (FidelityFileException e) {
+				// expected
+			}
+			assertEquals(0, day.refresh(MSFT_20211025));
+			assertEquals(new BigDecimal("24851"), day.getVolume());
+			assertEquals(498, day.getTradeColumns().size());
+		} finally {
+			nextDay.delete();
+		}
+	}
+
+	@Test
+	public void testRefreshOverBudgetAddsNothing() throws IOException {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_MAX_KEY, "1");
+		System.setProperty(FidelityConfiguration.PropertyConstants.ERRORS_QUARANTINE_KEY, "false");
+		File older = olderExport(5);
+		List<String> lines = Files.readAllLines(MSFT_20211025.toPath(), StandardCharsets.UTF_8);
+		// bad rows after the first new trades
+		lines.add(13, "\"19:59:59 ET\",\"x\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"A\",\"--\"");
+		lines.add(13, "\"19:59:59 ET\",\"x\",\"10\",\"309.26\",\"309.55\",\"1\",\"4\",\"P\",\"P\",\"A\",\"--\"");
+		File bad = File.createTempFile("MSFT-20211025", ".csv");
+		try {
+			Files.write(bad.toPath(), String.join("\r\n", lines).concat("\r\n").getBytes(StandardCharsets.UTF_8));
+			FidelityTradeDay day = new FidelityTradeDay(older);
+			day.process();
+			BigDecimal volume = day.getVolume();
+			try {
+				day.refresh(bad);
+				fail("the error budget was not enforced");
+			} catch (FidelityFileException e) {
+				// expected
+			}
+			assertEquals(volume, day.getVolume());
+			assertEquals(493, day.getTradeColumns().size());
+			assertEquals(493, day.getTimeIndex().all().getTradeCount());
+			assertEquals(5, day.refresh(MSFT_20211025));
+			assertEquals(new BigDecimal("24851"), day.getVolume());
+		} finally {
+			older.delete();
+			bad.delete();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRefreshNeedsFixedPoint() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "objects");
+		FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+		day.process();
+		day.refresh(MSFT_20211025);
+	}
+
+	/**
+	 * @return a copy of the MSFT export without its newest trades.
+	 */
+	private static File olderExport(int pNewestDropped) throws IOException {
+		List<String> lines = Files.readAllLines(MSFT_20211025.toPath(), StandardCharsets.UTF_8);
+		for (int i = 0; i < pNewestDropped; i++) {
+			lines.remove(10);
+		}
+		File rVal = File.createTempFile("MSFT-20211025", ".csv");
+		Files.write(rVal.toPath(), String.join("\r\n", lines).concat("\r\n").getBytes(StandardCharsets.UTF_8));
+		return rVal;
+	}
+
+	@Test
+	public void testColumnStore() {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, "columns");
+		FidelityTradeDay day = new FidelityTradeDay(MSFT_20211025);
+		day.process();
+
+		FidelityTradeColumns columns = day.getTradeColumns();
+		assertEquals(498, columns.size());
+		assertEquals(new BigDecimal("24851"), day.getVolume());
+		assertEquals(0, new BigDecimal("7687494.6017").compareTo(day.getDollarVolume()));
+		assertEquals(53, day.getTeeTradeCount());
+
+		FidelityTradeCursor cursor = columns.cursor();
+		assertTrue(cursor.next());
+		assertEquals(19 * 3600 + 59 * 60 + 59, cursor.getSecondOfDay());
+		assertEquals(0, new BigDecimal("309.55").compareTo(cursor.getPrice()));
+		assertEquals(10L, cursor.getSizeUnits());
+		assertEquals(ITradeRecord.BuySell.BUY, cursor.sentiment());
+		FidelityTradeRecord record = cursor.toTradeRecord();
+		assertEquals(0, new BigDecimal("3095.5").compareTo(record.getDollarVolume()));
+
+		long volume = 0L;
+		cursor = columns.cursor();
+		while (cursor.next()) {
+			volume += cursor.getSizeUnits();
+		}
+		assertEquals(24851L, volume);
+	}
+
+	@Test
+	public void testColumnsGrowByChunk() {
+		FidelityTradeColumns columns = new FidelityTradeColumns(2);
+		int count = FidelityTradeColumns.CHUNK_SIZE * 2 + 5;
+		for (int i = 0; i < count; i++) {
+			columns.add(i % 86400, 100 + i, 1, 99 + i, 101 + i, i % 7 == 0);
+		}
+		assertEquals(count, columns.size());
+		int last = count - 1;
+		assertEquals(100L + last, columns.getPriceTicks(last));
+		assertEquals(last % 86400, columns.getSecondOfDay(last));
+		assertEquals(FidelityDayAggregate.UNKNOWN, columns.getSentiment(last));
+		assertTrue(columns.isTeeTrade(FidelityTradeColumns.CHUNK_SIZE * 2 - 1 - ((FidelityTradeColumns.CHUNK_SIZE * 2 - 1) % 7)));
+	}
+}
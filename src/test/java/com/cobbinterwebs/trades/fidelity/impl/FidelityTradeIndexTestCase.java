@@ -0,0 +1,151 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cobbinterwebs.fidelity.config.FidelityConfiguration;
+import com.cobbinterwebs.test.FidelityAbstractBaseSecurityAnalysisTestCase;
+
+public class FidelityTradeIndexTestCase extends FidelityAbstractBaseSecurityAnalysisTestCase {
+
+	@Before
+	public void before() {
+		super.setHome("test-data");
+		FidelityConfiguration.reset();
+	}
+
+	@After
+	public void after() {
+		System.clearProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY);
+		FidelityConfiguration.reset();
+	}
+
+	private static FidelityTradeDay process(String pStore) {
+		System.setProperty(FidelityConfiguration.PropertyConstants.TRADE_STORE_KEY, pStore);
+		FidelityConfiguration.reset();
+		FidelityTradeDay rVal = new FidelityTradeDay(FidelityTradeBarsTestCase.MSFT_20211025);
+		rVal.process();
+		return rVal;
+	}
+
+	private static void assertSame(FidelityDayAggregate pExpected, FidelityDayAggregate pActual) {
+		assertEquals(pExpected.getTradeCount(), pActual.getTradeCount());
+		assertEquals(pExpected.getTeeTradeCount(), pActual.getTeeTradeCount());
+		assertEquals(pExpected.getVolumeUnits(), pActual.getVolumeUnits());
+		assertEquals(pExpected.getBuyVolumeUnits(), pActual.getBuyVolumeUnits());
+		assertEquals(pExpected.getSellVolumeUnits(), pActual.getSellVolumeUnits());
+		assertEquals(pExpected.getUnknownVolumeUnits(), pActual.getUnknownVolumeUnits());
+		assertEquals(pExpected.getDollarVolume(), pActual.getDollarVolume());
+		assertEquals(pExpected.getBuyDollarVolume(), pActual.getBuyDollarVolume());
+		assertEquals(pExpected.getSellDollarVolume(), pActual.getSellDollarVolume());
+		assertEquals(pExpected.getUnknownDollarVolume(), pActual.getUnknownDollarVolume());
+		assertEquals(pExpected.getAveragePrice(), pActual.getAveragePrice());
+	}
+
+	@Test
+	public void testWholeDayInEveryStore() {
+		for (String store : new String[] { "objects", "columns", "streaming" }) {
+			FidelityTradeDay day = process(store);
+			FidelityTradeIndex index = day.getTimeIndex();
+			FidelityDayAggregate all = index.all();
+			assertEquals(store, 498, all.getTradeCount());
+			assertEquals(store, 53, all.getTeeTradeCount());
+			assertEquals(new BigDecimal("24851"), all.getVolume());
+			assertEquals(new BigDecimal("4994"), all.getBuyVolume());
+			assertEquals(new BigDecimal("4835"), all.getSellVolume());
+			assertEquals(0, new BigDecimal("7687494.6017").compareTo(all.getDollarVolume()));
+			assertEquals(19 * 3600 + 59 * 60 + 59, index.getLastSecond());
+			assertTrue(index.size() < 498);
+		}
+	}
+
+	@Test
+	public void testWindowsMatchAScan() {
+		FidelityTradeDay day = process("columns");
+		FidelityTradeColumns trades = day.getTradeColumns();
+		FidelityTradeIndex index = day.getTimeIndex();
+		int first = index.getFirstSecond();
+		int last = index.getLastSecond();
+		Random random = new Random(17L);
+		for (int n = 0; n < 200; n++) {
+			int from = first - 60 + random.nextInt(last - first + 120);
+			int to = from + random.nextInt(4 * 3600);
+			FidelityDayAggregate expected = new FidelityDayAggregate(trades.getScale());
+			for (int i = 0; i < trades.size(); i++) {
+				int sec = trades.getSecondOfDay(i);
+				if (sec >= from && sec < to) {
+					expected.add(trades.getPriceTicks(i), trades.getSize(i), trades.getSentiment(i), trades.isTeeTrade(i));
+				}
+			}
+			assertSame(expected, index.between(from, to));
+		}
+		assertEquals(0, index.between(last, first).getTradeCount());
+	}
+
+	@Test
+	public void testSessions() {
+		FidelityTradeIndex index = process("streaming").getTimeIndex();
+		FidelityDayAggregate sessions = new FidelityDayAggregate(index.getScale());
+		sessions.merge(index.preMarket());
+		sessions.merge(index.regularSession());
+		sessions.merge(index.afterHours());
+		assertSame(index.all(), sessions);
+		// the export only has the 18:00 to 20:00 after-hours trades
+		assertEquals(0, index.regularSession().getTradeCount());
+		assertEquals(0, index.preMarket().getTradeCount());
+		assertSame(index.all(), index.afterHours());
+		assertEquals(221, index.between(FidelityTradeIndex.secondOf(18, 0), FidelityTradeIndex.secondOf(19, 0)).getTradeCount());
+
+		FidelityDayAggregate lastHalfHour = index.last(1800);
+		assertSame(index.between(FidelityTradeIndex.secondOf(19, 30), FidelityTradeIndex.END_OF_DAY), lastHalfHour);
+		// the first three rows of the export are at 19:59:59
+		assertEquals(3, index.last(1).getTradeCount());
+		assertEquals(50, index.last(1).getVolumeUnits());
+	}
+
+	@Test
+	public void testBuilderMergesSecondsOutOfOrder() {
+		FidelityTradeIndex.Builder builder = new FidelityTradeIndex.Builder(2);
+		builder.add(100, 1000L, 1L, FidelityDayAggregate.BUY, false);
+		builder.add(50, 2000L, 2L, FidelityDayAggregate.SELL, true);
+		builder.add(100, 3000L, 3L, FidelityDayAggregate.UNKNOWN, false);
+		FidelityTradeIndex index = builder.build();
+		assertEquals(2, index.size());
+		assertEquals(50, index.getSecond(0));
+		assertEquals(100, index.getSecond(1));
+		FidelityDayAggregate at100 = index.between(100, 101);
+		assertEquals(2, at100.getTradeCount());
+		assertEquals(4L, at100.getVolumeUnits());
+		assertEquals(new BigDecimal("100.00"), at100.getDollarVolume());
+		assertEquals(new BigDecimal("90.00"), at100.getUnknownDollarVolume());
+		assertEquals(1, index.between(0, 100).getTeeTradeCount());
+
+		builder.add(200, 100L, 5L, FidelityDayAggregate.BUY, false);
+		assertEquals(3, builder.build().size());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void testBuilderNewestFirst() {
+		FidelityTradeIndex.Builder builder = new FidelityTradeIndex.Builder(2);
+		builder.add(300, 1000L, 1L, FidelityDayAggregate.BUY, false);
+		builder.add(200, 2000L, 2L, FidelityDayAggregate.SELL, false);
+		builder.add(100, 3000L, 3L, FidelityDayAggregate.BUY, true);
+		FidelityTradeIndex index = builder.build();
+		assertEquals(3, index.size());
+		assertEquals(100, index.getSecond(0));
+		assertEquals(300, index.getSecond(2));
+		assertEquals(3L, index.between(0, 101).getVolumeUnits());
+		assertEquals(1, index.between(0, 101).getTeeTradeCount());
+		assertEquals(5L, index.between(0, 201).getVolumeUnits());
+		assertEquals(6L, index.all().getVolumeUnits());
+		assertEquals(new BigDecimal("100.00"), index.all().getBuyDollarVolume());
+	}
+}
@@ -3,6 +3,7 @@ package com.cobbinterwebs.trades.fidelity.impl;
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -78,4 +79,31 @@ public class FidelityTradeRecordTestsCase {
 		assertEquals(59, tradeTimeArray[FidelityTradeRecord.MINUTE]);
 		assertEquals(43, tradeTimeArray[FidelityTradeRecord.SECOND]);
 	}
+
+	@Test
+	public void testCompactTime() {
+		assertEquals(9 * 3600 + 30 * 60, testRecord.getSecondOfDay());
+		assertEquals(FidelityTradeRecord.NO_DAY, testRecord.getEpochDay());
+		assertEquals(9 * 3600 + 30 * 60, testRecord.getTimestamp());
+		assertEquals(16 * 3600 + 1, FidelityTradeRecord.parseSecondOfDay("16:00:01 ET"));
+		assertEquals(9 * 3600 + 5 * 60, FidelityTradeRecord.parseSecondOfDay("9:05"));
+
+		long day = LocalDate.of(2021, 10, 25).toEpochDay();
+		assertEquals(day, FidelityTradeRecord.toEpochDay("10/25/2021"));
+		assertEquals(FidelityTradeRecord.NO_DAY, FidelityTradeRecord.toEpochDay("Date: 10/25/2021"));
+		assertEquals(FidelityTradeRecord.NO_DAY, FidelityTradeRecord.toEpochDay("13/25/2021"));
+
+		testRecord.setEpochDay(day);
+		assertEquals(day * 86400 + 9 * 3600 + 30 * 60, testRecord.getTimestamp());
+		assertEquals(2021, testRecord.get(Calendar.YEAR));
+		assertEquals(Calendar.OCTOBER, testRecord.get(Calendar.MONTH));
+		assertEquals(25, testRecord.get(Calendar.DAY_OF_MONTH));
+		assertEquals(30, testRecord.get(Calendar.MINUTE));
+
+		// the legacy setters write the time back
+		testRecord.set(Calendar.HOUR_OF_DAY, 15);
+		testRecord.set(2021, Calendar.OCTOBER, 26);
+		assertEquals(15 * 3600 + 30 * 60, testRecord.getSecondOfDay());
+		assertEquals(day + 1, testRecord.getEpochDay());
+	}
 }
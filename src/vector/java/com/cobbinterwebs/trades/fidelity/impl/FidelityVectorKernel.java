@@ -0,0 +1,134 @@
+package com.cobbinterwebs.trades.fidelity.impl;
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2021 Cobb Interwebs, LLC
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+////////////////////////////////////////////////////////////////////////////////
+
+import com.cobbinterwebs.fidelity.math.FixedPoint;
+import com.cobbinterwebs.fidelity.math.FixedPointSum;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The aggregation kernel on the <code>jdk.incubator.vector</code> API. A block of trades is
+ * classified a vector at a time with two masks, price at or above the ask and price at or below
+ * the bid, and the volumes and the price times size products are summed in long lanes, the buys
+ * and sells under their masks. The T trades are counted from the flags a byte vector at a time.
+ *
+ * <p>The dollar volumes of the scalar kernel are exact 128 bit sums. A block is summed in longs
+ * only when its largest price times its largest size times its length stays below 2^62, so no
+ * lane can overflow; otherwise the block, like the tail shorter than a vector, goes to the scalar
+ * kernel. The totals are the same either way.</p>
+ *
+ * @author Cobb Interwebs, LLC
+ */
+public final class FidelityVectorKernel extends FidelityAggregationKernel {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    /** Trades summed in long lanes before the lanes are folded into the totals. */
+    static final int BLOCK = 512;
+    /** Bound on the sum of the products of a block. */
+    private static final double LANE_LIMIT = 0x1p62;
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public void aggregate(long[] pPrice, long[] pSize, long[] pBid, long[] pAsk, byte[] pFlags,
+            int pFrom, int pTo, FidelityDayAggregate pAggregate) {
+        FixedPointSum dollars = new FixedPointSum();
+        FixedPointSum buyDollars = new FixedPointSum();
+        FixedPointSum sellDollars = new FixedPointSum();
+        int vectorEnd = pFrom + LONGS.loopBound(pTo - pFrom);
+        int i = pFrom;
+        while (i < vectorEnd) {
+            int end = Math.min(vectorEnd, i + BLOCK);
+            if (!aggregateBlock(pPrice, pSize, pBid, pAsk, pFlags, i, end, pAggregate, dollars, buyDollars, sellDollars)) {
+                SCALAR.aggregate(pPrice, pSize, pBid, pAsk, pFlags, i, end, pAggregate);
+            }
+            i = end;
+        }
+        if (i < pTo) {
+            SCALAR.aggregate(pPrice, pSize, pBid, pAsk, pFlags, i, pTo, pAggregate);
+        }
+    }
+
+    /**
+     * Sums a block whose length is a multiple of the long vector length.
+     * @return false, having added nothing, if the products of the block could overflow a lane.
+     */
+    private static boolean aggregateBlock(long[] pPrice, long[] pSize, long[] pBid, long[] pAsk, byte[] pFlags,
+            int pFrom, int pTo, FidelityDayAggregate pAggregate,
+            FixedPointSum pDollars, FixedPointSum pBuyDollars, FixedPointSum pSellDollars) {
+        LongVector volume = LongVector.zero(LONGS);
+        LongVector buyVolume = volume;
+        LongVector sellVolume = volume;
+        LongVector dollars = volume;
+        LongVector buyDollars = volume;
+        LongVector sellDollars = volume;
+        LongVector maxPrice = volume;
+        LongVector maxSize = volume;
+        for (int i = pFrom; i < pTo; i += LONGS.length()) {
+            LongVector price = LongVector.fromArray(LONGS, pPrice, i);
+            LongVector size = LongVector.fromArray(LONGS, pSize, i);
+            LongVector bid = LongVector.fromArray(LONGS, pBid, i);
+            LongVector ask = LongVector.fromArray(LONGS, pAsk, i);
+            VectorMask<Long> buy = ask.compare(VectorOperators.NE, FixedPoint.NONE)
+                    .and(price.compare(VectorOperators.GE, ask));
+            VectorMask<Long> sell = bid.compare(VectorOperators.NE, FixedPoint.NONE)
+                    .and(price.compare(VectorOperators.LE, bid))
+                    .andNot(buy);
+            LongVector product = price.mul(size);
+            volume = volume.add(size);
+            dollars = dollars.add(product);
+            buyVolume = buyVolume.add(size, buy);
+            buyDollars = buyDollars.add(product, buy);
+            sellVolume = sellVolume.add(size, sell);
+            sellDollars = sellDollars.add(product, sell);
+            maxPrice = maxPrice.max(price.abs());
+            maxSize = maxSize.max(size.abs());
+        }
+        long priceBound = maxPrice.reduceLanes(VectorOperators.MAX);
+        long sizeBound = maxSize.reduceLanes(VectorOperators.MAX);
+        // abs(Long.MIN_VALUE) stays negative
+        if (priceBound < 0L || sizeBound < 0L || (double) priceBound * sizeBound * (pTo - pFrom) >= LANE_LIMIT) {
+            return false;
+        }
+        pDollars.clear();
+        pDollars.add(dollars.reduceLanes(VectorOperators.ADD));
+        pBuyDollars.clear();
+        pBuyDollars.add(buyDollars.reduceLanes(VectorOperators.ADD));
+        pSellDollars.clear();
+        pSellDollars.add(sellDollars.reduceLanes(VectorOperators.ADD));
+        pAggregate.addTotals(pTo - pFrom, countTeeTrades(pFlags, pFrom, pTo), volume.reduceLanes(VectorOperators.ADD),
+                buyVolume.reduceLanes(VectorOperators.ADD), sellVolume.reduceLanes(VectorOperators.ADD),
+                pDollars, pBuyDollars, pSellDollars);
+        return true;
+    }
+
+    private static int countTeeTrades(byte[] pFlags, int pFrom, int pTo) {
+        int rVal = 0;
+        int i = pFrom;
+        for (int end = pFrom + BYTES.loopBound(pTo - pFrom); i < end; i += BYTES.length()) {
+            rVal += ByteVector.fromArray(BYTES, pFlags, i)
+                    .and(FidelityTradeColumns.FLAG_TEE_TRADE)
+                    .compare(VectorOperators.NE, (byte) 0)
+                    .trueCount();
+        }
+        for (; i < pTo; i++) {
+            rVal += pFlags[i] & FidelityTradeColumns.FLAG_TEE_TRADE;
+        }
+        return rVal;
+    }
+}